@@ -109,6 +109,11 @@ public class DoorFragment extends BoundFragment {
             });
         }
 
+        @Override
+        public void cameraTransferProgress(float progress) {
+            Log.v(TAG, "Received " + Math.round(progress * 100) + "% of the image");
+        }
+
         @Override
         public void cameraActionFinished(final boolean wasSuccessful) {
             maybeRunOnUiThread(new Runnable() {
@@ -168,6 +173,11 @@ public class DoorFragment extends BoundFragment {
 
         displayImage();
         updateButtons();
+
+        //Watch the door while the fragment is visible
+        if (((AppMainActivity) getActivity()).hasPermission(Permission.TAKE_CAMERA_PICTURE)) {
+            handler.startStream();
+        }
     }
 
     @Override
@@ -176,6 +186,7 @@ public class DoorFragment extends BoundFragment {
 
         if (doorHandler != null) {
             doorHandler.removeListener(doorListener);
+            doorHandler.stopStream();
         }
 
         super.onContainerDisconnected();
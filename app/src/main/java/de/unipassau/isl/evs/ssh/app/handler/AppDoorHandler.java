@@ -29,28 +29,43 @@ package de.unipassau.isl.evs.ssh.app.handler;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import de.ncoder.typedmap.Key;
 import de.unipassau.isl.evs.ssh.core.container.Component;
 import de.unipassau.isl.evs.ssh.core.database.dto.Module;
 import de.unipassau.isl.evs.ssh.core.messaging.Message;
 import de.unipassau.isl.evs.ssh.core.messaging.RoutingKey;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraStreamPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorBellPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorBlockPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorStatusPayload;
+import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.DEFAULT_STREAM_INTERVAL;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.STREAM_LEASE;
 
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_BROADCAST;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_CHUNK;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_FRAME;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_DOOR_RING;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_DOOR_STATUS_UPDATE;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_GET;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_GET_ERROR;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_GET_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_STREAM;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_STREAM_ERROR;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_STREAM_REPLY;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_BLOCK;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_BLOCK_ERROR;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_BLOCK_REPLY;
@@ -74,6 +89,8 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
     private boolean isDoorOpen = false;
     private final List<DoorListener> listeners = new LinkedList<>();
     private byte[] picture = null;
+    private final Map<Integer, PictureTransfer> transfers = new HashMap<>();
+    private ScheduledFuture<?> streamRenewal;
 
     @Override
     public RoutingKey[] getRoutingKeys() {
@@ -81,6 +98,8 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
                 APP_DOOR_RING,
                 APP_DOOR_STATUS_UPDATE,
                 APP_CAMERA_BROADCAST,
+                APP_CAMERA_CHUNK,
+                APP_CAMERA_FRAME,
                 MASTER_DOOR_GET_REPLY,
                 MASTER_DOOR_GET_ERROR,
                 MASTER_DOOR_BLOCK_REPLY,
@@ -89,6 +108,8 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
                 MASTER_DOOR_UNLATCH_ERROR,
                 MASTER_CAMERA_GET_REPLY,
                 MASTER_CAMERA_GET_ERROR,
+                MASTER_CAMERA_STREAM_REPLY,
+                MASTER_CAMERA_STREAM_ERROR,
         };
     }
 
@@ -109,18 +130,28 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
             } else if (MASTER_DOOR_UNLATCH_ERROR.matches(message)) {
                 fireUnlatchActionFinished(false);
             } else if (MASTER_CAMERA_GET_REPLY.matches(message)) {
-                picture = MASTER_CAMERA_GET_REPLY.getPayload(message).getPicture();
-                fireCameraActionFinished(true);
+                picture = takePicture(MASTER_CAMERA_GET_REPLY.getPayload(message));
+                fireCameraActionFinished(picture != null);
             } else if (APP_CAMERA_BROADCAST.matches(message)) {
-                picture = APP_CAMERA_BROADCAST.getPayload(message).getPicture();
-                fireCameraActionFinished(true);
+                picture = takePicture(APP_CAMERA_BROADCAST.getPayload(message));
+                fireCameraActionFinished(picture != null);
+            } else if (APP_CAMERA_CHUNK.matches(message)) {
+                handleChunk(APP_CAMERA_CHUNK.getPayload(message));
+            } else if (APP_CAMERA_FRAME.matches(message)) {
+                picture = APP_CAMERA_FRAME.getPayload(message).getPicture();
+                fireCameraActionFinished(picture != null);
+            } else if (MASTER_CAMERA_STREAM_REPLY.matches(message)) {
+                Log.v(TAG, "Streaming with interval " + MASTER_CAMERA_STREAM_REPLY.getPayload(message).getInterval());
+            } else if (MASTER_CAMERA_STREAM_ERROR.matches(message)) {
+                Log.w(TAG, "Could not subscribe to camera stream: " + MASTER_CAMERA_STREAM_ERROR.getPayload(message));
+                cancelStreamRenewal();
             } else if (MASTER_CAMERA_GET_ERROR.matches(message)) {
                 fireCameraActionFinished(false);
             } else if (APP_DOOR_STATUS_UPDATE.matches(message)) {
                 handleUpdate(APP_DOOR_STATUS_UPDATE.getPayload(message));
             } else if (APP_DOOR_RING.matches(message)) {
                 DoorBellPayload doorBellPayload = APP_DOOR_RING.getPayload(message);
-                picture = doorBellPayload.getCameraPayload().getPicture();
+                picture = takePicture(doorBellPayload.getCameraPayload());
                 fireCameraActionFinished(picture != null);
             } else {
                 invalidMessage(message);
@@ -134,6 +165,46 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
         fireStatusUpdated(true);
     }
 
+    private void handleChunk(CameraChunkPayload chunk) {
+        PictureTransfer transfer = transfers.get(chunk.getTransferID());
+        if (transfer == null) {
+            if (chunk.getOffset() != 0) {
+                //the beginning of this transfer was lost or the transfer was already aborted
+                return;
+            }
+            transfer = new PictureTransfer(chunk.getTotalLength());
+            transfers.put(chunk.getTransferID(), transfer);
+        }
+        if (!transfer.append(chunk)) {
+            Log.w(TAG, "Chunk " + chunk.getOffset() + "/" + chunk.getTotalLength() + " of transfer "
+                    + chunk.getTransferID() + " doesn't fit to the " + transfer.received + " bytes received, aborting");
+            transfers.remove(chunk.getTransferID());
+            return;
+        }
+        fireCameraTransferProgress(chunk.getProgress());
+    }
+
+    /**
+     * Get the picture contained in the payload or the picture reassembled from the chunks that were received before
+     * the payload.
+     *
+     * @return the picture or {@code null}, if the payload contains no picture or not all chunks were received
+     */
+    @Nullable
+    private byte[] takePicture(@Nullable CameraPayload payload) {
+        if (payload == null) {
+            return null;
+        } else if (payload.getTransferID() == 0) {
+            return payload.getPicture();
+        }
+        final PictureTransfer transfer = transfers.remove(payload.getTransferID());
+        if (transfer == null || !transfer.isComplete()) {
+            Log.w(TAG, "Picture of transfer " + payload.getTransferID() + " is incomplete");
+            return null;
+        }
+        return transfer.picture;
+    }
+
     @Nullable
     private String getDoor() {
         List<Module> doors = requireComponent(AppModuleHandler.KEY).getDoorBuzzers();
@@ -179,6 +250,12 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
         }
     }
 
+    private void fireCameraTransferProgress(float progress) {
+        for (DoorListener listener : listeners) {
+            listener.cameraTransferProgress(progress);
+        }
+    }
+
     private void fireCameraActionFinished(boolean wasSuccessful) {
         for (DoorListener listener : listeners) {
             listener.cameraActionFinished(wasSuccessful);
@@ -281,13 +358,62 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
             public void operationComplete(Future<CameraPayload> future) throws Exception {
                 final boolean success = future.isSuccess();
                 if (success) {
-                    picture = future.get().getPicture();
+                    picture = takePicture(future.get());
                 }
-                fireCameraActionFinished(success);
+                fireCameraActionFinished(success && picture != null);
             }
         });
     }
 
+    /**
+     * Subscribes to the live stream of the door camera. Every received frame replaces the current picture and is
+     * reported as finished camera action. The subscription is renewed until {@link #stopStream()} is called.
+     */
+    public void startStream() {
+        if (streamRenewal != null) {
+            return;
+        }
+        streamRenewal = requireComponent(ExecutionServiceComponent.KEY).scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sendStreamSubscription(DEFAULT_STREAM_INTERVAL);
+            }
+        }, 0, STREAM_LEASE / 2, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Unsubscribes from the live stream of the door camera.
+     */
+    public void stopStream() {
+        if (streamRenewal != null) {
+            cancelStreamRenewal();
+            sendStreamSubscription(0);
+        }
+    }
+
+    private void cancelStreamRenewal() {
+        if (streamRenewal != null) {
+            streamRenewal.cancel(false);
+            streamRenewal = null;
+        }
+    }
+
+    private void sendStreamSubscription(long interval) {
+        List<Module> cameras = requireComponent(AppModuleHandler.KEY).getCameras();
+        if (cameras.size() < 1) {
+            Log.e(TAG, "Could not subscribe to the camera stream. No camera available");
+            return;
+        }
+        CameraStreamPayload payload = new CameraStreamPayload(cameras.get(0).getName(), 0, interval, false);
+        sendMessageToMaster(MASTER_CAMERA_STREAM, new Message(payload));
+    }
+
+    @Override
+    public void destroy() {
+        cancelStreamRenewal();
+        super.destroy();
+    }
+
     /**
      * Gets the last taken picture.
      *
@@ -340,6 +466,13 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
          */
         void unlatchActionFinished(boolean wasSuccessful);
 
+        /**
+         * Called when a chunk of a picture was received, before the camera request finishes.
+         *
+         * @param progress the fraction of the picture that was received, between 0 and 1
+         */
+        void cameraTransferProgress(float progress);
+
         /**
          * Called when a camera request finished.
          *
@@ -347,4 +480,31 @@ public class AppDoorHandler extends AbstractAppHandler implements Component {
          */
         void cameraActionFinished(boolean wasSuccessful);
     }
+
+    /**
+     * A picture that is reassembled from the {@link CameraChunkPayload CameraChunkPayloads} received in order.
+     */
+    private static class PictureTransfer {
+        private final byte[] picture;
+        private int received = 0;
+
+        private PictureTransfer(int totalLength) {
+            picture = new byte[totalLength];
+        }
+
+        private boolean append(CameraChunkPayload chunk) {
+            final byte[] data = chunk.getData();
+            if (chunk.getOffset() != received || chunk.getTotalLength() != picture.length
+                    || data == null || received + data.length > picture.length) {
+                return false;
+            }
+            System.arraycopy(data, 0, picture, received, data.length);
+            received += data.length;
+            return true;
+        }
+
+        private boolean isComplete() {
+            return received == picture.length;
+        }
+    }
 }
@@ -29,12 +29,17 @@ package de.unipassau.isl.evs.ssh.core.messaging;
 import junit.framework.TestCase;
 
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.unipassau.isl.evs.ssh.core.CoreConstants;
 import de.unipassau.isl.evs.ssh.core.container.Container;
 import de.unipassau.isl.evs.ssh.core.container.SimpleContainer;
 import de.unipassau.isl.evs.ssh.core.handler.MessageHandler;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorPayload;
 import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.core.schedule.DefaultExecutionServiceComponent;
 import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
@@ -43,6 +48,7 @@ import io.netty.channel.embedded.EmbeddedChannel;
 public class IncomingDispatcherTest extends TestCase {
     private static final RoutingKey<Void> ROUTING_KEY_1 = new RoutingKey<>("/test1", Void.class);
     private static final RoutingKey<Void> ROUTING_KEY_2 = new RoutingKey<>("/test2", Void.class);
+    private static final RoutingKey<DoorPayload> ROUTING_KEY_DOOR = new RoutingKey<>("/door", DoorPayload.class);
     private static final DeviceID ID1;
     private static final DeviceID ID2;
     private static final DeviceID ID3;
@@ -135,71 +141,148 @@ public class IncomingDispatcherTest extends TestCase {
     }
 
     public void testSimultaneousDispatch() {
-        final TestHandler[] others = new TestHandler[4];
-        others[0] = new TestHandler(200, others);
-        others[1] = new TestHandler(200, others);
-        others[2] = new TestHandler(200, others);
-        others[3] = new TestHandler(200, others);
-        dispatcher.registerHandler(others[0], ROUTING_KEY_1);
-        dispatcher.registerHandler(others[1], ROUTING_KEY_1);
-        dispatcher.registerHandler(others[2], ROUTING_KEY_1);
-        dispatcher.registerHandler(others[3], ROUTING_KEY_1);
+        final TestHandler[] handlers = new TestHandler[4];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = new TestHandler(100);
+            dispatcher.registerHandler(handlers[i], ROUTING_KEY_1);
+        }
 
         channel.attr(CoreConstants.NettyConstants.ATTR_PEER_ID).set(ID1);
-        channel.writeInbound(new Message().setDestination(ID1, ID2, ROUTING_KEY_1.getKey()));
+        for (int i = 0; i < 3; i++) {
+            channel.writeInbound(new Message().setDestination(ID1, ID2, ROUTING_KEY_1.getKey()));
+        }
         channel.runScheduledPendingTasks();
         try {
-            Thread.sleep(1000);
+            Thread.sleep(2000);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
         channel.checkException();
 
-        assertTrue(Arrays.toString(others), others[0].ran);
-        assertTrue(Arrays.toString(others), others[1].ran);
-        assertTrue(Arrays.toString(others), others[2].ran);
-        assertTrue(Arrays.toString(others), others[3].ran);
+        //Different handlers may run concurrently, but each handler handles its messages one after another
+        for (TestHandler handler : handlers) {
+            assertFalse(Arrays.toString(handlers), handler.concurrent);
+            assertEquals(Arrays.toString(handlers), 3, handler.handled.get());
+        }
+    }
+
+    public void testModuleDispatch() throws InterruptedException {
+        final TestHandler[] others = new TestHandler[2];
+        others[0] = new TestHandler(100, MessageHandler.OrderingScope.MODULE, others);
+        others[1] = new TestHandler(100, MessageHandler.OrderingScope.MODULE, others);
+        dispatcher.registerHandler(others[0], ROUTING_KEY_DOOR);
+        dispatcher.registerHandler(others[1], ROUTING_KEY_DOOR);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dispatcher.dispatch(new Message(new DoorPayload("Door")).setDestination(ID1, ID2, ROUTING_KEY_DOOR.getKey())));
+        }
+        Thread.sleep(2000);
+
+        //All messages concerning the same module are handled one after another, even by different handlers
+        for (TestHandler handler : others) {
+            assertFalse(Arrays.toString(others), handler.concurrent);
+            assertEquals(Arrays.toString(others), 3, handler.handled.get());
+        }
+    }
+
+    public void testOrderedDispatch() throws InterruptedException {
+        final OrderingHandler handler1 = new OrderingHandler(MessageHandler.OrderingScope.HANDLER);
+        final OrderingHandler handler2 = new OrderingHandler(MessageHandler.OrderingScope.SENDER);
+        dispatcher.registerHandler(handler1, ROUTING_KEY_1);
+        dispatcher.registerHandler(handler2, ROUTING_KEY_1);
+
+        final List<Message.AddressedMessage> sent = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final Message.AddressedMessage message = new Message().setDestination(ID1, ID2, ROUTING_KEY_1.getKey());
+            sent.add(message);
+            assertTrue(dispatcher.dispatch(message));
+        }
+        Thread.sleep(1000);
+
+        assertEquals(sent, handler1.received);
+        assertEquals(sent, handler2.received);
+    }
+
+    private static class OrderingHandler implements MessageHandler {
+        private final List<Message.AddressedMessage> received = Collections.synchronizedList(new ArrayList<Message.AddressedMessage>());
+        private final OrderingScope scope;
+
+        private OrderingHandler(OrderingScope scope) {
+            this.scope = scope;
+        }
+
+        @Override
+        public void handle(Message.AddressedMessage message) {
+            received.add(message);
+        }
+
+        @Override
+        public void handlerAdded(IncomingDispatcher dispatcher, RoutingKey routingKey) { }
+
+        @Override
+        public void handlerRemoved(RoutingKey routingKey) { }
+
+        @Override
+        public OrderingScope getOrderingScope() {
+            return scope;
+        }
     }
 
     private static class TestHandler implements MessageHandler {
-        private boolean running;
-        private boolean ran;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger handled = new AtomicInteger();
+        private volatile boolean ran;
+        private volatile boolean concurrent;
         private final int delay;
+        private final OrderingScope scope;
         private final TestHandler[] others;
 
         private TestHandler() {
-            this(0, null);
+            this(0);
+        }
+
+        private TestHandler(int delay) {
+            this(delay, OrderingScope.HANDLER);
         }
 
-        private TestHandler(int delay, TestHandler... others) {
+        /**
+         * @param others handlers that must never run concurrently with this handler
+         */
+        private TestHandler(int delay, OrderingScope scope, TestHandler... others) {
             this.delay = delay;
+            this.scope = scope;
             this.others = others;
         }
 
         @Override
         public void handle(Message.AddressedMessage message) {
             try {
-                System.out.println(Arrays.toString(others));
-                running = true;
+                if (running.incrementAndGet() > 1) {
+                    concurrent = true;
+                }
                 checkConcurrency();
                 if (delay > 0) {
                     Thread.sleep(delay);
                 }
                 checkConcurrency();
+                handled.incrementAndGet();
                 ran = true;
             } catch (InterruptedException e) {
                 e.printStackTrace();
             } finally {
-                running = false;
-                System.out.println(Arrays.toString(others));
+                running.decrementAndGet();
             }
         }
 
+        /**
+         * Assertions would only fail the executing thread, so remember violations for the test to check them.
+         */
         private void checkConcurrency() {
             if (others != null) {
                 for (TestHandler other : others) {
-                    if (other == this) continue;
-                    assertFalse(other.running);
+                    if (other != this && other.running.get() > 0) {
+                        concurrent = true;
+                    }
                 }
             }
         }
@@ -210,13 +293,19 @@ public class IncomingDispatcherTest extends TestCase {
         @Override
         public void handlerRemoved(RoutingKey routingKey) { }
 
+        @Override
+        public OrderingScope getOrderingScope() {
+            return scope;
+        }
+
         @Override
         public String toString() {
             return "TestHandler{" +
                     "running=" + running +
-                    ", ran=" + ran +
+                    ", handled=" + handled +
+                    ", concurrent=" + concurrent +
                     ", delay=" + delay +
                     '}';
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,210 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+import de.unipassau.isl.evs.ssh.core.CoreConstants;
+import de.unipassau.isl.evs.ssh.core.database.dto.Module;
+import de.unipassau.isl.evs.ssh.core.database.dto.ModuleAccessPoint.USBAccessPoint;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkAckPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraStreamPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.ClimatePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.MessagePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.NotificationPayload;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import de.unipassau.isl.evs.ssh.core.network.handler.CompactMessageDecoder;
+import de.unipassau.isl.evs.ssh.core.network.handler.CompactMessageEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.serialization.ObjectEncoder;
+import io.netty.util.ReferenceCountUtil;
+
+public class MessageCodecTest extends TestCase {
+    private static final DeviceID ID1;
+    private static final DeviceID ID2;
+
+    static {
+        byte[] id = new byte[DeviceID.ID_LENGTH];
+        Arrays.fill(id, (byte) 1);
+        ID1 = new DeviceID(id);
+        Arrays.fill(id, (byte) 2);
+        ID2 = new DeviceID(id);
+    }
+
+    private final Module module = new Module("Weather", ID2, CoreConstants.ModuleType.WeatherBoard, new USBAccessPoint(1));
+
+    public void testClimateRoundtrip() {
+        final Message message = new Message(new ClimatePayload(21.5, 21.7, 1013.2, 320, 45.5, 0.3, 260, 1200, module));
+        message.putHeader(Message.HEADER_REFERENCES_ID, 42);
+        final Message.AddressedMessage sent = message.setDestination(ID1, ID2, RoutingKeys.MASTER_PUSH_WEATHER_INFO.getKey());
+
+        final ByteBuf frame = encode(sent);
+        final int compactSize = frame.readableBytes();
+        final Message.AddressedMessage received = decode(frame);
+
+        assertEquals(sent.getSequenceNr(), received.getSequenceNr());
+        assertEquals(sent.getFromID(), received.getFromID());
+        assertEquals(sent.getToID(), received.getToID());
+        assertEquals(sent.getRoutingKey(), received.getRoutingKey());
+        assertEquals(sent.getHeader(Message.HEADER_TIMESTAMP), received.getHeader(Message.HEADER_TIMESTAMP));
+        assertEquals(Integer.valueOf(42), received.getHeader(Message.HEADER_REFERENCES_ID));
+
+        final ClimatePayload payload = received.getPayloadChecked(ClimatePayload.class);
+        assertEquals(21.5, payload.getTemp1());
+        assertEquals(1013.2, payload.getPressure());
+        assertEquals(1200, payload.getIr());
+        assertEquals(module, payload.getModule());
+
+        final EmbeddedChannel serializing = new EmbeddedChannel(new ObjectEncoder());
+        serializing.writeOutbound(sent);
+        final ByteBuf serialized = serializing.readOutbound();
+        assertTrue("Compact encoding with " + compactSize + "b is not smaller than serialization with "
+                + serialized.readableBytes() + "b", compactSize < serialized.readableBytes());
+        ReferenceCountUtil.release(serialized);
+    }
+
+    public void testNotificationArgs() {
+        final Message.AddressedMessage sent = new Message(new NotificationPayload(
+                NotificationPayload.NotificationType.WEATHER_WARNING, "Storm", 3, 2.5, null, module
+        )).setDestination(ID2, ID1, RoutingKeys.APP_NOTIFICATION_RECEIVE.getKey());
+
+        final NotificationPayload payload = decode(encode(sent)).getPayloadChecked(NotificationPayload.class);
+        assertEquals(NotificationPayload.NotificationType.WEATHER_WARNING, payload.getType());
+        assertEquals("Storm", payload.getArgs()[0]);
+        assertEquals(3, payload.getArgs()[1]);
+        assertEquals(2.5, payload.getArgs()[2]);
+        assertNull(payload.getArgs()[3]);
+        assertEquals(module, payload.getArgs()[4]);
+    }
+
+    public void testCameraChunks() {
+        final byte[] data = new byte[]{1, 2, 3, 4};
+        final Message.AddressedMessage sentChunk = new Message(new CameraChunkPayload(7, "Camera", 0, 16, 20, data))
+                .setDestination(ID2, ID1, RoutingKeys.APP_CAMERA_CHUNK.getKey());
+        final CameraChunkPayload chunk = decode(encode(sentChunk)).getPayloadChecked(CameraChunkPayload.class);
+        assertEquals(7, chunk.getTransferID());
+        assertEquals("Camera", chunk.getModuleName());
+        assertEquals(16, chunk.getOffset());
+        assertEquals(20, chunk.getTotalLength());
+        assertTrue(Arrays.equals(data, chunk.getData()));
+        assertTrue(chunk.isLast());
+        assertEquals(1f, chunk.getProgress());
+
+        final Message.AddressedMessage sentAck = new Message(new CameraChunkAckPayload(7, 20))
+                .setDestination(ID1, ID2, RoutingKeys.SLAVE_CAMERA_CHUNK_ACK.getKey());
+        final CameraChunkAckPayload ack = decode(encode(sentAck)).getPayloadChecked(CameraChunkAckPayload.class);
+        assertEquals(7, ack.getTransferID());
+        assertEquals(20, ack.getLength());
+
+        final CameraPayload camera = new CameraPayload(0, "Camera");
+        camera.setTransferID(7);
+        camera.setResolution(640, 480);
+        camera.setQuality(60);
+        camera.setThumbnail(true);
+        final Message.AddressedMessage sentReply = new Message(camera)
+                .setDestination(ID2, ID1, RoutingKeys.MASTER_CAMERA_GET_REPLY.getKey());
+        final CameraPayload reply = decode(encode(sentReply)).getPayloadChecked(CameraPayload.class);
+        assertEquals(7, reply.getTransferID());
+        assertEquals(640, reply.getWidth());
+        assertEquals(480, reply.getHeight());
+        assertEquals(60, reply.getQuality());
+        assertTrue(reply.isThumbnail());
+        assertNull(reply.getPicture());
+    }
+
+    public void testCameraStream() {
+        final Message.AddressedMessage sent = new Message(new CameraStreamPayload("Camera", 0, 500, true))
+                .setDestination(ID1, ID2, RoutingKeys.MASTER_CAMERA_STREAM.getKey());
+        final CameraStreamPayload payload = decode(encode(sent)).getPayloadChecked(CameraStreamPayload.class);
+        assertEquals("Camera", payload.getModuleName());
+        assertEquals(500, payload.getInterval());
+        assertTrue(payload.isActive());
+        assertTrue(payload.isThumbnail());
+    }
+
+    public void testFallback() {
+        final Message.AddressedMessage sent = new Message(new UnknownPayload("test"))
+                .setDestination(ID1, ID2, "/test");
+        final UnknownPayload payload = decode(encode(sent)).getPayloadChecked(UnknownPayload.class);
+        assertEquals("test", payload.value);
+
+        final Message.AddressedMessage empty = decode(encode(new Message().setDestination(ID1, ID2, "/test")));
+        assertNull(empty.getPayloadChecked(MessagePayload.class));
+    }
+
+    public void testSymbolTables() {
+        final EmbeddedChannel encoder = new EmbeddedChannel(new CompactMessageEncoder());
+        final EmbeddedChannel decoder = new EmbeddedChannel(new CompactMessageDecoder());
+        final String routingKey = RoutingKeys.MASTER_PUSH_WEATHER_INFO.getKey();
+
+        encoder.writeOutbound(new Message().setDestination(ID1, ID2, routingKey));
+        final ByteBuf firstFrame = encoder.readOutbound();
+        final int firstSize = firstFrame.readableBytes();
+        decoder.writeInbound(firstFrame);
+        final Message.AddressedMessage first = decoder.readInbound();
+
+        encoder.writeOutbound(new Message().setDestination(ID1, ID2, routingKey));
+        final ByteBuf secondFrame = encoder.readOutbound();
+        final int secondSize = secondFrame.readableBytes();
+        decoder.writeInbound(secondFrame);
+        final Message.AddressedMessage second = decoder.readInbound();
+
+        assertTrue("Repeated message with " + secondSize + "b is not smaller than first with " + firstSize + "b",
+                secondSize < firstSize);
+        assertEquals(routingKey, second.getRoutingKey());
+        assertEquals(ID1, second.getFromID());
+        assertSame(first.getFromID(), second.getFromID());
+        assertSame(first.getToID(), second.getToID());
+        assertSame(first.getRoutingKey(), second.getRoutingKey());
+        assertSame(RoutingKey.forMessage(first), RoutingKey.forMessage(second));
+    }
+
+    private ByteBuf encode(Message.AddressedMessage message) {
+        final EmbeddedChannel channel = new EmbeddedChannel(new CompactMessageEncoder());
+        channel.writeOutbound(message);
+        return channel.readOutbound();
+    }
+
+    private Message.AddressedMessage decode(ByteBuf frame) {
+        final EmbeddedChannel channel = new EmbeddedChannel(new CompactMessageDecoder());
+        channel.writeInbound(frame);
+        return channel.readInbound();
+    }
+
+    private static class UnknownPayload implements MessagePayload {
+        private final String value;
+
+        private UnknownPayload(String value) {
+            this.value = value;
+        }
+    }
+}
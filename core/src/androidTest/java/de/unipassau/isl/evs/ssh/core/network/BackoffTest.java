@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class BackoffTest extends TestCase {
+    public void testExponentialWithJitter() {
+        final Backoff backoff = new Backoff(1000, 60000, new Random(42));
+        long expected = 1000;
+        for (int i = 0; i < 20; i++) {
+            assertEquals(expected, backoff.getBackoff());
+            final long delay = backoff.nextDelay();
+            assertTrue(delay + " not in upper half of " + expected, delay >= expected / 2 && delay <= expected);
+            expected = Math.min(expected * 2, 60000);
+        }
+        assertEquals(20, backoff.getAttempts());
+    }
+
+    public void testReset() {
+        final Backoff backoff = new Backoff(1000, 60000);
+        for (int i = 0; i < 100; i++) {
+            backoff.nextDelay();
+        }
+        assertEquals(60000, backoff.getBackoff());
+        backoff.reset();
+        assertEquals(0, backoff.getAttempts());
+        assertEquals(1000, backoff.getBackoff());
+    }
+
+    public void testJitterSpreadsDelays() {
+        final Backoff first = new Backoff(1000, 60000, new Random(1));
+        final Backoff second = new Backoff(1000, 60000, new Random(2));
+        boolean differ = false;
+        for (int i = 0; i < 5; i++) {
+            differ |= first.nextDelay() != second.nextDelay();
+        }
+        assertTrue(differ);
+    }
+}
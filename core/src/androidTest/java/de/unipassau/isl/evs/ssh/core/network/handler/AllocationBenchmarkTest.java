@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.SignatureException;
+
+import de.unipassau.isl.evs.ssh.core.container.Container;
+import de.unipassau.isl.evs.ssh.core.container.ContainerService;
+import de.unipassau.isl.evs.ssh.core.container.SimpleContainer;
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+import de.unipassau.isl.evs.ssh.core.sec.KeyStoreController;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.ReferenceCountUtil;
+
+import static de.unipassau.isl.evs.ssh.core.network.handler.SignatureGenerator.MESSAGE_SIGN_ALG;
+
+/**
+ * Measures the bytes allocated on the Java heap for every message passing the signing and session encryption
+ * handlers in both directions. The previous handlers, which copied the payload and the signature of every frame, are
+ * compared with the current zero-copy handlers, both with unpooled buffers (the Netty default on Android) and with the
+ * pooled {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#ALLOCATOR}.
+ */
+public class AllocationBenchmarkTest extends InstrumentationTestCase {
+    private static final String TAG = AllocationBenchmarkTest.class.getSimpleName();
+    private static final int WARMUP_MESSAGES = 100;
+    private static final int MESSAGES = 1000;
+    private static final int MESSAGE_SIZE = 1024;
+
+    private Container container;
+    private PrivateKey privateKey;
+    private PublicKey publicKey;
+    private SessionKeys keys;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        container = new SimpleContainer();
+        KeyStoreController keyStoreController = new KeyStoreController();
+        container.register(ContainerService.KEY_CONTEXT, new ContainerService.ContextComponent(getInstrumentation().getContext()));
+        container.register(KeyStoreController.KEY, keyStoreController);
+
+        privateKey = keyStoreController.getOwnPrivateKey();
+        publicKey = keyStoreController.getOwnCertificate().getPublicKey();
+        final byte[] clientNonce = new byte[SessionKeys.NONCE_LENGTH];
+        final byte[] serverNonce = new byte[SessionKeys.NONCE_LENGTH];
+        new SecureRandom().nextBytes(clientNonce);
+        new SecureRandom().nextBytes(serverNonce);
+        keys = SessionKeys.derive(privateKey, publicKey, clientNonce, serverNonce);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        container.shutdown();
+        super.tearDown();
+    }
+
+    public void testAllocationsPerMessage() throws Exception {
+        final long copyingUnpooled = measure(true, UnpooledByteBufAllocator.DEFAULT);
+        final long copyingPooled = measure(true, PooledByteBufAllocator.DEFAULT);
+        final long unpooled = measure(false, UnpooledByteBufAllocator.DEFAULT);
+        final long pooled = measure(false, PooledByteBufAllocator.DEFAULT);
+        Log.i(TAG, "Bytes allocated per " + MESSAGE_SIZE + "b message:\n"
+                + String.format("%10s | %10s | %10s\n", "handlers", "unpooled", "pooled")
+                + String.format("%10s | %9db | %9db\n", "copying", copyingUnpooled, copyingPooled)
+                + String.format("%10s | %9db | %9db\n", "zero-copy", unpooled, pooled));
+        assertTrue("The zero-copy handlers allocated more (" + unpooled + "b) than the copying ones ("
+                + copyingUnpooled + "b)", unpooled <= copyingUnpooled);
+        assertTrue("Pooled buffers allocated more (" + pooled + "b) than unpooled ones (" + unpooled + "b)",
+                pooled <= unpooled);
+    }
+
+    /**
+     * @param copying {@code true} to use the {@link CopyingSignatureGenerator} and {@link CopyingSignatureChecker}
+     *                instead of the current handlers
+     * @return the average number of bytes allocated by this thread for sending and receiving a single message
+     */
+    @SuppressWarnings("deprecation")
+    private long measure(boolean copying, ByteBufAllocator allocator) throws Exception {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new SessionEncrypter(keys.getClientWriteKey()),
+                new SessionDecrypter(keys.getClientWriteKey()),
+                copying ? new CopyingSignatureChecker(publicKey) : new SignatureChecker(publicKey),
+                copying ? new CopyingSignatureGenerator(privateKey) : new SignatureGenerator(privateKey));
+        channel.config().setAllocator(allocator);
+
+        final ByteBuf message = allocator.buffer(MESSAGE_SIZE);
+        while (message.writableBytes() > 0) {
+            message.writeByte(message.writableBytes());
+        }
+
+        roundtrip(channel, message, WARMUP_MESSAGES);
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        try {
+            roundtrip(channel, message, MESSAGES);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        final long allocated = Debug.getThreadAllocSize();
+
+        assertEquals(1, message.refCnt());
+        ReferenceCountUtil.release(message);
+        assertFalse(channel.finish());
+        return allocated / MESSAGES;
+    }
+
+    private void roundtrip(EmbeddedChannel channel, ByteBuf message, int count) {
+        for (int i = 0; i < count; i++) {
+            channel.writeOutbound(message.duplicate().retain());
+            for (Object msg; (msg = channel.readOutbound()) != null; ) {
+                channel.writeInbound(msg);
+            }
+            final ByteBuf received = channel.readInbound();
+            assertEquals(MESSAGE_SIZE, received.readableBytes());
+            ReferenceCountUtil.release(received);
+        }
+        channel.checkException();
+    }
+
+    /**
+     * The previous SignatureGenerator, which copies the payload into a new frame.
+     */
+    private static class CopyingSignatureGenerator extends MessageToByteEncoder<ByteBuf> {
+        private final Signature signSignature;
+
+        public CopyingSignatureGenerator(PrivateKey localPrivateKey) throws GeneralSecurityException {
+            signSignature = Signature.getInstance(MESSAGE_SIGN_ALG);
+            signSignature.initSign(localPrivateKey);
+        }
+
+        @Override
+        protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) throws Exception {
+            final int dataLength = msg.readableBytes();
+            msg.markReaderIndex();
+            out.writeInt(dataLength);
+            out.writeBytes(msg);
+            msg.resetReaderIndex();
+
+            signSignature.update(msg.nioBuffer());
+            msg.readerIndex(msg.writerIndex());
+
+            final byte[] signature = signSignature.sign();
+            out.writeInt(signature.length);
+            out.writeBytes(signature);
+        }
+    }
+
+    /**
+     * The previous SignatureChecker, which copies the signature and merges the data into a single buffer.
+     * Unlike the original, the frame is released so that it doesn't leak during the benchmark.
+     */
+    private static class CopyingSignatureChecker extends ChannelHandlerAdapter {
+        private final Signature verifySignature;
+
+        public CopyingSignatureChecker(PublicKey remotePublicKey) throws GeneralSecurityException {
+            verifySignature = Signature.getInstance(MESSAGE_SIGN_ALG);
+            verifySignature.initVerify(remotePublicKey);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            try {
+                final ByteBuf in = (ByteBuf) msg;
+                final int dataLength = in.readInt();
+                final ByteBuf data = in.readSlice(dataLength);
+                final int signatureLength = in.readInt();
+                final byte[] signature = new byte[signatureLength];
+                in.readBytes(signature);
+
+                verifySignature.update(data.nioBuffer());
+                if (!verifySignature.verify(signature)) {
+                    throw new SignatureException("Message has a broken signature");
+                }
+                ctx.fireChannelRead(data.retain());
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+    }
+}
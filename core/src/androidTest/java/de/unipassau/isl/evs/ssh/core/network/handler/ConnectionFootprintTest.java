@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.serialization.ClassResolver;
+import io.netty.handler.codec.serialization.ClassResolvers;
+import io.netty.handler.codec.serialization.ObjectDecoder;
+import io.netty.handler.codec.serialization.ObjectEncoder;
+import io.netty.handler.logging.LogLevel;
+import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.READER_IDLE_TIME;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.WRITER_IDLE_TIME;
+
+/**
+ * Measures the heap footprint of the handlers every idle connection has, once with new handler instances and
+ * IdleStateHandler timers for every connection and once with the shared handlers and the {@link LivenessTracker}.
+ * <p>
+ * The figures depend on the runtime and the device, so they are only logged. To obtain them for the ODROID boards,
+ * run {@code ./gradlew :core:connectedAndroidTest
+ * -Pandroid.testInstrumentationRunnerArguments.class=de.unipassau.isl.evs.ssh.core.network.handler.ConnectionFootprintTest}
+ * with the board attached and read the line logged with the tag {@code ConnectionFootprintTest}.
+ * <p>
+ * No figures have been measured on the target boards yet, so the memory saving of the shared handlers and the
+ * LivenessTracker is still unverified.
+ */
+public class ConnectionFootprintTest extends InstrumentationTestCase {
+    private static final String TAG = ConnectionFootprintTest.class.getSimpleName();
+    private static final int CONNECTIONS = 1000;
+
+    private static final ObjectEncoder OBJECT_ENCODER = new ObjectEncoder();
+    private static final ClassResolver CLASS_RESOLVER = ClassResolvers.weakCachingConcurrentResolver(ConnectionFootprintTest.class.getClassLoader());
+    private static final LoggingHandler LOGGING_HANDLER = new LoggingHandler(LogLevel.TRACE);
+    private static final HeartbeatCodec HEARTBEAT_CODEC = new HeartbeatCodec();
+    private static final PipelinePlug PIPELINE_PLUG = new PipelinePlug();
+
+    public void testFootprintPerConnection() {
+        final long baseline = measure(new HandlerFactory() {
+            @Override
+            public ChannelHandler[] create() {
+                return new ChannelHandler[]{new ChannelHandlerAdapter() {
+                }};
+            }
+        });
+        final long perConnection = measure(new HandlerFactory() {
+            @Override
+            public ChannelHandler[] create() {
+                return new ChannelHandler[]{
+                        new ObjectEncoder(),
+                        new ObjectDecoder(ClassResolvers.weakCachingConcurrentResolver(getClass().getClassLoader())),
+                        new LoggingHandler(LogLevel.TRACE),
+                        new IdleStateHandler(READER_IDLE_TIME, WRITER_IDLE_TIME, 0),
+                        new TimeoutHandler(),
+                        new HeartbeatCodec(),
+                        new PipelinePlug()
+                };
+            }
+        }) - baseline;
+        final long shared = measure(new HandlerFactory() {
+            @Override
+            public ChannelHandler[] create() {
+                return new ChannelHandler[]{
+                        OBJECT_ENCODER,
+                        new ObjectDecoder(CLASS_RESOLVER),
+                        LOGGING_HANDLER,
+                        LivenessTracker.SHARED,
+                        new TimeoutHandler(),
+                        HEARTBEAT_CODEC,
+                        PIPELINE_PLUG
+                };
+            }
+        }) - baseline;
+
+        Log.i(TAG, "Heap used by the handlers of an idle connection: before " + perConnection + "b (per-connection " +
+                "handlers), after " + shared + "b (shared handlers), saving " + (perConnection - shared) + "b per " +
+                "connection (channel itself: " + baseline + "b, averaged over " + CONNECTIONS + " connections)");
+        assertTrue("Shared handlers used more memory (" + shared + "b) than per-connection ones (" + perConnection + "b)",
+                shared < perConnection);
+    }
+
+    /**
+     * @return the average heap size in bytes of a channel with the given handlers
+     */
+    private long measure(HandlerFactory factory) {
+        final List<EmbeddedChannel> channels = new ArrayList<>(CONNECTIONS);
+        final long before = usedHeap();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            channels.add(new EmbeddedChannel(factory.create()));
+        }
+        final long after = usedHeap();
+        for (EmbeddedChannel channel : channels) {
+            channel.finish();
+        }
+        return (after - before) / CONNECTIONS;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface HandlerFactory {
+        ChannelHandler[] create();
+    }
+}
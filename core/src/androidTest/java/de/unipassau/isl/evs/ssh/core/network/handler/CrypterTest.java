@@ -79,7 +79,11 @@ public class CrypterTest extends InstrumentationTestCase {
                 assertNotSame(buf, msg);
                 channel.writeInbound(msg);
             }
-            assertEquals(buf, channel.readInbound());
+            final ByteBuf received = channel.readInbound();
+            assertEquals(buf, received);
+            ReferenceCountUtil.release(received);
+            // all intermediate frames must have been released
+            assertEquals(1, buf.refCnt());
         }
         ReferenceCountUtil.release(buf);
     }
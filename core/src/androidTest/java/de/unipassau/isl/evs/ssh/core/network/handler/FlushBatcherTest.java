@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import junit.framework.TestCase;
+
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class FlushBatcherTest extends TestCase {
+    public void testFlushAtEndOfTick() {
+        final FlushCounter counter = new FlushCounter();
+        final EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushBatcher(0, 64));
+
+        for (int i = 0; i < 10; i++) {
+            channel.writeAndFlush("msg" + i);
+        }
+        assertEquals(0, counter.flushes);
+        assertNull(channel.readOutbound());
+
+        channel.runPendingTasks();
+        assertEquals(1, counter.flushes);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("msg" + i, channel.readOutbound());
+        }
+        channel.finish();
+    }
+
+    public void testNoDelayWithoutBurst() {
+        final FlushCounter counter = new FlushCounter();
+        final EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushBatcher(60 * 1000, 64));
+
+        channel.writeAndFlush("msg");
+        channel.runPendingTasks();
+        assertEquals(1, counter.flushes);
+        assertEquals("msg", channel.readOutbound());
+        channel.finish();
+    }
+
+    public void testFlushWhenFull() {
+        final FlushCounter counter = new FlushCounter();
+        final EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushBatcher(0, 4));
+
+        for (int i = 0; i < 10; i++) {
+            channel.writeAndFlush("msg" + i);
+        }
+        assertEquals(2, counter.flushes);
+        channel.runPendingTasks();
+        assertEquals(3, counter.flushes);
+        channel.finish();
+    }
+
+    public void testFlushOnClose() {
+        final FlushCounter counter = new FlushCounter();
+        final EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushBatcher(0, 64));
+
+        channel.writeAndFlush("msg");
+        channel.close();
+        assertEquals(1, counter.flushes);
+        assertEquals("msg", channel.readOutbound());
+    }
+
+    private static class FlushCounter extends ChannelHandlerAdapter {
+        private int flushes = 0;
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes++;
+            super.flush(ctx);
+        }
+    }
+}
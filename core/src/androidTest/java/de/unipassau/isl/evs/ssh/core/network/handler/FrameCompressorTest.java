@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class FrameCompressorTest extends TestCase {
+    public void testRoundTrip() {
+        final byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 16);
+        }
+        final FrameCompressor compressor = new FrameCompressor(512);
+        final ByteBuf compressed = compress(compressor, data);
+        assertEquals(FrameCompressor.COMPRESSED_FRAME_MAGIC, compressed.getUnsignedByte(compressed.readerIndex()));
+        assertTrue(compressed.readableBytes() < data.length);
+        assertTrue(compressor.getCompressionRatio() < 1);
+
+        assertArrayEquals(data, decompress(compressed));
+    }
+
+    public void testSmallFrameUnchanged() {
+        final byte[] data = new byte[100];
+        final FrameCompressor compressor = new FrameCompressor(512);
+        final ByteBuf frame = compress(compressor, data);
+        assertEquals(data.length, frame.readableBytes());
+        assertEquals(1.0, compressor.getCompressionRatio());
+
+        assertArrayEquals(data, decompress(frame));
+    }
+
+    public void testIncompressibleFrameUnchanged() {
+        final byte[] data = new byte[4096];
+        new Random(42).nextBytes(data);
+        final FrameCompressor compressor = new FrameCompressor(512);
+        final ByteBuf frame = compress(compressor, data);
+        assertEquals(data.length, frame.readableBytes());
+
+        assertArrayEquals(data, decompress(frame));
+    }
+
+    private static ByteBuf compress(FrameCompressor compressor, byte[] data) {
+        final EmbeddedChannel channel = new EmbeddedChannel(compressor);
+        channel.writeOutbound(Unpooled.wrappedBuffer(data));
+        final ByteBuf out = (ByteBuf) channel.readOutbound();
+        assertFalse(channel.finish());
+        return out;
+    }
+
+    private static byte[] decompress(ByteBuf frame) {
+        final EmbeddedChannel channel = new EmbeddedChannel(new FrameDecompressor());
+        channel.writeInbound(frame);
+        final ByteBuf in = (ByteBuf) channel.readInbound();
+        assertFalse(channel.finish());
+        final byte[] data = new byte[in.readableBytes()];
+        in.readBytes(data);
+        in.release();
+        return data;
+    }
+
+    private static void assertArrayEquals(byte[] expected, byte[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("at index " + i, expected[i], actual[i]);
+        }
+    }
+}
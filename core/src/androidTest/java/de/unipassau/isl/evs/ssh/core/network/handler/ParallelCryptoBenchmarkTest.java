@@ -0,0 +1,265 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.net.InetSocketAddress;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import de.unipassau.isl.evs.ssh.core.container.Container;
+import de.unipassau.isl.evs.ssh.core.container.ContainerService;
+import de.unipassau.isl.evs.ssh.core.container.SimpleContainer;
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+import de.unipassau.isl.evs.ssh.core.sec.KeyStoreController;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Measures the throughput of a single connection that signs and encrypts every frame, once with the sequential
+ * handlers on the event loop and once with the {@link ParallelFrameEncoder} and {@link ParallelFrameDecoder} for an
+ * increasing number of worker threads. Each run also checks that all frames arrive complete and in order.
+ */
+public class ParallelCryptoBenchmarkTest extends InstrumentationTestCase {
+    private static final String TAG = ParallelCryptoBenchmarkTest.class.getSimpleName();
+    private static final int WARMUP_MESSAGES = 200;
+    private static final int MESSAGES = 2000;
+    private static final int MESSAGE_SIZE = 4 * 1024;
+    private static final int FLUSH_INTERVAL = 16;
+
+    private Container container;
+    private PrivateKey privateKey;
+    private PublicKey publicKey;
+    private SessionKeys keys;
+    private EventLoopGroup eventLoop;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        container = new SimpleContainer();
+        KeyStoreController keyStoreController = new KeyStoreController();
+        container.register(ContainerService.KEY_CONTEXT, new ContainerService.ContextComponent(getInstrumentation().getContext()));
+        container.register(KeyStoreController.KEY, keyStoreController);
+
+        privateKey = keyStoreController.getOwnPrivateKey();
+        publicKey = keyStoreController.getOwnCertificate().getPublicKey();
+        final byte[] clientNonce = new byte[SessionKeys.NONCE_LENGTH];
+        final byte[] serverNonce = new byte[SessionKeys.NONCE_LENGTH];
+        new SecureRandom().nextBytes(clientNonce);
+        new SecureRandom().nextBytes(serverNonce);
+        keys = SessionKeys.derive(privateKey, publicKey, clientNonce, serverNonce);
+
+        // one thread for each side of the connection
+        eventLoop = new NioEventLoopGroup(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        eventLoop.shutdownGracefully().sync();
+        container.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Logs the throughput for each number of workers. The numbers depend on the device and its load, so only the
+     * correctness and the order of the received frames are asserted, which is done for every run.
+     */
+    public void testThroughputScaling() throws Exception {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final double sequential = measure(0);
+        final StringBuilder table = new StringBuilder();
+        table.append("Throughput on ").append(cores).append(" core(s):\n");
+        table.append(String.format("%10s | %-28s | %s\n", "workers", "throughput", "speedup"));
+        table.append(String.format("%10s | %-28s | %.2fx\n", "sequential", format(sequential), 1.0));
+        for (int workers = 1; workers <= cores; workers = nextWorkerCount(workers, cores)) {
+            final double throughput = measure(workers);
+            table.append(String.format("%10d | %-28s | %.2fx\n", workers, format(throughput), throughput / sequential));
+        }
+        Log.i(TAG, table.toString());
+    }
+
+    /**
+     * @return the next power of two, but {@code cores} itself if it isn't a power of two, or {@code cores + 1} after
+     * {@code cores} to end the sweep
+     */
+    private static int nextWorkerCount(int workers, int cores) {
+        if (workers == cores) {
+            return cores + 1;
+        }
+        return Math.min(workers * 2, cores);
+    }
+
+    /**
+     * The frames of the parallel handlers must be readable by the sequential handlers of a peer and vice versa.
+     */
+    public void testCompatibleWithSequentialHandlers() throws Exception {
+        final EventExecutorGroup workers = new DefaultEventExecutorGroup(2);
+        try {
+            run(new ChannelHandler[]{new ParallelFrameEncoder(workers, keys.getClientWriteKey(), privateKey)},
+                    new ChannelHandler[]{new SessionDecrypter(keys.getClientWriteKey()), new SignatureChecker(publicKey)},
+                    WARMUP_MESSAGES);
+            run(new ChannelHandler[]{new SessionEncrypter(keys.getClientWriteKey()), new SignatureGenerator(privateKey)},
+                    new ChannelHandler[]{new ParallelFrameDecoder(workers, keys.getClientWriteKey(), publicKey)},
+                    WARMUP_MESSAGES);
+            run(new ChannelHandler[]{new ParallelFrameEncoder(workers, publicKey, null)},
+                    new ChannelHandler[]{new Decrypter(privateKey)},
+                    WARMUP_MESSAGES);
+        } finally {
+            workers.shutdownGracefully();
+        }
+    }
+
+    /**
+     * @param workers the number of worker threads, or 0 to use the sequential handlers
+     * @return the throughput in messages per second
+     */
+    private double measure(int workers) throws Exception {
+        final EventExecutorGroup pool = workers > 0 ? new DefaultEventExecutorGroup(workers) : null;
+        try {
+            newRun(pool, WARMUP_MESSAGES);
+            final long start = System.nanoTime();
+            newRun(pool, MESSAGES);
+            final long duration = System.nanoTime() - start;
+            return MESSAGES / (duration / (double) TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            if (pool != null) {
+                pool.shutdownGracefully();
+            }
+        }
+    }
+
+    private void newRun(EventExecutorGroup pool, int count) throws Exception {
+        if (pool == null) {
+            run(new ChannelHandler[]{new SessionEncrypter(keys.getClientWriteKey()), new SignatureGenerator(privateKey)},
+                    new ChannelHandler[]{new SessionDecrypter(keys.getClientWriteKey()), new SignatureChecker(publicKey)},
+                    count);
+        } else {
+            run(new ChannelHandler[]{new ParallelFrameEncoder(pool, keys.getClientWriteKey(), privateKey)},
+                    new ChannelHandler[]{new ParallelFrameDecoder(pool, keys.getClientWriteKey(), publicKey)},
+                    count);
+        }
+    }
+
+    /**
+     * Send the given number of numbered messages through a local TCP connection and wait until all of them were
+     * received in order.
+     *
+     * @param sender   the handlers for the sending side, in pipeline order
+     * @param receiver the handlers for the receiving side, in pipeline order
+     */
+    private void run(final ChannelHandler[] sender, final ChannelHandler[] receiver, final int count) throws Exception {
+        final Promise<Void> received = new DefaultPromise<>(GlobalEventExecutor.INSTANCE);
+        final Channel server = new ServerBootstrap()
+                .group(eventLoop)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(receiver);
+                        ch.pipeline().addLast(new ChannelHandlerAdapter() {
+                            private int next = 0;
+
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                                final ByteBuf buf = (ByteBuf) msg;
+                                try {
+                                    final int number = buf.readInt();
+                                    if (number != next || buf.readableBytes() != MESSAGE_SIZE - 4) {
+                                        received.tryFailure(new AssertionError("Expected message " + next + " with "
+                                                + MESSAGE_SIZE + "b, got " + number + " with " + (buf.readableBytes() + 4) + "b"));
+                                    } else if (++next == count) {
+                                        received.trySuccess(null);
+                                    }
+                                } finally {
+                                    buf.release();
+                                }
+                            }
+
+                            @Override
+                            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+                                received.tryFailure(cause);
+                            }
+                        });
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+        final Channel client = new Bootstrap()
+                .group(eventLoop)
+                .channel(NioSocketChannel.class)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(sender);
+                    }
+                })
+                .connect(server.localAddress()).sync().channel();
+        try {
+            for (int i = 0; i < count; i++) {
+                final ByteBuf message = client.alloc().buffer(MESSAGE_SIZE);
+                message.writeInt(i);
+                message.writeZero(MESSAGE_SIZE - 4);
+                if (i % FLUSH_INTERVAL == FLUSH_INTERVAL - 1) {
+                    client.writeAndFlush(message);
+                } else {
+                    client.write(message);
+                }
+            }
+            client.flush();
+            assertTrue("Timeout while receiving " + count + " messages", received.await(2, TimeUnit.MINUTES));
+            if (!received.isSuccess()) {
+                throw new AssertionError(received.cause());
+            }
+        } finally {
+            client.close().sync();
+            server.close().sync();
+        }
+    }
+
+    private static String format(double throughput) {
+        return String.format("%.0f msg/s (%.1f MiB/s)", throughput, throughput * MESSAGE_SIZE / (1024 * 1024));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import android.test.InstrumentationTestCase;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+
+import de.unipassau.isl.evs.ssh.core.container.Container;
+import de.unipassau.isl.evs.ssh.core.container.ContainerService;
+import de.unipassau.isl.evs.ssh.core.container.SimpleContainer;
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+import de.unipassau.isl.evs.ssh.core.sec.KeyStoreController;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+public class SessionCrypterTest extends InstrumentationTestCase {
+    private Container container;
+    private SessionKeys keys;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        container = new SimpleContainer();
+        KeyStoreController keyStoreController = new KeyStoreController();
+        container.register(ContainerService.KEY_CONTEXT, new ContainerService.ContextComponent(getInstrumentation().getContext()));
+        container.register(KeyStoreController.KEY, keyStoreController);
+
+        final PrivateKey privateKey = keyStoreController.getOwnPrivateKey();
+        final PublicKey publicKey = keyStoreController.getOwnCertificate().getPublicKey();
+        final byte[] clientNonce = new byte[SessionKeys.NONCE_LENGTH];
+        final byte[] serverNonce = new byte[SessionKeys.NONCE_LENGTH];
+        new SecureRandom().nextBytes(clientNonce);
+        new SecureRandom().nextBytes(serverNonce);
+        keys = SessionKeys.derive(privateKey, publicKey, clientNonce, serverNonce);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        container.shutdown();
+        super.tearDown();
+    }
+
+    public void testRoundtrip() throws Exception {
+        // rekey every 3 frames to also check that both sides switch keys in sync
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new SessionEncrypter(keys.getClientWriteKey(), 3),
+                new SessionDecrypter(keys.getClientWriteKey(), 3));
+
+        ByteBuf buf = channel.alloc().buffer();
+        for (int c : new int[]{1, 1, 5, 10, 50, 100, 500, 1000, 5000, 10000}) {
+            buf.capacity(c);
+            while (buf.writableBytes() > 0) {
+                buf.writeByte(c);
+            }
+
+            channel.writeOutbound(buf.duplicate().retain());
+            for (ByteBuf msg; (msg = channel.readOutbound()) != null; ) {
+                assertNotSame(buf, msg);
+                channel.writeInbound(msg);
+            }
+            final ByteBuf decrypted = channel.readInbound();
+            assertEquals(buf, decrypted);
+            ReferenceCountUtil.release(decrypted);
+        }
+        ReferenceCountUtil.release(buf);
+
+        channel.checkException();
+        assertTrue(channel.inboundMessages().isEmpty());
+        assertTrue(channel.outboundMessages().isEmpty());
+    }
+
+    public void testDirectionalKeys() throws Exception {
+        assertFalse(keys.getClientWriteKey().equals(keys.getServerWriteKey()));
+
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new SessionEncrypter(keys.getClientWriteKey()),
+                new SessionDecrypter(keys.getServerWriteKey()));
+        assertNotNull(transferFails(channel, channel.alloc().buffer().writeInt(42)));
+    }
+
+    public void testReplayRejected() throws Exception {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new SessionEncrypter(keys.getClientWriteKey()),
+                new SessionDecrypter(keys.getClientWriteKey()));
+
+        channel.writeOutbound(channel.alloc().buffer().writeInt(42));
+        final ByteBuf frame = channel.readOutbound();
+        channel.writeInbound(frame.copy());
+        final ByteBuf decrypted = channel.readInbound();
+        assertEquals(42, decrypted.readInt());
+        ReferenceCountUtil.release(decrypted);
+
+        // the same frame is sent again, but now the decrypter expects the next frame counter
+        try {
+            channel.writeInbound(frame);
+            channel.checkException();
+            fail("Replayed frame was accepted");
+        } catch (Exception expected) {
+        }
+    }
+
+    public void testResume() throws Exception {
+        final byte[] clientNonce = new byte[SessionKeys.NONCE_LENGTH];
+        final byte[] serverNonce = new byte[SessionKeys.NONCE_LENGTH];
+        new SecureRandom().nextBytes(clientNonce);
+        new SecureRandom().nextBytes(serverNonce);
+        final SecretKey secret = keys.getResumptionSecret();
+
+        final SessionKeys clientKeys = SessionKeys.resume(secret, clientNonce, serverNonce);
+        final SessionKeys serverKeys = SessionKeys.resume(secret, clientNonce, serverNonce);
+        assertEquals(clientKeys.getClientWriteKey(), serverKeys.getClientWriteKey());
+        assertFalse(clientKeys.getClientWriteKey().equals(keys.getClientWriteKey()));
+        assertFalse(clientKeys.getResumptionSecret().equals(secret));
+        assertTrue(Arrays.equals(
+                SessionKeys.resumeVerifier(secret, clientNonce, serverNonce),
+                SessionKeys.resumeVerifier(secret, clientNonce, serverNonce)));
+
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new SessionEncrypter(clientKeys.getClientWriteKey()),
+                new SessionDecrypter(serverKeys.getClientWriteKey()));
+        assertNull(transferFails(channel, channel.alloc().buffer().writeInt(42)));
+    }
+
+    /**
+     * @return the Exception thrown while decrypting the encrypted data or {@code null} if it was decrypted successfully
+     */
+    private Exception transferFails(EmbeddedChannel channel, ByteBuf data) {
+        try {
+            channel.writeOutbound(data);
+            for (ByteBuf msg; (msg = channel.readOutbound()) != null; ) {
+                channel.writeInbound(msg);
+            }
+            channel.checkException();
+            ReferenceCountUtil.release(channel.readInbound());
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+}
@@ -81,7 +81,11 @@ public class SignerTest extends InstrumentationTestCase {
             for (Object msg; (msg = channel.readOutbound()) != null; ) {
                 channel.writeInbound(msg);
             }
-            assertEquals(buf, channel.readInbound());
+            final ByteBuf received = channel.readInbound();
+            assertEquals(buf, received);
+            ReferenceCountUtil.release(received);
+            // all intermediate frames must have been released
+            assertEquals(1, buf.refCnt());
         }
         ReferenceCountUtil.release(buf);
     }
@@ -109,5 +113,8 @@ public class SignerTest extends InstrumentationTestCase {
         if (channel.isOpen()) {
             fail("Channel not closed");
         }
+        // the rejected frame must have been released
+        assertEquals(1, buf.refCnt());
+        ReferenceCountUtil.release(buf);
     }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class TimeoutHandlerTest extends TestCase {
+    public void testRoundTripTime() {
+        final TimeoutHandler pinger = new TimeoutHandler();
+        final EmbeddedChannel pingChannel = new EmbeddedChannel(new HeartbeatCodec(), pinger);
+        final EmbeddedChannel pongChannel = new EmbeddedChannel(new HeartbeatCodec(), new TimeoutHandler());
+        assertEquals(-1, TimeoutHandler.getRoundTripTime(pingChannel, TimeUnit.NANOSECONDS));
+
+        pinger.ping(pingChannel.pipeline().context(pinger));
+        final ByteBuf ping = (ByteBuf) pingChannel.readOutbound();
+        assertEquals(HeartbeatCodec.FRAME_LENGTH, ping.readableBytes());
+        assertEquals(HeartbeatCodec.HEARTBEAT_FRAME_MAGIC, ping.getUnsignedByte(0));
+
+        // the heartbeat is answered directly and not passed on to the following handlers
+        pongChannel.writeInbound(ping);
+        assertNull(pongChannel.readInbound());
+        final ByteBuf pong = (ByteBuf) pongChannel.readOutbound();
+        assertEquals(HeartbeatCodec.FRAME_LENGTH, pong.readableBytes());
+
+        pingChannel.writeInbound(pong);
+        assertNull(pingChannel.readInbound());
+        assertTrue(TimeoutHandler.getRoundTripTime(pingChannel, TimeUnit.NANOSECONDS) >= 0);
+        assertEquals(-1, TimeoutHandler.getRoundTripTime(pongChannel, TimeUnit.NANOSECONDS));
+
+        assertFalse(pingChannel.finish());
+        assertFalse(pongChannel.finish());
+    }
+
+    public void testOtherFramesPassed() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatCodec(), new TimeoutHandler());
+        final ByteBuf frame = Unpooled.buffer().writeInt(42);
+        channel.writeInbound(frame);
+        assertSame(frame, channel.readInbound());
+        frame.release();
+        assertFalse(channel.finish());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import junit.framework.TestCase;
+
+import java.nio.channels.ClosedChannelException;
+
+import de.unipassau.isl.evs.ssh.core.messaging.TrafficClass;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class TrafficSchedulerTest extends TestCase {
+    public void testControlOvertakesBulk() {
+        final StringScheduler scheduler = new StringScheduler();
+        final EmbeddedChannel channel = new EmbeddedChannel(scheduler);
+
+        final ChannelFuture bulk1 = channel.write("bulk1");
+        final ChannelFuture bulk2 = channel.write("bulk2");
+        channel.write("control");
+        assertEquals(1, scheduler.getPendingBulkCount());
+        channel.flush();
+
+        assertEquals("bulk1", channel.readOutbound());
+        assertEquals("control", channel.readOutbound());
+        assertNull(channel.readOutbound());
+        assertTrue(bulk1.isSuccess());
+        assertFalse(bulk2.isDone());
+
+        channel.runPendingTasks();
+        assertEquals("bulk2", channel.readOutbound());
+        assertTrue(bulk2.isSuccess());
+        assertEquals(0, scheduler.getPendingBulkCount());
+        assertFalse(channel.finish());
+    }
+
+    public void testFailPendingOnClose() {
+        final StringScheduler scheduler = new StringScheduler();
+        final EmbeddedChannel channel = new EmbeddedChannel(scheduler);
+
+        channel.write("bulk1");
+        final ChannelFuture bulk2 = channel.write("bulk2");
+        channel.close();
+        assertTrue(bulk2.isDone());
+        assertFalse(bulk2.isSuccess());
+    }
+
+    public void testFailPendingOnInactive() {
+        final StringScheduler scheduler = new StringScheduler();
+        final EmbeddedChannel channel = new EmbeddedChannel(scheduler);
+
+        channel.write("bulk1");
+        final ByteBuf buf = Unpooled.buffer(4).writeInt(42);
+        final ChannelFuture bulk2 = channel.write(buf);
+        assertEquals(1, scheduler.getPendingBulkCount());
+        channel.pipeline().fireChannelInactive();
+        assertEquals(0, scheduler.getPendingBulkCount());
+        assertTrue(bulk2.isDone());
+        assertTrue(bulk2.cause() instanceof ClosedChannelException);
+        assertEquals(0, buf.refCnt());
+    }
+
+    private static class StringScheduler extends TrafficScheduler {
+        @Override
+        protected TrafficClass getTrafficClass(Object msg) {
+            return msg instanceof ByteBuf || String.valueOf(msg).startsWith("bulk")
+                    ? TrafficClass.BULK : TrafficClass.CONTROL;
+        }
+    }
+}
@@ -37,6 +37,8 @@ import de.unipassau.isl.evs.ssh.core.database.dto.ModuleAccessPoint.ModuleAccess
 import de.unipassau.isl.evs.ssh.core.database.dto.ModuleAccessPoint.USBAccessPoint;
 import de.unipassau.isl.evs.ssh.core.database.dto.ModuleAccessPoint.WLANAccessPoint;
 import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.util.AttributeKey;
 import io.netty.util.ResourceLeakDetector;
 
@@ -88,10 +90,41 @@ public enum CoreConstants {
          */
         public static final int WRITER_IDLE_TIME = 30;
         /**
-         * The time it takes in seconds after the client starts idle when reader or writer isn't active.
-         * Set to infinite.
+         * The interval in milliseconds of the binary heartbeats sent by the TimeoutHandler directly after connecting
+         * or once an answer to a heartbeat was slow.
          */
-        public static final int ALL_IDLE_TIME = 0;
+        public static final long HEARTBEAT_MIN_INTERVAL = 5 * 1000;
+        /**
+         * The interval in milliseconds the binary heartbeats of the TimeoutHandler back off to while the connection
+         * is idle and healthy.
+         */
+        public static final long HEARTBEAT_MAX_INTERVAL = WRITER_IDLE_TIME * 1000;
+        /**
+         * The time in milliseconds after which a heartbeat that wasn't answered closes the connection.
+         */
+        public static final long HEARTBEAT_TIMEOUT = 20 * 1000;
+        /**
+         * Heartbeats answered slower than this time in milliseconds and slower than twice the average round-trip time
+         * reset the heartbeat interval to {@link #HEARTBEAT_MIN_INTERVAL}.
+         */
+        public static final long HEARTBEAT_SLOW_RTT = 500;
+
+        /**
+         * Once more than this number of bytes are waiting to be written to a connection, the Channel is no longer
+         * {@link io.netty.channel.Channel#isWritable() writable} and further messages should be held back.
+         */
+        public static final int WRITE_BUFFER_HIGH_WATER_MARK = 32 * 1024;
+        /**
+         * Once the number of bytes waiting to be written to a connection drops below this value, the Channel is
+         * {@link io.netty.channel.Channel#isWritable() writable} again.
+         */
+        public static final int WRITE_BUFFER_LOW_WATER_MARK = 8 * 1024;
+
+        /**
+         * The allocator used for the buffers of all TCP connections.
+         * Netty uses unpooled buffers on Android by default, which creates a lot of garbage for every frame.
+         */
+        public static final ByteBufAllocator ALLOCATOR = PooledByteBufAllocator.DEFAULT;
 
         /**
          * ResourceLeakDetector used for unreleased Netty Buffers
@@ -99,6 +132,84 @@ public enum CoreConstants {
         public static final ResourceLeakDetector.Level RESOURCE_LEAK_DETECTION =
                 BuildConfig.DEBUG ? ResourceLeakDetector.Level.PARANOID : ResourceLeakDetector.Level.SIMPLE;
 
+        /**
+         * {@code true}, if flushes of established connections should be batched by the {@link
+         * de.unipassau.isl.evs.ssh.core.network.handler.FlushBatcher FlushBatcher}, so that bursts of messages sent
+         * to the same device are written with a single syscall. Parsed from String so that IDEs don't nag about
+         * constant expressions.
+         */
+        public static final boolean FLUSH_BATCHING = Boolean.parseBoolean("true");
+        /**
+         * Maximum time in milliseconds the FlushBatcher may delay a flush while more writes keep arriving.
+         * Otherwise, and if 0, pending writes are flushed at the end of the current event loop tick.
+         */
+        public static final long FLUSH_BATCHING_MAX_DELAY = 2;
+        /**
+         * Number of pending writes after which the FlushBatcher flushes immediately.
+         */
+        public static final int FLUSH_BATCHING_MAX_PENDING = 64;
+        /**
+         * {@code true}, if messages should be prioritized by their {@link de.unipassau.isl.evs.ssh.core.messaging.TrafficClass
+         * TrafficClass} using the {@link de.unipassau.isl.evs.ssh.core.network.handler.TrafficScheduler TrafficScheduler},
+         * so that large camera images don't delay door and light commands. Parsed from String so that IDEs don't nag
+         * about constant expressions.
+         */
+        public static final boolean TRAFFIC_SCHEDULING = Boolean.parseBoolean("true");
+        /**
+         * Frames smaller than this number of bytes are not compressed by the
+         * {@link de.unipassau.isl.evs.ssh.core.network.handler.FrameCompressor FrameCompressor}, as the few saved
+         * bytes aren't worth the CPU time.
+         */
+        public static final int COMPRESSION_THRESHOLD = 512;
+        /**
+         * Number of threads the Server uses for the crypto operations and database queries of handshakes, so that
+         * they don't block the event loop serving the established connections.
+         */
+        public static final int HANDSHAKE_WORKER_THREADS = 2;
+        /**
+         * Maximum number of handshakes the Server executes at the same time, further connections aren't read from
+         * until a slot is free.
+         */
+        public static final int MAX_CONCURRENT_HANDSHAKES = 16;
+        /**
+         * If true, the Server signs, verifies, encrypts and decrypts the frames of each connection on a pool of
+         * {@link #CRYPTO_WORKER_THREADS} threads using the
+         * {@link de.unipassau.isl.evs.ssh.core.network.handler.ParallelFrameEncoder ParallelFrameEncoder} and
+         * {@link de.unipassau.isl.evs.ssh.core.network.handler.ParallelFrameDecoder ParallelFrameDecoder}, so that a
+         * single busy connection can use more than one core. The frames on the wire stay the same.
+         * Parsed from String so that IDEs don't nag about constant expressions.
+         */
+        public static final boolean PARALLEL_CRYPTO = Boolean.parseBoolean("false");
+        /**
+         * Number of threads used for the crypto operations if {@link #PARALLEL_CRYPTO} is enabled
+         */
+        public static final int CRYPTO_WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+        /**
+         * Size in bytes of the {@link de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkPayload chunks}
+         * camera pictures are split into, so that the buffers needed for sending a picture don't grow with its size.
+         */
+        public static final int CAMERA_CHUNK_SIZE = 16 * 1024;
+        /**
+         * Number of chunks the Slave may send before the Master acknowledged that they were forwarded to all receiving
+         * devices, so that a device on a slow link slows down the Slave instead of making chunks pile up on the Master.
+         */
+        public static final int CAMERA_CHUNK_WINDOW = 4;
+        /**
+         * Time in seconds the Slave waits for the Master to acknowledge chunks before aborting the transfer.
+         */
+        public static final long CAMERA_CHUNK_ACK_TIMEOUT = 30;
+
+        /**
+         * Number of frames after which the session key of a connection in each direction is replaced by a new key
+         * derived from the previous one.
+         */
+        public static final long SESSION_REKEY_INTERVAL = 1 << 16;
+        /**
+         * Time in milliseconds a {@link de.unipassau.isl.evs.ssh.core.network.handshake.SessionTicket SessionTicket}
+         * issued by the Master can be used for resuming a connection, one day.
+         */
+        public static final long RESUMPTION_TICKET_LIFETIME = 24 * 60 * 60 * 1000;
+
         /**
          * Protocol identifier for the discovery protocol so that only devices which also understand each other can find
          * each other via UDP discovery.
@@ -122,7 +233,8 @@ public enum CoreConstants {
         public static final String DISCOVERY_PAYLOAD_RESPONSE = "de.unipassau.isl.evs.ssh.udp_discovery.RESPONSE" + DISCOVERY_PROTOCOL_VERSION;
 
         /**
-         * The certificate of the peer device, set after it is verified by the handshake
+         * The certificate of the peer device, set after it is verified by the handshake.
+         * Not set by the Master for resumed connections, as the Client doesn't send its certificate again.
          */
         public static final AttributeKey<X509Certificate> ATTR_PEER_CERT = AttributeKey.valueOf(X509Certificate.class.getName());
         /**
@@ -195,6 +307,77 @@ public enum CoreConstants {
         public static final String LIGHT_OFF_ACTION = "LightOff";
     }
 
+    /**
+     * Encoding parameters for camera pictures, used if the request doesn't specify them.
+     *
+     * @author Niko Fink
+     */
+    public enum CameraConstants {
+        ;
+        /**
+         * JPEG quality of pictures, from 1 to 100
+         */
+        public static final int DEFAULT_QUALITY = 80;
+        /**
+         * Minimum width of thumbnails, the smallest preview size of the camera with at least this size is used
+         */
+        public static final int THUMBNAIL_WIDTH = 320;
+        /**
+         * Minimum height of thumbnails, the smallest preview size of the camera with at least this size is used
+         */
+        public static final int THUMBNAIL_HEIGHT = 240;
+        /**
+         * JPEG quality of thumbnails, from 1 to 100
+         */
+        public static final int THUMBNAIL_QUALITY = 60;
+
+        /**
+         * {@code true}, if the camera of a Slave with a Webcam module should be kept open all the time, so that
+         * pictures from just before the door bell rang are available. This continuously encodes preview frames, so by
+         * default the camera is opened on demand and closed again after {@link #IDLE_TIMEOUT}.
+         * Parsed from String so that IDEs don't nag about constant expressions.
+         */
+        public static final boolean KEEP_CAMERA_OPEN = Boolean.parseBoolean("false");
+        /**
+         * Time in milliseconds after which a camera opened on demand is closed again if no pictures are requested
+         */
+        public static final long IDLE_TIMEOUT = 60 * 1000;
+        /**
+         * Number of encoded frames kept in memory for answering requests
+         */
+        public static final int FRAME_BUFFER_SIZE = 8;
+        /**
+         * Minimum time in milliseconds between two frames that are added to the frame buffer
+         */
+        public static final long FRAME_INTERVAL = 250;
+        /**
+         * Maximum age in milliseconds of a buffered frame that is used for answering a request for a current picture
+         */
+        public static final long MAX_FRAME_AGE = 1000;
+        /**
+         * Maximum difference in milliseconds between the capture time of a request and the time a buffered frame was
+         * taken at for the frame to be used for answering the request
+         */
+        public static final long MAX_CAPTURE_TIME_OFFSET = 1000;
+        /**
+         * Maximum time in milliseconds to wait for a new frame before a request for a picture fails
+         */
+        public static final long CAPTURE_TIMEOUT = 5 * 1000;
+
+        /**
+         * Time in milliseconds between two frames of a live stream requested by default
+         */
+        public static final long DEFAULT_STREAM_INTERVAL = 1000;
+        /**
+         * Minimum time in milliseconds between two frames of a live stream, shorter requested intervals are raised
+         */
+        public static final long MIN_STREAM_INTERVAL = 200;
+        /**
+         * Time in milliseconds after which a subscription to a live stream expires if it isn't renewed
+         */
+        public static final long STREAM_LEASE = 30 * 1000;
+    }
+
     /**
      * This class contains constants for the information sent to create and display a QR-Code.
      *
@@ -88,6 +88,15 @@ public abstract class AbstractMessageHandler implements MessageHandler {
         }
     }
 
+    /**
+     * Handlers are called sequentially by default, as most of them keep state that isn't thread-safe.
+     * Override this to allow the {@link IncomingDispatcher} to handle messages concurrently.
+     */
+    @Override
+    public OrderingScope getOrderingScope() {
+        return OrderingScope.HANDLER;
+    }
+
     /**
      * Provides a standard implementation of {@link Component#destroy()} if a child class implements {@link Component}
      * and is used as such.
@@ -185,6 +194,13 @@ public abstract class AbstractMessageHandler implements MessageHandler {
         return requireComponent(OutgoingRouter.KEY).sendMessage(toID, routingKey, msg);
     }
 
+    /**
+     * Convenience Method delegating to {@link OutgoingRouter#sendMessageConflated(DeviceID, RoutingKey, Message, String)} of the current Container.
+     */
+    protected Message.AddressedMessage sendMessageConflated(DeviceID toID, RoutingKey routingKey, Message msg, String conflationKey) {
+        return requireComponent(OutgoingRouter.KEY).sendMessageConflated(toID, routingKey, msg, conflationKey);
+    }
+
     /**
      * Convenience Method delegating to {@link OutgoingRouter#sendMessage(DeviceID, RoutingKey, Message)} of the current Container.
      */
@@ -52,5 +52,38 @@ public interface MessageHandler {
      * Called by the {@link IncomingDispatcher} this Handler was added to once a mapping for a certain RoutingKey has been removed.
      */
     void handlerRemoved(RoutingKey routingKey);
+
+    /**
+     * @return which messages the {@link IncomingDispatcher} must pass to this Handler one after another and in the
+     * order they were received
+     */
+    OrderingScope getOrderingScope();
+
+    /**
+     * The messages for which the {@link IncomingDispatcher} guarantees that {@link #handle(Message.AddressedMessage)}
+     * is called sequentially in the order of their arrival. Messages outside of the scope may be handled concurrently
+     * on other threads, so the Handler must be thread-safe accordingly.
+     */
+    enum OrderingScope {
+        /**
+         * All messages handled by this Handler, i.e. the Handler is never called concurrently.
+         */
+        HANDLER,
+        /**
+         * All messages from the same sender, messages from different devices may be handled concurrently.
+         */
+        SENDER,
+        /**
+         * All messages concerning the same module, i.e. with a
+         * {@link de.unipassau.isl.evs.ssh.core.messaging.payload.ModulePayload ModulePayload} with the same module name,
+         * handled by any Handler using this scope. Messages for different modules may be handled concurrently, also by
+         * the same Handler. Messages without a module name are ordered like {@link #HANDLER}.
+         */
+        MODULE,
+        /**
+         * No guarantees, every message may be handled concurrently.
+         */
+        UNORDERED
+    }
 }
 
@@ -27,6 +27,7 @@
 package de.unipassau.isl.evs.ssh.core.messaging;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.google.common.collect.HashMultimap;
@@ -41,6 +42,8 @@ import de.ncoder.typedmap.Key;
 import de.unipassau.isl.evs.ssh.core.container.Component;
 import de.unipassau.isl.evs.ssh.core.container.Container;
 import de.unipassau.isl.evs.ssh.core.handler.MessageHandler;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.MessagePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.ModulePayload;
 import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
 import io.netty.channel.ChannelHandler;
@@ -52,6 +55,18 @@ import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_PE
 
 /**
  * Distributes incoming messages to their target MessageHandlers.
+ * <p>
+ * The handlers are called on serial lanes spread over all EventLoops of the {@link ExecutionServiceComponent},
+ * depending on the {@link MessageHandler.OrderingScope} of each handler. Each lane is pinned to a single EventLoop,
+ * so that all work of a lane is executed sequentially and in order:
+ * <ul>
+ * <li>{@link MessageHandler.OrderingScope#HANDLER HANDLER}: one lane per handler</li>
+ * <li>{@link MessageHandler.OrderingScope#SENDER SENDER}: the EventLoop of the channel the message was received on,
+ * which is the same for all messages of a connected device, or one lane per sender for local messages</li>
+ * <li>{@link MessageHandler.OrderingScope#MODULE MODULE}: one lane per module name of the message,
+ * or the lane of the handler for messages concerning no module</li>
+ * <li>{@link MessageHandler.OrderingScope#UNORDERED UNORDERED}: the next EventLoop</li>
+ * </ul>
  *
  * @author Niko Fink
  */
@@ -77,22 +92,31 @@ public class IncomingDispatcher extends ChannelHandlerAdapter implements Compone
                 throw new SignatureException("Connected to Device with ID " + peerID + " but received message " +
                         "seemingly from " + msg.getFromID());
             }
-            if (dispatch(msg)) return; //if no Handler can handle the Message, forward it in the pipeline
+            if (dispatch(msg, ctx.channel().eventLoop())) return; //if no Handler can handle the Message, forward it in the pipeline
         }
         super.channelRead(ctx, in);
     }
 
     /**
-     * Dispatches an AddressedMessage to its target handler using an EventExecutor.
+     * Dispatches an AddressedMessage to its target handlers using the lanes of their {@link MessageHandler.OrderingScope}.
      *
      * @param msg AddressedMessage to dispatch.
      * @return {@code true} if the Message was forwarded to at least one MessageHandler.
      */
     public boolean dispatch(final Message.AddressedMessage msg) {
+        return dispatch(msg, null);
+    }
+
+    /**
+     * @param receivingLoop the EventLoop of the channel the message was received on,
+     *                      or {@code null} if the message was sent locally
+     */
+    private boolean dispatch(final Message.AddressedMessage msg, @Nullable EventLoop receivingLoop) {
         Set<MessageHandler> handlers = mappings.get(RoutingKey.forMessage(msg));
-        final EventLoop executor = getEventLoop();
-        Log.v(TAG, "DISPATCH " + msg + " to " + handlers + " using " + executor);
+        final EventLoop[] eventLoops = getEventLoops();
         for (final MessageHandler handler : handlers) {
+            final EventLoop executor = getLane(handler, msg, receivingLoop, eventLoops);
+            Log.v(TAG, "DISPATCH " + msg + " to " + handler + " using " + executor);
             executor.submit(new Runnable() {
                 @Override
                 public void run() {
@@ -108,18 +132,57 @@ public class IncomingDispatcher extends ChannelHandlerAdapter implements Compone
         return !handlers.isEmpty();
     }
 
-    private EventLoop eventLoop;
-
     @NonNull
-    private EventLoop getEventLoop() {
-        if (eventLoop == null || eventLoop.isShuttingDown() || eventLoop.isShutdown()) {
-            Log.v(TAG, "EventLoop unavailable (" + eventLoop + "), getting new one");
-            eventLoop = getContainer().require(ExecutionServiceComponent.KEY).next();
+    private EventLoop getLane(MessageHandler handler, Message.AddressedMessage msg,
+                              @Nullable EventLoop receivingLoop, EventLoop[] eventLoops) {
+        switch (handler.getOrderingScope()) {
+            case SENDER:
+                if (receivingLoop != null && !receivingLoop.isShuttingDown()) {
+                    return receivingLoop;
+                }
+                return getLane(eventLoops, Objects.hashCode(msg.getFromID()));
+            case MODULE:
+                final MessagePayload payload = msg.getPayloadUnchecked();
+                final String moduleName = payload instanceof ModulePayload
+                        ? ((ModulePayload) payload).getModuleName() : null;
+                if (moduleName != null) {
+                    return getLane(eventLoops, moduleName.hashCode());
+                }
+                return getLane(eventLoops, System.identityHashCode(handler));
+            case UNORDERED:
+                return getContainer().require(ExecutionServiceComponent.KEY).next();
+            case HANDLER:
+            default:
+                return getLane(eventLoops, System.identityHashCode(handler));
         }
-        if (eventLoop == null) {
-            throw new IllegalStateException("Could not dispatch message as Executor was shut down");
+    }
+
+    /**
+     * @return the EventLoop the lane with the given hash is pinned to
+     */
+    private static EventLoop getLane(EventLoop[] eventLoops, int hash) {
+        // spread the bits, as identity hash codes and String hashes often only differ in the lower bits
+        hash ^= (hash >>> 16);
+        return eventLoops[(hash & Integer.MAX_VALUE) % eventLoops.length];
+    }
+
+    private EventLoop[] eventLoops;
+
+    @NonNull
+    private EventLoop[] getEventLoops() {
+        EventLoop[] eventLoops = this.eventLoops;
+        if (eventLoops == null || eventLoops[0].isShuttingDown() || eventLoops[0].isShutdown()) {
+            Log.v(TAG, "EventLoops unavailable, getting new ones");
+            final ExecutionServiceComponent executionService = getContainer().require(ExecutionServiceComponent.KEY);
+            final Set<EventLoop> children = executionService.children();
+            if (children.isEmpty()) {
+                eventLoops = new EventLoop[]{executionService.next()};
+            } else {
+                eventLoops = children.toArray(new EventLoop[children.size()]);
+            }
+            this.eventLoops = eventLoops;
         }
-        return eventLoop;
+        return eventLoops;
     }
 
     @Override
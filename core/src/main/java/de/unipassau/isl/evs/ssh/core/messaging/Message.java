@@ -270,6 +270,12 @@ public class Message implements Serializable {
         private final int sequenceNr;
 
         private transient Future<Void> sendFuture;
+        private transient RoutingKey resolvedRoutingKey;
+        /**
+         * Not transient, so that conflated messages persisted by the Outbox of the Master can still be replaced
+         * after they are restored.
+         */
+        private String conflationKey;
 
         private static final AtomicInteger sequenceCounter = new AtomicInteger();
 
@@ -278,6 +284,14 @@ public class Message implements Serializable {
         }
 
         private AddressedMessage(TypedMap headers, @Nullable MessagePayload payload, DeviceID fromID, DeviceID toID, String routingKey) {
+            this(headers, payload, fromID, toID, routingKey, sequenceCounter.getAndIncrement());
+        }
+
+        /**
+         * Used by the {@link MessageCodec} to restore a received AddressedMessage with the sequence number
+         * assigned by the sending device.
+         */
+        AddressedMessage(TypedMap headers, @Nullable MessagePayload payload, DeviceID fromID, DeviceID toID, String routingKey, int sequenceNr) {
             super(headers.unmodifiableView(), payload);
             if (fromID == null) {
                 throw new NullPointerException("fromID");
@@ -291,7 +305,18 @@ public class Message implements Serializable {
             this.fromID = fromID;
             this.toID = toID;
             this.routingKey = routingKey;
-            sequenceNr = sequenceCounter.getAndIncrement();
+            this.sequenceNr = sequenceNr;
+        }
+
+        /**
+         * @return a copy of this message with the same headers, payload and conflation key, but a new sequence number.
+         * Used for messages that are sent again after the device restarted, as the sequence numbers start again from 0
+         * and replies to messages sent since the restart could otherwise be matched to the copy.
+         */
+        public AddressedMessage withNewSequenceNr() {
+            final AddressedMessage copy = new AddressedMessage(this, fromID, toID, routingKey);
+            copy.conflationKey = conflationKey;
+            return copy;
         }
 
         /**
@@ -337,6 +362,44 @@ public class Message implements Serializable {
             this.sendFuture = sendFuture;
         }
 
+        /**
+         * @return the RoutingKey already resolved when decoding this message or {@code null}
+         * @see RoutingKey#forMessage(AddressedMessage)
+         */
+        @Nullable
+        RoutingKey getResolvedRoutingKey() {
+            return resolvedRoutingKey;
+        }
+
+        void setResolvedRoutingKey(@Nullable RoutingKey resolvedRoutingKey) {
+            this.resolvedRoutingKey = resolvedRoutingKey;
+        }
+
+        /**
+         * @return the key identifying the state this message is an update for, or {@code null} if the message was not
+         * sent using {@link OutgoingRouter#sendMessageConflated(DeviceID, RoutingKey, Message, String)}.
+         * Pending messages to the same device with the same RoutingKey and conflation key can be replaced by this message.
+         */
+        @Nullable
+        public String getConflationKey() {
+            return conflationKey;
+        }
+
+        void setConflationKey(@Nullable String conflationKey) {
+            this.conflationKey = conflationKey;
+        }
+
+        /**
+         * @return {@code true} if this message is still pending and can be replaced by the given newer message,
+         * because both contain the state for the same conflation key and are sent to the same device and RoutingKey
+         */
+        public boolean isSupersededBy(AddressedMessage newer) {
+            return conflationKey != null
+                    && conflationKey.equals(newer.conflationKey)
+                    && routingKey.equals(newer.routingKey)
+                    && toID.equals(newer.toID);
+        }
+
         @Override
         protected CharSequence headerString() {
             return super.headerString() + "#" + sequenceNr + " from " + fromID.toShortString() +" to " + toID.toShortString() + routingKey;
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+import de.ncoder.typedmap.Key;
+import de.ncoder.typedmap.TypedMap;
+import de.unipassau.isl.evs.ssh.core.messaging.codec.PayloadSerializers;
+import de.unipassau.isl.evs.ssh.core.messaging.codec.WireInput;
+import de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.MessagePayload;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import io.netty.handler.codec.DecoderException;
+
+/**
+ * Compact binary encoding of {@link Message.AddressedMessage AddressedMessages} that replaces Java Serialization
+ * once both peers negotiated {@link de.unipassau.isl.evs.ssh.core.network.handshake.HandshakePacket.Capability#COMPACT_CODEC}.
+ * <p/>
+ * The format is: sequence number, sender, receiver, routing key, the number of headers and each header,
+ * the payload type tag and the payload written by its {@link de.unipassau.isl.evs.ssh.core.messaging.codec.PayloadSerializer}.
+ * The well-known headers are written with a tag and their value, all other headers are serialized.
+ * The routing key and the DeviceIDs are written as symbols, see {@link de.unipassau.isl.evs.ssh.core.messaging.codec.SymbolTable}.
+ *
+ * @author agent
+ */
+public class MessageCodec {
+    private static final int HEADER_SERIALIZED = 0;
+    private static final int HEADER_TIMESTAMP = 1;
+    private static final int HEADER_REFERENCES_ID = 2;
+    private static final int HEADER_REPLY_TO_KEY = 3;
+
+    private MessageCodec() {
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void encode(WireOutput out, Message.AddressedMessage msg) throws IOException {
+        out.writeVarInt(msg.getSequenceNr());
+        out.writeDeviceID(msg.getFromID());
+        out.writeDeviceID(msg.getToID());
+        out.writeRoutingKey(msg.getRoutingKey());
+
+        final TypedMap<Object> headers = msg.getHeaders();
+        out.writeVarInt(headers.size());
+        for (Map.Entry<Key<?>, Object> header : headers.entrySet()) {
+            final Key<?> key = header.getKey();
+            final Object value = header.getValue();
+            if (Message.HEADER_TIMESTAMP.equals(key) && value != null) {
+                out.writeByte(HEADER_TIMESTAMP);
+                out.writeVarLong((Long) value);
+            } else if (Message.HEADER_REFERENCES_ID.equals(key) && value != null) {
+                out.writeByte(HEADER_REFERENCES_ID);
+                out.writeVarInt((Integer) value);
+            } else if (Message.HEADER_REPLY_TO_KEY.equals(key)) {
+                out.writeByte(HEADER_REPLY_TO_KEY);
+                out.writeString((String) value);
+            } else {
+                out.writeByte(HEADER_SERIALIZED);
+                out.writeSerialized(key);
+                out.writeSerialized((Serializable) value);
+            }
+        }
+
+        PayloadSerializers.write(out, msg.getPayloadUnchecked());
+    }
+
+    @SuppressWarnings({"deprecation", "unchecked"})
+    public static Message.AddressedMessage decode(WireInput in) throws IOException {
+        final int sequenceNr = in.readVarInt();
+        final DeviceID fromID = in.readDeviceID();
+        final DeviceID toID = in.readDeviceID();
+        final String routingKey = in.readRoutingKey();
+
+        final TypedMap headers = new TypedMap<>();
+        final int headerCount = in.readVarInt();
+        for (int i = 0; i < headerCount; i++) {
+            final int tag = in.readByte();
+            switch (tag) {
+                case HEADER_TIMESTAMP:
+                    headers.putTyped(Message.HEADER_TIMESTAMP, in.readVarLong());
+                    break;
+                case HEADER_REFERENCES_ID:
+                    headers.putTyped(Message.HEADER_REFERENCES_ID, in.readVarInt());
+                    break;
+                case HEADER_REPLY_TO_KEY:
+                    headers.putTyped(Message.HEADER_REPLY_TO_KEY, in.readString());
+                    break;
+                case HEADER_SERIALIZED:
+                    final Key key = in.readSerialized(Key.class);
+                    headers.putTyped(key, in.readSerialized(Object.class));
+                    break;
+                default:
+                    throw new DecoderException("Unknown header type " + tag);
+            }
+        }
+
+        final MessagePayload payload = PayloadSerializers.read(in);
+        final Message.AddressedMessage message = new Message.AddressedMessage(headers, payload, fromID, toID, routingKey, sequenceNr);
+        message.setResolvedRoutingKey(in.resolveRoutingKey(payload == null ? Void.class : payload.getClass()));
+        return message;
+    }
+}
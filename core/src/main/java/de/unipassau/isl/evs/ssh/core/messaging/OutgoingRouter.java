@@ -26,6 +26,7 @@
 
 package de.unipassau.isl.evs.ssh.core.messaging;
 
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import de.ncoder.typedmap.Key;
@@ -52,8 +53,23 @@ public abstract class OutgoingRouter extends AbstractComponent {
      */
     protected abstract Future<Void> doSendMessage(Message.AddressedMessage message);
 
+    /**
+     * Check whether messages sent to the given device can currently be written without being held back.
+     * Handlers periodically sending data that will be outdated soon, like sensor values, should skip sending while
+     * this returns {@code false} instead of piling up messages for a slow connection.
+     *
+     * @return {@code true} if the device is connected and its connection is not congested
+     */
+    public abstract boolean isWritable(DeviceID toID);
+
     private Message.AddressedMessage sendMessage(DeviceID toID, String routingKey, Message msg, boolean log) {
+        return sendMessage(toID, routingKey, msg, log, null);
+    }
+
+    private Message.AddressedMessage sendMessage(DeviceID toID, String routingKey, Message msg, boolean log,
+                                                 @Nullable String conflationKey) {
         final Message.AddressedMessage amsg = msg.setDestination(getOwnID(), toID, routingKey);
+        amsg.setConflationKey(conflationKey);
         final Future<Void> future = doSendMessage(amsg);
         amsg.setSendFuture(future);
         if (log) {
@@ -139,6 +155,25 @@ public abstract class OutgoingRouter extends AbstractComponent {
         return sendMessageToMaster(routingKey.getKey(), msg);
     }
 
+    /**
+     * Send a message containing a state snapshot, like the current status of a Module, of which only the most recent
+     * one matters. If an older message with the same RoutingKey and conflation key is still waiting to be sent to the
+     * device, e.g. because the connection is congested or the device is offline, it is replaced by this message
+     * instead of sending both.
+     *
+     * @param conflationKey identifies the state contained in the message, e.g. the name of the Module, or
+     *                      {@code null} if the RoutingKey only carries a single state
+     * @throws IllegalArgumentException if the payload defined in the RoutingKey doesn't match the payload of the message.
+     * @see #sendMessage(DeviceID, RoutingKey, Message)
+     */
+    public Message.AddressedMessage sendMessageConflated(DeviceID toID, RoutingKey routingKey, Message msg,
+                                                         @Nullable String conflationKey) {
+        if (!routingKey.payloadMatches(msg)) {
+            throw new IllegalArgumentException("Message payload does not match routing key " + routingKey + ":\n" + msg);
+        }
+        return sendMessage(toID, routingKey.getKey(), msg, true, conflationKey == null ? "" : conflationKey);
+    }
+
     /**
      * Sends a reply message to the device the original message came from.
      * Also sets the {@link Message#HEADER_REFERENCES_ID} of the sent message to the sequence number of the original message.
@@ -57,9 +57,15 @@ public class RoutingKey<T> {
     /**
      * Get the RoutingKey for the giving message by getting the String {@link Message.AddressedMessage#getRoutingKey() routingKey}
      * stored in the Message and inferring the Class from the contained payload.
+     * If the message was received using the {@link MessageCodec}, the RoutingKey was already resolved using the
+     * symbol table of the connection and will be reused.
      */
     @NonNull
     public static RoutingKey forMessage(Message.AddressedMessage message) {
+        final RoutingKey resolved = message.getResolvedRoutingKey();
+        if (resolved != null) {
+            return resolved;
+        }
         final MessagePayload payload = message.getPayloadUnchecked();
         return new RoutingKey<>(message.getRoutingKey(), payload == null ? Void.class : payload.getClass());
     }
@@ -26,7 +26,10 @@
 
 package de.unipassau.isl.evs.ssh.core.messaging;
 
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkAckPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraStreamPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.ClimatePayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.DeleteDevicePayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.DeviceConnectedPayload;
@@ -179,6 +182,17 @@ public enum RoutingKeys {
     public static final RoutingKey<ErrorPayload> SLAVE_CAMERA_GET_ERROR = SLAVE_CAMERA_GET.getReply(ErrorPayload.class);
 
     public static final RoutingKey<CameraPayload> APP_CAMERA_BROADCAST = new RoutingKey<>(PREFIX_APP + "camera/broadcast", CameraPayload.class);
+
+    public static final RoutingKey<CameraChunkPayload> MASTER_CAMERA_CHUNK = new RoutingKey<>(PREFIX_MASTER + "/camera/chunk", CameraChunkPayload.class);
+    public static final RoutingKey<CameraChunkPayload> APP_CAMERA_CHUNK = new RoutingKey<>(PREFIX_APP + "/camera/chunk", CameraChunkPayload.class);
+    public static final RoutingKey<CameraChunkAckPayload> SLAVE_CAMERA_CHUNK_ACK = new RoutingKey<>(PREFIX_SLAVE + "/camera/chunk/ack", CameraChunkAckPayload.class);
+
+    public static final RoutingKey<CameraStreamPayload> MASTER_CAMERA_STREAM = new RoutingKey<>(PREFIX_MASTER + "/camera/stream", CameraStreamPayload.class);
+    public static final RoutingKey<CameraStreamPayload> MASTER_CAMERA_STREAM_REPLY = MASTER_CAMERA_STREAM.getReply(CameraStreamPayload.class);
+    public static final RoutingKey<ErrorPayload> MASTER_CAMERA_STREAM_ERROR = MASTER_CAMERA_STREAM.getReply(ErrorPayload.class);
+    public static final RoutingKey<CameraStreamPayload> SLAVE_CAMERA_STREAM = new RoutingKey<>(PREFIX_SLAVE + "/camera/stream", CameraStreamPayload.class);
+    public static final RoutingKey<CameraPayload> MASTER_CAMERA_FRAME = new RoutingKey<>(PREFIX_MASTER + "/camera/frame", CameraPayload.class);
+    public static final RoutingKey<CameraPayload> APP_CAMERA_FRAME = new RoutingKey<>(PREFIX_APP + "/camera/frame", CameraPayload.class);
     // END: Camera
 
     // BEGIN: Notification
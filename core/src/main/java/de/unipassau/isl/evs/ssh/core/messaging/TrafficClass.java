@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_BROADCAST;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_CHUNK;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_FRAME;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_DOOR_RING;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_CHUNK;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_FRAME;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_GET_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_BELL_RING;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_BLOCK;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_BLOCK_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_UNLATCH;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_UNLATCH_ERROR;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_UNLATCH_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_LIGHT_SET;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_LIGHT_SET_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_GET_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_DOOR_UNLATCH;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_DOOR_UNLATCH_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_LIGHT_SET;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_LIGHT_SET_REPLY;
+
+/**
+ * Traffic classes define how urgently messages sent to a RoutingKey have to be delivered compared to other messages
+ * sent over the same connection. Large {@link #BULK} messages, like camera images, are held back by the
+ * {@link de.unipassau.isl.evs.ssh.core.network.handler.TrafficScheduler TrafficScheduler}, so that
+ * {@link #CONTROL} messages, like door or light commands, don't have to wait until they are written.
+ *
+ * @author agent
+ */
+public enum TrafficClass {
+    /**
+     * Commands and their responses the user is actively waiting for
+     */
+    CONTROL,
+    /**
+     * All messages without a configured traffic class
+     */
+    DEFAULT,
+    /**
+     * Large messages whose delivery may be delayed in favour of other messages.
+     * Messages of this class are always written in the order they were sent.
+     */
+    BULK;
+
+    private static final Map<String, TrafficClass> trafficClasses = new HashMap<>();
+
+    static {
+        for (RoutingKey key : new RoutingKey[]{
+                MASTER_DOOR_UNLATCH, MASTER_DOOR_UNLATCH_REPLY, MASTER_DOOR_UNLATCH_ERROR,
+                SLAVE_DOOR_UNLATCH, SLAVE_DOOR_UNLATCH_REPLY,
+                MASTER_DOOR_BLOCK, MASTER_DOOR_BLOCK_REPLY,
+                MASTER_LIGHT_SET, MASTER_LIGHT_SET_REPLY,
+                SLAVE_LIGHT_SET, SLAVE_LIGHT_SET_REPLY,
+                MASTER_DOOR_BELL_RING, APP_DOOR_RING
+        }) {
+            setTrafficClass(key, CONTROL);
+        }
+        for (RoutingKey key : new RoutingKey[]{
+                MASTER_CAMERA_GET_REPLY, SLAVE_CAMERA_GET_REPLY, APP_CAMERA_BROADCAST,
+                MASTER_CAMERA_CHUNK, APP_CAMERA_CHUNK, MASTER_CAMERA_FRAME, APP_CAMERA_FRAME
+        }) {
+            setTrafficClass(key, BULK);
+        }
+    }
+
+    /**
+     * Set the traffic class of all messages sent to the given RoutingKey.
+     */
+    public static synchronized void setTrafficClass(RoutingKey routingKey, TrafficClass trafficClass) {
+        trafficClasses.put(routingKey.getKey(), trafficClass);
+    }
+
+    /**
+     * @return the traffic class of messages sent to the given RoutingKey, {@link #DEFAULT} if none is set
+     */
+    public static synchronized TrafficClass forRoutingKey(String routingKey) {
+        final TrafficClass trafficClass = trafficClasses.get(routingKey);
+        return trafficClass == null ? DEFAULT : trafficClass;
+    }
+
+    /**
+     * @return the traffic class of the given message
+     */
+    public static TrafficClass forMessage(Message.AddressedMessage message) {
+        return forRoutingKey(message.getRoutingKey());
+    }
+}
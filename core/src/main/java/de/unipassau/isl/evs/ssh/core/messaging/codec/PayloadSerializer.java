@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging.codec;
+
+import java.io.IOException;
+
+import de.unipassau.isl.evs.ssh.core.messaging.payload.MessagePayload;
+
+/**
+ * Hand-written binary serialization for a single {@link MessagePayload} class, registered in {@link PayloadSerializers}.
+ * Only instances of exactly this class are handled, subclasses need their own serializer.
+ *
+ * @param <T> the type of the payload
+ * @author agent
+ */
+public abstract class PayloadSerializer<T extends MessagePayload> {
+    private final Class<T> payloadClass;
+    private final int tag;
+
+    /**
+     * @param payloadClass the class of the payloads this serializer can write
+     * @param tag          the unique number identifying this type on the wire. Must never be reused for another class.
+     */
+    protected PayloadSerializer(Class<T> payloadClass, int tag) {
+        this.payloadClass = payloadClass;
+        this.tag = tag;
+    }
+
+    public Class<T> getPayloadClass() {
+        return payloadClass;
+    }
+
+    public int getTag() {
+        return tag;
+    }
+
+    public abstract void write(WireOutput out, T payload) throws IOException;
+
+    public abstract T read(WireInput in) throws IOException;
+}
@@ -0,0 +1,736 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging.codec;
+
+import android.support.annotation.Nullable;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.unipassau.isl.evs.ssh.core.database.dto.Group;
+import de.unipassau.isl.evs.ssh.core.database.dto.Module;
+import de.unipassau.isl.evs.ssh.core.database.dto.PermissionDTO;
+import de.unipassau.isl.evs.ssh.core.database.dto.Slave;
+import de.unipassau.isl.evs.ssh.core.database.dto.UserDevice;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkAckPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraStreamPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.ClimatePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.DeleteDevicePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorBellPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorBlockPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.DoorStatusPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.ErrorPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.GenerateNewRegisterTokenPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.GroupPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.HolidaySimulationPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.LightPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.MessagePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.ModifyModulePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.ModulesPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.NotificationPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.RegisterSlavePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.RenameModulePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.SetGroupNamePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.SetGroupTemplatePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.SetPermissionPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.SetUserGroupPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.SetUserNamePayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.SystemHealthPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.UserDeviceInformationPayload;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import io.netty.handler.codec.DecoderException;
+
+/**
+ * Registry of the {@link PayloadSerializer PayloadSerializers} for all payloads that are sent over the network.
+ * Payloads without a registered serializer are written using Java Serialization as fallback,
+ * e.g. {@link de.unipassau.isl.evs.ssh.core.messaging.payload.DeviceConnectedPayload}, which is only sent locally.
+ * <p/>
+ * The tags identify the payload type on the wire, so existing tags must never be changed or reused.
+ *
+ * @author agent
+ */
+public class PayloadSerializers {
+    private static final int TAG_NULL = 0;
+    private static final int TAG_SERIALIZED = 1;
+
+    private static final Map<Class<?>, PayloadSerializer<?>> byClass = new HashMap<>();
+    private static final Map<Integer, PayloadSerializer<?>> byTag = new HashMap<>();
+
+    private PayloadSerializers() {
+    }
+
+    /**
+     * Write the given payload including its type tag.
+     */
+    @SuppressWarnings("unchecked")
+    public static void write(WireOutput out, @Nullable MessagePayload payload) throws IOException {
+        if (payload == null) {
+            out.writeVarInt(TAG_NULL);
+            return;
+        }
+        final PayloadSerializer serializer = byClass.get(payload.getClass());
+        if (serializer == null) {
+            out.writeVarInt(TAG_SERIALIZED);
+            out.writeSerialized(payload);
+        } else {
+            out.writeVarInt(serializer.getTag());
+            serializer.write(out, payload);
+        }
+    }
+
+    /**
+     * Read a payload written by {@link #write(WireOutput, MessagePayload)}.
+     */
+    @Nullable
+    public static MessagePayload read(WireInput in) throws IOException {
+        final int tag = in.readVarInt();
+        if (tag == TAG_NULL) {
+            return null;
+        } else if (tag == TAG_SERIALIZED) {
+            return in.readSerialized(MessagePayload.class);
+        }
+        final PayloadSerializer<?> serializer = byTag.get(tag);
+        if (serializer == null) {
+            throw new DecoderException("Unknown payload type " + tag);
+        }
+        return serializer.read(in);
+    }
+
+    /**
+     * @return {@code true} if payloads of the given class are written using a hand-written serializer
+     */
+    public static boolean hasSerializer(Class<? extends MessagePayload> payloadClass) {
+        return byClass.containsKey(payloadClass);
+    }
+
+    private static void register(PayloadSerializer<?> serializer) {
+        if (serializer.getTag() <= TAG_SERIALIZED || byTag.containsKey(serializer.getTag())) {
+            throw new IllegalArgumentException("Tag " + serializer.getTag() + " of " + serializer.getPayloadClass()
+                    + " already used");
+        }
+        byClass.put(serializer.getPayloadClass(), serializer);
+        byTag.put(serializer.getTag(), serializer);
+    }
+
+    //Helpers for Collections///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static void writeSlaves(WireOutput out, @Nullable Collection<Slave> slaves) {
+        out.writeSize(slaves);
+        if (slaves != null) {
+            for (Slave slave : slaves) {
+                out.writeSlave(slave);
+            }
+        }
+    }
+
+    private static List<Slave> readSlaves(WireInput in) {
+        final int size = in.readSize();
+        final List<Slave> slaves = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slaves.add(in.readSlave());
+        }
+        return slaves;
+    }
+
+    private static void writeModules(WireOutput out, @Nullable Collection<Module> modules) {
+        out.writeSize(modules);
+        if (modules != null) {
+            for (Module module : modules) {
+                out.writeModule(module);
+            }
+        }
+    }
+
+    private static void writeUserDevices(WireOutput out, @Nullable Collection<UserDevice> userDevices) {
+        out.writeSize(userDevices);
+        if (userDevices != null) {
+            for (UserDevice userDevice : userDevices) {
+                out.writeUserDevice(userDevice);
+            }
+        }
+    }
+
+    private static void writePermissions(WireOutput out, @Nullable Collection<PermissionDTO> permissions) {
+        out.writeSize(permissions);
+        if (permissions != null) {
+            for (PermissionDTO permission : permissions) {
+                out.writePermission(permission);
+            }
+        }
+    }
+
+    private static List<PermissionDTO> readPermissions(WireInput in) {
+        final int size = in.readSize();
+        final List<PermissionDTO> permissions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            permissions.add(in.readPermission());
+        }
+        return permissions;
+    }
+
+    private static void writeGroups(WireOutput out, @Nullable Collection<Group> groups) {
+        out.writeSize(groups);
+        if (groups != null) {
+            for (Group group : groups) {
+                out.writeGroup(group);
+            }
+        }
+    }
+
+    private static List<Group> readGroups(WireInput in) {
+        final int size = in.readSize();
+        final List<Group> groups = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            groups.add(in.readGroup());
+        }
+        return groups;
+    }
+
+    //Serializers///////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static final PayloadSerializer<CameraPayload> CAMERA = new PayloadSerializer<CameraPayload>(CameraPayload.class, 2) {
+        @Override
+        public void write(WireOutput out, CameraPayload payload) {
+            out.writeSignedVarInt(payload.getCameraID());
+            out.writeModuleName(payload.getModuleName());
+            out.writeBytes(payload.getPicture());
+            out.writeVarInt(payload.getTransferID());
+            out.writeVarInt(payload.getWidth());
+            out.writeVarInt(payload.getHeight());
+            out.writeVarInt(payload.getQuality());
+            out.writeBoolean(payload.isThumbnail());
+            out.writeVarLong(payload.getCaptureTime());
+        }
+
+        @Override
+        public CameraPayload read(WireInput in) {
+            final int cameraID = in.readSignedVarInt();
+            final CameraPayload payload = new CameraPayload(cameraID, in.readModuleName());
+            payload.setPicture(in.readBytes());
+            payload.setTransferID(in.readVarInt());
+            final int width = in.readVarInt();
+            payload.setResolution(width, in.readVarInt());
+            payload.setQuality(in.readVarInt());
+            payload.setThumbnail(in.readBoolean());
+            payload.setCaptureTime(in.readVarLong());
+            return payload;
+        }
+    };
+
+    static {
+        register(CAMERA);
+
+        register(new PayloadSerializer<ClimatePayload>(ClimatePayload.class, 3) {
+            @Override
+            public void write(WireOutput out, ClimatePayload payload) {
+                out.writeDouble(payload.getTemp1());
+                out.writeDouble(payload.getTemp2());
+                out.writeDouble(payload.getPressure());
+                out.writeDouble(payload.getAltitude());
+                out.writeDouble(payload.getHumidity());
+                out.writeDouble(payload.getUv());
+                out.writeSignedVarInt(payload.getVisible());
+                out.writeSignedVarInt(payload.getIr());
+                out.writeModule(payload.getModule());
+            }
+
+            @Override
+            public ClimatePayload read(WireInput in) {
+                final double temp1 = in.readDouble();
+                final double temp2 = in.readDouble();
+                final double pressure = in.readDouble();
+                final double altitude = in.readDouble();
+                final double humidity = in.readDouble();
+                final double uv = in.readDouble();
+                final int visible = in.readSignedVarInt();
+                final int ir = in.readSignedVarInt();
+                final Module module = in.readModule();
+                return new ClimatePayload(temp1, temp2, pressure, altitude, humidity, uv, visible, ir, module);
+            }
+        });
+
+        register(new PayloadSerializer<DeleteDevicePayload>(DeleteDevicePayload.class, 4) {
+            @Override
+            public void write(WireOutput out, DeleteDevicePayload payload) {
+                out.writeDeviceID(payload.getUser());
+            }
+
+            @Override
+            public DeleteDevicePayload read(WireInput in) {
+                return new DeleteDevicePayload(in.readDeviceID());
+            }
+        });
+
+        register(new PayloadSerializer<DoorBellPayload>(DoorBellPayload.class, 5) {
+            @Override
+            public void write(WireOutput out, DoorBellPayload payload) {
+                out.writeModuleName(payload.getModuleName());
+                final CameraPayload camera = payload.getCameraPayload();
+                out.writeBoolean(camera != null);
+                if (camera != null) {
+                    CAMERA.write(out, camera);
+                }
+            }
+
+            @Override
+            public DoorBellPayload read(WireInput in) {
+                final DoorBellPayload payload = new DoorBellPayload(in.readModuleName());
+                if (in.readBoolean()) {
+                    payload.setCameraPayload(CAMERA.read(in));
+                }
+                return payload;
+            }
+        });
+
+        register(new PayloadSerializer<DoorBlockPayload>(DoorBlockPayload.class, 6) {
+            @Override
+            public void write(WireOutput out, DoorBlockPayload payload) {
+                out.writeBoolean(payload.isBlock());
+                out.writeModuleName(payload.getModuleName());
+            }
+
+            @Override
+            public DoorBlockPayload read(WireInput in) {
+                final boolean block = in.readBoolean();
+                return new DoorBlockPayload(block, in.readModuleName());
+            }
+        });
+
+        register(new PayloadSerializer<DoorPayload>(DoorPayload.class, 7) {
+            @Override
+            public void write(WireOutput out, DoorPayload payload) {
+                out.writeModuleName(payload.getModuleName());
+            }
+
+            @Override
+            public DoorPayload read(WireInput in) {
+                return new DoorPayload(in.readModuleName());
+            }
+        });
+
+        register(new PayloadSerializer<DoorStatusPayload>(DoorStatusPayload.class, 8) {
+            @Override
+            public void write(WireOutput out, DoorStatusPayload payload) {
+                out.writeBoolean(payload.isOpen());
+                out.writeBoolean(payload.isBlocked());
+                out.writeModuleName(payload.getModuleName());
+            }
+
+            @Override
+            public DoorStatusPayload read(WireInput in) {
+                final boolean isOpen = in.readBoolean();
+                final boolean isBlocked = in.readBoolean();
+                return new DoorStatusPayload(isOpen, isBlocked, in.readModuleName());
+            }
+        });
+
+        register(new PayloadSerializer<ErrorPayload>(ErrorPayload.class, 9) {
+            @Override
+            public void write(WireOutput out, ErrorPayload payload) throws IOException {
+                out.writeString(payload.getMessage());
+                // the cause may be of any type, so use the Serialization fallback, which also keeps its stack trace
+                out.writeSerialized(payload.getCause());
+            }
+
+            @Override
+            public ErrorPayload read(WireInput in) throws IOException {
+                final String message = in.readString();
+                final Throwable cause = in.readSerialized(Throwable.class);
+                return new ErrorPayload(cause, message);
+            }
+        });
+
+        register(new PayloadSerializer<GenerateNewRegisterTokenPayload>(GenerateNewRegisterTokenPayload.class, 10) {
+            @Override
+            public void write(WireOutput out, GenerateNewRegisterTokenPayload payload) {
+                out.writeBytes(payload.getToken());
+                out.writeUserDevice(payload.getUserDevice());
+            }
+
+            @Override
+            public GenerateNewRegisterTokenPayload read(WireInput in) {
+                final byte[] token = in.readBytes();
+                return new GenerateNewRegisterTokenPayload(token, in.readUserDevice());
+            }
+        });
+
+        register(new PayloadSerializer<GroupPayload>(GroupPayload.class, 11) {
+            @Override
+            public void write(WireOutput out, GroupPayload payload) {
+                out.writeGroup(payload.getGroup());
+                out.writeEnum(payload.getAction());
+            }
+
+            @Override
+            public GroupPayload read(WireInput in) {
+                final Group group = in.readGroup();
+                return new GroupPayload(group, in.readEnum(GroupPayload.ACTION.class));
+            }
+        });
+
+        register(new PayloadSerializer<HolidaySimulationPayload>(HolidaySimulationPayload.class, 12) {
+            @Override
+            public void write(WireOutput out, HolidaySimulationPayload payload) {
+                out.writeBoolean(payload.switchOn());
+            }
+
+            @Override
+            public HolidaySimulationPayload read(WireInput in) {
+                return new HolidaySimulationPayload(in.readBoolean());
+            }
+        });
+
+        register(new PayloadSerializer<LightPayload>(LightPayload.class, 13) {
+            @Override
+            public void write(WireOutput out, LightPayload payload) {
+                out.writeBoolean(payload.getOn());
+                out.writeModule(payload.getModule());
+            }
+
+            @Override
+            public LightPayload read(WireInput in) {
+                final boolean on = in.readBoolean();
+                return new LightPayload(on, in.readModule());
+            }
+        });
+
+        register(new PayloadSerializer<ModifyModulePayload>(ModifyModulePayload.class, 14) {
+            @Override
+            public void write(WireOutput out, ModifyModulePayload payload) {
+                out.writeModule(payload.getModule());
+            }
+
+            @Override
+            public ModifyModulePayload read(WireInput in) {
+                return new ModifyModulePayload(in.readModule());
+            }
+        });
+
+        register(new PayloadSerializer<ModulesPayload>(ModulesPayload.class, 15) {
+            @Override
+            public void write(WireOutput out, ModulesPayload payload) {
+                writeSlaves(out, payload.getSlaves());
+                final ListMultimap<Slave, Module> modulesAtSlaves = payload.getModulesAtSlaves();
+                out.writeSize(modulesAtSlaves == null ? null : modulesAtSlaves.keySet());
+                if (modulesAtSlaves != null) {
+                    for (Slave slave : modulesAtSlaves.keySet()) {
+                        out.writeSlave(slave);
+                        writeModules(out, modulesAtSlaves.get(slave));
+                    }
+                }
+            }
+
+            @Override
+            public ModulesPayload read(WireInput in) {
+                final List<Slave> slaves = readSlaves(in);
+                final ListMultimap<Slave, Module> modulesAtSlaves = ArrayListMultimap.create();
+                final int slaveCount = in.readSize();
+                for (int i = 0; i < slaveCount; i++) {
+                    final Slave slave = in.readSlave();
+                    final int moduleCount = in.readSize();
+                    for (int j = 0; j < moduleCount; j++) {
+                        modulesAtSlaves.put(slave, in.readModule());
+                    }
+                }
+                return new ModulesPayload(modulesAtSlaves, slaves);
+            }
+        });
+
+        register(new PayloadSerializer<NotificationPayload>(NotificationPayload.class, 16) {
+            @Override
+            public void write(WireOutput out, NotificationPayload payload) throws IOException {
+                out.writeEnum(payload.getType());
+                final Serializable[] args = payload.getArgs();
+                out.writeVarInt(args == null ? 0 : args.length + 1);
+                if (args != null) {
+                    for (Serializable arg : args) {
+                        out.writeValue(arg);
+                    }
+                }
+            }
+
+            @Override
+            public NotificationPayload read(WireInput in) throws IOException {
+                final NotificationPayload.NotificationType type = in.readEnum(NotificationPayload.NotificationType.class);
+                final int length = in.readVarInt() - 1;
+                Serializable[] args = null;
+                if (length >= 0) {
+                    args = new Serializable[length];
+                    for (int i = 0; i < length; i++) {
+                        args[i] = in.readValue();
+                    }
+                }
+                final NotificationPayload payload = new NotificationPayload(type);
+                payload.setArgs(args);
+                return payload;
+            }
+        });
+
+        register(new PayloadSerializer<RegisterSlavePayload>(RegisterSlavePayload.class, 17) {
+            @Override
+            public void write(WireOutput out, RegisterSlavePayload payload) {
+                out.writeString(payload.getName());
+                out.writeDeviceID(payload.getSlaveID());
+                out.writeBytes(payload.getPassiveRegistrationToken());
+            }
+
+            @Override
+            public RegisterSlavePayload read(WireInput in) {
+                final String name = in.readString();
+                final DeviceID slaveID = in.readDeviceID();
+                return new RegisterSlavePayload(name, slaveID, in.readBytes());
+            }
+        });
+
+        register(new PayloadSerializer<RenameModulePayload>(RenameModulePayload.class, 18) {
+            @Override
+            public void write(WireOutput out, RenameModulePayload payload) {
+                out.writeModuleName(payload.getOldName());
+                out.writeModuleName(payload.getNewName());
+            }
+
+            @Override
+            public RenameModulePayload read(WireInput in) {
+                final String oldName = in.readModuleName();
+                return new RenameModulePayload(oldName, in.readModuleName());
+            }
+        });
+
+        register(new PayloadSerializer<SetGroupNamePayload>(SetGroupNamePayload.class, 19) {
+            @Override
+            public void write(WireOutput out, SetGroupNamePayload payload) {
+                out.writeGroup(payload.getGroup());
+                out.writeString(payload.getNewName());
+            }
+
+            @Override
+            public SetGroupNamePayload read(WireInput in) {
+                final Group group = in.readGroup();
+                return new SetGroupNamePayload(group, in.readString());
+            }
+        });
+
+        register(new PayloadSerializer<SetGroupTemplatePayload>(SetGroupTemplatePayload.class, 20) {
+            @Override
+            public void write(WireOutput out, SetGroupTemplatePayload payload) {
+                out.writeGroup(payload.getGroup());
+                out.writeString(payload.getTemplateName());
+            }
+
+            @Override
+            public SetGroupTemplatePayload read(WireInput in) {
+                final Group group = in.readGroup();
+                return new SetGroupTemplatePayload(group, in.readString());
+            }
+        });
+
+        register(new PayloadSerializer<SetPermissionPayload>(SetPermissionPayload.class, 21) {
+            @Override
+            public void write(WireOutput out, SetPermissionPayload payload) {
+                out.writeDeviceID(payload.getUser());
+                out.writePermission(payload.getPermission());
+                out.writeEnum(payload.getAction());
+            }
+
+            @Override
+            public SetPermissionPayload read(WireInput in) {
+                final DeviceID user = in.readDeviceID();
+                final PermissionDTO permission = in.readPermission();
+                return new SetPermissionPayload(user, permission, in.readEnum(SetPermissionPayload.Action.class));
+            }
+        });
+
+        register(new PayloadSerializer<SetUserGroupPayload>(SetUserGroupPayload.class, 22) {
+            @Override
+            public void write(WireOutput out, SetUserGroupPayload payload) {
+                out.writeDeviceID(payload.getUser());
+                out.writeString(payload.getGroupName());
+            }
+
+            @Override
+            public SetUserGroupPayload read(WireInput in) {
+                final DeviceID user = in.readDeviceID();
+                return new SetUserGroupPayload(user, in.readString());
+            }
+        });
+
+        register(new PayloadSerializer<SetUserNamePayload>(SetUserNamePayload.class, 23) {
+            @Override
+            public void write(WireOutput out, SetUserNamePayload payload) {
+                out.writeDeviceID(payload.getUser());
+                out.writeString(payload.getUsername());
+            }
+
+            @Override
+            public SetUserNamePayload read(WireInput in) {
+                final DeviceID user = in.readDeviceID();
+                return new SetUserNamePayload(user, in.readString());
+            }
+        });
+
+        register(new PayloadSerializer<SystemHealthPayload>(SystemHealthPayload.class, 24) {
+            @Override
+            public void write(WireOutput out, SystemHealthPayload payload) {
+                out.writeBoolean(payload.getHasError());
+                out.writeModule(payload.getModule());
+            }
+
+            @Override
+            public SystemHealthPayload read(WireInput in) {
+                final boolean hasError = in.readBoolean();
+                return new SystemHealthPayload(hasError, in.readModule());
+            }
+        });
+
+        register(new PayloadSerializer<UserDeviceInformationPayload>(UserDeviceInformationPayload.class, 25) {
+            @Override
+            public void write(WireOutput out, UserDeviceInformationPayload payload) {
+                final ListMultimap<UserDevice, PermissionDTO> usersToPermissions = payload.getUsersToPermissions();
+                out.writeSize(usersToPermissions == null ? null : usersToPermissions.keySet());
+                if (usersToPermissions != null) {
+                    for (UserDevice userDevice : usersToPermissions.keySet()) {
+                        out.writeUserDevice(userDevice);
+                        writePermissions(out, usersToPermissions.get(userDevice));
+                    }
+                }
+
+                final ListMultimap<Group, UserDevice> groupToUserDevice = payload.getGroupToUserDevice();
+                out.writeSize(groupToUserDevice == null ? null : groupToUserDevice.keySet());
+                if (groupToUserDevice != null) {
+                    for (Group group : groupToUserDevice.keySet()) {
+                        out.writeGroup(group);
+                        writeUserDevices(out, groupToUserDevice.get(group));
+                    }
+                }
+
+                writePermissions(out, payload.getAllPermissions());
+                writeGroups(out, payload.getAllGroups());
+                final List<String> templates = payload.getTemplates();
+                out.writeSize(templates);
+                if (templates != null) {
+                    for (String template : templates) {
+                        out.writeString(template);
+                    }
+                }
+            }
+
+            @Override
+            public UserDeviceInformationPayload read(WireInput in) {
+                final ListMultimap<UserDevice, PermissionDTO> usersToPermissions = ArrayListMultimap.create();
+                final int userCount = in.readSize();
+                for (int i = 0; i < userCount; i++) {
+                    final UserDevice userDevice = in.readUserDevice();
+                    usersToPermissions.putAll(userDevice, readPermissions(in));
+                }
+
+                final ListMultimap<Group, UserDevice> groupToUserDevice = ArrayListMultimap.create();
+                final int groupCount = in.readSize();
+                for (int i = 0; i < groupCount; i++) {
+                    final Group group = in.readGroup();
+                    final int memberCount = in.readSize();
+                    for (int j = 0; j < memberCount; j++) {
+                        groupToUserDevice.put(group, in.readUserDevice());
+                    }
+                }
+
+                final List<PermissionDTO> allPermissions = readPermissions(in);
+                final List<Group> allGroups = readGroups(in);
+                final int templateCount = in.readSize();
+                final List<String> templates = new ArrayList<>(templateCount);
+                for (int i = 0; i < templateCount; i++) {
+                    templates.add(in.readString());
+                }
+                return new UserDeviceInformationPayload(usersToPermissions, groupToUserDevice, allPermissions, allGroups, templates);
+            }
+        });
+
+        register(new PayloadSerializer<CameraChunkPayload>(CameraChunkPayload.class, 26) {
+            @Override
+            public void write(WireOutput out, CameraChunkPayload payload) {
+                out.writeVarInt(payload.getTransferID());
+                out.writeModuleName(payload.getModuleName());
+                out.writeSignedVarInt(payload.getCameraID());
+                out.writeVarInt(payload.getOffset());
+                out.writeVarInt(payload.getTotalLength());
+                out.writeBytes(payload.getData());
+            }
+
+            @Override
+            public CameraChunkPayload read(WireInput in) {
+                final int transferID = in.readVarInt();
+                final String moduleName = in.readModuleName();
+                final int cameraID = in.readSignedVarInt();
+                final int offset = in.readVarInt();
+                final int totalLength = in.readVarInt();
+                return new CameraChunkPayload(transferID, moduleName, cameraID, offset, totalLength, in.readBytes());
+            }
+        });
+
+        register(new PayloadSerializer<CameraStreamPayload>(CameraStreamPayload.class, 27) {
+            @Override
+            public void write(WireOutput out, CameraStreamPayload payload) {
+                out.writeModuleName(payload.getModuleName());
+                out.writeSignedVarInt(payload.getCameraID());
+                out.writeVarLong(payload.getInterval());
+                out.writeBoolean(payload.isThumbnail());
+            }
+
+            @Override
+            public CameraStreamPayload read(WireInput in) {
+                final String moduleName = in.readModuleName();
+                final int cameraID = in.readSignedVarInt();
+                final long interval = in.readVarLong();
+                return new CameraStreamPayload(moduleName, cameraID, interval, in.readBoolean());
+            }
+        });
+
+        register(new PayloadSerializer<CameraChunkAckPayload>(CameraChunkAckPayload.class, 28) {
+            @Override
+            public void write(WireOutput out, CameraChunkAckPayload payload) {
+                out.writeVarInt(payload.getTransferID());
+                out.writeVarInt(payload.getLength());
+            }
+
+            @Override
+            public CameraChunkAckPayload read(WireInput in) {
+                final int transferID = in.readVarInt();
+                return new CameraChunkAckPayload(transferID, in.readVarInt());
+            }
+        });
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging.codec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.netty.handler.codec.DecoderException;
+
+/**
+ * A connection-scoped dictionary for values that are sent repeatedly, like routing keys, module names and DeviceIDs.
+ * The first time a value is sent, it is written in full together with the handle the sender assigned to it.
+ * Afterwards, only the handle is sent as varint. As frames are encoded and decoded in order on a single connection,
+ * the tables of the sender and the receiver always contain the same entries and no further synchronization is needed.
+ * <p/>
+ * Each table holds at most {@link #CAPACITY} entries, values sent after the table is full are always written in full.
+ * On the wire, a symbol is prefixed with a varint {@code v}, where
+ * <ul>
+ * <li>{@code v == 0}: the value follows and is not stored</li>
+ * <li>{@code v & 1 == 1}: the value follows and is stored with handle {@code v >>> 1}</li>
+ * <li>{@code v & 1 == 0}: the value previously stored with handle {@code v >>> 1} is referenced</li>
+ * </ul>
+ *
+ * @param <T> the type of the values
+ * @author agent
+ */
+class SymbolTable<T> {
+    static final int CAPACITY = 256;
+    static final int LITERAL = 0;
+
+    private final Map<T, Integer> handles = new HashMap<>();
+    private final Object[] values = new Object[CAPACITY + 1];
+    private int size = 0;
+
+    //Sender////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the prefix to write for the given value, see the class documentation for the meaning of the returned value
+     */
+    int prefixFor(T value) {
+        if (value == null) {
+            return LITERAL;
+        }
+        final Integer handle = handles.get(value);
+        if (handle != null) {
+            return handle << 1;
+        }
+        if (size >= CAPACITY) {
+            return LITERAL;
+        }
+        final int newHandle = ++size;
+        handles.put(value, newHandle);
+        values[newHandle] = value;
+        return newHandle << 1 | 1;
+    }
+
+    /**
+     * @return the current state of the table, which can be restored using {@link #rollback(int)}
+     */
+    int mark() {
+        return size;
+    }
+
+    /**
+     * Remove all values stored after the given {@link #mark()}, used if a message could not be completely encoded and
+     * its symbols will thus never reach the receiver.
+     */
+    void rollback(int mark) {
+        for (int handle = mark + 1; handle <= size; handle++) {
+            handles.remove(values[handle]);
+            values[handle] = null;
+        }
+        size = mark;
+    }
+
+    /**
+     * @return {@code true} if the value must be written after the given prefix
+     */
+    static boolean isFollowedByValue(int prefix) {
+        return prefix == LITERAL || (prefix & 1) == 1;
+    }
+
+    //Receiver//////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the value referenced by the given prefix
+     * @throws DecoderException if the prefix doesn't reference a previously stored value
+     */
+    @SuppressWarnings("unchecked")
+    T get(int prefix) {
+        final int handle = prefix >>> 1;
+        if (handle < 1 || handle > size || values[handle] == null) {
+            throw new DecoderException("Unknown symbol " + handle);
+        }
+        return (T) values[handle];
+    }
+
+    /**
+     * Store the value that followed the given prefix, if the prefix says so.
+     *
+     * @return the given value
+     */
+    T store(int prefix, T value) {
+        if (prefix != LITERAL) {
+            final int handle = prefix >>> 1;
+            if (handle != size + 1 || handle > CAPACITY) {
+                throw new DecoderException("Symbol " + handle + " defined out of order, expected " + (size + 1));
+            }
+            values[handle] = value;
+            size = handle;
+        }
+        return value;
+    }
+
+    /**
+     * @return the handle stored with the given prefix or {@link #LITERAL} if the value isn't stored
+     */
+    static int handleOf(int prefix) {
+        return prefix >>> 1;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging.codec;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+
+import de.unipassau.isl.evs.ssh.core.CoreConstants;
+import de.unipassau.isl.evs.ssh.core.database.dto.Group;
+import de.unipassau.isl.evs.ssh.core.database.dto.Module;
+import de.unipassau.isl.evs.ssh.core.database.dto.ModuleAccessPoint.ModuleAccessPoint;
+import de.unipassau.isl.evs.ssh.core.database.dto.PermissionDTO;
+import de.unipassau.isl.evs.ssh.core.database.dto.Slave;
+import de.unipassau.isl.evs.ssh.core.database.dto.UserDevice;
+import de.unipassau.isl.evs.ssh.core.messaging.RoutingKey;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import de.unipassau.isl.evs.ssh.core.sec.Permission;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.DecoderException;
+
+import static de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput.UTF_8;
+import static de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput.VALUE_BOOLEAN;
+import static de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput.VALUE_DOUBLE;
+import static de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput.VALUE_INT;
+import static de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput.VALUE_LONG;
+import static de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput.VALUE_NULL;
+import static de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput.VALUE_SERIALIZED;
+import static de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput.VALUE_STRING;
+
+/**
+ * Reads the values written by {@link WireOutput}.
+ * As the {@link SymbolTable SymbolTables} of the connection return the same instances for all following references,
+ * repeated routing keys, module names and DeviceIDs are decoded without allocating new objects.
+ *
+ * @author agent
+ */
+public class WireInput {
+    private final SymbolTable<String> routingKeys = new SymbolTable<>();
+    private final SymbolTable<String> moduleNames = new SymbolTable<>();
+    private final SymbolTable<DeviceID> deviceIDs = new SymbolTable<>();
+    private final RoutingKey<?>[] resolvedRoutingKeys = new RoutingKey<?>[SymbolTable.CAPACITY + 1];
+    private int lastRoutingKeyHandle = SymbolTable.LITERAL;
+    private ByteBuf buf;
+
+    /**
+     * Read all following values from the given buffer.
+     */
+    public WireInput wrap(ByteBuf buf) {
+        this.buf = buf;
+        return this;
+    }
+
+    public ByteBuf buffer() {
+        return buf;
+    }
+
+    //Primitives////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public boolean readBoolean() {
+        return buf.readBoolean();
+    }
+
+    public int readByte() {
+        return buf.readUnsignedByte();
+    }
+
+    public double readDouble() {
+        return buf.readDouble();
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = buf.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new DecoderException("Malformed varint");
+    }
+
+    public int readSignedVarInt() {
+        final int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final byte b = buf.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new DecoderException("Malformed varlong");
+    }
+
+    @Nullable
+    public String readString() {
+        final int length = readLength();
+        if (length < 0) {
+            return null;
+        }
+        final String value = buf.toString(buf.readerIndex(), length, UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+
+    @Nullable
+    public byte[] readBytes() {
+        final int length = readLength();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] value = new byte[length];
+        buf.readBytes(value);
+        return value;
+    }
+
+    /**
+     * @return the length of the following value or -1 if it is {@code null}
+     */
+    private int readLength() {
+        final int length = readVarInt() - 1;
+        if (length > buf.readableBytes()) {
+            throw new DecoderException("Length " + length + " exceeds the " + buf.readableBytes() + " remaining bytes");
+        }
+        return length;
+    }
+
+    @Nullable
+    public <T extends Enum<T>> T readEnum(Class<T> type) {
+        final String name = readString();
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+
+    /**
+     * @return the size of a collection written with {@link WireOutput#writeSize(java.util.Collection)}
+     */
+    public int readSize() {
+        final int size = readVarInt();
+        if (size < 0 || size > buf.readableBytes()) {
+            throw new DecoderException("Invalid collection size " + size);
+        }
+        return size;
+    }
+
+    //DTOs//////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public String readRoutingKey() {
+        final int prefix = readVarInt();
+        lastRoutingKeyHandle = SymbolTable.handleOf(prefix);
+        if (!SymbolTable.isFollowedByValue(prefix)) {
+            return routingKeys.get(prefix);
+        }
+        final String value = readString();
+        // interned, so that comparing it with the constants from RoutingKeys is a simple identity check
+        return routingKeys.store(prefix, value == null ? null : value.intern());
+    }
+
+    /**
+     * Get the RoutingKey for the routing key that was read last by {@link #readRoutingKey()} and the given payload class.
+     * As a handle is usually always used with the same payload class, the RoutingKey is cached for each handle,
+     * so that it doesn't need to be created for each received message.
+     *
+     * @return the RoutingKey or {@code null} if the routing key was not stored in the SymbolTable
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public RoutingKey<?> resolveRoutingKey(Class<?> payloadClass) {
+        final int handle = lastRoutingKeyHandle;
+        if (handle == SymbolTable.LITERAL) {
+            return null;
+        }
+        RoutingKey<?> key = resolvedRoutingKeys[handle];
+        if (key == null || key.getPayloadClass() != payloadClass) {
+            key = new RoutingKey<>(routingKeys.get(handle << 1), (Class) payloadClass);
+            resolvedRoutingKeys[handle] = key;
+        }
+        return key;
+    }
+
+    @Nullable
+    public DeviceID readDeviceID() {
+        if (!readBoolean()) {
+            return null;
+        }
+        final int prefix = readVarInt();
+        if (!SymbolTable.isFollowedByValue(prefix)) {
+            return deviceIDs.get(prefix);
+        }
+        final byte[] bytes = new byte[DeviceID.ID_LENGTH];
+        buf.readBytes(bytes);
+        return deviceIDs.store(prefix, new DeviceID(bytes));
+    }
+
+    @Nullable
+    public String readModuleName() {
+        final int prefix = readVarInt();
+        if (!SymbolTable.isFollowedByValue(prefix)) {
+            return moduleNames.get(prefix);
+        }
+        return moduleNames.store(prefix, readString());
+    }
+
+    @Nullable
+    public Module readModule() {
+        if (!readBoolean()) {
+            return null;
+        }
+        final String name = readModuleName();
+        final DeviceID atSlave = readDeviceID();
+        final CoreConstants.ModuleType type = readEnum(CoreConstants.ModuleType.class);
+        final ModuleAccessPoint accessPoint = readAccessPoint();
+        return new Module(name, atSlave, type, accessPoint);
+    }
+
+    @Nullable
+    public ModuleAccessPoint readAccessPoint() {
+        final String type = readString();
+        if (type == null) {
+            return null;
+        }
+        final String[] combined = new String[ModuleAccessPoint.COMBINED_AMOUNT_OF_ACCESS_INFORMATION];
+        final int count = readVarInt();
+        for (int i = 0; i < count; i++) {
+            final int index = readVarInt();
+            if (index >= combined.length) {
+                throw new DecoderException("Invalid access information index " + index);
+            }
+            combined[index] = readString();
+        }
+        return ModuleAccessPoint.fromCombinedModuleAccessPointInformation(combined, type);
+    }
+
+    @Nullable
+    public Slave readSlave() {
+        if (!readBoolean()) {
+            return null;
+        }
+        final String name = readString();
+        final DeviceID slaveID = readDeviceID();
+        final byte[] token = readBytes();
+        return new Slave(name, slaveID, token);
+    }
+
+    @Nullable
+    public UserDevice readUserDevice() {
+        if (!readBoolean()) {
+            return null;
+        }
+        final String name = readString();
+        final String inGroup = readString();
+        final DeviceID userDeviceID = readDeviceID();
+        return new UserDevice(name, inGroup, userDeviceID);
+    }
+
+    @Nullable
+    public Group readGroup() {
+        if (!readBoolean()) {
+            return null;
+        }
+        final String name = readString();
+        final String templateName = readString();
+        return new Group(name, templateName);
+    }
+
+    @Nullable
+    public PermissionDTO readPermission() {
+        if (!readBoolean()) {
+            return null;
+        }
+        final Permission permission = readEnum(Permission.class);
+        final String moduleName = readModuleName();
+        return new PermissionDTO(permission, moduleName);
+    }
+
+    //Generic Values////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Nullable
+    public Serializable readValue() throws IOException {
+        final int type = readByte();
+        switch (type) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return readString();
+            case VALUE_INT:
+                return readSignedVarInt();
+            case VALUE_LONG:
+                return buf.readLong();
+            case VALUE_DOUBLE:
+                return readDouble();
+            case VALUE_BOOLEAN:
+                return readBoolean();
+            case VALUE_SERIALIZED:
+                return readSerialized(Serializable.class);
+            default:
+                throw new DecoderException("Unknown value type " + type);
+        }
+    }
+
+    @Nullable
+    public <T> T readSerialized(Class<T> type) throws IOException {
+        final int length = buf.readInt();
+        final ByteBuf slice = buf.readSlice(length);
+        try (ObjectInputStream ois = new ClassLoaderObjectInputStream(new ByteBufInputStream(slice))) {
+            return type.cast(ois.readObject());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new DecoderException(e);
+        }
+    }
+
+    /**
+     * Resolves classes using the ClassLoader of the app instead of the system ClassLoader, like the
+     * {@link io.netty.handler.codec.serialization.ObjectDecoder} does.
+     */
+    private static class ClassLoaderObjectInputStream extends ObjectInputStream {
+        public ClassLoaderObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, WireInput.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
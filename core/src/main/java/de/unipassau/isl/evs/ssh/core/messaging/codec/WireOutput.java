@@ -0,0 +1,306 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging.codec;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+import de.unipassau.isl.evs.ssh.core.database.dto.Group;
+import de.unipassau.isl.evs.ssh.core.database.dto.Module;
+import de.unipassau.isl.evs.ssh.core.database.dto.ModuleAccessPoint.ModuleAccessPoint;
+import de.unipassau.isl.evs.ssh.core.database.dto.PermissionDTO;
+import de.unipassau.isl.evs.ssh.core.database.dto.Slave;
+import de.unipassau.isl.evs.ssh.core.database.dto.UserDevice;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+
+/**
+ * Writes the primitive types, DTOs and values used by {@link PayloadSerializer PayloadSerializers} to a ByteBuf in the
+ * compact binary wire format. Variable-length values are prefixed with their length as varint, nullable values are
+ * either prefixed with a presence flag or encode {@code null} as length 0.
+ * Instances are bound to a single connection and reused for all messages sent on it, see {@link #wrap(ByteBuf)}.
+ * Routing keys, module names and DeviceIDs are written using the {@link SymbolTable SymbolTables} of the connection,
+ * so that they are only sent in full the first time.
+ *
+ * @author agent
+ * @see WireInput
+ */
+public class WireOutput {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int VALUE_NULL = 0;
+    static final int VALUE_STRING = 1;
+    static final int VALUE_INT = 2;
+    static final int VALUE_LONG = 3;
+    static final int VALUE_DOUBLE = 4;
+    static final int VALUE_BOOLEAN = 5;
+    static final int VALUE_SERIALIZED = 6;
+
+    private final SymbolTable<String> routingKeys = new SymbolTable<>();
+    private final SymbolTable<String> moduleNames = new SymbolTable<>();
+    private final SymbolTable<DeviceID> deviceIDs = new SymbolTable<>();
+    private ByteBuf buf;
+
+    /**
+     * Direct all following writes to the given buffer.
+     */
+    public WireOutput wrap(ByteBuf buf) {
+        this.buf = buf;
+        return this;
+    }
+
+    public ByteBuf buffer() {
+        return buf;
+    }
+
+    /**
+     * @return the current state of all SymbolTables, which can be restored using {@link #rollback(long)}
+     */
+    public long mark() {
+        return ((long) routingKeys.mark() << 32) | ((long) moduleNames.mark() << 16) | deviceIDs.mark();
+    }
+
+    /**
+     * Forget all symbols defined after the given {@link #mark()}, because the message that defined them was not sent.
+     */
+    public void rollback(long mark) {
+        routingKeys.rollback((int) (mark >>> 32));
+        moduleNames.rollback((int) (mark >>> 16) & 0xFFFF);
+        deviceIDs.rollback((int) mark & 0xFFFF);
+    }
+
+    //Primitives////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void writeBoolean(boolean value) {
+        buf.writeBoolean(value);
+    }
+
+    public void writeByte(int value) {
+        buf.writeByte(value);
+    }
+
+    public void writeDouble(double value) {
+        buf.writeDouble(value);
+    }
+
+    /**
+     * Write the given int as unsigned varint, using 1 byte for values in [0,127] and up to 5 bytes for all other values.
+     * Negative values always use 5 bytes, use {@link #writeSignedVarInt(int)} if they are common.
+     */
+    public void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    /**
+     * Write the given int using zig-zag encoding, so that values with a small absolute value also use few bytes.
+     */
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+
+    public void writeString(@Nullable String value) {
+        if (value == null) {
+            writeVarInt(0);
+        } else {
+            final byte[] bytes = value.getBytes(UTF_8);
+            writeVarInt(bytes.length + 1);
+            buf.writeBytes(bytes);
+        }
+    }
+
+    public void writeBytes(@Nullable byte[] value) {
+        if (value == null) {
+            writeVarInt(0);
+        } else {
+            writeVarInt(value.length + 1);
+            buf.writeBytes(value);
+        }
+    }
+
+    public void writeEnum(@Nullable Enum<?> value) {
+        writeString(value == null ? null : value.name());
+    }
+
+    /**
+     * Write the size of the given collection, so that the caller can write the elements afterwards.
+     * {@code null} collections are written as empty collections.
+     */
+    public void writeSize(@Nullable Collection<?> collection) {
+        writeVarInt(collection == null ? 0 : collection.size());
+    }
+
+    //DTOs//////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void writeRoutingKey(String value) {
+        final int prefix = routingKeys.prefixFor(value);
+        writeVarInt(prefix);
+        if (SymbolTable.isFollowedByValue(prefix)) {
+            writeString(value);
+        }
+    }
+
+    public void writeDeviceID(@Nullable DeviceID value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            final int prefix = deviceIDs.prefixFor(value);
+            writeVarInt(prefix);
+            if (SymbolTable.isFollowedByValue(prefix)) {
+                buf.writeBytes(value.getIDBytes());
+            }
+        }
+    }
+
+    /**
+     * Write the name of a Module that is referenced by a Payload
+     */
+    public void writeModuleName(@Nullable String value) {
+        final int prefix = moduleNames.prefixFor(value);
+        writeVarInt(prefix);
+        if (SymbolTable.isFollowedByValue(prefix)) {
+            writeString(value);
+        }
+    }
+
+    public void writeModule(@Nullable Module value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeModuleName(value.getName());
+            writeDeviceID(value.getAtSlave());
+            writeEnum(value.getModuleType());
+            writeAccessPoint(value.getModuleAccessPoint());
+        }
+    }
+
+    public void writeAccessPoint(@Nullable ModuleAccessPoint value) {
+        if (value == null) {
+            writeString(null);
+        } else {
+            writeString(value.getType());
+            final int[] indices = value.getDatabaseIndices();
+            final String[] information = value.getAccessInformation();
+            writeVarInt(indices.length);
+            for (int i = 0; i < indices.length; i++) {
+                writeVarInt(indices[i]);
+                writeString(information[i]);
+            }
+        }
+    }
+
+    public void writeSlave(@Nullable Slave value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeString(value.getName());
+            writeDeviceID(value.getSlaveID());
+            writeBytes(value.getPassiveRegistrationToken());
+        }
+    }
+
+    public void writeUserDevice(@Nullable UserDevice value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeString(value.getName());
+            writeString(value.getInGroup());
+            writeDeviceID(value.getUserDeviceID());
+        }
+    }
+
+    public void writeGroup(@Nullable Group value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeString(value.getName());
+            writeString(value.getTemplateName());
+        }
+    }
+
+    public void writePermission(@Nullable PermissionDTO value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeEnum(value.getPermission());
+            writeModuleName(value.getModuleName());
+        }
+    }
+
+    //Generic Values////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write a value of unknown type, e.g. a notification argument. Common types are written compactly,
+     * all others are written using {@link #writeSerialized(Serializable)}.
+     */
+    public void writeValue(@Nullable Serializable value) throws IOException {
+        if (value == null) {
+            writeByte(VALUE_NULL);
+        } else if (value instanceof String) {
+            writeByte(VALUE_STRING);
+            writeString((String) value);
+        } else if (value instanceof Integer) {
+            writeByte(VALUE_INT);
+            writeSignedVarInt((Integer) value);
+        } else if (value instanceof Long) {
+            writeByte(VALUE_LONG);
+            buf.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            writeByte(VALUE_DOUBLE);
+            writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            writeByte(VALUE_BOOLEAN);
+            writeBoolean((Boolean) value);
+        } else {
+            writeByte(VALUE_SERIALIZED);
+            writeSerialized(value);
+        }
+    }
+
+    /**
+     * Fallback for all types that have no hand-written serialization, using Java Serialization.
+     */
+    public void writeSerialized(@Nullable Serializable value) throws IOException {
+        final int lengthIndex = buf.writerIndex();
+        buf.writeInt(0);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new ByteBufOutputStream(buf))) {
+            oos.writeObject(value);
+        }
+        buf.setInt(lengthIndex, buf.writerIndex() - lengthIndex - 4);
+    }
+}
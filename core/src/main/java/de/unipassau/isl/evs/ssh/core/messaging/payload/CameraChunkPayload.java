@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging.payload;
+
+/**
+ * Payload class for a single chunk of a camera picture that is transferred in multiple messages,
+ * so that no device has to buffer the whole picture in a single network message.
+ * All chunks of a picture are sent in order, followed by a {@link CameraPayload} with the same transfer ID.
+ *
+ * @author agent
+ */
+public class CameraChunkPayload implements ModulePayload {
+    private final int transferID;
+    private final String moduleName;
+    private final int cameraID;
+    private final int offset;
+    private final int totalLength;
+    private final byte[] data;
+
+    /**
+     * @param transferID  the ID of the transfer this chunk belongs to, also set in the final {@link CameraPayload}
+     * @param moduleName  of the module representing the camera
+     * @param cameraID    of the camera which took the picture
+     * @param offset      position of the first byte of this chunk within the picture
+     * @param totalLength length of the whole picture in bytes
+     * @param data        the bytes of this chunk
+     */
+    public CameraChunkPayload(int transferID, String moduleName, int cameraID, int offset, int totalLength, byte[] data) {
+        this.transferID = transferID;
+        this.moduleName = moduleName;
+        this.cameraID = cameraID;
+        this.offset = offset;
+        this.totalLength = totalLength;
+        this.data = data;
+    }
+
+    public int getTransferID() {
+        return transferID;
+    }
+
+    @Override
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public int getCameraID() {
+        return cameraID;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotalLength() {
+        return totalLength;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return {@code true} if this is the last chunk of the picture
+     */
+    public boolean isLast() {
+        return offset + data.length >= totalLength;
+    }
+
+    /**
+     * @return the fraction of the picture that has been transferred including this chunk, between 0 and 1
+     */
+    public float getProgress() {
+        return totalLength == 0 ? 1 : (offset + data.length) / (float) totalLength;
+    }
+}
@@ -31,11 +31,17 @@ package de.unipassau.isl.evs.ssh.core.messaging.payload;
  *
  * @author Christoph Fraedrich
  */
-public class CameraPayload implements MessagePayload {
+public class CameraPayload implements ModulePayload {
 
     private String moduleName;
     private final int cameraID;
     private byte[] picture;
+    private int transferID;
+    private int width;
+    private int height;
+    private int quality;
+    private boolean thumbnail;
+    private long captureTime;
 
     /**
      * Constructor for a CameraPayload only requesting the cameraID and the moduleName.
@@ -51,6 +57,7 @@ public class CameraPayload implements MessagePayload {
         this.moduleName = moduleName;
     }
 
+    @Override
     public String getModuleName() {
         return moduleName;
     }
@@ -75,4 +82,85 @@ public class CameraPayload implements MessagePayload {
     public void setPicture(byte[] picture) {
         this.picture = picture;
     }
+
+    /**
+     * In a request, the minimum resolution the picture should have. The Slave uses the smallest resolution supported
+     * by the camera that is at least this large, or the largest resolution if the camera doesn't support one.
+     * In a reply, the resolution of the picture.
+     *
+     * @return the width in pixels or 0, if the default resolution of the camera should be used
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height in pixels or 0, if the default resolution of the camera should be used
+     * @see #getWidth()
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public void setResolution(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return the JPEG quality of the picture, from 1 to 100, or 0 if the default quality should be used
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    public void setQuality(int quality) {
+        this.quality = quality;
+    }
+
+    /**
+     * If set in a request, a small preview picture is taken, e.g. for notifications, ignoring the requested resolution
+     * and quality.
+     *
+     * @return {@code true} if the picture is a thumbnail
+     */
+    public boolean isThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(boolean thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * In a request, the time the picture should have been taken at, e.g. when the door bell rang, according to the
+     * clock of the device sending the request. The Slave compares it with the
+     * {@link de.unipassau.isl.evs.ssh.core.messaging.Message#HEADER_TIMESTAMP HEADER_TIMESTAMP} of the request, so that
+     * the clocks of both devices don't need to be in sync, and answers with the buffered picture taken closest to this
+     * time.
+     * In a reply, the time the picture was taken at according to the clock of the Slave.
+     *
+     * @return the time in milliseconds or 0, if a current picture is requested
+     */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public void setCaptureTime(long captureTime) {
+        this.captureTime = captureTime;
+    }
+
+    /**
+     * Returns the ID of the transfer the picture was sent with as {@link CameraChunkPayload CameraChunkPayloads}
+     * preceding this payload. The picture contained in this payload is {@code null} in this case.
+     *
+     * @return the transfer ID or 0, if the picture wasn't sent in chunks
+     */
+    public int getTransferID() {
+        return transferID;
+    }
+
+    public void setTransferID(int transferID) {
+        this.transferID = transferID;
+    }
 }
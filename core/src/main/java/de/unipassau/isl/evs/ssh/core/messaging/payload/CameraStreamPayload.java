@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.messaging.payload;
+
+/**
+ * Payload class for subscribing to or unsubscribing from the live stream of a camera.
+ * Subscriptions expire after {@link de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants#STREAM_LEASE
+ * STREAM_LEASE} and have to be renewed by sending the subscription again.
+ *
+ * @author agent
+ */
+public class CameraStreamPayload implements ModulePayload {
+    private final String moduleName;
+    private final int cameraID;
+    private final long interval;
+    private final boolean thumbnail;
+
+    /**
+     * @param moduleName of the module representing the camera
+     * @param cameraID   of the camera which should be streamed
+     * @param interval   requested time between two frames in milliseconds, 0 to unsubscribe
+     * @param thumbnail  {@code true} if the frames should only be thumbnails
+     */
+    public CameraStreamPayload(String moduleName, int cameraID, long interval, boolean thumbnail) {
+        this.moduleName = moduleName;
+        this.cameraID = cameraID;
+        this.interval = interval;
+        this.thumbnail = thumbnail;
+    }
+
+    @Override
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public int getCameraID() {
+        return cameraID;
+    }
+
+    /**
+     * In a request, the time between two frames the subscriber wants to receive.
+     * In a reply, the time between two frames that is actually used for all subscribers.
+     *
+     * @return the interval in milliseconds or 0, if the stream should be stopped
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    public boolean isThumbnail() {
+        return thumbnail;
+    }
+
+    /**
+     * @return {@code true} if this is a subscription and not a request to stop the stream
+     */
+    public boolean isActive() {
+        return interval > 0;
+    }
+}
@@ -33,7 +33,7 @@ import de.unipassau.isl.evs.ssh.core.database.dto.Module;
  *
  * @author Andreas Bucher
  */
-public class ClimatePayload implements MessagePayload {
+public class ClimatePayload implements ModulePayload {
 
     private final double temp1;
     private final double temp2;
@@ -107,7 +107,8 @@ public class ClimatePayload implements MessagePayload {
         return ir;
     }
 
-    public Module getModuleName() {
-        return module;
+    @Override
+    public String getModuleName() {
+        return module == null ? null : module.getName();
     }
 }
@@ -31,7 +31,7 @@ package de.unipassau.isl.evs.ssh.core.messaging.payload;
  *
  * @author Christoph Fraedrich
  */
-public class DoorBellPayload implements MessagePayload {
+public class DoorBellPayload implements ModulePayload {
 
     private final String moduleName; //Name of the bell which is rang
     private CameraPayload cameraPayload; //Picture of the door camera
@@ -53,6 +53,7 @@ public class DoorBellPayload implements MessagePayload {
         this.cameraPayload = cameraPayload;
     }
 
+    @Override
     public String getModuleName() {
         return moduleName;
     }
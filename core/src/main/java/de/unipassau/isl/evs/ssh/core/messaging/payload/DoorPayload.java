@@ -29,13 +29,14 @@ package de.unipassau.isl.evs.ssh.core.messaging.payload;
 /**
  * @author Leon Sell
  */
-public class DoorPayload implements MessagePayload {
+public class DoorPayload implements ModulePayload {
     private final String moduleName;
 
     public DoorPayload(String moduleName) {
         this.moduleName = moduleName;
     }
 
+    @Override
     public String getModuleName() {
         return moduleName;
     }
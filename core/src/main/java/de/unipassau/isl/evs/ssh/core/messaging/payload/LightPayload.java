@@ -33,7 +33,7 @@ import de.unipassau.isl.evs.ssh.core.database.dto.Module;
  *
  * @author Christoph Fraedrich
  */
-public class LightPayload implements MessagePayload {
+public class LightPayload implements ModulePayload {
 
     private final Module module;
     private final boolean on;
@@ -63,4 +63,9 @@ public class LightPayload implements MessagePayload {
     public Module getModule() {
         return module;
     }
+
+    @Override
+    public String getModuleName() {
+        return module == null ? null : module.getName();
+    }
 }
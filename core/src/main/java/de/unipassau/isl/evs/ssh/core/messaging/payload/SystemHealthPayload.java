@@ -33,7 +33,7 @@ import de.unipassau.isl.evs.ssh.core.database.dto.Module;
  *
  * @author Andreas Bucher
  */
-public class SystemHealthPayload implements MessagePayload {
+public class SystemHealthPayload implements ModulePayload {
 
     private final boolean hasError;
     private final Module module;
@@ -60,4 +60,9 @@ public class SystemHealthPayload implements MessagePayload {
     public Module getModule() {
         return module;
     }
+
+    @Override
+    public String getModuleName() {
+        return module == null ? null : module.getName();
+    }
 }
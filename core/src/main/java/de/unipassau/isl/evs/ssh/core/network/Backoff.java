@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter for retrying connects and discovery requests.
+ * The backoff starts at the minimum delay and is doubled after each attempt until the maximum delay is reached.
+ * The returned delays are randomly chosen from the upper half of the current backoff, so that devices that lost their
+ * connection at the same time, e.g. because the Master was restarted, don't all retry at the same time.
+ * Not thread-safe.
+ *
+ * @author agent
+ */
+class Backoff {
+    private final long minDelay;
+    private final long maxDelay;
+    private final Random random;
+    private int attempts = 0;
+
+    /**
+     * @param minDelay the backoff in milliseconds for the first attempt
+     * @param maxDelay the maximum backoff in milliseconds
+     */
+    Backoff(long minDelay, long maxDelay) {
+        this(minDelay, maxDelay, new Random());
+    }
+
+    Backoff(long minDelay, long maxDelay, Random random) {
+        if (minDelay <= 0 || maxDelay < minDelay) {
+            throw new IllegalArgumentException("Illegal backoff from " + minDelay + "ms to " + maxDelay + "ms");
+        }
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.random = random;
+    }
+
+    /**
+     * @return the delay in milliseconds to wait before the next attempt
+     */
+    long nextDelay() {
+        final long backoff = getBackoff();
+        attempts++;
+        final long half = backoff / 2;
+        return half + (long) (random.nextDouble() * (backoff - half));
+    }
+
+    /**
+     * @return the current backoff, i.e. the upper bound for the next delay
+     */
+    long getBackoff() {
+        // limit the shift so that the result doesn't overflow, it will be capped by maxDelay anyway
+        final int shift = Math.min(attempts, Long.numberOfLeadingZeros(minDelay) - 2);
+        return Math.min(minDelay << shift, maxDelay);
+    }
+
+    /**
+     * @return the number of attempts since the last {@link #reset()}
+     */
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Start with the minimum delay again, e.g. after a successful connect.
+     */
+    void reset() {
+        attempts = 0;
+    }
+}
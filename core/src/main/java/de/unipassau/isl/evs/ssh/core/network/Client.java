@@ -48,6 +48,7 @@ import de.unipassau.isl.evs.ssh.core.container.AbstractComponent;
 import de.unipassau.isl.evs.ssh.core.container.Container;
 import de.unipassau.isl.evs.ssh.core.container.ContainerService;
 import de.unipassau.isl.evs.ssh.core.messaging.IncomingDispatcher;
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionTicket;
 import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
 import de.unipassau.isl.evs.ssh.core.sec.DeviceConnectInformation;
 import io.netty.bootstrap.Bootstrap;
@@ -57,10 +58,10 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.ResourceLeakDetector;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.Slf4JLoggerFactory;
@@ -71,7 +72,7 @@ import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_LO
 /**
  * A netty stack holding a connection to the Master and handling communication with it using a netty pipeline.
  * For details about the pipeline, see {@link ClientHandshakeHandler}.
- * For details about UDP discovery, see {@link #initClient()}, {@link #shouldReconnectTCP()} and the {@link UDPDiscoveryClient}.
+ * For details about UDP discovery, see {@link #initClient()}, {@link #attemptConnectClient()} and the {@link UDPDiscoveryClient}.
  * This component is used by the Slave and the end-user android App.
  *
  * @author Phil Werli & Niko Fink
@@ -87,12 +88,16 @@ public class Client extends AbstractComponent {
     private static final String TAG = Client.class.getSimpleName();
 
     /**
-     * If this number of milliseconds between two disconnects is exceeded, they are deemed as unrelated
+     * The maximum number of milliseconds to wait before the first reconnect after the connection was lost.
+     * The delay is doubled after every failed attempt.
      */
-    private static final long CLIENT_MILLIS_BETWEEN_DISCONNECTS = TimeUnit.SECONDS.toMillis(10);
+    private static final long CLIENT_MIN_RECONNECT_DELAY = TimeUnit.SECONDS.toMillis(1);
     /**
-     * If there are more disconnects within {@link #CLIENT_MILLIS_BETWEEN_DISCONNECTS} than this number,
-     * the client should retry connecting with the explicitly set master or try UDP discovery.
+     * The maximum number of milliseconds to wait between two connection attempts.
+     */
+    private static final long CLIENT_MAX_RECONNECT_DELAY = TimeUnit.MINUTES.toMillis(2);
+    /**
+     * If this number of connection attempts failed in a row, the client additionally tries UDP discovery.
      */
     private static final int CLIENT_MAX_DISCONNECTS = 5;
     /**
@@ -111,7 +116,13 @@ public class Client extends AbstractComponent {
                     timeout = 0;
                 }
                 Log.d(TAG, (connectionEstablished ? "Rescanning" : "Scanning") + " network for possible local connections after NetworkInfo change: " + intent);
-                requireComponent(UDPDiscoveryClient.KEY).startDiscovery(timeout);
+                final UDPDiscoveryClient discoveryClient = requireComponent(UDPDiscoveryClient.KEY);
+                // if discovery is already running, it might be waiting for a long backoff
+                discoveryClient.resetBackoff();
+                discoveryClient.startDiscovery(timeout);
+            }
+            if (!isChannelOpen()) {
+                reconnectAfterNetworkChange();
             }
         }
     };
@@ -125,13 +136,24 @@ public class Client extends AbstractComponent {
      */
     private boolean isActive;
     /**
-     * Int used to calculate the time between the last and the current timeout.
+     * If the addresses of the last connection and the configured address differ, both are tried at the same time.
+     * This is the connection attempt to the configured address until one of both attempts succeeds.
+     */
+    private ChannelFuture racingFuture;
+    /**
+     * The jittered, exponentially growing delay between two connection attempts, reset once a connection was
+     * established.
      */
-    private long lastDisconnect = 0;
+    private final Backoff reconnectBackoff = new Backoff(CLIENT_MIN_RECONNECT_DELAY, CLIENT_MAX_RECONNECT_DELAY);
     /**
-     * Int that saves how many timeouts happened in a row.
+     * The next scheduled execution of {@link #initClient()}, if the Client is currently waiting for its backoff
      */
-    private int disconnectsInARow = 0;
+    private ScheduledFuture<?> reconnectFuture;
+    /**
+     * The ticket received from the Master for resuming the next connection, kept in memory only as it contains the
+     * resumption secret.
+     */
+    private volatile SessionTicket sessionTicket;
 
     private final List<ClientConnectionListener> listeners = new ArrayList<>();
 
@@ -181,8 +203,16 @@ public class Client extends AbstractComponent {
                         + " Channel from previous connection attempt");
                 channelFuture.channel().close();
             }
+            if (racingFuture != null && racingFuture.channel() != null) {
+                racingFuture.channel().close();
+            }
             // Clean-up the closed channel as it is no longer needed
             channelFuture = null;
+            racingFuture = null;
+        }
+        if (reconnectFuture != null) {
+            reconnectFuture.cancel(false);
+            reconnectFuture = null;
         }
 
         // And queue the (re-)connect
@@ -203,70 +233,75 @@ public class Client extends AbstractComponent {
     }
 
     /**
-     * Checks if the address of the master is known and not to many connections attempts have been made and
-     * connects to the found address or starts UDP discovery.
+     * Connects to the address of the last connection and the configured address of the master.
+     * If both are known and differ, both connects are tried at the same time and the first successful one is used.
+     * If no address is known or too many connection attempts failed, UDP discovery is started.
      */
     private void attemptConnectClient() {
-        // Read the previous host and port from the shared preferences
-        InetSocketAddress address = getLastAddress();
-
-        // Connect to TCP if the address of the Server/Master is known and not too many connection attempts have failed
-        boolean shouldReconnectTCP = shouldReconnectTCP();
-        if (address != null && !shouldReconnectTCP) {
-            // if too many attempts failed with the last address, retry with the configured address
-            editPrefs().setLastAddress(null).commit();
-            lastDisconnect = 0;
-            disconnectsInARow = 0;
-            shouldReconnectTCP = true;
-            address = getConfiguredAddress();
-        } else if (address == null) {
-            // if no previous address is found, use the configured address
-            address = getConfiguredAddress();
+        final InetSocketAddress lastAddress = getLastAddress();
+        final InetSocketAddress configuredAddress = getConfiguredAddress();
+        if (lastAddress == null && configuredAddress == null) {
+            Log.w(TAG, "No master known, starting UDP discovery");
+            requireComponent(UDPDiscoveryClient.KEY).startDiscovery(0);
+            return;
         }
 
-        if (address != null && shouldReconnectTCP) {
-            connectClient(address);
-        } else {
-            if (address == null) {
-                Log.w(TAG, "No master known, starting UDP discovery");
-            } else {
-                Log.w(TAG, "Too many disconnects from " + address + ", trying UDP discovery");
-            }
+        final int attempts = getReconnectAttempts();
+        if (attempts >= CLIENT_MAX_DISCONNECTS) {
+            // keep on trying the known addresses, but also search for the master in the local network
+            Log.w(TAG, attempts + " connection attempts failed, also trying UDP discovery");
             requireComponent(UDPDiscoveryClient.KEY).startDiscovery(0);
         }
+        if (lastAddress != null && configuredAddress != null && !lastAddress.equals(configuredAddress)) {
+            connectClient(lastAddress, configuredAddress);
+        } else {
+            connectClient(lastAddress != null ? lastAddress : configuredAddress, null);
+        }
     }
 
-    /**
-     * A connection attempt should be made if no more than CLIENT_MAX_DISCONNECTS attempts have been made
-     * with the last attempt having been made no more than CLIENT_MILLIS_BETWEEN_DISCONNECTS ago.
-     */
-    private boolean shouldReconnectTCP() {
-        return disconnectsInARow < CLIENT_MAX_DISCONNECTS
-                || System.currentTimeMillis() - lastDisconnect > CLIENT_MILLIS_BETWEEN_DISCONNECTS;
+    private synchronized int getReconnectAttempts() {
+        return reconnectBackoff.getAttempts();
     }
 
     /**
-     * Tries to establish a TCP connection to the Server with the given host and port.
+     * Tries to establish a TCP connection to the Server with the given host and port and, if given, at the same time
+     * to the alternative address.
      * If the connect ist successful, {@link #getHandshakeHandler()} is used to add the
      * required Handlers to the pipeline.
-     * If the connection fails, {@link #channelClosed(Channel)} is called until to many retries are made and the Client
-     * switches to searching the master via UDP discovery using the {@link UDPDiscoveryClient}.
-     */
-    private void connectClient(InetSocketAddress address) {
+     * If the connection fails, {@link #channelClosed(Channel)} is called, which retries after a backoff.
+     */
+    private synchronized void connectClient(InetSocketAddress address, @Nullable InetSocketAddress alternative) {
+        channelFuture = connect(address);
+        racingFuture = alternative != null ? connect(alternative) : null;
+        // add the listeners after both fields are set, as they are called immediately if the connect already failed
+        addConnectListeners(channelFuture);
+        if (racingFuture != null) {
+            addConnectListeners(racingFuture);
+        }
+    }
+
+    private ChannelFuture connect(InetSocketAddress address) {
         Log.i(TAG, "Client connecting to " + address);
         notifyClientConnecting(address.getHostString(), address.getPort());
 
         // TCP Connection
+        final ExecutionServiceComponent executionService = requireComponent(ExecutionServiceComponent.KEY);
         Bootstrap b = new Bootstrap()
-                .group(requireComponent(ExecutionServiceComponent.KEY))
-                .channel(NioSocketChannel.class)
+                .group(executionService)
+                .channel(executionService.getSocketChannelClass())
                 .handler(getHandshakeHandler())
                 .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.ALLOCATOR, CoreConstants.NettyConstants.ALLOCATOR)
+                .option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, CoreConstants.NettyConstants.WRITE_BUFFER_LOW_WATER_MARK)
+                .option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, CoreConstants.NettyConstants.WRITE_BUFFER_HIGH_WATER_MARK)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) TimeUnit.SECONDS.toMillis(5));
 
         // Wait for the start of the client
-        channelFuture = b.connect(address);
-        channelFuture.addListener(new ChannelFutureListener() {
+        return b.connect(address);
+    }
+
+    private void addConnectListeners(ChannelFuture future) {
+        future.addListener(new ChannelFutureListener() {
             /**
              * Called once the operation completes, either because the connect was successful or because of an error.
              */
@@ -281,7 +316,7 @@ public class Client extends AbstractComponent {
                 }
             }
         });
-        channelFuture.channel().closeFuture().addListener(new ChannelFutureListener() {
+        future.channel().closeFuture().addListener(new ChannelFutureListener() {
             /**
              * Called once the connection is closed.
              */
@@ -305,11 +340,19 @@ public class Client extends AbstractComponent {
 
     /**
      * Called once the TCP connection is established.
+     * If two connects were racing, the other connection attempt is cancelled.
      *
      * @see ClientHandshakeHandler#channelActive(ChannelHandlerContext) triggers the Handshake after this method is complete
      */
-    protected void channelOpen(Channel channel) {
-        if (channel != this.channelFuture.channel()) {
+    protected synchronized void channelOpen(Channel channel) {
+        if (racingFuture != null && (channel == racingFuture.channel() || channel == channelFuture.channel())) {
+            final ChannelFuture winner = channel == racingFuture.channel() ? racingFuture : channelFuture;
+            final ChannelFuture loser = winner == racingFuture ? channelFuture : racingFuture;
+            channelFuture = winner;
+            racingFuture = null;
+            Log.i(TAG, "Connection to " + channel.remoteAddress() + " established first, closing " + loser.channel());
+            loser.channel().close();
+        } else if (channelFuture == null || channel != channelFuture.channel()) {
             return; //channel has already been exchanged by new one, don't stop discovery
         }
         requireComponent(UDPDiscoveryClient.KEY).stopDiscovery();
@@ -317,32 +360,66 @@ public class Client extends AbstractComponent {
 
     /**
      * Called once the TCP connection is closed or if it couldn't be established at all.
-     * Increments the disconnect counter and tries to re-establish the connection.
+     * Tries to re-establish the connection after the backoff, which grows with every failed attempt.
      */
     protected synchronized void channelClosed(Channel channel) {
+        if (racingFuture != null) {
+            if (channel == racingFuture.channel()) {
+                racingFuture = null;
+                return; //the other connection attempt is still running
+            } else if (channel == channelFuture.channel()) {
+                channelFuture = racingFuture;
+                racingFuture = null;
+                return; //the racing connection attempt is still running
+            }
+        }
         if (this.channelFuture != null && this.channelFuture.channel() != channel) {
             return; //channel has already been exchanged by new one, don't start another client
         }
         notifyClientDisconnected();
         if (isActive) {
-            long time = System.currentTimeMillis();
-            final long diff = time - lastDisconnect;
-            if (lastDisconnect <= 0 || diff <= CLIENT_MILLIS_BETWEEN_DISCONNECTS) {
-                // if the last disconnect was in the near past, increment the counter of disconnects in a row
-                lastDisconnect = time;
-                disconnectsInARow++;
-                Log.w(TAG, disconnectsInARow + ". disconnect within the last " + diff + "ms, retrying");
-            } else {
-                // otherwise just retry
-                lastDisconnect = time;
-                Log.i(TAG, "First disconnect recently, retrying");
-            }
-            initClient();
+            scheduleReconnect();
         } else {
             Log.i(TAG, "Client disconnected, but not restarting because destroy() has been called");
         }
     }
 
+    /**
+     * Call {@link #initClient()} after the backoff, unless a reconnect is already scheduled.
+     */
+    private synchronized void scheduleReconnect() {
+        if (reconnectFuture != null && !reconnectFuture.isDone()) {
+            return;
+        }
+        final long delay = reconnectBackoff.nextDelay();
+        Log.i(TAG, "Disconnected, retrying in " + delay + "ms (" + reconnectBackoff.getAttempts() + ". attempt)");
+        reconnectFuture = requireComponent(ExecutionServiceComponent.KEY).schedule(new Runnable() {
+            @Override
+            public void run() {
+                initClient();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * If the Client is waiting for its backoff, reconnect immediately as the master might be reachable on the new network.
+     */
+    private synchronized void reconnectAfterNetworkChange() {
+        if (reconnectFuture != null && !reconnectFuture.isDone()) {
+            Log.i(TAG, "Network changed, reconnecting immediately");
+            reconnectBackoff.reset();
+            initClient();
+        }
+    }
+
+    /**
+     * Called by the {@link ClientHandshakeHandler} once the connection is established, so that the next reconnect
+     * is tried quickly again.
+     */
+    synchronized void resetReconnectBackoff() {
+        reconnectBackoff.reset();
+    }
+
     /**
      * Called by {@link UDPDiscoveryClient} once it found a possible address of the master.
      * Saves the new address.
@@ -372,8 +449,9 @@ public class Client extends AbstractComponent {
     }
 
     private void addressChanged(InetSocketAddress address) {
-        lastDisconnect = 0;
-        disconnectsInARow = 0;
+        synchronized (this) {
+            reconnectBackoff.reset();
+        }
         notifyMasterFound();
         if (!address.equals(getAddress()) && channelFuture != null) {
             Log.i(TAG, "Found new address, closing old connection " + channelFuture.channel());
@@ -393,6 +471,12 @@ public class Client extends AbstractComponent {
         if (channelFuture != null && channelFuture.channel() != null) {
             channelFuture.channel().close();
         }
+        if (racingFuture != null && racingFuture.channel() != null) {
+            racingFuture.channel().close();
+        }
+        if (reconnectFuture != null) {
+            reconnectFuture.cancel(false);
+        }
         requireComponent(ContainerService.KEY_CONTEXT).unregisterReceiver(broadcastReceiver);
         super.destroy();
     }
@@ -490,6 +574,22 @@ public class Client extends AbstractComponent {
         return DeviceConnectInformation.decodeToken(getPassiveRegistrationToken());
     }
 
+    /**
+     * @return the ticket for resuming the next connection to the Master or {@code null} if no valid ticket is available
+     */
+    @Nullable
+    public SessionTicket getSessionTicket() {
+        final SessionTicket ticket = sessionTicket;
+        return ticket != null && ticket.isValid() ? ticket : null;
+    }
+
+    /**
+     * Set the ticket received from the Master for resuming the next connection, {@code null} to discard the ticket.
+     */
+    public void setSessionTicket(@Nullable SessionTicket sessionTicket) {
+        this.sessionTicket = sessionTicket;
+    }
+
     /**
      * @return the Address the Client will trz to connect to
      */
@@ -32,6 +32,7 @@ import android.util.Log;
 
 import java.security.GeneralSecurityException;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -39,39 +40,52 @@ import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.util.Arrays;
 
+import javax.crypto.SecretKey;
+
 import de.unipassau.isl.evs.ssh.core.container.Container;
 import de.unipassau.isl.evs.ssh.core.messaging.IncomingDispatcher;
 import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.core.naming.NamingManager;
+import de.unipassau.isl.evs.ssh.core.network.handler.CompactMessageDecoder;
+import de.unipassau.isl.evs.ssh.core.network.handler.CompactMessageEncoder;
 import de.unipassau.isl.evs.ssh.core.network.handler.Decrypter;
 import de.unipassau.isl.evs.ssh.core.network.handler.Encrypter;
+import de.unipassau.isl.evs.ssh.core.network.handler.FlushBatcher;
+import de.unipassau.isl.evs.ssh.core.network.handler.FrameCompressor;
+import de.unipassau.isl.evs.ssh.core.network.handler.FrameDecompressor;
+import de.unipassau.isl.evs.ssh.core.network.handler.HeartbeatCodec;
+import de.unipassau.isl.evs.ssh.core.network.handler.LivenessTracker;
 import de.unipassau.isl.evs.ssh.core.network.handler.PipelinePlug;
+import de.unipassau.isl.evs.ssh.core.network.handler.SessionDecrypter;
+import de.unipassau.isl.evs.ssh.core.network.handler.SessionEncrypter;
 import de.unipassau.isl.evs.ssh.core.network.handler.SignatureChecker;
 import de.unipassau.isl.evs.ssh.core.network.handler.SignatureGenerator;
 import de.unipassau.isl.evs.ssh.core.network.handler.TimeoutHandler;
+import de.unipassau.isl.evs.ssh.core.network.handler.TrafficScheduler;
 import de.unipassau.isl.evs.ssh.core.network.handshake.HandshakeException;
 import de.unipassau.isl.evs.ssh.core.network.handshake.HandshakePacket;
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionTicket;
 import de.unipassau.isl.evs.ssh.core.sec.DeviceConnectInformation;
 import de.unipassau.isl.evs.ssh.core.sec.KeyStoreController;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.serialization.ClassResolver;
 import io.netty.handler.codec.serialization.ClassResolvers;
 import io.netty.handler.codec.serialization.ObjectDecoder;
 import io.netty.handler.codec.serialization.ObjectEncoder;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.ReferenceCountUtil;
 
-import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ALL_IDLE_TIME;
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_HANDSHAKE_FINISHED;
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_LOCAL_CONNECTION;
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_PEER_CERT;
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_PEER_ID;
-import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.READER_IDLE_TIME;
-import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.WRITER_IDLE_TIME;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.FLUSH_BATCHING;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.TRAFFIC_SCHEDULING;
 
 /**
  * A ChannelHandlerAdapter that will execute the Handshake with the Master and add the IncomingDispatcher on success.
@@ -85,8 +99,21 @@ import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.WRITER_
 public class ClientHandshakeHandler extends ChannelHandlerAdapter {
     private static final String TAG = ClientHandshakeHandler.class.getSimpleName();
 
+    // Stateless handlers shared by all connections
+    private static final ObjectEncoder OBJECT_ENCODER = new ObjectEncoder();
+    private static final ClassResolver CLASS_RESOLVER = ClassResolvers.weakCachingConcurrentResolver(ClientHandshakeHandler.class.getClassLoader());
+    private static final LoggingHandler LOGGING_HANDLER = new LoggingHandler(LogLevel.TRACE);
+    private static final HeartbeatCodec HEARTBEAT_CODEC = new HeartbeatCodec();
+    private static final PipelinePlug PIPELINE_PLUG = new PipelinePlug();
+
     private final Container container;
     private final byte[] chapChallenge = new byte[HandshakePacket.CHAP.CHALLENGE_LENGTH];
+    private final byte[] sessionNonce = new byte[SessionKeys.NONCE_LENGTH];
+    /**
+     * The keys of this connection, kept for storing the resumption secret together with the received SessionTicket
+     */
+    private SessionKeys sessionKeys;
+    private SessionTicket sessionTicket;
     private State state;
     private boolean triedRegister;
 
@@ -107,18 +134,16 @@ public class ClientHandshakeHandler extends ChannelHandlerAdapter {
         ctx.attr(ATTR_HANDSHAKE_FINISHED).set(false);
 
         // Add (de-)serialization Handlers before this Handler
-        ctx.pipeline().addBefore(ctx.name(), ObjectEncoder.class.getSimpleName(), new ObjectEncoder());
-        ctx.pipeline().addBefore(ctx.name(), ObjectDecoder.class.getSimpleName(), new ObjectDecoder(
-                ClassResolvers.weakCachingConcurrentResolver(getClass().getClassLoader())));
-        ctx.pipeline().addBefore(ctx.name(), LoggingHandler.class.getSimpleName(), new LoggingHandler(LogLevel.TRACE));
+        ctx.pipeline().addBefore(ctx.name(), ObjectEncoder.class.getSimpleName(), OBJECT_ENCODER);
+        ctx.pipeline().addBefore(ctx.name(), ObjectDecoder.class.getSimpleName(), new ObjectDecoder(CLASS_RESOLVER));
+        ctx.pipeline().addBefore(ctx.name(), LoggingHandler.class.getSimpleName(), LOGGING_HANDLER);
 
         // Timeout Handler
-        ctx.pipeline().addBefore(ctx.name(), IdleStateHandler.class.getSimpleName(),
-                new IdleStateHandler(READER_IDLE_TIME, WRITER_IDLE_TIME, ALL_IDLE_TIME));
+        ctx.pipeline().addBefore(ctx.name(), LivenessTracker.class.getSimpleName(), LivenessTracker.SHARED);
         ctx.pipeline().addBefore(ctx.name(), TimeoutHandler.class.getSimpleName(), new TimeoutHandler());
 
         // Add exception handler
-        ctx.pipeline().addAfter(ctx.name(), PipelinePlug.class.getSimpleName(), new PipelinePlug());
+        ctx.pipeline().addAfter(ctx.name(), PipelinePlug.class.getSimpleName(), PIPELINE_PLUG);
 
         super.channelRegistered(ctx);
         Log.v(TAG, "Pipeline after register: " + ctx.pipeline());
@@ -130,15 +155,25 @@ public class ClientHandshakeHandler extends ChannelHandlerAdapter {
         super.channelActive(ctx);
         final NamingManager namingManager = container.require(NamingManager.KEY);
         assert !namingManager.isMaster();
-        ctx.writeAndFlush(new HandshakePacket.Hello(namingManager.getOwnCertificate(), false));
-        setState(null, State.EXPECT_HELLO);
-        Log.v(TAG, "Sent Client Hello, expecting Server Hello");
+        new SecureRandom().nextBytes(sessionNonce);
+        sessionTicket = namingManager.isMasterKnown() ? container.require(Client.KEY).getSessionTicket() : null;
+        if (sessionTicket != null) {
+            ctx.writeAndFlush(new HandshakePacket.Resume(sessionTicket.getTicket(), sessionNonce));
+            setState(null, State.EXPECT_RESUME_RESPONSE);
+            Log.v(TAG, "Sent Resume, expecting ResumeResponse");
+        } else {
+            ctx.writeAndFlush(new HandshakePacket.Hello(namingManager.getOwnCertificate(), false, sessionNonce));
+            setState(null, State.EXPECT_HELLO);
+            Log.v(TAG, "Sent Client Hello, expecting Server Hello");
+        }
     }
 
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         try {
             if (msg instanceof HandshakePacket.Hello) {
                 handleHello(ctx, ((HandshakePacket.Hello) msg));
+            } else if (msg instanceof HandshakePacket.ResumeResponse) {
+                handleResumeResponse(ctx, ((HandshakePacket.ResumeResponse) msg));
             } else if (msg instanceof HandshakePacket.CHAP) {
                 handleChapResponse(ctx, ((HandshakePacket.CHAP) msg));
             } else if (msg instanceof HandshakePacket.ServerAuthenticationResponse) {
@@ -185,16 +220,120 @@ public class ClientHandshakeHandler extends ChannelHandlerAdapter {
         // add Security handlers
         final PublicKey remotePublicKey = msg.certificate.getPublicKey();
         final PrivateKey localPrivateKey = container.require(KeyStoreController.KEY).getOwnPrivateKey();
-        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), Encrypter.class.getSimpleName(), new Encrypter(remotePublicKey));
-        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), Decrypter.class.getSimpleName(), new Decrypter(localPrivateKey));
-        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SignatureChecker.class.getSimpleName(), new SignatureChecker(remotePublicKey));
-        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SignatureGenerator.class.getSimpleName(), new SignatureGenerator(localPrivateKey));
+        if (msg.isNegotiated(HandshakePacket.Capability.SESSION_CIPHER)) {
+            Log.v(TAG, "Using session cipher");
+            sessionKeys = SessionKeys.derive(localPrivateKey, remotePublicKey, sessionNonce, msg.sessionNonce);
+            addSessionCipher(ctx, sessionKeys);
+        } else {
+            ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), Encrypter.class.getSimpleName(), new Encrypter(remotePublicKey));
+            ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), Decrypter.class.getSimpleName(), new Decrypter(localPrivateKey));
+        }
+        if (msg.isNegotiated(HandshakePacket.Capability.SESSION_CIPHER)
+                && msg.isNegotiated(HandshakePacket.Capability.AUTHENTICATED_CHANNEL)) {
+            Log.v(TAG, "Using authenticated channel, frames won't be signed");
+        } else {
+            ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SignatureChecker.class.getSimpleName(), new SignatureChecker(remotePublicKey));
+            ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SignatureGenerator.class.getSimpleName(), new SignatureGenerator(localPrivateKey));
+        }
+        if (msg.isNegotiated(HandshakePacket.Capability.COMPACT_CODEC)) {
+            addCompactCodec(ctx);
+        }
+        if (msg.isNegotiated(HandshakePacket.Capability.BINARY_HEARTBEAT)) {
+            addHeartbeatCodec(ctx);
+        }
+        if (msg.isNegotiated(HandshakePacket.Capability.FRAME_COMPRESSION)) {
+            addCompression(ctx);
+        }
 
         // and send the initial CHAP packet to the master
         new SecureRandom().nextBytes(chapChallenge);
         ctx.writeAndFlush(new HandshakePacket.CHAP(chapChallenge, null)).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
     }
 
+    private void handleResumeResponse(ChannelHandlerContext ctx, HandshakePacket.ResumeResponse msg) throws GeneralSecurityException {
+        final Client client = container.require(Client.KEY);
+        if (!msg.isAccepted) {
+            setState(State.EXPECT_RESUME_RESPONSE, State.EXPECT_HELLO);
+            Log.i(TAG, "Master rejected SessionTicket (" + msg.message + "), sending Client Hello");
+            client.setSessionTicket(null);
+            sessionTicket = null;
+            final NamingManager namingManager = container.require(NamingManager.KEY);
+            ctx.writeAndFlush(new HandshakePacket.Hello(namingManager.getOwnCertificate(), false, sessionNonce))
+                    .addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            return;
+        }
+        setState(State.EXPECT_RESUME_RESPONSE, State.FINISHED);
+
+        // only the Master can decrypt the ticket, so a correct verifier authenticates the Master
+        final SecretKey resumptionSecret = sessionTicket.getResumptionSecret();
+        final byte[] expectedVerifier = SessionKeys.resumeVerifier(resumptionSecret, sessionNonce, msg.sessionNonce);
+        if (msg.verifier == null || !MessageDigest.isEqual(expectedVerifier, msg.verifier)) {
+            client.setSessionTicket(null);
+            throw new HandshakeException("ResumeResponse with invalid verifier");
+        }
+        if (!HandshakePacket.Capability.isNegotiated(msg.capabilities, HandshakePacket.Capability.SESSION_RESUMPTION)) {
+            throw new HandshakeException("Master accepted SessionTicket without supporting resumption");
+        }
+
+        // set channel attributes from the already known Master
+        final NamingManager namingManager = container.require(NamingManager.KEY);
+        ctx.attr(ATTR_PEER_CERT).set(namingManager.getMasterCertificate());
+        ctx.attr(ATTR_PEER_ID).set(namingManager.getMasterID());
+
+        // add Security handlers, resumed connections always use an authenticated channel
+        sessionKeys = SessionKeys.resume(resumptionSecret, sessionNonce, msg.sessionNonce);
+        addSessionCipher(ctx, sessionKeys);
+        if (HandshakePacket.Capability.isNegotiated(msg.capabilities, HandshakePacket.Capability.COMPACT_CODEC)) {
+            addCompactCodec(ctx);
+        }
+        if (HandshakePacket.Capability.isNegotiated(msg.capabilities, HandshakePacket.Capability.BINARY_HEARTBEAT)) {
+            addHeartbeatCodec(ctx);
+        }
+        if (HandshakePacket.Capability.isNegotiated(msg.capabilities, HandshakePacket.Capability.FRAME_COMPRESSION)) {
+            addCompression(ctx);
+        }
+        storeSessionTicket(msg.resumptionTicket, msg.ticketLifetime);
+
+        // the encrypted ResumeFinished proves that we also know the resumption secret
+        ctx.writeAndFlush(new HandshakePacket.ResumeFinished()).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+
+        ctx.attr(ATTR_HANDSHAKE_FINISHED).set(true);
+        ctx.attr(ATTR_LOCAL_CONNECTION).set(msg.isConnectionLocal);
+        Log.i(TAG, "Resumed connection, handshake successful");
+        handshakeSuccessful(ctx);
+    }
+
+    private void addSessionCipher(ChannelHandlerContext ctx, SessionKeys keys) throws GeneralSecurityException {
+        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SessionEncrypter.class.getSimpleName(), new SessionEncrypter(keys.getClientWriteKey()));
+        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SessionDecrypter.class.getSimpleName(), new SessionDecrypter(keys.getServerWriteKey()));
+    }
+
+    private void addCompactCodec(ChannelHandlerContext ctx) {
+        ctx.pipeline().addAfter(ObjectEncoder.class.getSimpleName(), CompactMessageEncoder.class.getSimpleName(), new CompactMessageEncoder());
+        ctx.pipeline().addBefore(ObjectDecoder.class.getSimpleName(), CompactMessageDecoder.class.getSimpleName(), new CompactMessageDecoder());
+    }
+
+    private void addHeartbeatCodec(ChannelHandlerContext ctx) {
+        ctx.pipeline().addBefore(ObjectDecoder.class.getSimpleName(), HeartbeatCodec.class.getSimpleName(), HEARTBEAT_CODEC);
+    }
+
+    /**
+     * Must be added after the security handlers, so that frames are compressed before they are signed and encrypted
+     */
+    private void addCompression(ChannelHandlerContext ctx) {
+        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), FrameCompressor.class.getSimpleName(), new FrameCompressor());
+        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), FrameDecompressor.class.getSimpleName(), new FrameDecompressor());
+    }
+
+    /**
+     * Keep the ticket sent by the Master together with the resumption secret of this connection for the next connect
+     */
+    private void storeSessionTicket(@Nullable byte[] ticket, long lifetime) {
+        if (ticket != null && sessionKeys != null) {
+            container.require(Client.KEY).setSessionTicket(new SessionTicket(ticket, sessionKeys.getResumptionSecret(), lifetime));
+        }
+    }
+
     private void handleChapResponse(ChannelHandlerContext ctx, HandshakePacket.CHAP msg) throws HandshakeException {
         setState(State.EXPECT_CHAP, State.EXPECT_STATE);
         Log.v(TAG, "Got 2. CHAP, sending 3. CHAP and awaiting Status as response");
@@ -232,6 +371,7 @@ public class ClientHandshakeHandler extends ChannelHandlerAdapter {
             }
 
             setState(State.STATE_RECEIVED, State.FINISHED);
+            storeSessionTicket(msg.resumptionTicket, msg.ticketLifetime);
             ctx.attr(ATTR_HANDSHAKE_FINISHED).set(true);
             ctx.attr(ATTR_LOCAL_CONNECTION).set(msg.isConnectionLocal);
             Log.i(TAG, "Got State: authenticated, handshake successful");
@@ -270,12 +410,21 @@ public class ClientHandshakeHandler extends ChannelHandlerAdapter {
         TimeoutHandler.setPingEnabled(ctx.channel(), true);
         // add Dispatcher
         ctx.pipeline().addBefore(ctx.name(), IncomingDispatcher.class.getSimpleName(), container.require(IncomingDispatcher.KEY));
+        if (FLUSH_BATCHING) {
+            // batch flushes of messages sent by the OutgoingRouter
+            ctx.pipeline().addBefore(IncomingDispatcher.class.getSimpleName(), FlushBatcher.class.getSimpleName(), new FlushBatcher());
+        }
+        if (TRAFFIC_SCHEDULING) {
+            // don't let camera images delay other messages
+            ctx.pipeline().addBefore(IncomingDispatcher.class.getSimpleName(), TrafficScheduler.class.getSimpleName(), new TrafficScheduler());
+        }
         // Logging is handled by IncomingDispatcher and OutgoingRouter
         ctx.pipeline().remove(LoggingHandler.class.getSimpleName());
         // remove HandshakeHandler
         ctx.pipeline().remove(this);
 
         Log.v(TAG, "Handshake successful, current Pipeline: " + ctx.pipeline());
+        container.require(Client.KEY).resetReconnectBackoff();
         container.require(Client.KEY).notifyClientConnected();
     }
 
@@ -299,6 +448,6 @@ public class ClientHandshakeHandler extends ChannelHandlerAdapter {
     }
 
     private enum State {
-        EXPECT_HELLO, EXPECT_CHAP, EXPECT_STATE, STATE_RECEIVED, FINISHED, FAILED
+        EXPECT_RESUME_RESPONSE, EXPECT_HELLO, EXPECT_CHAP, EXPECT_STATE, STATE_RECEIVED, FINISHED, FAILED
     }
 }
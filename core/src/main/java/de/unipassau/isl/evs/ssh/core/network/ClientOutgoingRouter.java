@@ -32,7 +32,9 @@ import java.util.Objects;
 import de.unipassau.isl.evs.ssh.core.messaging.IncomingDispatcher;
 import de.unipassau.isl.evs.ssh.core.messaging.Message;
 import de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
+import io.netty.channel.Channel;
 import io.netty.util.concurrent.Future;
 
 /**
@@ -68,4 +70,17 @@ public class ClientOutgoingRouter extends OutgoingRouter {
             return executionService.newFailedFuture(e);
         }
     }
+
+    @Override
+    public boolean isWritable(DeviceID toID) {
+        if (Objects.equals(toID, getOwnID())) {
+            return true;
+        } else if (Objects.equals(toID, getMasterID())) {
+            final Client client = requireComponent(Client.KEY);
+            final Channel channel = client.getChannel();
+            return client.isConnectionEstablished() && channel != null && channel.isWritable();
+        } else {
+            return false;
+        }
+    }
 }
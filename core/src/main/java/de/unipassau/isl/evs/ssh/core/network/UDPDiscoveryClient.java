@@ -50,7 +50,6 @@ import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.FutureListener;
@@ -73,9 +72,15 @@ public class UDPDiscoveryClient extends AbstractComponent {
     private static final String TAG = UDPDiscoveryClient.class.getSimpleName();
 
     /**
-     * The maximum number of seconds the broadcast waits to be sent again.
+     * The number of milliseconds the broadcast waits to be sent again after discovery has been started.
      */
-    private static final long CLIENT_MILLIS_BETWEEN_BROADCASTS = TimeUnit.SECONDS.toMillis(2);
+    private static final long CLIENT_MIN_MILLIS_BETWEEN_BROADCASTS = TimeUnit.SECONDS.toMillis(2);
+    /**
+     * The maximum number of milliseconds the broadcast waits to be sent again.
+     * The time between two broadcasts is doubled every time until this limit is reached, so that devices that can't
+     * find their Master don't waste battery and network bandwidth.
+     */
+    private static final long CLIENT_MAX_MILLIS_BETWEEN_BROADCASTS = TimeUnit.MINUTES.toMillis(2);
 
     /**
      * The channel listening for incoming UDP packets.
@@ -98,6 +103,10 @@ public class UDPDiscoveryClient extends AbstractComponent {
      * The timestamp when discovery should stop, or {@code 0} if discovery should run indefinitely.
      */
     private long timeout = 0;
+    /**
+     * The jittered, exponentially growing time between two broadcasts.
+     */
+    private final Backoff backoff = new Backoff(CLIENT_MIN_MILLIS_BETWEEN_BROADCASTS, CLIENT_MAX_MILLIS_BETWEEN_BROADCASTS);
 
     /**
      * Start discovery if it is not running yet and send the first discovery request.
@@ -113,6 +122,7 @@ public class UDPDiscoveryClient extends AbstractComponent {
         Log.i(TAG, "startDiscovery, " + (isDiscoveryRunning ? "already" : "currently not") + " running with timeout " + timeout);
         if (!isDiscoveryRunning) {
             isDiscoveryRunning = true;
+            backoff.reset();
 
             // Acquire lock
             if (multicastLock == null) {
@@ -125,9 +135,10 @@ public class UDPDiscoveryClient extends AbstractComponent {
 
             // Setup UDP Channel
             if (channel == null) {
+                final ExecutionServiceComponent executionService = requireComponent(ExecutionServiceComponent.KEY);
                 Bootstrap b = new Bootstrap()
-                        .channel(NioDatagramChannel.class)
-                        .group(requireComponent(ExecutionServiceComponent.KEY))
+                        .channel(executionService.getDatagramChannelClass())
+                        .group(executionService)
                         .handler(new ResponseHandler())
                         .option(ChannelOption.SO_BROADCAST, true);
                 channel = b.bind(0);
@@ -167,7 +178,7 @@ public class UDPDiscoveryClient extends AbstractComponent {
                         scheduleDiscoveryRetry();
                     }
                 }
-            }, CLIENT_MILLIS_BETWEEN_BROADCASTS, TimeUnit.MILLISECONDS);
+            }, backoff.nextDelay(), TimeUnit.MILLISECONDS);
             retryFuture.addListener(new FutureListener<Object>() {
                 @Override
                 public void operationComplete(Future future) throws Exception {
@@ -184,6 +195,24 @@ public class UDPDiscoveryClient extends AbstractComponent {
         return retryFuture;
     }
 
+    /**
+     * If discovery is running, immediately send a new request and start with the minimum time between two broadcasts
+     * again, e.g. because the network changed and the Master might now be reachable.
+     */
+    public synchronized void resetBackoff() {
+        if (!isDiscoveryRunning) {
+            return;
+        }
+        Log.v(TAG, "resetBackoff after " + backoff.getAttempts() + " broadcasts");
+        backoff.reset();
+        if (retryFuture != null && !retryFuture.isDone()) {
+            retryFuture.cancel(false);
+        }
+        retryFuture = null;
+        sendDiscoveryRequest();
+        scheduleDiscoveryRetry();
+    }
+
     /**
      * Stop the discovery and cancel all pending discovery requests.
      */
@@ -0,0 +1,77 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.MessageCodec;
+import de.unipassau.isl.evs.ssh.core.messaging.codec.WireInput;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
+
+import static de.unipassau.isl.evs.ssh.core.network.handler.CompactMessageEncoder.COMPACT_FRAME_MAGIC;
+
+/**
+ * Decodes the frames written by the {@link CompactMessageEncoder} of the peer.
+ * Must be placed behind the handlers that split the stream into frames, i.e. the Decrypter or SignatureChecker.
+ * Frames not starting with the {@link CompactMessageEncoder#COMPACT_FRAME_MAGIC} are passed on to the ObjectDecoder.
+ *
+ * @author agent
+ */
+public class CompactMessageDecoder extends ChannelHandlerAdapter {
+    private final WireInput input = new WireInput();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        final ByteBuf in = (ByteBuf) msg;
+        if (!in.isReadable() || in.getUnsignedByte(in.readerIndex()) != COMPACT_FRAME_MAGIC) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        final Message.AddressedMessage decoded;
+        try {
+            in.skipBytes(1);
+            decoded = MessageCodec.decode(input.wrap(in));
+            if (in.isReadable()) {
+                throw new DecoderException(in.readableBytes() + " trailing bytes after message");
+            }
+        } catch (Exception e) {
+            ctx.close();
+            throw e;
+        } finally {
+            input.wrap(null);
+            in.release();
+        }
+        ctx.fireChannelRead(decoded);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.MessageCodec;
+import de.unipassau.isl.evs.ssh.core.messaging.codec.WireOutput;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * Encodes {@link Message.AddressedMessage AddressedMessages} using the compact {@link MessageCodec} instead of
+ * Java Serialization. All other objects, like the HandshakePackets, are still passed on to the ObjectEncoder.
+ * Frames start with {@link #COMPACT_FRAME_MAGIC}, so that the {@link CompactMessageDecoder} can tell them apart from
+ * frames written by the ObjectEncoder, which always start with the high byte of their length.
+ *
+ * @author agent
+ */
+public class CompactMessageEncoder extends MessageToByteEncoder<Message.AddressedMessage> {
+    static final int COMPACT_FRAME_MAGIC = 0xB1;
+
+    private final WireOutput output = new WireOutput();
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Message.AddressedMessage msg, ByteBuf out) throws Exception {
+        out.writeByte(COMPACT_FRAME_MAGIC);
+        final long mark = output.mark();
+        try {
+            MessageCodec.encode(output.wrap(out), msg);
+        } catch (Exception e) {
+            // the message won't be sent, so the peer will never learn about symbols it defined
+            output.rollback(mark);
+            throw e;
+        } finally {
+            output.wrap(null);
+        }
+    }
+}
@@ -26,6 +26,7 @@
 
 package de.unipassau.isl.evs.ssh.core.network.handler;
 
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.util.List;
@@ -33,6 +34,7 @@ import java.util.List;
 import javax.crypto.Cipher;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ReplayingDecoder;
 
@@ -57,14 +59,11 @@ public class Decrypter extends ReplayingDecoder {
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> decoded) throws Exception {
         try {
             final int encryptedLength = in.readInt();
-            final int decryptedLength = decryptCipher.getOutputSize(encryptedLength);
+            // will replay if the frame is not completely received yet, so do this before allocating anything
+            final ByteBuffer inNio = in.nioBuffer(in.readerIndex(), encryptedLength);
 
-            final ByteBuf out = ctx.alloc().buffer(decryptedLength);
-            //Log.v(TAG, "Decrypting " + encryptedLength + "b data to " + decryptedLength + "b of decrypted data");
-            decryptCipher.doFinal(
-                    in.nioBuffer(in.readerIndex(), encryptedLength),
-                    out.nioBuffer(out.writerIndex(), decryptedLength));
-            out.writerIndex(out.writerIndex() + decryptedLength);
+            //Log.v(TAG, "Decrypting " + encryptedLength + "b data");
+            final ByteBuf out = doFinal(decryptCipher, ctx.alloc(), inNio);
             in.readerIndex(in.readerIndex() + encryptedLength);
 
             decoded.add(out);
@@ -73,4 +72,21 @@ public class Decrypter extends ReplayingDecoder {
             throw e;
         }
     }
+
+    /**
+     * Decrypt all remaining bytes of the given buffer into a newly allocated buffer, which is released again if the
+     * operation fails.
+     */
+    static ByteBuf doFinal(Cipher cipher, ByteBufAllocator alloc, ByteBuffer in) throws GeneralSecurityException {
+        final int decryptedLength = cipher.getOutputSize(in.remaining());
+        final ByteBuf out = alloc.buffer(decryptedLength);
+        try {
+            final int written = cipher.doFinal(in, out.nioBuffer(out.writerIndex(), decryptedLength));
+            out.writerIndex(out.writerIndex() + written);
+            return out;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
 }
\ No newline at end of file
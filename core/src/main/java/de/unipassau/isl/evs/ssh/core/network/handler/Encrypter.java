@@ -62,16 +62,32 @@ public class Encrypter extends MessageToByteEncoder<ByteBuf> {
         out.writeInt(encryptedLength);
 
         out.ensureWritable(encryptedLength);
-        final ByteBuffer inNio = in.nioBuffer(in.readerIndex(), decryptedLength);
         final ByteBuffer outNio = out.nioBuffer(out.writerIndex(), encryptedLength);
-        encryptCipher.doFinal(inNio, outNio);
-        if (inNio.hasRemaining()) {
-            Log.wtf(TAG, "Crypto library did not read all bytes for encryption (" + inNio.remaining() + " remaining)");
-        }
+        doFinal(encryptCipher, in, outNio);
         if (outNio.hasRemaining()) {
             Log.wtf(TAG, "Crypto library did not write all bytes for encryption (" + outNio.remaining() + " remaining)");
         }
         out.writerIndex(out.writerIndex() + encryptedLength);
-        in.readerIndex(in.readerIndex() + decryptedLength);
     }
-}
\ No newline at end of file
+
+    /**
+     * Feed all readable bytes of the given buffer into the Cipher and finish the operation.
+     * Instead of merging composite buffers into a single copy, each component is passed to the Cipher separately.
+     */
+    static void doFinal(Cipher cipher, ByteBuf in, ByteBuffer out) throws GeneralSecurityException {
+        final int length = in.readableBytes();
+        final ByteBuffer[] inNios = length > 0 ? in.nioBuffers(in.readerIndex(), length) : new ByteBuffer[0];
+        int remaining = 0;
+        for (int i = 0; i < inNios.length - 1; i++) {
+            cipher.update(inNios[i], out);
+            remaining += inNios[i].remaining();
+        }
+        final ByteBuffer last = inNios.length > 0 ? inNios[inNios.length - 1] : ByteBuffer.allocate(0);
+        cipher.doFinal(last, out);
+        remaining += last.remaining();
+        if (remaining > 0) {
+            Log.wtf(TAG, "Crypto library did not read all bytes for encryption (" + remaining + " remaining)");
+        }
+        in.readerIndex(in.readerIndex() + length);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.FLUSH_BATCHING_MAX_DELAY;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.FLUSH_BATCHING_MAX_PENDING;
+
+/**
+ * Batches flushes of a connection, so that a burst of messages, e.g. notifications broadcast to all devices of a user,
+ * is written to the socket using a single syscall instead of one per message.
+ * <p/>
+ * Writes are held back and flushes are delayed until the end of the current event loop tick, so that a single message
+ * isn't delayed any further. Only if more writes keep arriving while waiting for the flush, it is delayed to the end
+ * of the next tick, but at most until {@code maxDelay} milliseconds after the flush was requested. If
+ * {@code maxPending} writes are waiting to be flushed or the channel is closed or becomes unwritable, the pending
+ * writes are flushed immediately.
+ * <p/>
+ * A conflated message replaces a pending write containing an older version of the same state, see
+ * {@link Message.AddressedMessage#isSupersededBy(Message.AddressedMessage)}. The promise of the replaced write is
+ * completed once the newer message is written.
+ *
+ * @author agent
+ */
+public class FlushBatcher extends ChannelHandlerAdapter {
+    private final long maxDelayNanos;
+    private final int maxPending;
+
+    private ChannelHandlerContext ctx;
+    private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private boolean flushRequested = false;
+    private boolean flushScheduled = false;
+    private long flushRequestedTime;
+    private int writesSinceCheck = 0;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            if (!flushRequested) {
+                return;
+            }
+            if (writesSinceCheck > 0 && System.nanoTime() - flushRequestedTime < maxDelayNanos) {
+                // the burst is still going on, so wait for the end of the next tick
+                writesSinceCheck = 0;
+                scheduleFlush();
+            } else {
+                flushNow(ctx);
+            }
+        }
+    };
+
+    public FlushBatcher() {
+        this(FLUSH_BATCHING_MAX_DELAY, FLUSH_BATCHING_MAX_PENDING);
+    }
+
+    /**
+     * @param maxDelay   the maximum time in milliseconds a flush may be delayed while more writes keep arriving,
+     *                   0 to always flush at the end of the current tick
+     * @param maxPending the number of pending writes after which the flush is no longer delayed
+     */
+    public FlushBatcher(long maxDelay, int maxPending) {
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (flushRequested || !pendingWrites.isEmpty()) {
+            flushNow(ctx);
+        }
+        super.handlerRemoved(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, final ChannelPromise promise) throws Exception {
+        writesSinceCheck++;
+        if (msg instanceof Message.AddressedMessage && ((Message.AddressedMessage) msg).getConflationKey() != null) {
+            final Message.AddressedMessage message = (Message.AddressedMessage) msg;
+            for (PendingWrite pending : pendingWrites) {
+                if (pending.msg instanceof Message.AddressedMessage && !pending.promise.isVoid()
+                        && ((Message.AddressedMessage) pending.msg).isSupersededBy(message)) {
+                    // replace the outdated state, keeping its position so that the order of other writes is kept
+                    pending.msg = message;
+                    if (!promise.isVoid()) {
+                        pending.promise.addListener(new ChannelFutureListener() {
+                            @Override
+                            public void operationComplete(ChannelFuture future) throws Exception {
+                                if (future.isSuccess()) {
+                                    promise.trySuccess();
+                                } else {
+                                    promise.tryFailure(future.cause());
+                                }
+                            }
+                        });
+                    }
+                    return;
+                }
+            }
+        }
+        pendingWrites.addLast(new PendingWrite(msg, promise));
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (!flushRequested) {
+            flushRequested = true;
+            flushRequestedTime = System.nanoTime();
+            writesSinceCheck = 0;
+        }
+        if (pendingWrites.size() >= maxPending) {
+            flushNow(ctx);
+        } else if (!flushScheduled) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Run the flushTask once all other tasks and I/O currently waiting for the event loop are processed.
+     */
+    private void scheduleFlush() {
+        flushScheduled = true;
+        ctx.executor().execute(flushTask);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable() && flushRequested) {
+            // get the pending data to the socket, so that the outbound buffer can drain
+            flushNow(ctx);
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (flushRequested || !pendingWrites.isEmpty()) {
+            flushNow(ctx);
+        }
+        super.close(ctx, promise);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (!pendingWrites.isEmpty()) {
+            // the writes will fail, but their senders should be notified
+            flushNow(ctx);
+        }
+        super.channelInactive(ctx);
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        flushRequested = false;
+        PendingWrite pending;
+        while ((pending = pendingWrites.pollFirst()) != null) {
+            ctx.write(pending.msg, pending.promise);
+        }
+        ctx.flush();
+    }
+
+    private static class PendingWrite {
+        private Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.zip.Deflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.COMPRESSION_THRESHOLD;
+
+/**
+ * Compresses outgoing frames using deflate before they are signed and encrypted, so that large snapshots like the
+ * ModulesPayload or the UserDeviceInformationPayload need less bandwidth on slow links.
+ * Frames smaller than the threshold and frames that don't get smaller, like JPEG camera pictures, are forwarded
+ * unchanged. Compressed frames start with {@link #COMPRESSED_FRAME_MAGIC} followed by the uncompressed length,
+ * so that the {@link FrameDecompressor} can tell them apart from all other frames.
+ * Every frame is compressed on its own, so that uncompressed frames don't need to go through the Deflater.
+ *
+ * @author agent
+ */
+public class FrameCompressor extends MessageToMessageEncoder<ByteBuf> {
+    private static final String TAG = FrameCompressor.class.getSimpleName();
+    static final int COMPRESSED_FRAME_MAGIC = 0xB3;
+    static final int HEADER_LENGTH = 1 + 4;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final int threshold;
+    private long uncompressedBytes = 0;
+    private long compressedBytes = 0;
+
+    public FrameCompressor() {
+        this(COMPRESSION_THRESHOLD);
+    }
+
+    FrameCompressor(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        final int length = msg.readableBytes();
+        uncompressedBytes += length;
+        final ByteBuf compressed = length < threshold ? null : compress(ctx, msg);
+        if (compressed == null) {
+            compressedBytes += length;
+            // msg will be released by the MessageToMessageEncoder
+            out.add(msg.retain());
+        } else {
+            compressedBytes += compressed.readableBytes();
+            out.add(compressed);
+        }
+    }
+
+    /**
+     * @return the compressed frame or {@code null}, if the compressed frame wouldn't be smaller than the given one
+     */
+    private ByteBuf compress(ChannelHandlerContext ctx, ByteBuf msg) {
+        final int length = msg.readableBytes();
+        if (msg.hasArray()) {
+            deflater.setInput(msg.array(), msg.arrayOffset() + msg.readerIndex(), length);
+        } else {
+            final byte[] input = new byte[length];
+            msg.getBytes(msg.readerIndex(), input);
+            deflater.setInput(input);
+        }
+        deflater.finish();
+
+        final ByteBuf frame = ctx.alloc().heapBuffer(length);
+        try {
+            frame.writeByte(COMPRESSED_FRAME_MAGIC).writeInt(length);
+            while (!deflater.finished()) {
+                final int writable = length - frame.writerIndex();
+                if (writable <= 0) {
+                    frame.release();
+                    return null;
+                }
+                frame.ensureWritable(writable);
+                final int written = deflater.deflate(frame.array(), frame.arrayOffset() + frame.writerIndex(), writable);
+                frame.writerIndex(frame.writerIndex() + written);
+            }
+            return frame;
+        } catch (RuntimeException e) {
+            frame.release();
+            throw e;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        Log.v(TAG, "Compressed " + uncompressedBytes + "b of frames to " + compressedBytes + "b, ratio " + getCompressionRatio());
+        deflater.end();
+        super.handlerRemoved(ctx);
+    }
+
+    /**
+     * @return the number of bytes of all frames passed to this handler
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * @return the number of bytes of all frames written by this handler, including those that weren't compressed
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return the number of bytes written divided by the number of bytes that would have been written without
+     * compression, or {@code 1} if nothing was written yet
+     */
+    public double getCompressionRatio() {
+        return uncompressedBytes == 0 ? 1 : (double) compressedBytes / uncompressedBytes;
+    }
+
+    /**
+     * @return the {@link #getCompressionRatio() compression ratio} of the given channel, or {@code 1} if
+     * compression was not negotiated for this channel
+     */
+    public static double getCompressionRatio(Channel ch) {
+        final FrameCompressor compressor = ch.pipeline().get(FrameCompressor.class);
+        return compressor == null ? 1 : compressor.getCompressionRatio();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
+
+import static de.unipassau.isl.evs.ssh.core.network.handler.FrameCompressor.COMPRESSED_FRAME_MAGIC;
+import static de.unipassau.isl.evs.ssh.core.network.handler.FrameCompressor.HEADER_LENGTH;
+
+/**
+ * Decompresses the frames compressed by the {@link FrameCompressor} of the peer.
+ * Must be placed behind the handlers that split the stream into frames, i.e. the Decrypter or SignatureChecker.
+ * Frames not starting with the {@link FrameCompressor#COMPRESSED_FRAME_MAGIC} are passed on unchanged.
+ *
+ * @author agent
+ */
+public class FrameDecompressor extends ChannelHandlerAdapter {
+    /**
+     * Upper bound for the uncompressed length announced by the peer, so that a broken frame can't make us
+     * allocate arbitrary amounts of memory
+     */
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private final Inflater inflater = new Inflater();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        final ByteBuf in = (ByteBuf) msg;
+        if (!in.isReadable() || in.getUnsignedByte(in.readerIndex()) != COMPRESSED_FRAME_MAGIC) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        final ByteBuf decompressed;
+        try {
+            decompressed = decompress(ctx, in);
+        } catch (Exception e) {
+            ctx.close();
+            throw e;
+        } finally {
+            in.release();
+        }
+        ctx.fireChannelRead(decompressed);
+    }
+
+    private ByteBuf decompress(ChannelHandlerContext ctx, ByteBuf in) throws DataFormatException {
+        if (in.readableBytes() < HEADER_LENGTH) {
+            throw new DecoderException("Compressed frame without header");
+        }
+        in.skipBytes(1);
+        final int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_LENGTH) {
+            throw new DecoderException("Compressed frame with illegal length " + length);
+        }
+        if (in.hasArray()) {
+            inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+        } else {
+            final byte[] input = new byte[in.readableBytes()];
+            in.getBytes(in.readerIndex(), input);
+            inflater.setInput(input);
+        }
+
+        // one spare byte, so that the Inflater can reach the end of the stream once all data has been written
+        final ByteBuf out = ctx.alloc().heapBuffer(length + 1, length + 1);
+        try {
+            while (!inflater.finished()) {
+                final int written = inflater.inflate(out.array(), out.arrayOffset() + out.writerIndex(), out.writableBytes());
+                if (written == 0 && (inflater.needsInput() || inflater.needsDictionary() || !out.isWritable())) {
+                    break;
+                }
+                out.writerIndex(out.writerIndex() + written);
+            }
+            if (!inflater.finished() || inflater.getRemaining() != 0 || out.readableBytes() != length) {
+                throw new DecoderException("Compressed frame doesn't match its length " + length);
+            }
+            return out;
+        } catch (DataFormatException | RuntimeException e) {
+            out.release();
+            throw e;
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        inflater.end();
+        super.handlerRemoved(ctx);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.DecoderException;
+
+/**
+ * Translates the {@link TimeoutHandler.Heartbeat Heartbeats} of the {@link TimeoutHandler} to tiny binary frames,
+ * so that they don't need to go through the Java Serialization or the {@link de.unipassau.isl.evs.ssh.core.messaging.MessageCodec}.
+ * The frames are still encrypted (and signed if the channel is not authenticated) by the handlers in front of this one.
+ * Must be placed behind the handlers that split the stream into frames, i.e. the Decrypter or SignatureChecker.
+ * Frames start with {@link #HEARTBEAT_FRAME_MAGIC}, all other frames are passed on to the ObjectDecoder.
+ *
+ * @author agent
+ */
+@ChannelHandler.Sharable
+public class HeartbeatCodec extends ChannelHandlerAdapter {
+    static final int HEARTBEAT_FRAME_MAGIC = 0xB2;
+    static final int FRAME_LENGTH = 1 + 1 + 8;
+    private static final int TYPE_PING = 0;
+    private static final int TYPE_PONG = 1;
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof TimeoutHandler.Heartbeat)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        final TimeoutHandler.Heartbeat heartbeat = (TimeoutHandler.Heartbeat) msg;
+        final ByteBuf frame = ctx.alloc().buffer(FRAME_LENGTH)
+                .writeByte(HEARTBEAT_FRAME_MAGIC)
+                .writeByte(heartbeat.isPong ? TYPE_PONG : TYPE_PING)
+                .writeLong(heartbeat.timestamp);
+        ctx.write(frame, promise);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        final ByteBuf in = (ByteBuf) msg;
+        if (!in.isReadable() || in.getUnsignedByte(in.readerIndex()) != HEARTBEAT_FRAME_MAGIC) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        final TimeoutHandler.Heartbeat decoded;
+        try {
+            if (in.readableBytes() != FRAME_LENGTH) {
+                throw new DecoderException("Heartbeat frame with illegal length " + in.readableBytes());
+            }
+            in.skipBytes(1);
+            final int type = in.readUnsignedByte();
+            if (type != TYPE_PING && type != TYPE_PONG) {
+                throw new DecoderException("Heartbeat frame with illegal type " + type);
+            }
+            decoded = new TimeoutHandler.Heartbeat(type == TYPE_PONG, in.readLong());
+        } catch (Exception e) {
+            ctx.close();
+            throw e;
+        } finally {
+            in.release();
+        }
+        ctx.fireChannelRead(decoded);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.READER_IDLE_TIME;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.WRITER_IDLE_TIME;
+
+/**
+ * Replacement for Netty's IdleStateHandler that is shared by all connections. Instead of a handler and two scheduled
+ * tasks per connection, every connection only has a small {@link Liveness} record with a single entry in a
+ * {@link HashedWheelTimer} shared by all connections. The same {@link IdleStateEvent IdleStateEvents} are fired
+ * as by the IdleStateHandler, so that the {@link TimeoutHandler} can handle them.
+ * <p>
+ * The wheel ticks once per second, which is precise enough for idle times of
+ * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#WRITER_IDLE_TIME WRITER_IDLE_TIME} and
+ * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#READER_IDLE_TIME READER_IDLE_TIME} seconds.
+ *
+ * @author agent
+ */
+@ChannelHandler.Sharable
+public class LivenessTracker extends ChannelHandlerAdapter {
+    private static final AttributeKey<Liveness> LIVENESS = AttributeKey.valueOf(LivenessTracker.class, "LIVENESS");
+
+    /**
+     * The instance used by all connections of this process
+     */
+    public static final LivenessTracker SHARED = new LivenessTracker(
+            new HashedWheelTimer(new DefaultThreadFactory(LivenessTracker.class, true), 1, TimeUnit.SECONDS),
+            READER_IDLE_TIME, WRITER_IDLE_TIME, TimeUnit.SECONDS
+    );
+
+    private final Timer timer;
+    private final long readerIdleTime;
+    private final long writerIdleTime;
+
+    /**
+     * @param readerIdleTime time after which a {@link IdleStateEvent#READER_IDLE_STATE_EVENT} is fired if nothing
+     *                       was read, or {@code 0} to disable
+     * @param writerIdleTime time after which a {@link IdleStateEvent#WRITER_IDLE_STATE_EVENT} is fired if nothing
+     *                       was written, or {@code 0} to disable
+     */
+    LivenessTracker(Timer timer, long readerIdleTime, long writerIdleTime, TimeUnit unit) {
+        this.timer = timer;
+        this.readerIdleTime = unit.toNanos(readerIdleTime);
+        this.writerIdleTime = unit.toNanos(writerIdleTime);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isActive()) {
+            start(ctx);
+        }
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        stop(ctx);
+        super.handlerRemoved(ctx);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        start(ctx);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        stop(ctx);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        final Liveness liveness = ctx.attr(LIVENESS).get();
+        if (liveness != null) {
+            liveness.lastReadTime = System.nanoTime();
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        final Liveness liveness = ctx.attr(LIVENESS).get();
+        if (liveness != null) {
+            liveness.lastWriteTime = System.nanoTime();
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    private void start(ChannelHandlerContext ctx) {
+        if (readerIdleTime <= 0 && writerIdleTime <= 0) {
+            return;
+        }
+        final Liveness liveness = new Liveness(ctx);
+        if (ctx.attr(LIVENESS).setIfAbsent(liveness) == null) {
+            liveness.schedule(System.nanoTime());
+        }
+    }
+
+    private void stop(ChannelHandlerContext ctx) {
+        final Liveness liveness = ctx.attr(LIVENESS).getAndSet(null);
+        if (liveness != null) {
+            liveness.cancel();
+        }
+    }
+
+    /**
+     * The per-connection state, which is checked by the timer whenever the connection could have become idle.
+     */
+    private class Liveness implements TimerTask {
+        private final ChannelHandlerContext ctx;
+        private volatile long lastReadTime;
+        private volatile long lastWriteTime;
+        /**
+         * Times of the last fired events, only accessed by the timer thread
+         */
+        private long lastReaderEventTime;
+        private long lastWriterEventTime;
+        private volatile Timeout timeout;
+        private volatile boolean cancelled = false;
+
+        private Liveness(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+            lastReadTime = lastWriteTime = lastReaderEventTime = lastWriterEventTime = System.nanoTime();
+        }
+
+        @Override
+        public void run(Timeout timeout) throws Exception {
+            if (cancelled || !ctx.channel().isOpen()) {
+                return;
+            }
+            final long now = System.nanoTime();
+            if (readerIdleTime > 0 && now - Math.max(lastReadTime, lastReaderEventTime) >= readerIdleTime) {
+                lastReaderEventTime = now;
+                fire(IdleStateEvent.READER_IDLE_STATE_EVENT);
+            }
+            if (writerIdleTime > 0 && now - Math.max(lastWriteTime, lastWriterEventTime) >= writerIdleTime) {
+                lastWriterEventTime = now;
+                fire(IdleStateEvent.WRITER_IDLE_STATE_EVENT);
+            }
+            schedule(now);
+        }
+
+        /**
+         * Schedule the next check for the time the connection would become idle if nothing happened until then.
+         */
+        private void schedule(long now) {
+            long next = Long.MAX_VALUE;
+            if (readerIdleTime > 0) {
+                next = Math.min(next, Math.max(lastReadTime, lastReaderEventTime) + readerIdleTime);
+            }
+            if (writerIdleTime > 0) {
+                next = Math.min(next, Math.max(lastWriteTime, lastWriterEventTime) + writerIdleTime);
+            }
+            if (!cancelled) {
+                timeout = timer.newTimeout(this, Math.max(next - now, 0), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            final Timeout timeout = this.timeout;
+            if (timeout != null) {
+                // release the entry in the wheel right away instead of waiting for the timeout
+                timeout.cancel();
+            }
+        }
+
+        private void fire(final IdleStateEvent event) {
+            ctx.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    ctx.fireUserEventTriggered(event);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * Processes the frames of a single connection on a pool of worker threads and hands the results back to the event
+ * loop of the connection in the order the frames were submitted. This way the crypto handlers can use more than one
+ * core for a single connection, while the handlers after them still see every frame in order.
+ * <p>
+ * Except for {@link Job#process(ByteBuf)}, all methods must be called on the event loop.
+ *
+ * @author agent
+ */
+abstract class OrderedFrameQueue {
+    private final EventExecutorGroup workers;
+    private final EventExecutor eventLoop;
+    /**
+     * Jobs that are finished, but still wait for a Job with a lower sequence number
+     */
+    private final Map<Long, Job> completed = new HashMap<>();
+    private long nextSequence = 0;
+    private long nextEmitted = 0;
+    @Nullable
+    private Throwable closeCause = null;
+
+    OrderedFrameQueue(EventExecutorGroup workers, EventExecutor eventLoop) {
+        this.workers = workers;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Process the given job on a worker and {@link Job#emit(Object) emit} its result on the event loop once all
+     * previously submitted jobs were emitted.
+     */
+    void submit(final Job job) {
+        job.sequence = nextSequence++;
+        if (closeCause != null) {
+            job.discard(closeCause);
+            return;
+        }
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    job.run();
+                    try {
+                        eventLoop.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                complete(job);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        job.discard(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            job.failure = e;
+            complete(job);
+        }
+    }
+
+    /**
+     * Emit the given result, which doesn't need any processing, after the results of all previously submitted jobs.
+     */
+    void submitCompleted(Job job, Object result) {
+        job.sequence = nextSequence++;
+        job.result = result;
+        complete(job);
+    }
+
+    private void complete(Job job) {
+        if (closeCause != null) {
+            job.discard(closeCause);
+            return;
+        }
+        completed.put(job.sequence, job);
+        for (Job next; (next = completed.remove(nextEmitted)) != null; ) {
+            nextEmitted++;
+            if (next.failure != null) {
+                final Throwable cause = next.failure;
+                next.discard(cause);
+                close(cause);
+                failed(cause);
+                return;
+            }
+            next.emit(next.result);
+        }
+        emitted();
+    }
+
+    /**
+     * Discard all jobs that are still in progress or waiting to be emitted.
+     */
+    void close(Throwable cause) {
+        if (closeCause != null) {
+            return;
+        }
+        closeCause = cause;
+        for (Job job : completed.values()) {
+            job.discard(cause);
+        }
+        completed.clear();
+    }
+
+    /**
+     * @return the number of jobs that were submitted, but not emitted yet
+     */
+    int size() {
+        return (int) (nextSequence - nextEmitted);
+    }
+
+    /**
+     * @return the number of jobs submitted so far
+     */
+    long getSubmitted() {
+        return nextSequence;
+    }
+
+    /**
+     * @return the number of jobs emitted so far
+     */
+    long getEmitted() {
+        return nextEmitted;
+    }
+
+    /**
+     * Called after one or more jobs were emitted.
+     */
+    protected abstract void emitted();
+
+    /**
+     * Called if a job failed, the queue is already closed at this point.
+     */
+    protected abstract void failed(Throwable cause);
+
+    /**
+     * A single frame that is processed on a worker thread.
+     */
+    abstract static class Job {
+        private long sequence;
+        @Nullable
+        private ByteBuf input;
+        @Nullable
+        private Object result;
+        @Nullable
+        private Throwable failure;
+
+        /**
+         * @param input the frame to process, which will be released once the job ran,
+         *              or {@code null} for jobs passed to {@link #submitCompleted(Job, Object)}
+         */
+        Job(@Nullable ByteBuf input) {
+            this.input = input;
+        }
+
+        private void run() {
+            try {
+                result = process(input);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                ReferenceCountUtil.release(input);
+                input = null;
+            }
+        }
+
+        /**
+         * Executed on a worker thread. Must not touch the pipeline and must not release the input.
+         */
+        abstract Object process(ByteBuf input) throws Exception;
+
+        /**
+         * Executed on the event loop, in the order the jobs were submitted.
+         */
+        abstract void emit(Object result);
+
+        /**
+         * Release everything held by this job, as its result will never be emitted.
+         */
+        void discard(Throwable cause) {
+            ReferenceCountUtil.release(input);
+            input = null;
+            ReferenceCountUtil.release(result);
+            result = null;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.nio.channels.ClosedChannelException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.SESSION_REKEY_INTERVAL;
+import static de.unipassau.isl.evs.ssh.core.network.handler.Encrypter.MESSAGE_CRYPT_ALG;
+import static de.unipassau.isl.evs.ssh.core.network.handler.SessionEncrypter.SESSION_CRYPT_ALG;
+import static de.unipassau.isl.evs.ssh.core.network.handler.SessionEncrypter.frameParameters;
+import static de.unipassau.isl.evs.ssh.core.network.handler.SignatureGenerator.MESSAGE_SIGN_ALG;
+
+/**
+ * Replaces the {@link SessionDecrypter} or {@link Decrypter} and the {@link SignatureChecker} by decrypting and
+ * verifying each incoming frame on a pool of worker threads. Only splitting the received data into frames happens on
+ * the event loop, the decrypted frames are passed on in the order they were received.
+ * <p>
+ * If too many frames are waiting for a worker, reading from the connection is paused until the workers caught up.
+ *
+ * @author agent
+ */
+public class ParallelFrameDecoder extends ByteToMessageDecoder {
+    private static final String TAG = ParallelFrameDecoder.class.getSimpleName();
+    /**
+     * Maximum number of frames per connection waiting for a worker before reading is paused
+     */
+    private static final int MAX_FRAMES_IN_FLIGHT = 64;
+
+    private final EventExecutorGroup workers;
+    /**
+     * Cipher and Signature instances aren't thread-safe, so each job borrows one from these pools
+     */
+    private final Queue<Cipher> ciphers = new ConcurrentLinkedQueue<>();
+    private final Queue<Signature> signatures = new ConcurrentLinkedQueue<>();
+    @Nullable
+    private final PrivateKey localPrivateKey;
+    @Nullable
+    private final PublicKey remotePublicKey;
+    private final long rekeyInterval;
+    @Nullable
+    private SecretKey key;
+    private long frameCounter = 0;
+
+    private OrderedFrameQueue queue;
+    private boolean readCompletePending = false;
+    private boolean readingPaused = false;
+
+    /**
+     * Use the session cipher with the given key and check the signatures of the frames if a public key is given.
+     */
+    public ParallelFrameDecoder(EventExecutorGroup workers, SecretKey key, @Nullable PublicKey remotePublicKey) throws GeneralSecurityException {
+        this(workers, key, null, remotePublicKey, SESSION_REKEY_INTERVAL);
+    }
+
+    /**
+     * Decrypt the frames with the given private key and check the signatures of the frames if a public key is given.
+     */
+    public ParallelFrameDecoder(EventExecutorGroup workers, PrivateKey localPrivateKey, @Nullable PublicKey remotePublicKey) throws GeneralSecurityException {
+        this(workers, null, localPrivateKey, remotePublicKey, SESSION_REKEY_INTERVAL);
+    }
+
+    ParallelFrameDecoder(EventExecutorGroup workers, @Nullable SecretKey key, @Nullable PrivateKey localPrivateKey,
+                         @Nullable PublicKey remotePublicKey, long rekeyInterval) throws GeneralSecurityException {
+        this.workers = workers;
+        this.key = key;
+        this.localPrivateKey = localPrivateKey;
+        this.remotePublicKey = remotePublicKey;
+        this.rekeyInterval = rekeyInterval;
+        // fail early if the algorithms are not available
+        ciphers.add(newCipher());
+        if (remotePublicKey != null) {
+            signatures.add(newSignature());
+        }
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) throws Exception {
+        queue = new OrderedFrameQueue(workers, ctx.executor()) {
+            @Override
+            protected void emitted() {
+                if (readingPaused && size() <= MAX_FRAMES_IN_FLIGHT / 2) {
+                    readingPaused = false;
+                    ctx.channel().config().setAutoRead(true);
+                }
+                if (readCompletePending && size() == 0) {
+                    readCompletePending = false;
+                    ctx.fireChannelReadComplete();
+                }
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                Log.w(TAG, "Could not decrypt frame, closing connection", cause);
+                ctx.fireExceptionCaught(cause);
+                ctx.close();
+            }
+        };
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        queue.close(new ClosedChannelException());
+        super.handlerRemoved0(ctx);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        while (in.readableBytes() >= 4) {
+            final int encryptedLength = in.getInt(in.readerIndex());
+            if (encryptedLength < 0) {
+                ctx.close();
+                throw new CorruptedFrameException("Negative frame length " + encryptedLength);
+            }
+            if (in.readableBytes() < 4 + encryptedLength) {
+                return;
+            }
+            in.skipBytes(4);
+            // copy instead of slicing, as the cumulation buffer may be discarded or reused while the job is running
+            final ByteBuf frame = ctx.alloc().buffer(encryptedLength);
+            in.readBytes(frame, encryptedLength);
+            queue.submit(new DecryptJob(ctx, frame, key, frameCounter));
+            if (key != null) {
+                frameCounter++;
+                if (frameCounter % rekeyInterval == 0) {
+                    key = SessionKeys.nextKey(key);
+                }
+            }
+
+            if (!readingPaused && queue.size() >= MAX_FRAMES_IN_FLIGHT) {
+                readingPaused = true;
+                ctx.channel().config().setAutoRead(false);
+            }
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        if (queue.size() == 0) {
+            super.channelReadComplete(ctx);
+        } else {
+            // will be fired once all frames read so far are decrypted
+            readCompletePending = true;
+        }
+    }
+
+    private Cipher newCipher() throws GeneralSecurityException {
+        if (localPrivateKey != null) {
+            final Cipher cipher = Cipher.getInstance(MESSAGE_CRYPT_ALG);
+            cipher.init(Cipher.DECRYPT_MODE, localPrivateKey);
+            return cipher;
+        } else {
+            return Cipher.getInstance(SESSION_CRYPT_ALG);
+        }
+    }
+
+    private Signature newSignature() throws GeneralSecurityException {
+        final Signature signature = Signature.getInstance(MESSAGE_SIGN_ALG);
+        signature.initVerify(remotePublicKey);
+        return signature;
+    }
+
+    private class DecryptJob extends OrderedFrameQueue.Job {
+        private final ChannelHandlerContext ctx;
+        @Nullable
+        private final SecretKey frameKey;
+        private final long frameNumber;
+
+        DecryptJob(ChannelHandlerContext ctx, ByteBuf input, @Nullable SecretKey frameKey, long frameNumber) {
+            super(input);
+            this.ctx = ctx;
+            this.frameKey = frameKey;
+            this.frameNumber = frameNumber;
+        }
+
+        @Override
+        Object process(ByteBuf input) throws GeneralSecurityException {
+            final ByteBuf decrypted;
+            Cipher cipher = ciphers.poll();
+            if (cipher == null) {
+                cipher = newCipher();
+            }
+            try {
+                if (frameKey != null) {
+                    cipher.init(Cipher.DECRYPT_MODE, frameKey, frameParameters(frameNumber));
+                }
+                decrypted = Decrypter.doFinal(cipher, ctx.alloc(), input.nioBuffer());
+            } finally {
+                ciphers.add(cipher);
+            }
+            if (remotePublicKey == null) {
+                return decrypted;
+            }
+
+            Signature signature = signatures.poll();
+            try {
+                if (signature == null) {
+                    signature = newSignature();
+                }
+                // the slice shares the reference count of the decrypted frame
+                return SignatureChecker.verify(signature, decrypted);
+            } catch (GeneralSecurityException | RuntimeException e) {
+                decrypted.release();
+                throw e;
+            } finally {
+                if (signature != null) {
+                    signatures.add(signature);
+                }
+            }
+        }
+
+        @Override
+        void emit(Object result) {
+            ctx.fireChannelRead(result);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.SESSION_REKEY_INTERVAL;
+import static de.unipassau.isl.evs.ssh.core.network.handler.Encrypter.MESSAGE_CRYPT_ALG;
+import static de.unipassau.isl.evs.ssh.core.network.handler.SessionEncrypter.SESSION_CRYPT_ALG;
+import static de.unipassau.isl.evs.ssh.core.network.handler.SessionEncrypter.frameParameters;
+import static de.unipassau.isl.evs.ssh.core.network.handler.SignatureGenerator.MESSAGE_SIGN_ALG;
+
+/**
+ * Replaces the {@link SignatureGenerator} and the {@link SessionEncrypter} or {@link Encrypter} by signing and
+ * encrypting each outgoing frame on a pool of worker threads. The frames are written in the order they were
+ * received, so the peer can't tell the difference and uses its usual handlers or a {@link ParallelFrameDecoder}.
+ * <p>
+ * The frame number and the session key of every frame are assigned on the event loop, only the crypto operations
+ * themselves run in parallel. Flushes are delayed until all frames written before them have been encrypted.
+ *
+ * @author agent
+ */
+public class ParallelFrameEncoder extends ChannelHandlerAdapter {
+    private static final String TAG = ParallelFrameEncoder.class.getSimpleName();
+
+    private final EventExecutorGroup workers;
+    /**
+     * Cipher and Signature instances aren't thread-safe, so each job borrows one from these pools
+     */
+    private final Queue<Cipher> ciphers = new ConcurrentLinkedQueue<>();
+    private final Queue<Signature> signatures = new ConcurrentLinkedQueue<>();
+    @Nullable
+    private final PublicKey remotePublicKey;
+    @Nullable
+    private final PrivateKey localPrivateKey;
+    private final long rekeyInterval;
+    @Nullable
+    private SecretKey key;
+    private long frameCounter = 0;
+
+    private OrderedFrameQueue queue;
+    /**
+     * Flush once this number of frames has been written, or {@code -1} if no flush is pending
+     */
+    private long flushAfter = -1;
+
+    /**
+     * Use the session cipher with the given key and sign the frames if a private key is given.
+     */
+    public ParallelFrameEncoder(EventExecutorGroup workers, SecretKey key, @Nullable PrivateKey localPrivateKey) throws GeneralSecurityException {
+        this(workers, key, null, localPrivateKey, SESSION_REKEY_INTERVAL);
+    }
+
+    /**
+     * Encrypt the frames for the given public key and sign the frames if a private key is given.
+     */
+    public ParallelFrameEncoder(EventExecutorGroup workers, PublicKey remotePublicKey, @Nullable PrivateKey localPrivateKey) throws GeneralSecurityException {
+        this(workers, null, remotePublicKey, localPrivateKey, SESSION_REKEY_INTERVAL);
+    }
+
+    ParallelFrameEncoder(EventExecutorGroup workers, @Nullable SecretKey key, @Nullable PublicKey remotePublicKey,
+                         @Nullable PrivateKey localPrivateKey, long rekeyInterval) throws GeneralSecurityException {
+        this.workers = workers;
+        this.key = key;
+        this.remotePublicKey = remotePublicKey;
+        this.localPrivateKey = localPrivateKey;
+        this.rekeyInterval = rekeyInterval;
+        // fail early if the algorithms are not available
+        ciphers.add(newCipher());
+        if (localPrivateKey != null) {
+            signatures.add(newSignature());
+        }
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) throws Exception {
+        queue = new OrderedFrameQueue(workers, ctx.executor()) {
+            @Override
+            protected void emitted() {
+                if (flushAfter >= 0 && getEmitted() >= flushAfter) {
+                    flushAfter = -1;
+                    ctx.flush();
+                }
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                Log.w(TAG, "Could not encrypt frame, closing connection", cause);
+                ctx.close();
+            }
+        };
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        queue.close(new ClosedChannelException());
+        super.handlerRemoved(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            queue.submit(new EncryptJob(ctx, (ByteBuf) msg, promise, key, frameCounter));
+            if (key != null) {
+                frameCounter++;
+                if (frameCounter % rekeyInterval == 0) {
+                    key = SessionKeys.nextKey(key);
+                }
+            }
+        } else {
+            // don't let other messages overtake the frames that are still being encrypted
+            queue.submitCompleted(new EncryptJob(ctx, null, promise, null, -1), msg);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (queue.size() == 0) {
+            ctx.flush();
+        } else {
+            flushAfter = queue.getSubmitted();
+        }
+    }
+
+    private Cipher newCipher() throws GeneralSecurityException {
+        if (remotePublicKey != null) {
+            final Cipher cipher = Cipher.getInstance(MESSAGE_CRYPT_ALG);
+            cipher.init(Cipher.ENCRYPT_MODE, remotePublicKey);
+            return cipher;
+        } else {
+            return Cipher.getInstance(SESSION_CRYPT_ALG);
+        }
+    }
+
+    private Signature newSignature() throws GeneralSecurityException {
+        final Signature signature = Signature.getInstance(MESSAGE_SIGN_ALG);
+        signature.initSign(localPrivateKey);
+        return signature;
+    }
+
+    private class EncryptJob extends OrderedFrameQueue.Job {
+        private final ChannelHandlerContext ctx;
+        private final ChannelPromise promise;
+        @Nullable
+        private final SecretKey frameKey;
+        private final long frameNumber;
+
+        EncryptJob(ChannelHandlerContext ctx, @Nullable ByteBuf input, ChannelPromise promise, @Nullable SecretKey frameKey, long frameNumber) {
+            super(input);
+            this.ctx = ctx;
+            this.promise = promise;
+            this.frameKey = frameKey;
+            this.frameNumber = frameNumber;
+        }
+
+        @Override
+        Object process(ByteBuf input) throws GeneralSecurityException {
+            final ByteBufAllocator alloc = ctx.alloc();
+            ByteBuf frame = input;
+            try {
+                if (localPrivateKey != null) {
+                    Signature signature = signatures.poll();
+                    if (signature == null) {
+                        signature = newSignature();
+                    }
+                    try {
+                        frame = SignatureGenerator.sign(signature, alloc, input);
+                    } finally {
+                        signatures.add(signature);
+                    }
+                }
+
+                Cipher cipher = ciphers.poll();
+                if (cipher == null) {
+                    cipher = newCipher();
+                }
+                try {
+                    if (frameKey != null) {
+                        cipher.init(Cipher.ENCRYPT_MODE, frameKey, frameParameters(frameNumber));
+                    }
+                    return encrypt(cipher, alloc, frame);
+                } finally {
+                    ciphers.add(cipher);
+                }
+            } finally {
+                if (frame != input) {
+                    frame.release();
+                }
+            }
+        }
+
+        @Override
+        void emit(Object result) {
+            ctx.write(result, promise);
+        }
+
+        @Override
+        void discard(Throwable cause) {
+            super.discard(cause);
+            promise.tryFailure(cause);
+        }
+    }
+
+    /**
+     * @return the encrypted frame, prefixed with its length just like the frames of the {@link SessionEncrypter}
+     */
+    private static ByteBuf encrypt(Cipher cipher, ByteBufAllocator alloc, ByteBuf in) throws GeneralSecurityException {
+        final int encryptedLength = cipher.getOutputSize(in.readableBytes());
+        final ByteBuf out = alloc.buffer(4 + encryptedLength);
+        try {
+            out.writeInt(encryptedLength);
+            final ByteBuffer outNio = out.nioBuffer(out.writerIndex(), encryptedLength);
+            Encrypter.doFinal(cipher, in, outNio);
+            out.writerIndex(out.writerIndex() + encryptedLength - outNio.remaining());
+            return out;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+}
@@ -28,6 +28,7 @@ package de.unipassau.isl.evs.ssh.core.network.handler;
 
 import android.util.Log;
 
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.ReferenceCountUtil;
@@ -38,6 +39,7 @@ import io.netty.util.ReferenceCountUtil;
  *
  * @author Niko Fink
  */
+@ChannelHandler.Sharable
 public class PipelinePlug extends ChannelHandlerAdapter {
     private static final String TAG = PipelinePlug.class.getSimpleName();
 
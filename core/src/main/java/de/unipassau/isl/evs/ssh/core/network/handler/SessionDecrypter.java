@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ReplayingDecoder;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.SESSION_REKEY_INTERVAL;
+import static de.unipassau.isl.evs.ssh.core.network.handler.SessionEncrypter.SESSION_CRYPT_ALG;
+import static de.unipassau.isl.evs.ssh.core.network.handler.SessionEncrypter.frameParameters;
+
+/**
+ * Decrypts and authenticates the frames encrypted by the {@link SessionEncrypter} of the peer.
+ * Frames that fail the authentication, e.g. because they were modified, replayed or dropped, cause the connection
+ * to be closed.
+ *
+ * @author agent
+ */
+public class SessionDecrypter extends ReplayingDecoder {
+    private static final String TAG = SessionDecrypter.class.getSimpleName();
+
+    private final Cipher decryptCipher;
+    private final long rekeyInterval;
+    private SecretKey key;
+    private long frameCounter = 0;
+
+    public SessionDecrypter(SecretKey key) throws GeneralSecurityException {
+        this(key, SESSION_REKEY_INTERVAL);
+    }
+
+    SessionDecrypter(SecretKey key, long rekeyInterval) throws GeneralSecurityException {
+        this.decryptCipher = Cipher.getInstance(SESSION_CRYPT_ALG);
+        this.rekeyInterval = rekeyInterval;
+        this.key = key;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> decoded) throws Exception {
+        try {
+            final int encryptedLength = in.readInt();
+            // will replay if the frame is not completely received yet, so do this before touching any state
+            final ByteBuffer inNio = in.nioBuffer(in.readerIndex(), encryptedLength);
+
+            decryptCipher.init(Cipher.DECRYPT_MODE, key, frameParameters(frameCounter));
+            final ByteBuf out = Decrypter.doFinal(decryptCipher, ctx.alloc(), inNio);
+            in.readerIndex(in.readerIndex() + encryptedLength);
+
+            frameCounter++;
+            if (frameCounter % rekeyInterval == 0) {
+                key = SessionKeys.nextKey(key);
+            }
+            decoded.add(out);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            ctx.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.SESSION_REKEY_INTERVAL;
+
+/**
+ * Encrypts outgoing frames using AES-GCM with the per-connection {@link SessionKeys}.
+ * The GCM nonce is built from a frame counter that is never transmitted, but counted by the {@link SessionDecrypter}
+ * on the other side. This way the nonce is never reused and frames that are dropped, reordered or replayed can't be
+ * decrypted by the peer. After {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#SESSION_REKEY_INTERVAL}
+ * frames, the key is replaced by {@link SessionKeys#nextKey(SecretKey)}.
+ *
+ * @author agent
+ */
+public class SessionEncrypter extends MessageToByteEncoder<ByteBuf> {
+    private static final String TAG = SessionEncrypter.class.getSimpleName();
+    static final String SESSION_CRYPT_ALG = "AES/GCM/NoPadding";
+    static final int TAG_LENGTH_BITS = 128;
+    static final int NONCE_LENGTH = 12;
+
+    private final Cipher encryptCipher;
+    private final long rekeyInterval;
+    private SecretKey key;
+    private long frameCounter = 0;
+
+    public SessionEncrypter(SecretKey key) throws GeneralSecurityException {
+        this(key, SESSION_REKEY_INTERVAL);
+    }
+
+    SessionEncrypter(SecretKey key, long rekeyInterval) throws GeneralSecurityException {
+        this.encryptCipher = Cipher.getInstance(SESSION_CRYPT_ALG);
+        this.rekeyInterval = rekeyInterval;
+        this.key = key;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf in, ByteBuf out) throws Exception {
+        encryptCipher.init(Cipher.ENCRYPT_MODE, key, frameParameters(frameCounter));
+
+        final int decryptedLength = in.readableBytes();
+        final int encryptedLength = encryptCipher.getOutputSize(decryptedLength);
+        out.writeInt(encryptedLength);
+
+        out.ensureWritable(encryptedLength);
+        final ByteBuffer outNio = out.nioBuffer(out.writerIndex(), encryptedLength);
+        Encrypter.doFinal(encryptCipher, in, outNio);
+        out.writerIndex(out.writerIndex() + encryptedLength - outNio.remaining());
+
+        frameCounter++;
+        if (frameCounter % rekeyInterval == 0) {
+            key = SessionKeys.nextKey(key);
+        }
+    }
+
+    /**
+     * @return the GCM parameters for the frame with the given number, using the frame number as nonce
+     */
+    static GCMParameterSpec frameParameters(long frameCounter) {
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        for (int i = NONCE_LENGTH - 1; i >= NONCE_LENGTH - 8; i--) {
+            nonce[i] = (byte) frameCounter;
+            frameCounter >>>= 8;
+        }
+        return new GCMParameterSpec(TAG_LENGTH_BITS, nonce);
+    }
+}
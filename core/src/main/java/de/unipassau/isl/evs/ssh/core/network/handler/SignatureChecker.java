@@ -26,6 +26,7 @@
 
 package de.unipassau.isl.evs.ssh.core.network.handler;
 
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.PublicKey;
 import java.security.Signature;
@@ -34,11 +35,13 @@ import java.security.SignatureException;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
 
 import static de.unipassau.isl.evs.ssh.core.network.handler.SignatureGenerator.MESSAGE_SIGN_ALG;
 
 /**
  * The SignatureChecker class is a channel handler that is part of a ChannelPipeline and checks signatures of received messages.
+ * The signed data is forwarded as slice of the received frame without copying it.
  *
  * @author Niko Fink
  */
@@ -54,26 +57,13 @@ public class SignatureChecker extends ChannelHandlerAdapter {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        boolean forwarded = false;
         try {
             if (msg instanceof ByteBuf) {
-                final ByteBuf in = (ByteBuf) msg;
-                final int dataLength = in.readInt();
-                final ByteBuf data = in.readSlice(dataLength);
-                final int signatureLength = in.readInt();
-                final byte[] signature = new byte[signatureLength];
-                in.readBytes(signature);
-
-                verifySignature.update(data.nioBuffer());
-                final boolean valid = verifySignature.verify(signature);
-                //Log.v(TAG, "Read " + dataLength + "b of data with " + signatureLength + "b " +
-                //        (valid ? "valid" : "invalid") + " signature" +
-                //        (Log.isLoggable(TAG, Log.VERBOSE) ? ": " + Arrays.toString(signature) : ""));
-                if (valid) {
-                    data.retain();
-                    ctx.fireChannelRead(data);
-                } else {
-                    throw new SignatureException("Message has a broken signature, closing connection");
-                }
+                final ByteBuf data = verify(verifySignature, (ByteBuf) msg);
+                // the slice shares the reference count of the frame, so whoever consumes the data releases the frame
+                forwarded = true;
+                ctx.fireChannelRead(data);
             } else {
                 throw new SignatureException("Can't check signature of message of type " + (msg != null ? msg.getClass() : "null")
                         + ", closing connection");
@@ -81,6 +71,41 @@ public class SignatureChecker extends ChannelHandlerAdapter {
         } catch (SignatureException | RuntimeException e) {
             ctx.close();
             throw e;
+        } finally {
+            if (!forwarded) {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+    }
+
+    /**
+     * Check the signature of the given frame built by {@link SignatureGenerator#sign(Signature, io.netty.buffer.ByteBufAllocator, ByteBuf)}.
+     *
+     * @return the signed data as slice of the frame
+     * @throws SignatureException if the signature is invalid
+     */
+    static ByteBuf verify(Signature verifySignature, ByteBuf in) throws SignatureException {
+        final int dataLength = in.readInt();
+        final ByteBuf data = in.readSlice(dataLength);
+        final int signatureLength = in.readInt();
+        final ByteBuf signature = in.readSlice(signatureLength);
+
+        for (ByteBuffer buffer : data.nioBuffers()) {
+            verifySignature.update(buffer);
+        }
+        final boolean valid;
+        if (signature.hasArray()) {
+            valid = verifySignature.verify(signature.array(), signature.arrayOffset() + signature.readerIndex(), signatureLength);
+        } else {
+            final byte[] signatureBytes = new byte[signatureLength];
+            signature.getBytes(signature.readerIndex(), signatureBytes);
+            valid = verifySignature.verify(signatureBytes);
+        }
+        //Log.v(TAG, "Read " + dataLength + "b of data with " + signatureLength + "b " +
+        //        (valid ? "valid" : "invalid") + " signature");
+        if (!valid) {
+            throw new SignatureException("Message has a broken signature, closing connection");
         }
+        return data;
     }
-}
\ No newline at end of file
+}
@@ -26,20 +26,27 @@
 
 package de.unipassau.isl.evs.ssh.core.network.handler;
 
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.Signature;
+import java.security.SignatureException;
+import java.util.List;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 
 /**
  * The SignatureGenerator class is a channel handler that is part of a ChannelPipeline and signs messages.
+ * The signed data is not copied, but forwarded as part of a {@link CompositeByteBuf} together with the length header
+ * and the signature.
  *
  * @author Niko Fink
  */
-public class SignatureGenerator extends MessageToByteEncoder<ByteBuf> {
+public class SignatureGenerator extends MessageToMessageEncoder<ByteBuf> {
     private static final String TAG = SignatureGenerator.class.getSimpleName();
     static final String MESSAGE_SIGN_ALG = "SHA224withECDSA";
 
@@ -51,22 +58,30 @@ public class SignatureGenerator extends MessageToByteEncoder<ByteBuf> {
     }
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) throws Exception {
-        final int dataLength = msg.readableBytes();
-        msg.markReaderIndex();
-        out.writeInt(dataLength);
-        out.writeBytes(msg);
-        msg.resetReaderIndex();
-
-        signSignature.update(msg.nioBuffer());
-        msg.readerIndex(msg.writerIndex());
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        out.add(sign(signSignature, ctx.alloc(), msg));
+    }
 
+    /**
+     * Sign the given data and build the frame consisting of the length header, the data and the signature.
+     * The data is retained as part of the frame, so the caller stays responsible for releasing its own reference.
+     */
+    static CompositeByteBuf sign(Signature signSignature, ByteBufAllocator alloc, ByteBuf msg) throws SignatureException {
+        final int dataLength = msg.readableBytes();
+        for (ByteBuffer buffer : msg.nioBuffers()) {
+            signSignature.update(buffer);
+        }
         final byte[] signature = signSignature.sign();
         final int signatureLength = signature.length;
-        out.writeInt(signatureLength);
-        out.writeBytes(signature);
+
+        final ByteBuf header = alloc.buffer(4).writeInt(dataLength);
+        final ByteBuf trailer = alloc.buffer(4 + signatureLength).writeInt(signatureLength).writeBytes(signature);
+        final CompositeByteBuf frame = alloc.compositeBuffer(3);
+        frame.addComponents(header, msg.retain(), trailer);
+        frame.writerIndex(frame.capacity());
 
         //Log.v(TAG, "Signed " + dataLength + "b of data with " + signatureLength + "b signature" +
         //        (Log.isLoggable(TAG, Log.VERBOSE) ? ": " + Arrays.toString(signature) : ""));
+        return frame;
     }
-}
\ No newline at end of file
+}
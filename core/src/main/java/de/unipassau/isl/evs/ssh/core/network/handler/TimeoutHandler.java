@@ -29,18 +29,38 @@ package de.unipassau.isl.evs.ssh.core.network.handler;
 import android.util.Log;
 
 import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.HEARTBEAT_MAX_INTERVAL;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.HEARTBEAT_MIN_INTERVAL;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.HEARTBEAT_SLOW_RTT;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.HEARTBEAT_TIMEOUT;
 
 /**
- * TimeoutHandler class is part of the netty pipeline. Handles timeouts by sending {@link PingMessage}.
+ * TimeoutHandler class is part of the netty pipeline. Closes connections where the peer stopped sending and keeps
+ * idle connections alive by sending heartbeats.
+ * <p>
+ * If the {@link HeartbeatCodec} is part of the pipeline, binary {@link Heartbeat Heartbeats} are sent once nothing was
+ * written for the current heartbeat interval. The peer echoes the timestamp of every ping, so that each answer yields
+ * a sample of the round-trip time, which can be queried using {@link #getRoundTripTime(Channel, TimeUnit)}.
+ * The interval starts at {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#HEARTBEAT_MIN_INTERVAL}
+ * after connecting and is doubled after every timely answer up to
+ * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#HEARTBEAT_MAX_INTERVAL}. A slow answer resets it,
+ * so that a degrading connection is probed more often, and a ping not answered within
+ * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#HEARTBEAT_TIMEOUT} closes the connection.
+ * <p>
+ * Peers that don't support the {@link HeartbeatCodec} still get a {@link PingMessage} whenever the writer is idle.
  *
  * @author Phil Werli
  */
@@ -48,10 +68,39 @@ public class TimeoutHandler extends ChannelHandlerAdapter {
     private static final String TAG = TimeoutHandler.class.getSimpleName();
 
     private static final AttributeKey<Boolean> SEND_PINGS = AttributeKey.valueOf(TimeoutHandler.class, "SEND_PINGS");
+    private static final AttributeKey<Long> ROUND_TRIP_TIME = AttributeKey.valueOf(TimeoutHandler.class, "ROUND_TRIP_TIME");
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final long timeout;
+    private final long slowRoundTripTime;
+
+    private ScheduledFuture<?> scheduledHeartbeat;
+    private long interval;
+    private long lastWriteTime = System.nanoTime();
+    private boolean awaitingPong = false;
+    private long pingTime;
+    private long smoothedRoundTripTime = -1;
+
+    public TimeoutHandler() {
+        this(HEARTBEAT_MIN_INTERVAL, HEARTBEAT_MAX_INTERVAL, HEARTBEAT_TIMEOUT, HEARTBEAT_SLOW_RTT);
+    }
+
+    /**
+     * All times are in milliseconds.
+     */
+    TimeoutHandler(long minInterval, long maxInterval, long timeout, long slowRoundTripTime) {
+        this.minInterval = TimeUnit.MILLISECONDS.toNanos(minInterval);
+        this.maxInterval = TimeUnit.MILLISECONDS.toNanos(maxInterval);
+        this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.slowRoundTripTime = TimeUnit.MILLISECONDS.toNanos(slowRoundTripTime);
+        this.interval = this.minInterval;
+    }
 
     /**
      * Handles received timeout event.
-     * Sends a {@link PingMessage}.
+     * Closes the connection if nothing was read for too long and sends a {@link PingMessage} to peers not
+     * supporting the {@link HeartbeatCodec}.
      */
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
@@ -61,7 +110,7 @@ public class TimeoutHandler extends ChannelHandlerAdapter {
                 Log.d(TAG, "Connection timed out");
                 ctx.close();
             } else if (e.state() == IdleState.WRITER_IDLE) {
-                if (getPingEnabled(ctx.channel())) {
+                if (getPingEnabled(ctx.channel()) && !isBinaryHeartbeat(ctx)) {
                     ctx.writeAndFlush(new PingMessage());
                 }
             }
@@ -69,13 +118,23 @@ public class TimeoutHandler extends ChannelHandlerAdapter {
     }
 
     /**
-     * Calls {@link ChannelHandlerAdapter#channelRead(ChannelHandlerContext, Object)} when the sent message
-     * is not an object of
-     * {@link de.unipassau.isl.evs.ssh.core.network.handler.TimeoutHandler.PingMessage PingMessage} class.
+     * Answers and evaluates {@link Heartbeat Heartbeats} and calls
+     * {@link ChannelHandlerAdapter#channelRead(ChannelHandlerContext, Object)} when the sent message
+     * is neither a Heartbeat nor a
+     * {@link de.unipassau.isl.evs.ssh.core.network.handler.TimeoutHandler.PingMessage PingMessage}.
      */
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if (msg instanceof PingMessage) {
+        if (msg instanceof Heartbeat) {
+            final Heartbeat heartbeat = (Heartbeat) msg;
+            if (heartbeat.isPong) {
+                handlePong(ctx, heartbeat);
+            } else {
+                // echo the timestamp, so that the peer can calculate the round-trip time
+                lastWriteTime = System.nanoTime();
+                ctx.writeAndFlush(new Heartbeat(true, heartbeat.timestamp));
+            }
+        } else if (msg instanceof PingMessage) {
             // discard message
             ReferenceCountUtil.release(msg);
         } else {
@@ -84,14 +143,138 @@ public class TimeoutHandler extends ChannelHandlerAdapter {
         }
     }
 
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        // every written message keeps the connection alive, so heartbeats are only needed on idle connections
+        lastWriteTime = System.nanoTime();
+        super.write(ctx, msg, promise);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancelHeartbeat();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancelHeartbeat();
+        super.handlerRemoved(ctx);
+    }
+
+    //Heartbeat////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean isBinaryHeartbeat(ChannelHandlerContext ctx) {
+        return ctx.pipeline().get(HeartbeatCodec.class) != null;
+    }
+
+    private void scheduleHeartbeat(final ChannelHandlerContext ctx) {
+        if (scheduledHeartbeat != null || !ctx.channel().isActive()
+                || !getPingEnabled(ctx.channel()) || !isBinaryHeartbeat(ctx)) {
+            return;
+        }
+        final long now = System.nanoTime();
+        long next = lastWriteTime + interval;
+        if (awaitingPong) {
+            next = Math.min(next, pingTime + timeout);
+        }
+        scheduledHeartbeat = ctx.executor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                scheduledHeartbeat = null;
+                heartbeat(ctx);
+            }
+        }, Math.max(next - now, 0), TimeUnit.NANOSECONDS);
+    }
+
+    private void cancelHeartbeat() {
+        if (scheduledHeartbeat != null) {
+            scheduledHeartbeat.cancel(false);
+            scheduledHeartbeat = null;
+        }
+    }
+
+    private void heartbeat(ChannelHandlerContext ctx) {
+        final long now = System.nanoTime();
+        if (awaitingPong && now - pingTime >= timeout) {
+            Log.d(TAG, "Heartbeat not answered within " + TimeUnit.NANOSECONDS.toMillis(timeout) + "ms, closing connection");
+            ctx.close();
+            return;
+        }
+        if (!awaitingPong && now - lastWriteTime >= interval) {
+            ping(ctx);
+        }
+        scheduleHeartbeat(ctx);
+    }
+
+    /**
+     * Send a ping {@link Heartbeat} containing the current time, which will be echoed by the peer.
+     */
+    void ping(ChannelHandlerContext ctx) {
+        pingTime = System.nanoTime();
+        awaitingPong = true;
+        lastWriteTime = pingTime;
+        ctx.writeAndFlush(new Heartbeat(false, pingTime));
+    }
+
+    private void handlePong(ChannelHandlerContext ctx, Heartbeat pong) {
+        if (!awaitingPong || pong.timestamp != pingTime) {
+            Log.w(TAG, "Discarding unexpected Heartbeat answer");
+            return;
+        }
+        awaitingPong = false;
+        final long sample = System.nanoTime() - pingTime;
+        if (sample > slowRoundTripTime && sample > 2 * smoothedRoundTripTime) {
+            // the connection is getting worse, so check it more often
+            interval = minInterval;
+        } else {
+            interval = Math.min(interval * 2, maxInterval);
+        }
+        if (smoothedRoundTripTime < 0) {
+            smoothedRoundTripTime = sample;
+        } else {
+            // exponentially weighted moving average, like the SRTT of TCP
+            smoothedRoundTripTime = (7 * smoothedRoundTripTime + sample) / 8;
+        }
+        ctx.channel().attr(ROUND_TRIP_TIME).set(smoothedRoundTripTime);
+    }
+
     /**
-     * Empty class used for simple ping messages.
+     * Empty class used for simple ping messages to peers not supporting the {@link HeartbeatCodec}.
      */
     public static class PingMessage implements Serializable {
     }
 
+    /**
+     * Ping or the answer to a ping, which is translated to a binary frame by the {@link HeartbeatCodec}.
+     */
+    public static class Heartbeat {
+        public final boolean isPong;
+        /**
+         * {@link System#nanoTime()} of the pinging device, only meaningful to that device
+         */
+        public final long timestamp;
+
+        public Heartbeat(boolean isPong, long timestamp) {
+            this.isPong = isPong;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return (isPong ? "Pong" : "Ping") + "{" + timestamp + "}";
+        }
+    }
+
+    /**
+     * Enable or disable sending pings on this channel. Heartbeats are only sent once the handshake is finished.
+     */
     public static void setPingEnabled(Channel ch, boolean enabled) {
         ch.attr(TimeoutHandler.SEND_PINGS).set(enabled);
+        final ChannelHandlerContext ctx = ch.pipeline().context(TimeoutHandler.class);
+        if (enabled && ctx != null) {
+            ((TimeoutHandler) ctx.handler()).scheduleHeartbeat(ctx);
+        }
     }
 
     public static boolean getPingEnabled(Channel ch) {
@@ -99,4 +282,13 @@ public class TimeoutHandler extends ChannelHandlerAdapter {
         attr.setIfAbsent(false);
         return attr.get();
     }
+
+    /**
+     * @return the smoothed round-trip time measured by the binary heartbeats of this channel in the given unit,
+     * or {@code -1} if no heartbeat was answered yet or the peer doesn't support them
+     */
+    public static long getRoundTripTime(Channel ch, TimeUnit unit) {
+        final Long rtt = ch.attr(ROUND_TRIP_TIME).get();
+        return rtt == null ? -1 : unit.convert(rtt, TimeUnit.NANOSECONDS);
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handler;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.TrafficClass;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Prioritizes the messages written to a connection according to their {@link TrafficClass}.
+ * <p/>
+ * {@link TrafficClass#CONTROL CONTROL} and {@link TrafficClass#DEFAULT DEFAULT} messages are passed on directly,
+ * while {@link TrafficClass#BULK BULK} messages are held back so that only a single one is being written at a time.
+ * This way a message that is sent while a large camera image is being transferred only has to wait for the frame that
+ * is currently written instead of all images that were sent before it. Bulk messages are written in the order they
+ * were sent, but may be overtaken by other messages.
+ *
+ * @author agent
+ */
+public class TrafficScheduler extends ChannelHandlerAdapter {
+    private final Queue<PendingWrite> pendingBulk = new ArrayDeque<>();
+    private boolean bulkInFlight = false;
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (getTrafficClass(msg) == TrafficClass.BULK) {
+            pendingBulk.add(new PendingWrite(msg, promise));
+            writeNextBulk(ctx, false);
+        } else {
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        failPending();
+        super.close(ctx, promise);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // the connection might also be closed by the remote side, in which case close isn't called
+        failPending();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        // pass on all held back messages, so that they don't get lost when the pipeline is changed
+        for (PendingWrite write; (write = pendingBulk.poll()) != null; ) {
+            ctx.write(write.msg, write.promise);
+        }
+        ctx.flush();
+        super.handlerRemoved(ctx);
+    }
+
+    /**
+     * @return the TrafficClass of the given message, {@link TrafficClass#CONTROL CONTROL} for internal messages like
+     * pings
+     */
+    protected TrafficClass getTrafficClass(Object msg) {
+        if (msg instanceof Message.AddressedMessage) {
+            return TrafficClass.forMessage((Message.AddressedMessage) msg);
+        } else {
+            return TrafficClass.CONTROL;
+        }
+    }
+
+    /**
+     * @return the number of bulk messages that are held back
+     */
+    public int getPendingBulkCount() {
+        return pendingBulk.size();
+    }
+
+    private void writeNextBulk(final ChannelHandlerContext ctx, boolean flush) {
+        if (bulkInFlight) {
+            return;
+        }
+        final PendingWrite write = pendingBulk.poll();
+        if (write == null) {
+            return;
+        }
+        bulkInFlight = true;
+        final ChannelPromise promise = ctx.newPromise();
+        promise.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    write.promise.trySuccess();
+                } else {
+                    write.promise.tryFailure(future.cause());
+                }
+                bulkInFlight = false;
+                // this listener is called while the channel is being flushed, so a flush would be ignored right now
+                ctx.executor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        writeNextBulk(ctx, true);
+                    }
+                });
+            }
+        });
+        ctx.write(write.msg, promise);
+        if (flush) {
+            ctx.flush();
+        }
+    }
+
+    private void failPending() {
+        for (PendingWrite write; (write = pendingBulk.poll()) != null; ) {
+            ReferenceCountUtil.release(write.msg);
+            write.promise.tryFailure(new ClosedChannelException());
+        }
+    }
+
+    private static class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
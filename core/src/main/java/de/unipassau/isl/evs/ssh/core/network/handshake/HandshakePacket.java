@@ -46,7 +46,18 @@ public abstract class HandshakePacket implements Serializable {
     /**
      * Used by peers to check if they talk a compatible version of the handshake protocol
      */
-    public static final int PROTOCOL_VERSION = 3;
+    public static final int PROTOCOL_VERSION = 5;
+    /**
+     * The {@link Capability Capabilities} this device advertises in its {@link Hello}
+     */
+    public static final int SUPPORTED_CAPABILITIES = Capability.maskOf(
+            Capability.SESSION_CIPHER,
+            Capability.AUTHENTICATED_CHANNEL,
+            Capability.COMPACT_CODEC,
+            Capability.SESSION_RESUMPTION,
+            Capability.BINARY_HEARTBEAT,
+            Capability.FRAME_COMPRESSION
+    );
 
     /**
      * Used for debugging purposes to easier identify HandshakePackets in network dumps
@@ -55,6 +66,69 @@ public abstract class HandshakePacket implements Serializable {
 
     public abstract String toString();
 
+    /**
+     * Optional features of the connection a device can advertise in its {@link Hello}.
+     * A feature is only used if both peers advertised it, so that devices not knowing it still use the previous behaviour.
+     * Capabilities are transferred as bit mask instead of an EnumSet, so that unknown capabilities advertised by newer
+     * devices are simply ignored instead of failing deserialization.
+     */
+    public enum Capability {
+        /**
+         * Frames are encrypted using AES-GCM with the {@link SessionKeys} derived for this connection instead of ECIES
+         */
+        SESSION_CIPHER,
+        /**
+         * Frames are only authenticated by the GCM tag of the {@link #SESSION_CIPHER} and no longer signed with ECDSA.
+         * The GCM nonce is the implicit frame number, so replayed or reordered frames are still rejected.
+         * The peers are still authenticated, as only the owners of both private keys can derive the {@link SessionKeys}
+         * and the CHAP exchange proves that the peer got the same keys.
+         * Requires {@link #SESSION_CIPHER}.
+         */
+        AUTHENTICATED_CHANNEL,
+        /**
+         * AddressedMessages are sent using the binary {@link de.unipassau.isl.evs.ssh.core.messaging.MessageCodec}
+         * instead of Java Serialization.
+         */
+        COMPACT_CODEC,
+        /**
+         * The Master issues a {@link SessionTicket} after a successful handshake, which the Client can use to
+         * {@link Resume} later connections without the certificate exchange and the CHAP rounds.
+         * Requires {@link #SESSION_CIPHER} and {@link #AUTHENTICATED_CHANNEL}, as resumed connections are only protected
+         * by the keys derived from the ticket.
+         */
+        SESSION_RESUMPTION,
+        /**
+         * Idle connections are kept alive using the binary frames of the
+         * {@link de.unipassau.isl.evs.ssh.core.network.handler.HeartbeatCodec} instead of serialized PingMessages.
+         * The heartbeats also measure the round-trip time of the connection.
+         */
+        BINARY_HEARTBEAT,
+        /**
+         * Large frames are compressed by the {@link de.unipassau.isl.evs.ssh.core.network.handler.FrameCompressor}
+         * before they are signed and encrypted.
+         */
+        FRAME_COMPRESSION;
+
+        public int mask() {
+            return 1 << ordinal();
+        }
+
+        public static int maskOf(Capability... capabilities) {
+            int mask = 0;
+            for (Capability capability : capabilities) {
+                mask |= capability.mask();
+            }
+            return mask;
+        }
+
+        /**
+         * @return {@code true}, if the peer advertised the given capabilities and this device also supports them
+         */
+        public static boolean isNegotiated(int peerCapabilities, Capability capability) {
+            return (peerCapabilities & SUPPORTED_CAPABILITIES & capability.mask()) != 0;
+        }
+    }
+
     /**
      * Initial HandshakePacket sent by Client and afterwards by Server containing general information about the device
      * and its Certificate.
@@ -64,10 +138,28 @@ public abstract class HandshakePacket implements Serializable {
         public final SerializableBuildConfig buildConfig = SerializableBuildConfig.getInstance();
         public final X509Certificate certificate;
         public final boolean isMaster;
+        /**
+         * Bit mask of the {@link Capability Capabilities} supported by the sender
+         */
+        public final int capabilities;
+        /**
+         * Random data used for deriving the {@link SessionKeys} of this connection
+         */
+        @Nullable
+        public final byte[] sessionNonce;
 
-        public Hello(X509Certificate certificate, boolean isMaster) {
+        public Hello(X509Certificate certificate, boolean isMaster, @Nullable byte[] sessionNonce) {
             this.certificate = certificate;
             this.isMaster = isMaster;
+            this.capabilities = SUPPORTED_CAPABILITIES;
+            this.sessionNonce = sessionNonce;
+        }
+
+        /**
+         * @return {@code true}, if the sender of this Hello and this device both support the given capability
+         */
+        public boolean isNegotiated(Capability capability) {
+            return Capability.isNegotiated(capabilities, capability);
         }
 
         @Override
@@ -77,6 +169,8 @@ public abstract class HandshakePacket implements Serializable {
                     .add("buildConfig", buildConfig)
                     .add("certificate", certificate)
                     .add("isMaster", isMaster)
+                    .add("capabilities", Integer.toBinaryString(capabilities))
+                    .add("sessionNonce", Arrays.toString(sessionNonce))
                     .toString();
         }
 
@@ -210,20 +304,34 @@ public abstract class HandshakePacket implements Serializable {
         @Nullable
         public final byte[] passiveRegistrationToken;
         public final boolean isConnectionLocal;
+        /**
+         * The encrypted {@link SessionTicket} the Client can use to resume the next connection,
+         * only sent if {@link Capability#SESSION_RESUMPTION} was negotiated
+         */
+        @Nullable
+        public final byte[] resumptionTicket;
+        /**
+         * The time in milliseconds the Master will accept the resumptionTicket
+         */
+        public final long ticketLifetime;
 
-        public ServerAuthenticationResponse(boolean isAuthenticated, @Nullable String message, @Nullable byte[] passiveRegistrationToken, boolean isConnectionLocal) {
+        public ServerAuthenticationResponse(boolean isAuthenticated, @Nullable String message, @Nullable byte[] passiveRegistrationToken,
+                                            boolean isConnectionLocal, @Nullable byte[] resumptionTicket, long ticketLifetime) {
             this.isAuthenticated = isAuthenticated;
             this.message = message;
             this.passiveRegistrationToken = passiveRegistrationToken;
             this.isConnectionLocal = isConnectionLocal;
+            this.resumptionTicket = resumptionTicket;
+            this.ticketLifetime = ticketLifetime;
         }
 
-        public static ServerAuthenticationResponse authenticated(@Nullable String message, @Nullable byte[] passiveRegistrationToken, boolean isConnectionLocal) {
-            return new ServerAuthenticationResponse(true, message, passiveRegistrationToken, isConnectionLocal);
+        public static ServerAuthenticationResponse authenticated(@Nullable String message, @Nullable byte[] passiveRegistrationToken,
+                                                                 boolean isConnectionLocal, @Nullable byte[] resumptionTicket, long ticketLifetime) {
+            return new ServerAuthenticationResponse(true, message, passiveRegistrationToken, isConnectionLocal, resumptionTicket, ticketLifetime);
         }
 
         public static ServerAuthenticationResponse unauthenticated(@Nullable String message) {
-            return new ServerAuthenticationResponse(false, message, null, false);
+            return new ServerAuthenticationResponse(false, message, null, false, null, 0);
         }
 
         @Override
@@ -233,10 +341,135 @@ public abstract class HandshakePacket implements Serializable {
                     .add("message", message)
                     .add("passiveRegistrationToken", Arrays.toString(passiveRegistrationToken))
                     .add("isConnectionLocal", isConnectionLocal)
+                    .add("resumptionTicket", resumptionTicket != null ? resumptionTicket.length + "b" : null)
+                    .add("ticketLifetime", ticketLifetime)
                     .toString();
         }
     }
 
+    /**
+     * Sent by the Client instead of its {@link Hello} if it got a {@link SessionTicket} from a previous connection.
+     * The Master answers with a {@link ResumeResponse}. If the ticket was accepted, the Client replies with an encrypted
+     * {@link ResumeFinished} and the handshake is complete, otherwise the Client continues with its Hello.
+     * <p/>
+     * The order of packets is
+     * <table>
+     * <tr>
+     * <th>Client</th>
+     * <th></th>
+     * <th>Server</th>
+     * </tr>
+     * <tr>
+     * <td>Resume</td>
+     * <td>-></td>
+     * <td></td>
+     * </tr>
+     * <tr>
+     * <td></td>
+     * <td><-</td>
+     * <td>ResumeResponse</td>
+     * </tr>
+     * <tr>
+     * <td>ResumeFinished</td>
+     * <td>-></td>
+     * <td></td>
+     * </tr>
+     * </table>
+     */
+    public static class Resume extends HandshakePacket {
+        public final int protocolVersion = PROTOCOL_VERSION;
+        /**
+         * Bit mask of the {@link Capability Capabilities} supported by the sender
+         */
+        public final int capabilities = SUPPORTED_CAPABILITIES;
+        public final byte[] ticket;
+        public final byte[] sessionNonce;
+
+        public Resume(byte[] ticket, byte[] sessionNonce) {
+            this.ticket = ticket;
+            this.sessionNonce = sessionNonce;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("protocolVersion", protocolVersion)
+                    .add("capabilities", Integer.toBinaryString(capabilities))
+                    .add("ticket", ticket != null ? ticket.length + "b" : null)
+                    .add("sessionNonce", Arrays.toString(sessionNonce))
+                    .toString();
+        }
+    }
+
+    /**
+     * Sent by the Server as response to a {@link Resume}.
+     * If the ticket was accepted, the verifier proves that the Server could decrypt the ticket, so that the Client
+     * can trust the Server without checking its certificate. The packet also contains a new ticket for the next
+     * connection.
+     */
+    public static class ResumeResponse extends HandshakePacket {
+        public final boolean isAccepted;
+        @Nullable
+        public final String message;
+        /**
+         * Bit mask of the {@link Capability Capabilities} supported by the sender
+         */
+        public final int capabilities = SUPPORTED_CAPABILITIES;
+        @Nullable
+        public final byte[] sessionNonce;
+        @Nullable
+        public final byte[] verifier;
+        public final boolean isConnectionLocal;
+        @Nullable
+        public final byte[] resumptionTicket;
+        public final long ticketLifetime;
+
+        public ResumeResponse(boolean isAccepted, @Nullable String message, @Nullable byte[] sessionNonce, @Nullable byte[] verifier,
+                              boolean isConnectionLocal, @Nullable byte[] resumptionTicket, long ticketLifetime) {
+            this.isAccepted = isAccepted;
+            this.message = message;
+            this.sessionNonce = sessionNonce;
+            this.verifier = verifier;
+            this.isConnectionLocal = isConnectionLocal;
+            this.resumptionTicket = resumptionTicket;
+            this.ticketLifetime = ticketLifetime;
+        }
+
+        public static ResumeResponse accepted(byte[] sessionNonce, byte[] verifier, boolean isConnectionLocal,
+                                              @Nullable byte[] resumptionTicket, long ticketLifetime) {
+            return new ResumeResponse(true, null, sessionNonce, verifier, isConnectionLocal, resumptionTicket, ticketLifetime);
+        }
+
+        public static ResumeResponse rejected(@Nullable String message) {
+            return new ResumeResponse(false, message, null, null, false, null, 0);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("isAccepted", isAccepted)
+                    .add("message", message)
+                    .add("capabilities", Integer.toBinaryString(capabilities))
+                    .add("sessionNonce", Arrays.toString(sessionNonce))
+                    .add("verifier", Arrays.toString(verifier))
+                    .add("isConnectionLocal", isConnectionLocal)
+                    .add("resumptionTicket", resumptionTicket != null ? resumptionTicket.length + "b" : null)
+                    .add("ticketLifetime", ticketLifetime)
+                    .toString();
+        }
+    }
+
+    /**
+     * Sent by the Client after it accepted the {@link ResumeResponse}. As this packet is already encrypted with the
+     * resumed {@link SessionKeys}, it proves that the Client knows the resumption secret of the ticket.
+     */
+    public static class ResumeFinished extends HandshakePacket {
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).toString();
+        }
+    }
+
     /**
      * Sent by the Client to actively register himself to the master by sending the token the master displayed as part
      * of a QR-Code.
@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handshake;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The symmetric keys used for protecting the frames of a single connection once both peers advertised
+ * {@link HandshakePacket.Capability#SESSION_CIPHER} in their {@link HandshakePacket.Hello}.
+ * <p/>
+ * The shared secret is obtained via ECDH from the own private key and the public key of the certificate the peer sent
+ * in its Hello, so that only the owners of both certificates can compute it.
+ * The random nonces exchanged in both Hellos are used as salt for a HKDF (RFC 5869), so that every connection gets
+ * fresh keys even though the certificates never change. One key is derived for each direction.
+ * <p/>
+ * Additionally, a resumption secret is derived, which the Master puts into a {@link SessionTicket} so that the Client
+ * can later {@link #resume(SecretKey, byte[], byte[]) resume} without repeating the ECDH and the certificate exchange.
+ *
+ * @author agent
+ */
+public class SessionKeys {
+    /**
+     * Length of the random nonces each peer sends in its {@link HandshakePacket.Hello}
+     */
+    public static final int NONCE_LENGTH = 32;
+    /**
+     * Algorithm of the derived keys, used with {@code AES/GCM/NoPadding} by the session crypt handlers
+     */
+    public static final String SESSION_KEY_ALG = "AES";
+    private static final String KEY_AGREEMENT_ALG = "ECDH";
+    private static final String KDF_MAC_ALG = "HmacSHA256";
+    private static final int SESSION_KEY_LENGTH = 32;
+    private static final byte[] INFO_CLIENT_KEY = "ssh client write key".getBytes();
+    private static final byte[] INFO_SERVER_KEY = "ssh server write key".getBytes();
+    private static final byte[] INFO_REKEY = "ssh rekey".getBytes();
+    private static final byte[] INFO_RESUMPTION_SECRET = "ssh resumption secret".getBytes();
+    private static final byte[] INFO_RESUME_VERIFIER = "ssh resume verifier".getBytes();
+
+    private final SecretKey clientWriteKey;
+    private final SecretKey serverWriteKey;
+    private final SecretKey resumptionSecret;
+
+    private SessionKeys(SecretKey clientWriteKey, SecretKey serverWriteKey, SecretKey resumptionSecret) {
+        this.clientWriteKey = clientWriteKey;
+        this.serverWriteKey = serverWriteKey;
+        this.resumptionSecret = resumptionSecret;
+    }
+
+    /**
+     * Derive the keys for a new connection. Client and Server will get the same keys, as ECDH yields the same secret
+     * for {@code (clientPrivate, serverPublic)} and {@code (serverPrivate, clientPublic)}.
+     *
+     * @param localPrivateKey the private key of this device
+     * @param remotePublicKey the public key from the certificate of the peer
+     * @param clientNonce     the nonce sent in the Hello of the Client
+     * @param serverNonce     the nonce sent in the Hello of the Server
+     */
+    public static SessionKeys derive(PrivateKey localPrivateKey, PublicKey remotePublicKey,
+                                     byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        checkNonces(clientNonce, serverNonce);
+
+        final KeyAgreement agreement = KeyAgreement.getInstance(KEY_AGREEMENT_ALG);
+        agreement.init(localPrivateKey);
+        agreement.doPhase(remotePublicKey, true);
+        final byte[] sharedSecret = agreement.generateSecret();
+
+        final SessionKeys keys = fromSecret(sharedSecret, clientNonce, serverNonce);
+        Arrays.fill(sharedSecret, (byte) 0);
+        return keys;
+    }
+
+    /**
+     * Derive the keys for a resumed connection from the {@link #getResumptionSecret() resumption secret} of a previous
+     * connection. As fresh nonces are used, the resumed connection still gets new keys.
+     *
+     * @param resumptionSecret the resumption secret from the {@link SessionTicket}
+     * @param clientNonce      the nonce sent in the {@link HandshakePacket.Resume} of the Client
+     * @param serverNonce      the nonce sent in the {@link HandshakePacket.ResumeResponse} of the Server
+     */
+    public static SessionKeys resume(SecretKey resumptionSecret, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        checkNonces(clientNonce, serverNonce);
+        return fromSecret(resumptionSecret.getEncoded(), clientNonce, serverNonce);
+    }
+
+    /**
+     * Compute the value the Server sends in its {@link HandshakePacket.ResumeResponse} to prove that it could decrypt
+     * the ticket and thus knows the resumption secret.
+     */
+    public static byte[] resumeVerifier(SecretKey resumptionSecret, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        checkNonces(clientNonce, serverNonce);
+        final byte[] data = new byte[INFO_RESUME_VERIFIER.length + NONCE_LENGTH * 2];
+        System.arraycopy(INFO_RESUME_VERIFIER, 0, data, 0, INFO_RESUME_VERIFIER.length);
+        System.arraycopy(clientNonce, 0, data, INFO_RESUME_VERIFIER.length, NONCE_LENGTH);
+        System.arraycopy(serverNonce, 0, data, INFO_RESUME_VERIFIER.length + NONCE_LENGTH, NONCE_LENGTH);
+        return hmac(resumptionSecret.getEncoded(), data);
+    }
+
+    private static void checkNonces(byte[] clientNonce, byte[] serverNonce) throws HandshakeException {
+        if (clientNonce == null || clientNonce.length != NONCE_LENGTH
+                || serverNonce == null || serverNonce.length != NONCE_LENGTH) {
+            throw new HandshakeException("Invalid session nonce");
+        }
+    }
+
+    private static SessionKeys fromSecret(byte[] secret, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        final byte[] salt = new byte[NONCE_LENGTH * 2];
+        System.arraycopy(clientNonce, 0, salt, 0, NONCE_LENGTH);
+        System.arraycopy(serverNonce, 0, salt, NONCE_LENGTH, NONCE_LENGTH);
+        final byte[] pseudoRandomKey = hmac(salt, secret);
+
+        final SessionKeys keys = new SessionKeys(
+                expand(pseudoRandomKey, INFO_CLIENT_KEY),
+                expand(pseudoRandomKey, INFO_SERVER_KEY),
+                expand(pseudoRandomKey, INFO_RESUMPTION_SECRET)
+        );
+        Arrays.fill(pseudoRandomKey, (byte) 0);
+        return keys;
+    }
+
+    /**
+     * Derive the key that replaces the given key after {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#SESSION_REKEY_INTERVAL}
+     * frames. As both sides count the frames, this requires no further communication.
+     */
+    public static SecretKey nextKey(SecretKey key) throws GeneralSecurityException {
+        return expand(key.getEncoded(), INFO_REKEY);
+    }
+
+    private static SecretKey expand(byte[] pseudoRandomKey, byte[] info) throws GeneralSecurityException {
+        // SESSION_KEY_LENGTH equals the HMAC output size, so a single expand round is sufficient
+        final byte[] input = Arrays.copyOf(info, info.length + 1);
+        input[info.length] = 1;
+        final byte[] okm = hmac(pseudoRandomKey, input);
+        final SecretKey key = new SecretKeySpec(okm, 0, SESSION_KEY_LENGTH, SESSION_KEY_ALG);
+        Arrays.fill(okm, (byte) 0);
+        return key;
+    }
+
+    private static byte[] hmac(byte[] key, byte[] data) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance(KDF_MAC_ALG);
+        mac.init(new SecretKeySpec(key, KDF_MAC_ALG));
+        return mac.doFinal(data);
+    }
+
+    /**
+     * @return the key used for frames sent by the Client and received by the Server
+     */
+    public SecretKey getClientWriteKey() {
+        return clientWriteKey;
+    }
+
+    /**
+     * @return the key used for frames sent by the Server and received by the Client
+     */
+    public SecretKey getServerWriteKey() {
+        return serverWriteKey;
+    }
+
+    /**
+     * @return the secret that can be used to resume a connection with the peer without repeating the full handshake
+     */
+    public SecretKey getResumptionSecret() {
+        return resumptionSecret;
+    }
+}
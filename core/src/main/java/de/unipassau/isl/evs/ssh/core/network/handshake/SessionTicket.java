@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.core.network.handshake;
+
+import javax.crypto.SecretKey;
+
+/**
+ * A ticket issued by the Master after a successful handshake, which the Client can present in a
+ * {@link HandshakePacket.Resume} to skip the certificate exchange and the CHAP rounds when reconnecting.
+ * <p/>
+ * The ticket itself is opaque to the Client, as it is encrypted with a key only the Master knows.
+ * It contains the DeviceID of the Client and the {@link SessionKeys#getResumptionSecret() resumption secret} of the
+ * connection it was issued on, which the Client keeps alongside the ticket.
+ *
+ * @author agent
+ */
+public class SessionTicket {
+    private final byte[] ticket;
+    private final SecretKey resumptionSecret;
+    private final long expiry;
+
+    /**
+     * @param ticket           the encrypted ticket as sent by the Master
+     * @param resumptionSecret the resumption secret of the connection the ticket was issued on
+     * @param lifetime         the time in milliseconds the Master will accept the ticket
+     */
+    public SessionTicket(byte[] ticket, SecretKey resumptionSecret, long lifetime) {
+        this.ticket = ticket;
+        this.resumptionSecret = resumptionSecret;
+        this.expiry = System.currentTimeMillis() + lifetime;
+    }
+
+    public byte[] getTicket() {
+        return ticket;
+    }
+
+    public SecretKey getResumptionSecret() {
+        return resumptionSecret;
+    }
+
+    /**
+     * @return {@code true}, if the ticket has not expired yet
+     */
+    public boolean isValid() {
+        return System.currentTimeMillis() < expiry;
+    }
+}
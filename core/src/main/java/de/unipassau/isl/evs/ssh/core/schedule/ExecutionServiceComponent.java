@@ -46,6 +46,12 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.FutureListener;
 import io.netty.util.concurrent.ProgressivePromise;
@@ -75,6 +81,29 @@ public abstract class ExecutionServiceComponent extends AbstractComponent implem
         super.destroy();
     }
 
+    // TRANSPORT////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the Channel class for TCP connections matching the EventLoopGroup created by {@link #createEventLoopGroup()}
+     */
+    public Class<? extends SocketChannel> getSocketChannelClass() {
+        return NioSocketChannel.class;
+    }
+
+    /**
+     * @return the Channel class for accepting TCP connections matching the EventLoopGroup created by {@link #createEventLoopGroup()}
+     */
+    public Class<? extends ServerSocketChannel> getServerSocketChannelClass() {
+        return NioServerSocketChannel.class;
+    }
+
+    /**
+     * @return the Channel class for UDP datagrams matching the EventLoopGroup created by {@link #createEventLoopGroup()}
+     */
+    public Class<? extends DatagramChannel> getDatagramChannelClass() {
+        return NioDatagramChannel.class;
+    }
+
     // UTILS////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -337,13 +337,24 @@ public class IESCipher
             int inputOffset,
             int inputLen)
             throws IllegalBlockSizeException, BadPaddingException {
-        if (inputLen != 0) {
-            buffer.write(input, inputOffset, inputLen);
+        // if all input is passed at once, process it in place instead of copying it into the buffer first
+        final byte[] in;
+        final int inOff;
+        final int inLen;
+        if (buffer.size() == 0 && input != null) {
+            in = input;
+            inOff = inputOffset;
+            inLen = inputLen;
+        } else {
+            if (inputLen != 0) {
+                buffer.write(input, inputOffset, inputLen);
+            }
+            in = buffer.toByteArray();
+            inOff = 0;
+            inLen = in.length;
+            buffer.reset();
         }
 
-        final byte[] in = buffer.toByteArray();
-        buffer.reset();
-
         // Convert parameters for use in IESEngine
         CipherParameters params = new IESWithCipherParameters(engineSpec.getDerivationV(),
                 engineSpec.getEncodingV(),
@@ -365,7 +376,7 @@ public class IESCipher
                 } else {
                     engine.init(false, key, otherKeyParameter, params);
                 }
-                return engine.processBlock(in, 0, in.length);
+                return engine.processBlock(in, inOff, inLen);
             } catch (Exception e) {
                 throw new BadPaddingException(e.getMessage());
             }
@@ -387,7 +398,7 @@ public class IESCipher
             try {
                 engine.init(key, params, kGen);
 
-                return engine.processBlock(in, 0, in.length);
+                return engine.processBlock(in, inOff, inLen);
             } catch (Exception e) {
                 throw new BadPaddingException(e.getMessage());
             }
@@ -397,7 +408,7 @@ public class IESCipher
             try {
                 engine.init(key, params, new ECIESPublicKeyParser(ecParams));
 
-                return engine.processBlock(in, 0, in.length);
+                return engine.processBlock(in, inOff, inLen);
             } catch (InvalidCipherTextException e) {
                 throw new BadPaddingException(e.getMessage());
             }
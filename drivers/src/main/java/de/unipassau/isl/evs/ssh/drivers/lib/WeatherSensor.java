@@ -180,10 +180,15 @@ public class WeatherSensor extends AbstractComponent {
                     getAltitude(), getHumidity(), getUV(), getVisibleLight(), getInfrared(), getModule());
 
             NamingManager namingManager = requireComponent(NamingManager.KEY);
+            OutgoingRouter router = requireComponent(OutgoingRouter.KEY);
+            if (!router.isWritable(namingManager.getMasterID())) {
+                // the next reading will be more recent anyway, so don't pile up messages on a congested connection
+                return;
+            }
 
             Message message = new Message(payload);
-            OutgoingRouter router = requireComponent(OutgoingRouter.KEY);
-            router.sendMessage(namingManager.getMasterID(), RoutingKeys.MASTER_PUSH_WEATHER_INFO, message);
+            router.sendMessageConflated(namingManager.getMasterID(), RoutingKeys.MASTER_PUSH_WEATHER_INFO, message,
+                    module.getName());
         }
     }
 }
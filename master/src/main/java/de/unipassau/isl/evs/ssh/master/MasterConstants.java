@@ -34,6 +34,82 @@ package de.unipassau.isl.evs.ssh.master;
 public enum MasterConstants {
     ;
 
+    /**
+     * Configuration of the {@link de.unipassau.isl.evs.ssh.master.network.Outbox Outbox} storing messages for devices
+     * that are currently not connected.
+     */
+    public enum OutboxConstants {
+        ;
+
+        /**
+         * Maximum number of messages stored per device, older messages are dropped if more messages are queued.
+         */
+        public static final int CAPACITY = 100;
+        /**
+         * {@code true}, if queued messages should be written to a file whenever they change and restored when the
+         * Master is started again. Parsed from String so that IDEs don't nag about constant expressions.
+         */
+        public static final boolean PERSISTENT = Boolean.parseBoolean("true");
+        /**
+         * Time in seconds after which changes to the queued messages are written to the file, so that multiple
+         * changes in quick succession only cause a single write
+         */
+        public static final long PERSIST_DELAY = 5;
+        /**
+         * Name of the file the queued messages are persisted to
+         */
+        public static final String FILE_NAME = "outbox.ser";
+    }
+
+    /**
+     * Configuration of the {@link de.unipassau.isl.evs.ssh.master.network.SendQueue SendQueue} holding back messages
+     * for connected devices that can't keep up.
+     */
+    public enum SendQueueConstants {
+        ;
+
+        /**
+         * Maximum number of messages held back per connection before the
+         * {@link de.unipassau.isl.evs.ssh.master.network.SendQueue.OverflowPolicy OverflowPolicy} of the
+         * RoutingKey applies.
+         */
+        public static final int CAPACITY = 256;
+    }
+
+    /**
+     * Configuration of the transport used by the
+     * {@link de.unipassau.isl.evs.ssh.master.network.EpollExecutionServiceComponent EpollExecutionServiceComponent}.
+     */
+    public enum TransportConstants {
+        ;
+
+        /**
+         * {@code true}, if the native epoll transport should be used instead of NIO where it is available.
+         * Parsed from String so that IDEs don't nag about constant expressions.
+         */
+        public static final boolean NATIVE_TRANSPORT = Boolean.parseBoolean("true");
+    }
+
+    /**
+     * Configuration of the {@link de.unipassau.isl.evs.ssh.master.handler.CameraChunkForwarder CameraChunkForwarder}
+     * forwarding pictures from Slaves to the devices that requested them.
+     */
+    public enum CameraForwardingConstants {
+        ;
+
+        /**
+         * Maximum number of chunks received from the Slave that are held back for a device while the previous chunk
+         * is still being sent to it. As the Slave waits for acknowledgements after
+         * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#CAMERA_CHUNK_WINDOW CAMERA_CHUNK_WINDOW}
+         * chunks, this is only exceeded by a misbehaving Slave, in which case the transfer to the device is aborted.
+         */
+        public static final int MAX_BUFFERED_CHUNKS = 8;
+        /**
+         * Time in seconds after which a transfer is aborted if no further chunk was received from the Slave.
+         */
+        public static final long TRANSFER_TIMEOUT = 30;
+    }
+
     /**
      * Containing thresholds for climate data. If thresholds are bypassed a warning should be sent.
      *
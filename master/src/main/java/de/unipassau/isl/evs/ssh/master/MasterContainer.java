@@ -34,7 +34,6 @@ import de.unipassau.isl.evs.ssh.core.container.ContainerService;
 import de.unipassau.isl.evs.ssh.core.messaging.IncomingDispatcher;
 import de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter;
 import de.unipassau.isl.evs.ssh.core.naming.NamingManager;
-import de.unipassau.isl.evs.ssh.core.schedule.DefaultExecutionServiceComponent;
 import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
 import de.unipassau.isl.evs.ssh.core.sec.KeyStoreController;
 import de.unipassau.isl.evs.ssh.master.database.DatabaseConnector;
@@ -44,6 +43,7 @@ import de.unipassau.isl.evs.ssh.master.database.SlaveController;
 import de.unipassau.isl.evs.ssh.master.database.UserManagementController;
 import de.unipassau.isl.evs.ssh.master.handler.AbstractMasterHandler;
 import de.unipassau.isl.evs.ssh.master.handler.MasterCameraHandler;
+import de.unipassau.isl.evs.ssh.master.handler.MasterCameraStreamHandler;
 import de.unipassau.isl.evs.ssh.master.handler.MasterClimateHandler;
 import de.unipassau.isl.evs.ssh.master.handler.MasterDoorBellHandler;
 import de.unipassau.isl.evs.ssh.master.handler.MasterDoorHandler;
@@ -54,6 +54,10 @@ import de.unipassau.isl.evs.ssh.master.handler.MasterSlaveManagementHandler;
 import de.unipassau.isl.evs.ssh.master.handler.MasterSystemHealthCheckHandler;
 import de.unipassau.isl.evs.ssh.master.handler.MasterUserConfigurationHandler;
 import de.unipassau.isl.evs.ssh.master.handler.MasterUserLocationHandler;
+import de.unipassau.isl.evs.ssh.master.network.EpollExecutionServiceComponent;
+import de.unipassau.isl.evs.ssh.master.network.Outbox;
+import de.unipassau.isl.evs.ssh.master.network.ResumptionTickets;
+import de.unipassau.isl.evs.ssh.master.network.SendQueue;
 import de.unipassau.isl.evs.ssh.master.network.Server;
 import de.unipassau.isl.evs.ssh.master.network.ServerOutgoingRouter;
 import de.unipassau.isl.evs.ssh.master.network.UDPDiscoveryServer;
@@ -74,7 +78,7 @@ public class MasterContainer extends ContainerService {
         register(DatabaseConnector.KEY, new DatabaseConnector());
         register(KeyStoreController.KEY, new KeyStoreController());
         register(NamingManager.KEY, new NamingManager(true));
-        register(ExecutionServiceComponent.KEY, new DefaultExecutionServiceComponent(getClass().getSimpleName()));
+        register(ExecutionServiceComponent.KEY, new EpollExecutionServiceComponent(getClass().getSimpleName()));
         if (CoreConstants.TRACK_STATISTICS) {
             register(AccessLogger.KEY, new AccessLogger());
         }
@@ -82,7 +86,10 @@ public class MasterContainer extends ContainerService {
         register(IncomingDispatcher.KEY, new IncomingDispatcher());
         register(OutgoingRouter.KEY, new ServerOutgoingRouter());
         register(UDPDiscoveryServer.KEY, new UDPDiscoveryServer());
+        register(ResumptionTickets.KEY, new ResumptionTickets());
         register(Server.KEY, new Server());
+        register(Outbox.KEY, new Outbox());
+        register(SendQueue.KEY, new SendQueue());
 
         register(SlaveController.KEY, new SlaveController());
         register(PermissionController.KEY, new PermissionController());
@@ -108,6 +115,7 @@ public class MasterContainer extends ContainerService {
         registerHandler(new MasterLightHandler());
         registerHandler(new MasterSystemHealthCheckHandler());
         registerHandler(new MasterCameraHandler());
+        registerHandler(new MasterCameraStreamHandler());
 
 
         registerHandler(new MasterDoorHandler());
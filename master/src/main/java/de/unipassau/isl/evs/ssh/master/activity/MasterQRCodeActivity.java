@@ -144,6 +144,11 @@ public class MasterQRCodeActivity extends MasterStartUpActivity implements Messa
     public void handlerRemoved(RoutingKey routingKey) {
     }
 
+    @Override
+    public OrderingScope getOrderingScope() {
+        return OrderingScope.HANDLER;
+    }
+
     @Override
     public void onContainerDisconnected() {
         final IncomingDispatcher dispatcher = getComponent(IncomingDispatcher.KEY);
@@ -26,6 +26,7 @@
 
 package de.unipassau.isl.evs.ssh.master.handler;
 
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import java.util.HashMap;
@@ -83,6 +84,20 @@ public abstract class AbstractMasterHandler extends AbstractMessageHandler {
         return proxiedMessages.remove(proxySequenceNumber);
     }
 
+    /**
+     * Get the originally received message identified by the sequence number of the proxy message without removing it,
+     * for proxy messages that are answered by multiple messages before the final reply.
+     *
+     * @param proxySequenceNumber the sequence number of the proxy message
+     * @return the message that I originally received or {@code null}, if the proxy message is unknown or was
+     * already answered.
+     * @see #takeProxiedReceivedMessage(int)
+     */
+    @Nullable
+    protected Message.AddressedMessage getProxiedReceivedMessage(int proxySequenceNumber) {
+        return proxiedMessages.get(proxySequenceNumber);
+    }
+
     /**
      * Returns whether the device with the given DeviceID is a Slave.
      *
@@ -148,6 +163,31 @@ public abstract class AbstractMasterHandler extends AbstractMessageHandler {
         }
     }
 
+    /**
+     * Send a state update to all Devices that have a given Permission, replacing older updates with the same
+     * conflation key that are still waiting to be sent.
+     *
+     * @param messageToSend Message to send to the devices.
+     * @param permission    Permission the Device has to have.
+     * @param moduleName    Module to Permission applies for.
+     * @param routingKey    RoutingKey to send the message with.
+     * @param conflationKey Key identifying the state contained in the message.
+     * @see de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter#sendMessageConflated(DeviceID, RoutingKey, Message, String)
+     */
+    protected void sendConflatedToAllDevicesWithPermission(
+            Message messageToSend,
+            Permission permission,
+            String moduleName,
+            RoutingKey routingKey,
+            String conflationKey
+    ) {
+        final List<UserDevice> allUserDevicesWithPermission = requireComponent(PermissionController.KEY)
+                .getAllUserDevicesWithPermission(permission, moduleName);
+        for (UserDevice userDevice : allUserDevicesWithPermission) {
+            sendMessageConflated(userDevice.getUserDeviceID(), routingKey, messageToSend, conflationKey);
+        }
+    }
+
     /**
      * Send a reply containing a no permission error.
      *
@@ -0,0 +1,210 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.master.handler;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import de.unipassau.isl.evs.ssh.core.container.Container;
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkPayload;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_BROADCAST;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_CHUNK;
+import static de.unipassau.isl.evs.ssh.master.MasterConstants.CameraForwardingConstants.MAX_BUFFERED_CHUNKS;
+
+/**
+ * Forwards the {@link CameraChunkPayload CameraChunkPayloads} of a picture sent by a Slave to a single device,
+ * followed by the reply finishing the transfer. Like the CameraChunkSender of the Slave, the next chunk is only sent
+ * after the previous one was written, so that a slow device doesn't make chunks pile up on the Master.
+ * <p/>
+ * Chunks that arrive from the Slave in the meantime are held back. Once a chunk was written, the progress listener is
+ * notified, so that the Master can acknowledge the chunk to the Slave, which only sends
+ * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#CAMERA_CHUNK_WINDOW CAMERA_CHUNK_WINDOW} chunks
+ * ahead of the acknowledged ones. This way, a slow device slows down the Slave instead of aborting the transfer.
+ * Only if a misbehaving Slave sends more than
+ * {@link de.unipassau.isl.evs.ssh.master.MasterConstants.CameraForwardingConstants#MAX_BUFFERED_CHUNKS
+ * MAX_BUFFERED_CHUNKS} chunks ahead or a chunk can't be sent, no further chunks are sent to the device instead of
+ * dropping single chunks, which would corrupt the picture. If the whole picture is available on the
+ * Master when the transfer finishes, it is sent unchunked instead, which is stored in the
+ * {@link de.unipassau.isl.evs.ssh.master.network.Outbox Outbox} if the device is no longer connected. Otherwise the
+ * reply finishing the transfer is still sent, so that the device knows that the picture is incomplete.
+ *
+ * @author agent
+ */
+public class CameraChunkForwarder implements GenericFutureListener<Future<Void>> {
+    private static final String TAG = CameraChunkForwarder.class.getSimpleName();
+
+    private final OutgoingRouter router;
+    private final ExecutionServiceComponent executor;
+    private final DeviceID toID;
+    @Nullable
+    private final Message.AddressedMessage replyToMessage;
+    @Nullable
+    private final Runnable progressListener;
+    private final Deque<CameraChunkPayload> chunks = new ArrayDeque<>();
+    private CameraChunkPayload sendingChunk;
+    private int forwardedLength = 0;
+    private Message reply;
+    private Message completeReply;
+    private boolean aborted = false;
+    private boolean finished = false;
+
+    /**
+     * @param container      the Container providing the OutgoingRouter
+     * @param toID           the device the picture is forwarded to
+     * @param replyToMessage the request of the device, or {@code null} if the picture is broadcast as
+     *                       {@link de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys#APP_CAMERA_BROADCAST
+     *                       APP_CAMERA_BROADCAST}
+     * @param progressListener notified after a chunk was written or the transfer to the device was aborted
+     */
+    public CameraChunkForwarder(Container container, DeviceID toID, @Nullable Message.AddressedMessage replyToMessage,
+                                @Nullable Runnable progressListener) {
+        this.router = container.require(OutgoingRouter.KEY);
+        this.executor = container.require(ExecutionServiceComponent.KEY);
+        this.toID = toID;
+        this.replyToMessage = replyToMessage;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * @return the number of bytes of the picture, starting from its beginning, that were written to the device
+     */
+    public synchronized int getForwardedLength() {
+        return forwardedLength;
+    }
+
+    /**
+     * @return {@code true}, if no further chunks are sent to the device
+     */
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Forward the chunk once all previous chunks were written to the device.
+     */
+    public synchronized void forward(CameraChunkPayload chunk) {
+        if (aborted || finished) {
+            return;
+        }
+        if (chunks.size() >= MAX_BUFFERED_CHUNKS) {
+            abort(new IOException(toID + " can't keep up with the transfer"));
+            return;
+        }
+        chunks.addLast(chunk);
+        if (sendingChunk == null) {
+            sendNext();
+        }
+    }
+
+    /**
+     * Send the reply finishing the transfer once all previous chunks were written to the device.
+     *
+     * @param reply         the reply referring to the chunks by their transfer ID
+     * @param completeReply the reply containing the whole picture, which is sent instead if the transfer to the
+     *                      device was aborted, or {@code null} if the picture is not available
+     */
+    public synchronized void finish(Message reply, @Nullable Message completeReply) {
+        this.reply = reply;
+        this.completeReply = completeReply;
+        if (sendingChunk == null) {
+            sendNext();
+        }
+    }
+
+    /**
+     * Stop forwarding chunks to the device, e.g. because the Slave aborted the transfer.
+     */
+    public synchronized void abort(Throwable cause) {
+        if (!aborted) {
+            aborted = true;
+            Log.w(TAG, "Aborting transfer to " + toID + ", dropping " + chunks.size() + " held back chunks: "
+                    + cause.getMessage());
+            chunks.clear();
+        }
+    }
+
+    private void sendNext() {
+        final CameraChunkPayload chunk = chunks.pollFirst();
+        sendingChunk = chunk;
+        if (chunk != null) {
+            router.sendMessage(toID, APP_CAMERA_CHUNK, new Message(chunk)).getSendFuture().addListener(this);
+        } else {
+            if (reply != null && !finished) {
+                finished = true;
+                final Message message = aborted && completeReply != null ? completeReply : reply;
+                if (replyToMessage != null) {
+                    router.sendReply(replyToMessage, message);
+                } else {
+                    router.sendMessage(toID, APP_CAMERA_BROADCAST, message);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void operationComplete(Future<Void> future) throws Exception {
+        if (!future.isSuccess()) {
+            synchronized (this) {
+                abort(future.cause());
+                sendNext();
+            }
+            notifyProgress();
+        } else {
+            synchronized (this) {
+                forwardedLength = sendingChunk.getOffset() + sendingChunk.getData().length;
+            }
+            notifyProgress();
+            // writes issued from within a write listener might not be flushed, so send the next chunk separately
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (CameraChunkForwarder.this) {
+                        sendNext();
+                    }
+                }
+            });
+        }
+    }
+
+    private void notifyProgress() {
+        if (progressListener != null) {
+            // the future might have completed directly within sendNext, so never notify while holding the lock
+            executor.execute(progressListener);
+        }
+    }
+}
@@ -26,47 +26,92 @@
 
 package de.unipassau.isl.evs.ssh.master.handler;
 
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import de.unipassau.isl.evs.ssh.core.database.dto.Module;
+import de.unipassau.isl.evs.ssh.core.database.dto.UserDevice;
 import de.unipassau.isl.evs.ssh.core.messaging.Message;
 import de.unipassau.isl.evs.ssh.core.messaging.RoutingKey;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkAckPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.ErrorPayload;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
+import de.unipassau.isl.evs.ssh.master.database.PermissionController;
 import de.unipassau.isl.evs.ssh.master.database.SlaveController;
+import de.unipassau.isl.evs.ssh.master.network.Server;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
 
 import static de.unipassau.isl.evs.ssh.core.messaging.Message.HEADER_REFERENCES_ID;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_BROADCAST;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_CHUNK;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_GET;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_CHUNK_ACK;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_GET;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_GET_ERROR;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_GET_REPLY;
 import static de.unipassau.isl.evs.ssh.core.sec.Permission.BELL_RANG;
 import static de.unipassau.isl.evs.ssh.core.sec.Permission.REQUEST_CAMERA_STATUS;
+import static de.unipassau.isl.evs.ssh.master.MasterConstants.CameraForwardingConstants.TRANSFER_TIMEOUT;
 
 /**
  * Handles messages requesting pictures from the camera and generates messages, containing the pictures,
  * and sends these to the responsible NotificationBroadcaster.
+ * Pictures sent in chunks are forwarded to each connected receiving device by a {@link CameraChunkForwarder}.
+ * Devices that are not connected can't receive chunks, as the chunks are not stored by the
+ * {@link de.unipassau.isl.evs.ssh.master.network.Outbox Outbox}. For them, and for broadcast pictures that must
+ * also reach devices whose connection is lost during the transfer, the picture is reassembled on the Master and sent
+ * unchunked once it is complete.
+ * <p/>
+ * Chunks are acknowledged to the Slave once they were forwarded to all connected receiving devices, so that the Slave
+ * sends the picture only as fast as the slowest of them can take it.
+ * <p/>
+ * A transfer is aborted if the connection to the Slave is closed or no chunk was received for
+ * {@link de.unipassau.isl.evs.ssh.master.MasterConstants.CameraForwardingConstants#TRANSFER_TIMEOUT TRANSFER_TIMEOUT}
+ * seconds. As this happens outside of the {@link #handle(Message.AddressedMessage)} calls, all access to the
+ * transfers and the proxied requests is synchronized on this handler.
  *
  * @author Leon Sell
  */
 public class MasterCameraHandler extends AbstractMasterHandler {
+    private static final String TAG = MasterCameraHandler.class.getSimpleName();
+    /**
+     * The transfers of pictures currently received in chunks, by their transfer ID
+     */
+    private final Map<Integer, Transfer> transfers = new HashMap<>();
 
     @Override
     public RoutingKey[] getRoutingKeys() {
         return new RoutingKey[]{
                 MASTER_CAMERA_GET,
                 SLAVE_CAMERA_GET_REPLY,
-                SLAVE_CAMERA_GET_ERROR
+                SLAVE_CAMERA_GET_ERROR,
+                MASTER_CAMERA_CHUNK
         };
     }
 
     @Override
-    public void handle(Message.AddressedMessage message) {
+    public synchronized void handle(Message.AddressedMessage message) {
         if (MASTER_CAMERA_GET.matches(message)) {
             handleGetRequest(message, MASTER_CAMERA_GET.getPayload(message));
         } else if (SLAVE_CAMERA_GET_REPLY.matches(message)) {
             handleResponse(message, SLAVE_CAMERA_GET_REPLY.getPayload(message));
         } else if (SLAVE_CAMERA_GET_ERROR.matches(message)) {
             handleError(message, SLAVE_CAMERA_GET_ERROR.getPayload(message));
+        } else if (MASTER_CAMERA_CHUNK.matches(message)) {
+            handleChunk(message, MASTER_CAMERA_CHUNK.getPayload(message));
         } else {
             invalidMessage(message);
         }
@@ -74,11 +119,31 @@ public class MasterCameraHandler extends AbstractMasterHandler {
 
     private void handleError(Message.AddressedMessage message, ErrorPayload payload) {
         Message reply = new Message(payload);
-        Message.AddressedMessage originalMessage = takeProxiedReceivedMessage(message.getHeader(HEADER_REFERENCES_ID));
+        final int transferID = message.getHeader(HEADER_REFERENCES_ID);
+        final Transfer transfer = removeTransfer(transferID);
+        if (transfer != null) {
+            for (CameraChunkForwarder forwarder : transfer.forwarders) {
+                forwarder.abort(new IOException("Slave aborted transfer " + transferID));
+            }
+        }
+        Message.AddressedMessage originalMessage = takeProxiedReceivedMessage(transferID);
+        if (originalMessage == null) {
+            Log.w(TAG, "Dropping error for unknown or already aborted transfer " + transferID);
+            return;
+        }
         sendReply(originalMessage, reply);
     }
 
     private void handleGetRequest(Message.AddressedMessage message, CameraPayload cameraPayload) {
+        if (cameraPayload.getCaptureTime() > 0) {
+            //The capture time is given according to the clock of the requesting device, translate it to ours
+            final Long sentTime = message.getHeader(Message.HEADER_TIMESTAMP);
+            if (sentTime != null) {
+                cameraPayload.setCaptureTime(System.currentTimeMillis() - (sentTime - cameraPayload.getCaptureTime()));
+            } else {
+                cameraPayload.setCaptureTime(0);
+            }
+        }
         Message messageToSend = new Message(cameraPayload);
 
         //Check permission
@@ -92,14 +157,261 @@ public class MasterCameraHandler extends AbstractMasterHandler {
         }
     }
 
+    private void handleChunk(Message.AddressedMessage message, CameraChunkPayload chunk) {
+        if (!isSlave(message.getFromID())) {
+            Log.e(TAG, "A non slave device tried to send a slave only message.");
+            return;
+        }
+        //The transfer ID is the sequence number of the request sent to the Slave
+        Message.AddressedMessage originalMessage = getProxiedReceivedMessage(chunk.getTransferID());
+        if (originalMessage == null) {
+            Log.w(TAG, "Dropping chunk of unknown transfer " + chunk.getTransferID());
+            return;
+        }
+
+        //Forward every chunk as soon as the receiving device can take it, so that the picture doesn't need to be
+        //buffered completely on the Master
+        Transfer transfer = transfers.get(chunk.getTransferID());
+        if (transfer == null) {
+            if (chunk.getOffset() != 0) {
+                Log.w(TAG, "Dropping chunk of aborted transfer " + chunk.getTransferID());
+                return;
+            }
+            transfer = new Transfer(chunk, message.getFromID(), originalMessage);
+            transfers.put(chunk.getTransferID(), transfer);
+        }
+        transfer.append(chunk);
+        transfer.scheduleTimeout();
+        for (CameraChunkForwarder forwarder : transfer.forwarders) {
+            forwarder.forward(chunk);
+        }
+        //Acknowledge directly if there is no device to wait for
+        transfer.acknowledge();
+    }
+
     private void handleResponse(Message.AddressedMessage message, CameraPayload cameraPayload) {
         Message reply = new Message(cameraPayload);
         Message.AddressedMessage originalMessage = takeProxiedReceivedMessage(message.getHeader(HEADER_REFERENCES_ID));
-        if (!isMaster(originalMessage.getFromID())) {
+        final Transfer transfer = removeTransfer(cameraPayload.getTransferID());
+        if (originalMessage == null) {
+            Log.w(TAG, "Dropping reply to unknown or already aborted request " + message.getHeader(HEADER_REFERENCES_ID));
+            return;
+        }
+        if (cameraPayload.getTransferID() != 0 && transfer != null) {
+            final Message completeReply = transfer.getCompleteReply(cameraPayload);
+            //Send the reply after the last chunk, so that the picture is complete when the reply arrives
+            for (CameraChunkForwarder forwarder : transfer.forwarders) {
+                forwarder.finish(reply, completeReply);
+            }
+            //Devices that weren't connected get the whole picture, which is stored in the Outbox if possible
+            for (DeviceID device : transfer.disconnected) {
+                if (completeReply == null) {
+                    Log.w(TAG, "Picture of transfer " + cameraPayload.getTransferID() + " is incomplete, can't send "
+                            + "it to " + device);
+                } else if (transfer.isBroadcast()) {
+                    sendMessage(device, APP_CAMERA_BROADCAST, completeReply);
+                } else {
+                    sendReply(originalMessage, completeReply);
+                }
+            }
+        } else if (!isMaster(originalMessage.getFromID())) {
             sendReply(originalMessage, reply);
         } else {
             //Broadcast picture too all devices that may also be informed that the bell rang
             sendMessageToAllDevicesWithPermission(reply, BELL_RANG, null, APP_CAMERA_BROADCAST);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Stop watching the transfer with the given ID and forget about it.
+     *
+     * @return the removed transfer or {@code null}, if there was no transfer with the given ID
+     */
+    private Transfer removeTransfer(int transferID) {
+        final Transfer transfer = transfers.remove(transferID);
+        if (transfer != null) {
+            transfer.stopWatching();
+        }
+        return transfer;
+    }
+
+    /**
+     * Abort the transfer if it is still running, as if the Slave sent an error, and notify the requesting device.
+     */
+    private synchronized void abortTransfer(Transfer transfer, String reason) {
+        if (transfers.get(transfer.transferID) != transfer) {
+            return;
+        }
+        Log.w(TAG, "Aborting transfer " + transfer.transferID + ": " + reason);
+        removeTransfer(transfer.transferID);
+        for (CameraChunkForwarder forwarder : transfer.forwarders) {
+            forwarder.abort(new IOException(reason));
+        }
+        Message.AddressedMessage originalMessage = takeProxiedReceivedMessage(transfer.transferID);
+        if (originalMessage != null) {
+            sendReply(originalMessage, new Message(new ErrorPayload(reason)));
+        }
+    }
+
+    /**
+     * A picture received from a Slave in chunks and the devices it is sent to.
+     */
+    private class Transfer implements ChannelFutureListener, Runnable {
+        private final int transferID;
+        private final DeviceID slaveID;
+        private final Message.AddressedMessage originalMessage;
+        /**
+         * The forwarders for all connected receiving devices
+         */
+        private final List<CameraChunkForwarder> forwarders = new LinkedList<>();
+        /**
+         * The receiving devices that were not connected when the transfer started
+         */
+        private final List<DeviceID> disconnected = new ArrayList<>();
+        /**
+         * The picture reassembled from the chunks, or {@code null} if it isn't needed or a chunk was missing
+         */
+        private byte[] picture;
+        private int received = 0;
+        /**
+         * The number of bytes of the picture received from the Slave and acknowledged to it
+         */
+        private int receivedLength = 0;
+        private int acknowledgedLength = 0;
+        private final Channel slaveChannel;
+        private ScheduledFuture<?> timeout;
+
+        private final Runnable progressListener = new Runnable() {
+            @Override
+            public void run() {
+                acknowledge();
+            }
+        };
+
+        private Transfer(CameraChunkPayload firstChunk, DeviceID slaveID, Message.AddressedMessage originalMessage) {
+            this.transferID = firstChunk.getTransferID();
+            this.slaveID = slaveID;
+            this.originalMessage = originalMessage;
+            final List<DeviceID> devices = new ArrayList<>();
+            if (!isBroadcast()) {
+                devices.add(originalMessage.getFromID());
+            } else {
+                for (UserDevice device : requireComponent(PermissionController.KEY)
+                        .getAllUserDevicesWithPermission(BELL_RANG, null)) {
+                    devices.add(device.getUserDeviceID());
+                }
+            }
+            final Server server = requireComponent(Server.KEY);
+            slaveChannel = server.findChannel(slaveID);
+            if (slaveChannel != null) {
+                slaveChannel.closeFuture().addListener(this);
+            }
+            for (DeviceID device : devices) {
+                if (server.findConnection(device) != null) {
+                    forwarders.add(new CameraChunkForwarder(getContainer(), device,
+                            isBroadcast() ? null : originalMessage, progressListener));
+                } else {
+                    disconnected.add(device);
+                }
+            }
+            if (isBroadcast() || !disconnected.isEmpty()) {
+                picture = new byte[firstChunk.getTotalLength()];
+            }
+        }
+
+        /**
+         * Acknowledge all chunks to the Slave that were forwarded to all devices whose transfer wasn't aborted.
+         */
+        private synchronized void acknowledge() {
+            int forwarded = receivedLength;
+            for (CameraChunkForwarder forwarder : forwarders) {
+                if (!forwarder.isAborted()) {
+                    forwarded = Math.min(forwarded, forwarder.getForwardedLength());
+                }
+            }
+            if (forwarded > acknowledgedLength) {
+                acknowledgedLength = forwarded;
+                sendMessage(slaveID, SLAVE_CAMERA_CHUNK_ACK, new Message(new CameraChunkAckPayload(transferID, forwarded)));
+            }
+        }
+
+        /**
+         * (Re-)start the timer for aborting the transfer if no further chunk is received.
+         */
+        private void scheduleTimeout() {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            timeout = requireComponent(ExecutionServiceComponent.KEY).schedule(this, TRANSFER_TIMEOUT, TimeUnit.SECONDS);
+        }
+
+        private void stopWatching() {
+            if (timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+            if (slaveChannel != null) {
+                slaveChannel.closeFuture().removeListener(this);
+            }
+        }
+
+        /**
+         * Called when no chunk was received for TRANSFER_TIMEOUT seconds.
+         */
+        @Override
+        public void run() {
+            abortTransfer(this, "No chunk received for " + TRANSFER_TIMEOUT + " seconds");
+        }
+
+        /**
+         * Called when the connection to the Slave is closed.
+         */
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            abortTransfer(this, "Connection to Slave closed");
+        }
+
+        /**
+         * @return {@code true}, if the picture is sent to all devices that may be informed that the bell rang,
+         * instead of as reply to a request from a device
+         */
+        private boolean isBroadcast() {
+            return isMaster(originalMessage.getFromID());
+        }
+
+        private void append(CameraChunkPayload chunk) {
+            final byte[] data = chunk.getData();
+            synchronized (this) {
+                receivedLength = Math.max(receivedLength, chunk.getOffset() + data.length);
+            }
+            if (picture == null) {
+                return;
+            }
+            if (chunk.getOffset() != received || received + data.length > picture.length) {
+                Log.w(TAG, "Chunk " + chunk.getOffset() + "/" + chunk.getTotalLength() + " of transfer "
+                        + chunk.getTransferID() + " doesn't fit to the " + received + " bytes received");
+                picture = null;
+                return;
+            }
+            System.arraycopy(data, 0, picture, received, data.length);
+            received += data.length;
+        }
+
+        /**
+         * @return the given reply with the reassembled picture instead of the transfer ID, or {@code null} if the
+         * picture wasn't reassembled or is incomplete
+         */
+        private Message getCompleteReply(CameraPayload reply) {
+            if (picture == null || received != picture.length) {
+                return null;
+            }
+            final CameraPayload payload = new CameraPayload(reply.getCameraID(), reply.getModuleName());
+            payload.setPicture(picture);
+            payload.setResolution(reply.getWidth(), reply.getHeight());
+            payload.setQuality(reply.getQuality());
+            payload.setThumbnail(reply.isThumbnail());
+            payload.setCaptureTime(reply.getCaptureTime());
+            return new Message(payload);
+        }
+    }
+}
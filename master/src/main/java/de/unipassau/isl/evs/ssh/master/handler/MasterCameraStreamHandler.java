@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.master.handler;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import de.unipassau.isl.evs.ssh.core.database.dto.Module;
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter;
+import de.unipassau.isl.evs.ssh.core.messaging.RoutingKey;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraStreamPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.ErrorPayload;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import de.unipassau.isl.evs.ssh.master.database.SlaveController;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.MIN_STREAM_INTERVAL;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.STREAM_LEASE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_FRAME;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_FRAME;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_STREAM;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_STREAM;
+import static de.unipassau.isl.evs.ssh.core.sec.Permission.REQUEST_CAMERA_STATUS;
+
+/**
+ * Manages the subscriptions of Apps to the live streams of cameras.
+ * The Slave is told to stream with the shortest interval requested by any subscriber and each frame it sends is
+ * forwarded to all current subscribers. Subscribers whose connection is congested skip frames, while frames that are
+ * still waiting to be sent are replaced by newer ones. The stream is stopped as soon as the last subscriber
+ * unsubscribes or its subscription expires.
+ *
+ * @author agent
+ */
+public class MasterCameraStreamHandler extends AbstractMasterHandler {
+    private static final String TAG = MasterCameraStreamHandler.class.getSimpleName();
+
+    private final Map<String, Map<DeviceID, Subscription>> streams = new HashMap<>();
+
+    @Override
+    public RoutingKey[] getRoutingKeys() {
+        return new RoutingKey[]{MASTER_CAMERA_STREAM, MASTER_CAMERA_FRAME};
+    }
+
+    @Override
+    public void handle(Message.AddressedMessage message) {
+        if (MASTER_CAMERA_STREAM.matches(message)) {
+            handleSubscription(message, MASTER_CAMERA_STREAM.getPayload(message));
+        } else if (MASTER_CAMERA_FRAME.matches(message)) {
+            handleFrame(message, MASTER_CAMERA_FRAME.getPayload(message));
+        } else {
+            invalidMessage(message);
+        }
+    }
+
+    private void handleSubscription(Message.AddressedMessage message, CameraStreamPayload payload) {
+        if (!hasPermission(message.getFromID(), REQUEST_CAMERA_STATUS)) {
+            sendNoPermissionReply(message, REQUEST_CAMERA_STATUS);
+            return;
+        }
+        final Module camera = requireComponent(SlaveController.KEY).getModule(payload.getModuleName());
+        if (camera == null) {
+            sendReply(message, new Message(new ErrorPayload("Unknown camera " + payload.getModuleName())));
+            return;
+        }
+
+        Map<DeviceID, Subscription> subscribers = streams.get(payload.getModuleName());
+        if (payload.isActive()) {
+            if (subscribers == null) {
+                subscribers = new HashMap<>();
+                streams.put(payload.getModuleName(), subscribers);
+            }
+            subscribers.put(message.getFromID(), new Subscription(payload));
+        } else if (subscribers != null) {
+            subscribers.remove(message.getFromID());
+        }
+
+        final CameraStreamPayload stream = updateStream(camera, payload.getCameraID());
+        sendReply(message, new Message(stream));
+    }
+
+    private void handleFrame(Message.AddressedMessage message, CameraPayload frame) {
+        if (!isSlave(message.getFromID())) {
+            Log.e(TAG, "A non slave device tried to send a slave only message.");
+            return;
+        }
+        final Map<DeviceID, Subscription> subscribers = streams.get(frame.getModuleName());
+        removeExpired(subscribers);
+        if (subscribers == null || subscribers.isEmpty()) {
+            //Late frame or the Master was restarted, tell the Slave to stop
+            streams.remove(frame.getModuleName());
+            sendMessage(message.getFromID(), SLAVE_CAMERA_STREAM,
+                    new Message(new CameraStreamPayload(frame.getModuleName(), frame.getCameraID(), 0, false)));
+            return;
+        }
+
+        final OutgoingRouter router = requireComponent(OutgoingRouter.KEY);
+        final Message forward = new Message(frame);
+        for (DeviceID subscriber : subscribers.keySet()) {
+            if (router.isWritable(subscriber)) {
+                //An older frame that is still queued for this subscriber is replaced by this one
+                sendMessageConflated(subscriber, APP_CAMERA_FRAME, forward, frame.getModuleName());
+            }
+        }
+    }
+
+    /**
+     * Tell the Slave to stream with the parameters requested by the current subscribers, or to stop if there are
+     * none. This also renews the lease of the stream on the Slave.
+     *
+     * @return the negotiated stream parameters
+     */
+    private CameraStreamPayload updateStream(Module camera, int cameraID) {
+        final Map<DeviceID, Subscription> subscribers = streams.get(camera.getName());
+        removeExpired(subscribers);
+
+        long interval = 0;
+        boolean thumbnail = true;
+        if (subscribers != null) {
+            for (Subscription subscription : subscribers.values()) {
+                if (interval == 0 || subscription.interval < interval) {
+                    interval = subscription.interval;
+                }
+                thumbnail &= subscription.thumbnail;
+            }
+        }
+        if (interval == 0) {
+            streams.remove(camera.getName());
+            thumbnail = false;
+        } else {
+            interval = Math.max(interval, MIN_STREAM_INTERVAL);
+        }
+
+        final CameraStreamPayload stream = new CameraStreamPayload(camera.getName(), cameraID, interval, thumbnail);
+        sendMessage(camera.getAtSlave(), SLAVE_CAMERA_STREAM, new Message(stream));
+        return stream;
+    }
+
+    private void removeExpired(Map<DeviceID, Subscription> subscribers) {
+        if (subscribers == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (Iterator<Subscription> it = subscribers.values().iterator(); it.hasNext(); ) {
+            if (it.next().expires < now) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class Subscription {
+        private final long interval;
+        private final boolean thumbnail;
+        private final long expires;
+
+        private Subscription(CameraStreamPayload payload) {
+            this.interval = payload.getInterval();
+            this.thumbnail = payload.isThumbnail();
+            this.expires = System.currentTimeMillis() + STREAM_LEASE;
+        }
+    }
+}
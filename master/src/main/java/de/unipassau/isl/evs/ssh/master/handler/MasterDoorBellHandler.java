@@ -80,7 +80,14 @@ public class MasterDoorBellHandler extends AbstractMasterHandler {
             //Camera has to be the first camera of all added cameras. (database and android camera id)
             SlaveController slaveController = requireComponent(SlaveController.KEY);
             final Module camera = slaveController.getModulesByType(CoreConstants.ModuleType.Webcam).get(0);
-            final Message messageToSend = new Message(new CameraPayload(0, camera.getName()));
+            final CameraPayload cameraPayload = new CameraPayload(0, camera.getName());
+            //Only a preview is needed for the notification, the user can still request the full picture
+            cameraPayload.setThumbnail(true);
+            //Use the picture buffered by the Slave when the bell rang instead of one from when the request arrives.
+            //The timestamp of the ring message is taken by the clock of the door bell Slave, which might differ from
+            //ours, so use the time the ring was received instead.
+            cameraPayload.setCaptureTime(System.currentTimeMillis());
+            final Message messageToSend = new Message(cameraPayload);
 
             final Message.AddressedMessage sentMessage = sendMessageLocal(MASTER_CAMERA_GET, messageToSend);
             recordReceivedMessageProxy(message, sentMessage);
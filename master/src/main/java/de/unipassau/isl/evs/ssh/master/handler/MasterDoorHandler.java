@@ -188,7 +188,7 @@ public class MasterDoorHandler extends AbstractMasterHandler {
         boolean isOpen = getOpen(moduleName);
         boolean isBlocked = getBlocked();
         final Message messageToSend = new Message(new DoorStatusPayload(isOpen, isBlocked, moduleName));
-        sendMessageToAllDevicesWithPermission(messageToSend, REQUEST_DOOR_STATUS, null, APP_DOOR_STATUS_UPDATE);
+        sendConflatedToAllDevicesWithPermission(messageToSend, REQUEST_DOOR_STATUS, null, APP_DOOR_STATUS_UPDATE, moduleName);
     }
 
     private void setOpen(String moduleName, boolean isOpen) {
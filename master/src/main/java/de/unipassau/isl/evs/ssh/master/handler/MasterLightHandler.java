@@ -162,7 +162,8 @@ public class MasterLightHandler extends AbstractMasterHandler {
         if (correspondingMessage != null) {
             sendReply(correspondingMessage, messageToSend);
         }
-        sendMessageToAllDevicesWithPermission(messageToSend, REQUEST_LIGHT_STATUS, null, APP_LIGHT_UPDATE);
+        sendConflatedToAllDevicesWithPermission(messageToSend, REQUEST_LIGHT_STATUS, null, APP_LIGHT_UPDATE,
+                lightPayload.getModule().getName());
     }
 
     private void handleGetResponse(Message.AddressedMessage message) {
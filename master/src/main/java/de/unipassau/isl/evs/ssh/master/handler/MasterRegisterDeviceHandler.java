@@ -53,6 +53,7 @@ import de.unipassau.isl.evs.ssh.core.sec.KeyStoreController;
 import de.unipassau.isl.evs.ssh.master.database.DatabaseContract;
 import de.unipassau.isl.evs.ssh.master.database.PermissionController;
 import de.unipassau.isl.evs.ssh.master.database.UserManagementController;
+import de.unipassau.isl.evs.ssh.master.network.ResumptionTickets;
 import de.unipassau.isl.evs.ssh.master.network.Server;
 import de.unipassau.isl.evs.ssh.master.network.broadcast.UserConfigurationBroadcaster;
 import io.netty.channel.Channel;
@@ -101,6 +102,7 @@ public class MasterRegisterDeviceHandler extends AbstractMasterHandler implement
             return;
         }
         requireComponent(UserManagementController.KEY).removeUserDevice(userToDelete);
+        requireComponent(ResumptionTickets.KEY).revoke(userToDelete);
 
         final Channel channel = requireComponent(Server.KEY).findChannel(userToDelete);
         if (channel != null) {
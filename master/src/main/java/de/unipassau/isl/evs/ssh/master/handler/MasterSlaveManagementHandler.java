@@ -43,6 +43,7 @@ import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.core.database.AlreadyInUseException;
 import de.unipassau.isl.evs.ssh.core.database.IsReferencedException;
 import de.unipassau.isl.evs.ssh.master.database.SlaveController;
+import de.unipassau.isl.evs.ssh.master.network.ResumptionTickets;
 import de.unipassau.isl.evs.ssh.master.network.broadcast.ModuleBroadcaster;
 import de.unipassau.isl.evs.ssh.master.network.broadcast.UserConfigurationBroadcaster;
 
@@ -126,6 +127,7 @@ public class MasterSlaveManagementHandler extends AbstractMasterHandler implemen
 
     public void deleteSlave(DeviceID slaveID) throws IsReferencedException {
         requireComponent(SlaveController.KEY).removeSlave(slaveID);
+        requireComponent(ResumptionTickets.KEY).revoke(slaveID);
         final ModuleBroadcaster broadcaster = requireComponent(ModuleBroadcaster.KEY);
         broadcaster.updateAllClients();
     }
@@ -64,4 +64,12 @@ public class MasterSystemHealthCheckHandler extends AbstractMasterHandler {
     public RoutingKey[] getRoutingKeys() {
         return new RoutingKey[]{MASTER_SYSTEM_HEALTH_CHECK};
     }
+
+    /**
+     * This Handler has no state, but the health reports of a single Slave must be evaluated in order.
+     */
+    @Override
+    public OrderingScope getOrderingScope() {
+        return OrderingScope.SENDER;
+    }
 }
\ No newline at end of file
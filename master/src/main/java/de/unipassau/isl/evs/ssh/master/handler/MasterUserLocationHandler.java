@@ -35,7 +35,6 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import de.ncoder.typedmap.Key;
-import de.unipassau.isl.evs.ssh.core.CoreConstants;
 import de.unipassau.isl.evs.ssh.core.container.Component;
 import de.unipassau.isl.evs.ssh.core.messaging.Message;
 import de.unipassau.isl.evs.ssh.core.messaging.RoutingKey;
@@ -43,7 +42,6 @@ import de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.DeviceConnectedPayload;
 import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.master.network.Server;
-import io.netty.channel.Channel;
 
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DEVICE_CONNECTED;
 
@@ -118,12 +116,8 @@ public class MasterUserLocationHandler extends AbstractMasterHandler implements
      * @return true if device is in local network
      */
     public boolean isDeviceLocal(DeviceID deviceID) {
-        final Channel channel = requireComponent(Server.KEY).findChannel(deviceID);
-        if (channel != null) {
-            return channel.isOpen() && channel.attr(CoreConstants.NettyConstants.ATTR_LOCAL_CONNECTION).get();
-        } else {
-            return false;
-        }
+        final Server.Connection connection = requireComponent(Server.KEY).findConnection(deviceID);
+        return connection != null && connection.isLocal();
     }
 
     private static class Record {
@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unipassau.isl.evs.ssh.master.network;
+
+import android.util.Log;
+
+import de.unipassau.isl.evs.ssh.core.schedule.DefaultExecutionServiceComponent;
+import de.unipassau.isl.evs.ssh.master.MasterConstants;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.concurrent.DefaultExecutorServiceFactory;
+
+/**
+ * The ExecutionServiceComponent of the Master, which serves all connections of the system.
+ * If {@link MasterConstants.TransportConstants#NATIVE_TRANSPORT} is set and the native library of the epoll transport
+ * can be loaded on the current platform, the EventLoopGroup and the Channel classes of the epoll transport are used.
+ * Otherwise, this falls back to the NIO transport of the {@link DefaultExecutionServiceComponent}.
+ *
+ * @author agent
+ */
+public class EpollExecutionServiceComponent extends DefaultExecutionServiceComponent {
+    private static final String TAG = EpollExecutionServiceComponent.class.getSimpleName();
+
+    private final String name;
+    private final boolean useEpoll;
+
+    public EpollExecutionServiceComponent(String name) {
+        super(name);
+        this.name = name;
+        this.useEpoll = MasterConstants.TransportConstants.NATIVE_TRANSPORT && isEpollAvailable();
+    }
+
+    /**
+     * @return {@code true}, if the native library of the epoll transport could be loaded
+     */
+    private static boolean isEpollAvailable() {
+        try {
+            return Epoll.isAvailable();
+        } catch (Throwable t) {
+            // the transport classes themselves might fail to initialize on an unsupported platform
+            Log.w(TAG, "Native epoll transport can't be loaded", t);
+            return false;
+        }
+    }
+
+    @Override
+    protected EventLoopGroup createEventLoopGroup() {
+        Log.i(TAG, "Using " + (useEpoll ? "epoll" : "NIO") + " transport");
+        if (useEpoll) {
+            return new EpollEventLoopGroup(0, new DefaultExecutorServiceFactory(name));
+        } else {
+            return super.createEventLoopGroup();
+        }
+    }
+
+    @Override
+    public Class<? extends SocketChannel> getSocketChannelClass() {
+        return useEpoll ? EpollSocketChannel.class : super.getSocketChannelClass();
+    }
+
+    @Override
+    public Class<? extends ServerSocketChannel> getServerSocketChannelClass() {
+        return useEpoll ? EpollServerSocketChannel.class : super.getServerSocketChannelClass();
+    }
+
+    @Override
+    public Class<? extends DatagramChannel> getDatagramChannelClass() {
+        return useEpoll ? EpollDatagramChannel.class : super.getDatagramChannelClass();
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.master.network;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.ncoder.typedmap.Key;
+import de.unipassau.isl.evs.ssh.core.container.Component;
+import de.unipassau.isl.evs.ssh.core.container.Container;
+import de.unipassau.isl.evs.ssh.core.container.ContainerService;
+import de.unipassau.isl.evs.ssh.core.handler.AbstractMessageHandler;
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.RoutingKey;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.DeviceConnectedPayload;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_BROADCAST;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_DOOR_RING;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_DOOR_STATUS_UPDATE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_LIGHT_UPDATE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_NOTIFICATION_RECEIVE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_USERINFO_UPDATE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.GLOBAL_MODULES_UPDATE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DEVICE_CONNECTED;
+import static de.unipassau.isl.evs.ssh.master.MasterConstants.OutboxConstants.CAPACITY;
+import static de.unipassau.isl.evs.ssh.master.MasterConstants.OutboxConstants.FILE_NAME;
+import static de.unipassau.isl.evs.ssh.master.MasterConstants.OutboxConstants.PERSISTENT;
+import static de.unipassau.isl.evs.ssh.master.MasterConstants.OutboxConstants.PERSIST_DELAY;
+
+/**
+ * Stores messages for devices that are currently not connected, so that they can be delivered once the device
+ * connects again instead of failing directly. Only messages sent to RoutingKeys with a time-to-live set using
+ * {@link #setTimeToLive(RoutingKey, long, TimeUnit)} are stored, messages that are older than their time-to-live
+ * are dropped. At most {@link de.unipassau.isl.evs.ssh.master.MasterConstants.OutboxConstants#CAPACITY CAPACITY}
+ * messages are stored per device, dropping the oldest message if another message is queued. Conflated messages
+ * replace stored messages containing an older version of the same state, so that a device reconnecting after a
+ * long time only receives the most recent state instead of every update it missed.
+ * <p/>
+ * When the device connects and {@link de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys#MASTER_DEVICE_CONNECTED
+ * MASTER_DEVICE_CONNECTED} is sent, all queued messages are passed to the {@link SendQueue} of the new connection.
+ * As the connection is registered in the {@link Server} before, a message queued concurrently to the connection
+ * being established is either drained by this or directly by {@link #queue(Message.AddressedMessage)}.
+ * <p/>
+ * If {@link de.unipassau.isl.evs.ssh.master.MasterConstants.OutboxConstants#PERSISTENT PERSISTENT} is set, the stored
+ * messages are written to a file {@link de.unipassau.isl.evs.ssh.master.MasterConstants.OutboxConstants#PERSIST_DELAY
+ * PERSIST_DELAY} seconds after they were queued or drained, so that they also survive the Master being killed.
+ * Restored messages get new sequence numbers, as the sequence numbers of the restarted Master start again from 0.
+ *
+ * @author agent
+ */
+public class Outbox extends AbstractMessageHandler implements Component {
+    private static final String TAG = Outbox.class.getSimpleName();
+    public static final Key<Outbox> KEY = new Key<>(Outbox.class);
+
+    private final Map<String, Long> timeToLive = new HashMap<>();
+    private final Map<DeviceID, Deque<Entry>> queues = new HashMap<>();
+    private final Object fileLock = new Object();
+    private ScheduledFuture<?> persistFuture;
+
+    public Outbox() {
+        setTimeToLive(APP_NOTIFICATION_RECEIVE, 1, TimeUnit.DAYS);
+        setTimeToLive(APP_DOOR_RING, 10, TimeUnit.MINUTES);
+        setTimeToLive(APP_CAMERA_BROADCAST, 10, TimeUnit.MINUTES);
+        setTimeToLive(APP_DOOR_STATUS_UPDATE, 1, TimeUnit.HOURS);
+        setTimeToLive(APP_LIGHT_UPDATE, 1, TimeUnit.HOURS);
+        setTimeToLive(APP_USERINFO_UPDATE, 1, TimeUnit.HOURS);
+        setTimeToLive(GLOBAL_MODULES_UPDATE, 1, TimeUnit.HOURS);
+    }
+
+    @Override
+    public void init(Container container) {
+        super.init(container);
+        if (PERSISTENT) {
+            restore();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (PERSISTENT) {
+            synchronized (this) {
+                if (persistFuture != null) {
+                    persistFuture.cancel(false);
+                }
+            }
+            persist();
+        }
+        super.destroy();
+    }
+
+    @Override
+    public RoutingKey[] getRoutingKeys() {
+        return new RoutingKey[]{MASTER_DEVICE_CONNECTED};
+    }
+
+    @Override
+    public void handle(Message.AddressedMessage message) {
+        if (MASTER_DEVICE_CONNECTED.matches(message)) {
+            final DeviceConnectedPayload payload = MASTER_DEVICE_CONNECTED.getPayload(message);
+            drain(payload.getDeviceID(), payload.getChannel());
+        } else {
+            invalidMessage(message);
+        }
+    }
+
+    //Configuration/////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Set how long messages sent to the given RoutingKey are stored if the receiving device is not connected.
+     * A duration of 0 disables queueing for the RoutingKey.
+     */
+    public synchronized void setTimeToLive(RoutingKey routingKey, long duration, TimeUnit unit) {
+        timeToLive.put(routingKey.getKey(), unit.toMillis(duration));
+    }
+
+    /**
+     * @return the time in milliseconds messages sent to the given RoutingKey are stored, 0 if they are not stored
+     */
+    public synchronized long getTimeToLive(String routingKey) {
+        final Long ttl = timeToLive.get(routingKey);
+        return ttl == null ? 0 : ttl;
+    }
+
+    /**
+     * @return {@code true} if the message would be stored by {@link #queue(Message.AddressedMessage)}
+     */
+    public boolean isQueueable(Message.AddressedMessage message) {
+        return getTimeToLive(message.getRoutingKey()) > 0;
+    }
+
+    //Queue/////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Store the message until the receiving device connects. If the device connected after the sender found no
+     * connection to it, the Outbox might already have been drained for the new connection, so the message is
+     * written to the connection directly instead.
+     *
+     * @return a Future that completes once the message was written to the device or fails if the message expired or
+     * was dropped
+     */
+    public synchronized Future<Void> queue(Message.AddressedMessage message) {
+        final Promise<Void> promise = requireComponent(ExecutionServiceComponent.KEY).newPromise();
+        final long ttl = getTimeToLive(message.getRoutingKey());
+        if (ttl <= 0) {
+            promise.setFailure(new IOException("Client " + message.getToID() + " is not connected and messages to "
+                    + message.getRoutingKey() + " are not queued"));
+            return promise;
+        }
+
+        Deque<Entry> queue = queues.get(message.getToID());
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queues.put(message.getToID(), queue);
+        }
+        for (Entry pending : queue) {
+            if (pending.message.isSupersededBy(message)) {
+                // only deliver the most recent state, notifying the sender of the old message once this one is sent
+                pending.message = message;
+                pending.expiry = System.currentTimeMillis() + ttl;
+                if (pending.promise == null) {
+                    pending.promise = promise;
+                    return promise;
+                }
+                return pending.promise;
+            }
+        }
+        final Entry entry = new Entry(message, System.currentTimeMillis() + ttl);
+        entry.promise = promise;
+        queue.addLast(entry);
+
+        removeExpired(queue, System.currentTimeMillis());
+        while (queue.size() > CAPACITY) {
+            queue.removeFirst().fail(new IOException("Outbox for " + message.getToID() + " is full"));
+        }
+
+        // check again now that the message is stored, holding the lock so that this can't interleave with a drain
+        final Server server = getComponent(Server.KEY);
+        final Channel channel = server == null ? null : server.findChannel(message.getToID());
+        if (channel != null) {
+            drain(message.getToID(), channel);
+        } else {
+            schedulePersist();
+        }
+        return promise;
+    }
+
+    /**
+     * @return {@code true} if messages are waiting to be sent to the given device
+     */
+    public synchronized boolean hasPending(DeviceID deviceID) {
+        final Deque<Entry> queue = queues.get(deviceID);
+        return queue != null && !queue.isEmpty();
+    }
+
+    /**
+     * Pass all messages stored for the given device to the {@link SendQueue} of the channel in order, or write and
+     * flush them directly if there is no SendQueue.
+     *
+     * @return the number of messages written
+     */
+    public synchronized int drain(DeviceID deviceID, Channel channel) {
+        final Deque<Entry> queue = queues.remove(deviceID);
+        if (queue == null) {
+            return 0;
+        }
+        removeExpired(queue, System.currentTimeMillis());
+        final SendQueue sendQueue = getComponent(SendQueue.KEY);
+        int count = 0;
+        for (final Entry entry : queue) {
+            final Future<Void> future;
+            if (sendQueue != null) {
+                future = sendQueue.write(channel, entry.message);
+            } else {
+                future = channel.write(entry.message);
+            }
+            if (entry.promise != null) {
+                future.addListener(new GenericFutureListener<Future<Void>>() {
+                    @Override
+                    public void operationComplete(Future<Void> future) throws Exception {
+                        if (future.isSuccess()) {
+                            entry.promise.trySuccess(null);
+                        } else {
+                            entry.promise.tryFailure(future.cause());
+                        }
+                    }
+                });
+            }
+            count++;
+        }
+        if (sendQueue == null) {
+            channel.flush();
+        }
+        if (count > 0) {
+            Log.i(TAG, "Sent " + count + " queued messages to " + deviceID);
+        }
+        schedulePersist();
+        return count;
+    }
+
+    private void removeExpired(Deque<Entry> queue, long now) {
+        for (Iterator<Entry> it = queue.iterator(); it.hasNext(); ) {
+            final Entry entry = it.next();
+            if (entry.expiry < now) {
+                it.remove();
+                entry.fail(new IOException("Message " + entry.message + " expired in Outbox"));
+            }
+        }
+    }
+
+    //Persistence///////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private File getFile() {
+        final Context context = requireComponent(ContainerService.KEY_CONTEXT);
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Persist the stored messages after {@link de.unipassau.isl.evs.ssh.master.MasterConstants.OutboxConstants#PERSIST_DELAY
+     * PERSIST_DELAY} seconds, unless this is already scheduled.
+     */
+    private synchronized void schedulePersist() {
+        if (!PERSISTENT || persistFuture != null) {
+            return;
+        }
+        final ExecutionServiceComponent executionService = getComponent(ExecutionServiceComponent.KEY);
+        if (executionService == null) {
+            return;
+        }
+        persistFuture = executionService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                persist();
+            }
+        }, PERSIST_DELAY, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Write all stored messages to a file, so that they can be restored after restarting the Master.
+     * The messages are copied while holding the lock of the Outbox, but written without it, so that sending messages
+     * isn't blocked by writing large pictures to the file.
+     */
+    private void persist() {
+        final ArrayList<Entry> entries = new ArrayList<>();
+        synchronized (this) {
+            persistFuture = null;
+            final long now = System.currentTimeMillis();
+            for (Deque<Entry> queue : queues.values()) {
+                removeExpired(queue, now);
+                for (Entry entry : queue) {
+                    entries.add(new Entry(entry.message, entry.expiry));
+                }
+            }
+        }
+
+        synchronized (fileLock) {
+            final File file = getFile();
+            if (entries.isEmpty()) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                return;
+            }
+            // write to a temporary file first, so that the previous state isn't lost if the Master is killed meanwhile
+            final File tmpFile = new File(file.getPath() + ".tmp");
+            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(tmpFile))) {
+                out.writeObject(entries);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not persist queued messages to " + tmpFile, e);
+                //noinspection ResultOfMethodCallIgnored
+                tmpFile.delete();
+                return;
+            }
+            if (tmpFile.renameTo(file)) {
+                Log.v(TAG, "Persisted " + entries.size() + " queued messages to " + file);
+            } else {
+                Log.w(TAG, "Could not replace " + file + " with the persisted queued messages");
+            }
+        }
+    }
+
+    /**
+     * Restore the messages written by {@link #persist()}, assigning new sequence numbers to them.
+     */
+    private synchronized void restore() {
+        final File file = getFile();
+        if (!file.exists()) {
+            return;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+            @SuppressWarnings("unchecked")
+            final List<Entry> entries = (List<Entry>) in.readObject();
+            final long now = System.currentTimeMillis();
+            int count = 0;
+            for (Entry entry : entries) {
+                if (entry.expiry < now) {
+                    continue;
+                }
+                entry.message = entry.message.withNewSequenceNr();
+                Deque<Entry> queue = queues.get(entry.message.getToID());
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    queues.put(entry.message.getToID(), queue);
+                }
+                queue.addLast(entry);
+                count++;
+            }
+            Log.i(TAG, "Restored " + count + " queued messages from " + file);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            Log.w(TAG, "Could not restore queued messages from " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static class Entry implements Serializable {
+        private Message.AddressedMessage message;
+        private long expiry;
+        /**
+         * The Promise returned by {@link #queue(Message.AddressedMessage)}, {@code null} for restored messages.
+         */
+        private transient Promise<Void> promise;
+
+        private Entry(Message.AddressedMessage message, long expiry) {
+            this.message = message;
+            this.expiry = expiry;
+        }
+
+        private void fail(Throwable cause) {
+            Log.v(TAG, "Dropping queued message " + message + ": " + cause.getMessage());
+            if (promise != null) {
+                promise.tryFailure(cause);
+            }
+        }
+    }
+}
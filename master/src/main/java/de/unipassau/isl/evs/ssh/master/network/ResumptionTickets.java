@@ -0,0 +1,208 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.master.network;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import de.ncoder.typedmap.Key;
+import de.unipassau.isl.evs.ssh.core.container.AbstractComponent;
+import de.unipassau.isl.evs.ssh.core.container.Container;
+import de.unipassau.isl.evs.ssh.core.container.StartupException;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.RESUMPTION_TICKET_LIFETIME;
+
+/**
+ * Issues and checks the {@link de.unipassau.isl.evs.ssh.core.network.handshake.SessionTicket SessionTickets} used
+ * for resuming connections without the full handshake.
+ * <p/>
+ * A ticket contains the DeviceID of the Client, the time it was issued and the resumption secret of the connection
+ * it was issued on. It is encrypted using AES-GCM with a ticket key that is randomly generated on startup and never
+ * leaves the Master, so that all tickets become invalid once the Master restarts.
+ * Tickets of a device can be {@link #revoke(DeviceID) revoked}, e.g. when the device is deleted.
+ *
+ * @author agent
+ */
+public class ResumptionTickets extends AbstractComponent {
+    private static final String TAG = ResumptionTickets.class.getSimpleName();
+    public static final Key<ResumptionTickets> KEY = new Key<>(ResumptionTickets.class);
+
+    private static final String TICKET_CIPHER = "AES/GCM/NoPadding";
+    private static final int TICKET_KEY_SIZE = 256;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+    private static final int SECRET_LENGTH = 32;
+    private static final int PLAINTEXT_LENGTH = DeviceID.ID_LENGTH + 8 + SECRET_LENGTH;
+
+    private final SecureRandom random = new SecureRandom();
+    /**
+     * Tickets issued before the time stored for a device are no longer accepted
+     */
+    private final Map<DeviceID, Long> revocations = new ConcurrentHashMap<>();
+    private SecretKey ticketKey;
+
+    @Override
+    public void init(Container container) {
+        super.init(container);
+        try {
+            final KeyGenerator generator = KeyGenerator.getInstance(SessionKeys.SESSION_KEY_ALG);
+            generator.init(TICKET_KEY_SIZE, random);
+            ticketKey = generator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new StartupException("Could not generate ticket key", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        ticketKey = null;
+        revocations.clear();
+        super.destroy();
+    }
+
+    /**
+     * @return the time in milliseconds tickets issued by this Master are accepted
+     */
+    public long getLifetime() {
+        return RESUMPTION_TICKET_LIFETIME;
+    }
+
+    /**
+     * Issue a new ticket that allows the given device to resume a connection using the given resumption secret.
+     *
+     * @return the encrypted ticket or {@code null} if no ticket could be issued
+     */
+    @Nullable
+    public byte[] issue(DeviceID deviceID, SecretKey resumptionSecret) {
+        final byte[] secret = resumptionSecret.getEncoded();
+        if (secret.length != SECRET_LENGTH) {
+            Log.w(TAG, "Can't issue ticket for resumption secret with length " + secret.length);
+            return null;
+        }
+        final ByteBuffer plain = ByteBuffer.allocate(PLAINTEXT_LENGTH);
+        plain.put(deviceID.getIDBytes()).putLong(System.currentTimeMillis()).put(secret);
+        try {
+            final byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            final Cipher cipher = Cipher.getInstance(TICKET_CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, ticketKey, new GCMParameterSpec(TAG_LENGTH, iv));
+            final byte[] encrypted = cipher.doFinal(plain.array());
+            final byte[] ticket = new byte[IV_LENGTH + encrypted.length];
+            System.arraycopy(iv, 0, ticket, 0, IV_LENGTH);
+            System.arraycopy(encrypted, 0, ticket, IV_LENGTH, encrypted.length);
+            return ticket;
+        } catch (GeneralSecurityException e) {
+            Log.w(TAG, "Could not issue ticket for " + deviceID, e);
+            return null;
+        }
+    }
+
+    /**
+     * Decrypt and check the given ticket.
+     *
+     * @return the contents of the ticket or {@code null} if the ticket is invalid, expired or revoked
+     */
+    @Nullable
+    public Grant redeem(@Nullable byte[] ticket) {
+        if (ticket == null || ticket.length <= IV_LENGTH) {
+            return null;
+        }
+        final byte[] plain;
+        try {
+            final Cipher cipher = Cipher.getInstance(TICKET_CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, ticketKey, new GCMParameterSpec(TAG_LENGTH, ticket, 0, IV_LENGTH));
+            plain = cipher.doFinal(ticket, IV_LENGTH, ticket.length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            Log.v(TAG, "Rejecting ticket that can't be decrypted: " + e.getMessage());
+            return null;
+        }
+        if (plain.length != PLAINTEXT_LENGTH) {
+            return null;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(plain);
+        final byte[] id = new byte[DeviceID.ID_LENGTH];
+        buffer.get(id);
+        final DeviceID deviceID = new DeviceID(id);
+        final long issued = buffer.getLong();
+        final byte[] secret = new byte[SECRET_LENGTH];
+        buffer.get(secret);
+
+        if (issued + getLifetime() < System.currentTimeMillis()) {
+            Log.v(TAG, "Rejecting expired ticket of " + deviceID);
+            return null;
+        }
+        final Long revoked = revocations.get(deviceID);
+        if (revoked != null && issued <= revoked) {
+            Log.v(TAG, "Rejecting revoked ticket of " + deviceID);
+            return null;
+        }
+        return new Grant(deviceID, new SecretKeySpec(secret, SessionKeys.SESSION_KEY_ALG));
+    }
+
+    /**
+     * Reject all tickets issued to the given device up to now.
+     */
+    public void revoke(DeviceID deviceID) {
+        revocations.put(deviceID, System.currentTimeMillis());
+    }
+
+    /**
+     * The contents of a valid ticket.
+     */
+    public static class Grant {
+        private final DeviceID deviceID;
+        private final SecretKey resumptionSecret;
+
+        private Grant(DeviceID deviceID, SecretKey resumptionSecret) {
+            this.deviceID = deviceID;
+            this.resumptionSecret = resumptionSecret;
+        }
+
+        public DeviceID getDeviceID() {
+            return deviceID;
+        }
+
+        public SecretKey getResumptionSecret() {
+            return resumptionSecret;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.master.network;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import de.ncoder.typedmap.Key;
+import de.unipassau.isl.evs.ssh.core.container.AbstractComponent;
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.RoutingKey;
+import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_PEER_ID;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_BROADCAST;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_CHUNK;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_CAMERA_FRAME;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_DOOR_RING;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_DOOR_STATUS_UPDATE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_LIGHT_UPDATE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.APP_NOTIFICATION_RECEIVE;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_BLOCK_ERROR;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_BLOCK_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_UNLATCH_ERROR;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_DOOR_UNLATCH_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_REQUEST_WEATHER_INFO_REPLY;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_DOOR_UNLATCH;
+import static de.unipassau.isl.evs.ssh.master.MasterConstants.SendQueueConstants.CAPACITY;
+
+/**
+ * Holds back messages for connected devices whose connection is currently not
+ * {@link Channel#isWritable() writable}, because more than
+ * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#WRITE_BUFFER_HIGH_WATER_MARK
+ * WRITE_BUFFER_HIGH_WATER_MARK} bytes are still waiting to be sent. The messages are written in order as soon as the
+ * connection becomes writable again.
+ * <p/>
+ * Each connection holds back at most {@link de.unipassau.isl.evs.ssh.master.MasterConstants.SendQueueConstants#CAPACITY
+ * CAPACITY} messages, if more messages are sent the {@link OverflowPolicy} set for their RoutingKey using
+ * {@link #setOverflowPolicy(RoutingKey, OverflowPolicy)} decides which message is dropped.
+ * This way a single slow device can't make the Master run out of memory.
+ * Messages sent using {@link de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter#sendMessageConflated
+ * sendMessageConflated} replace held back messages containing an older version of the same state.
+ *
+ * @author agent
+ */
+public class SendQueue extends AbstractComponent {
+    private static final String TAG = SendQueue.class.getSimpleName();
+    public static final Key<SendQueue> KEY = new Key<>(SendQueue.class);
+    private static final AttributeKey<Deque<Entry>> QUEUE = AttributeKey.valueOf(SendQueue.class, "QUEUE");
+
+    /**
+     * Decides what happens if a message is sent to a connection whose SendQueue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the oldest held back message with the same RoutingKey, e.g. for periodic updates where only the most
+         * recent values matter. If no such message is held back, the new message is dropped.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the new message.
+         */
+        DROP_NEWEST,
+        /**
+         * Never drop the message, even if this exceeds the capacity of the SendQueue.
+         */
+        NEVER_DROP
+    }
+
+    private final Map<String, OverflowPolicy> overflowPolicies = new HashMap<>();
+    private final WritabilityHandler writabilityHandler = new WritabilityHandler();
+
+    public SendQueue() {
+        setOverflowPolicy(MASTER_REQUEST_WEATHER_INFO_REPLY, OverflowPolicy.DROP_OLDEST);
+        setOverflowPolicy(APP_CAMERA_BROADCAST, OverflowPolicy.DROP_OLDEST);
+        setOverflowPolicy(APP_CAMERA_FRAME, OverflowPolicy.DROP_OLDEST);
+        setOverflowPolicy(APP_LIGHT_UPDATE, OverflowPolicy.DROP_OLDEST);
+        setOverflowPolicy(APP_DOOR_STATUS_UPDATE, OverflowPolicy.DROP_OLDEST);
+
+        //The CameraChunkForwarder only has a single chunk in flight per transfer and aborts the whole transfer itself
+        //if the device can't keep up, dropping single chunks would only corrupt the picture
+        setOverflowPolicy(APP_CAMERA_CHUNK, OverflowPolicy.NEVER_DROP);
+        setOverflowPolicy(SLAVE_DOOR_UNLATCH, OverflowPolicy.NEVER_DROP);
+        setOverflowPolicy(MASTER_DOOR_UNLATCH_REPLY, OverflowPolicy.NEVER_DROP);
+        setOverflowPolicy(MASTER_DOOR_UNLATCH_ERROR, OverflowPolicy.NEVER_DROP);
+        setOverflowPolicy(MASTER_DOOR_BLOCK_REPLY, OverflowPolicy.NEVER_DROP);
+        setOverflowPolicy(MASTER_DOOR_BLOCK_ERROR, OverflowPolicy.NEVER_DROP);
+        setOverflowPolicy(APP_DOOR_RING, OverflowPolicy.NEVER_DROP);
+        setOverflowPolicy(APP_NOTIFICATION_RECEIVE, OverflowPolicy.NEVER_DROP);
+    }
+
+    //Configuration/////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Set what happens to messages sent to the given RoutingKey if the SendQueue of the connection is full.
+     */
+    public synchronized void setOverflowPolicy(RoutingKey routingKey, OverflowPolicy policy) {
+        overflowPolicies.put(routingKey.getKey(), policy);
+    }
+
+    /**
+     * @return the OverflowPolicy for the given RoutingKey, {@link OverflowPolicy#DROP_NEWEST} if none is set
+     */
+    public synchronized OverflowPolicy getOverflowPolicy(String routingKey) {
+        final OverflowPolicy policy = overflowPolicies.get(routingKey);
+        return policy == null ? OverflowPolicy.DROP_NEWEST : policy;
+    }
+
+    /**
+     * @return the handler that must be added to the pipeline of every connection, so that held back messages are
+     * written once the connection becomes writable again
+     */
+    public ChannelHandler getWritabilityHandler() {
+        return writabilityHandler;
+    }
+
+    //Queue/////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write the message to the channel directly if it is writable and no other messages are held back, otherwise
+     * hold the message back until the channel becomes writable again.
+     *
+     * @return a Future that completes once the message was written or fails if the message was dropped
+     */
+    public Future<Void> write(Channel channel, Message.AddressedMessage message) {
+        final Deque<Entry> queue = getQueue(channel);
+        synchronized (queue) {
+            if (queue.isEmpty() && channel.isWritable()) {
+                return channel.writeAndFlush(message);
+            }
+            for (Entry entry : queue) {
+                if (entry.message.isSupersededBy(message)) {
+                    // replace the outdated state, the sender of the old message will be notified once this one is sent
+                    entry.message = message;
+                    return entry.promise;
+                }
+            }
+
+            final Promise<Void> promise = requireComponent(ExecutionServiceComponent.KEY).newPromise();
+            if (queue.size() >= CAPACITY && !makeRoom(queue, message)) {
+                promise.setFailure(new IOException("SendQueue for " + message.getToID() + " is full, dropping "
+                        + message));
+                return promise;
+            }
+            queue.addLast(new Entry(message, promise));
+        }
+        if (channel.isWritable()) {
+            // the channel might have become writable while the message was added, so make sure it is sent
+            scheduleDrain(channel);
+        }
+        return promise;
+    }
+
+    /**
+     * @return {@code true} if messages are held back for the given channel
+     */
+    public boolean hasPending(Channel channel) {
+        final Deque<Entry> queue = channel.attr(QUEUE).get();
+        if (queue == null) {
+            return false;
+        }
+        synchronized (queue) {
+            return !queue.isEmpty();
+        }
+    }
+
+    /**
+     * Apply the OverflowPolicy of the message to a full queue.
+     *
+     * @return {@code true} if the message should be added to the queue, {@code false} if it should be dropped
+     */
+    private boolean makeRoom(Deque<Entry> queue, Message.AddressedMessage message) {
+        switch (getOverflowPolicy(message.getRoutingKey())) {
+            case NEVER_DROP:
+                return true;
+            case DROP_OLDEST:
+                for (Iterator<Entry> it = queue.iterator(); it.hasNext(); ) {
+                    final Entry entry = it.next();
+                    if (entry.message.getRoutingKey().equals(message.getRoutingKey())) {
+                        it.remove();
+                        entry.promise.tryFailure(new IOException("SendQueue for " + message.getToID()
+                                + " is full, dropping " + entry.message));
+                        return true;
+                    }
+                }
+                return false;
+            case DROP_NEWEST:
+            default:
+                return false;
+        }
+    }
+
+    private Deque<Entry> getQueue(final Channel channel) {
+        final Attribute<Deque<Entry>> attr = channel.attr(QUEUE);
+        Deque<Entry> queue = attr.get();
+        if (queue == null) {
+            final Deque<Entry> newQueue = new ArrayDeque<>();
+            queue = attr.setIfAbsent(newQueue);
+            if (queue == null) {
+                queue = newQueue;
+                channel.closeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        discard(future.channel());
+                    }
+                });
+            }
+        }
+        return queue;
+    }
+
+    private void scheduleDrain(final Channel channel) {
+        channel.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                drain(channel);
+            }
+        });
+    }
+
+    /**
+     * Write held back messages to the channel until it is no longer writable.
+     */
+    private void drain(Channel channel) {
+        final Deque<Entry> queue = channel.attr(QUEUE).get();
+        if (queue == null) {
+            return;
+        }
+        int count = 0;
+        synchronized (queue) {
+            while (channel.isWritable() && !queue.isEmpty()) {
+                final Entry entry = queue.removeFirst();
+                channel.write(entry.message).addListener(entry);
+                count++;
+            }
+        }
+        if (count > 0) {
+            channel.flush();
+            Log.v(TAG, "Sent " + count + " held back messages to " + channel.attr(ATTR_PEER_ID).get());
+        }
+    }
+
+    /**
+     * Fail all messages held back for a closed channel.
+     */
+    private void discard(Channel channel) {
+        final Deque<Entry> queue = channel.attr(QUEUE).get();
+        if (queue == null) {
+            return;
+        }
+        synchronized (queue) {
+            for (Entry entry : queue) {
+                entry.promise.tryFailure(new IOException("Connection to " + entry.message.getToID() + " closed"));
+            }
+            queue.clear();
+        }
+    }
+
+    /**
+     * Writes the held back messages once the channel becomes writable again.
+     */
+    @ChannelHandler.Sharable
+    private class WritabilityHandler extends ChannelHandlerAdapter {
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            if (ctx.channel().isWritable()) {
+                drain(ctx.channel());
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+    }
+
+    private static class Entry implements ChannelFutureListener {
+        private Message.AddressedMessage message;
+        private final Promise<Void> promise;
+
+        private Entry(Message.AddressedMessage message, Promise<Void> promise) {
+            this.message = message;
+            this.promise = promise;
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            if (future.isSuccess()) {
+                promise.trySuccess(null);
+            } else {
+                promise.tryFailure(future.cause());
+            }
+        }
+    }
+}
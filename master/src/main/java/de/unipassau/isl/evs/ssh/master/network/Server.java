@@ -39,7 +39,8 @@ import com.google.common.collect.Iterables;
 import java.net.InetSocketAddress;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import de.ncoder.typedmap.Key;
 import de.unipassau.isl.evs.ssh.core.CoreConstants;
@@ -53,18 +54,23 @@ import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.ResourceLeakDetector;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.Slf4JLoggerFactory;
 
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_PEER_ID;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.CRYPTO_WORKER_THREADS;
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.DEFAULT_LOCAL_PORT;
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.DEFAULT_PUBLIC_PORT;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.HANDSHAKE_WORKER_THREADS;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.PARALLEL_CRYPTO;
 
 /**
  * The heart of the master server: a netty stack accepting connections from devices and handling communication with them using a netty pipeline.
@@ -95,6 +101,22 @@ public class Server extends AbstractComponent {
      * If it isn't contained here, it is not connected to the Server.
      */
     private ChannelGroup connections;
+    /**
+     * The established connections indexed by the DeviceID of the connected device, used for constant time lookups
+     * when sending messages.
+     */
+    private final ConcurrentMap<DeviceID, Connection> connectionIndex = new ConcurrentHashMap<>();
+    /**
+     * The bounded pool the {@link ServerHandshakeHandler} uses for crypto operations and database queries,
+     * so that they don't block the event loop.
+     */
+    private EventExecutorGroup handshakeExecutor;
+    /**
+     * The pool for signing and encrypting frames, {@code null} unless {@link CoreConstants.NettyConstants#PARALLEL_CRYPTO}
+     * is enabled.
+     */
+    @Nullable
+    private EventExecutorGroup cryptoExecutor;
 
     /**
      * Init timeouts and the connection registry and start the netty IO server synchronously
@@ -133,12 +155,20 @@ public class Server extends AbstractComponent {
         //Setup the Executor and Connection Pool
         final ExecutionServiceComponent eventLoop = requireComponent(ExecutionServiceComponent.KEY);
         connections = new DefaultChannelGroup(eventLoop.next());
+        handshakeExecutor = new DefaultEventExecutorGroup(HANDSHAKE_WORKER_THREADS);
+        if (PARALLEL_CRYPTO) {
+            cryptoExecutor = new DefaultEventExecutorGroup(CRYPTO_WORKER_THREADS);
+        }
 
         ServerBootstrap b = new ServerBootstrap()
                 .group(eventLoop)
-                .channel(NioServerSocketChannel.class)
+                .channel(eventLoop.getServerSocketChannelClass())
                 .childHandler(getHandshakeHandler())
-                .childOption(ChannelOption.SO_KEEPALIVE, true);
+                .option(ChannelOption.ALLOCATOR, CoreConstants.NettyConstants.ALLOCATOR)
+                .childOption(ChannelOption.ALLOCATOR, CoreConstants.NettyConstants.ALLOCATOR)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, CoreConstants.NettyConstants.WRITE_BUFFER_LOW_WATER_MARK)
+                .childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, CoreConstants.NettyConstants.WRITE_BUFFER_HIGH_WATER_MARK);
 
         //Bind to ports and wait for the start of the server
         final int localPort = getLocalPort();
@@ -165,6 +195,21 @@ public class Server extends AbstractComponent {
         return new ServerHandshakeHandler(this, getContainer());
     }
 
+    /**
+     * @return the pool for blocking work during handshakes
+     */
+    EventExecutorGroup getHandshakeExecutor() {
+        return handshakeExecutor;
+    }
+
+    /**
+     * @return the pool for the per-frame crypto operations, or {@code null} if they are executed on the event loop
+     */
+    @Nullable
+    EventExecutorGroup getCryptoExecutor() {
+        return cryptoExecutor;
+    }
+
     /**
      * Stop listening and close all connections.
      */
@@ -175,23 +220,63 @@ public class Server extends AbstractComponent {
         if (publicChannel != null && publicChannel.channel() != null) {
             publicChannel.channel().close();
         }
+        if (handshakeExecutor != null) {
+            handshakeExecutor.shutdownGracefully();
+        }
+        if (cryptoExecutor != null) {
+            cryptoExecutor.shutdownGracefully();
+        }
         super.destroy();
     }
 
+    /**
+     * Register a connection with a successfully authenticated device.
+     * The connection is removed from the registry once its channel is closed.
+     * If the device was already connected, the new connection replaces the old one in the index.
+     */
+    void registerConnection(Channel channel, DeviceID id, boolean isLocal) {
+        final Connection connection = new Connection(channel, id, isLocal);
+        connections.add(channel);
+        final Connection previous = connectionIndex.put(id, connection);
+        if (previous != null && previous.getChannel().isActive()) {
+            Log.w(getClass().getSimpleName(), "Device " + id + " connected twice, replacing " + previous.getChannel()
+                    + " with " + channel);
+        }
+        channel.closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                connectionIndex.remove(connection.getDeviceID(), connection);
+            }
+        });
+    }
+
+    /**
+     * Finds the active Connection to a Client with a matching DeviceID in constant time.
+     *
+     * @return the found Connection, or {@code null} if the device is not connected
+     */
+    @Nullable
+    public Connection findConnection(DeviceID id) {
+        if (id == null) {
+            return null;
+        }
+        final Connection connection = connectionIndex.get(id);
+        if (connection != null && connection.getChannel().isActive()) {
+            return connection;
+        }
+        return null;
+    }
+
     /**
      * Finds the Channel representing a connection to a Client with a matching DeviceID.
      *
      * @return the found Channel, or {@code null} if no Channel matches the given ID
+     * @see #findConnection(DeviceID)
      */
     @Nullable
     public Channel findChannel(DeviceID id) {
-        for (Channel channel : connections) {
-            //noinspection ConstantConditions
-            if (channel.isActive() && Objects.equals(channel.attr(ATTR_PEER_ID).get(), id)) {
-                return channel;
-            }
-        }
-        return null;
+        final Connection connection = findConnection(id);
+        return connection != null ? connection.getChannel() : null;
     }
 
     /**
@@ -307,6 +392,43 @@ public class Server extends AbstractComponent {
         return listeners.remove(object);
     }
 
+    /**
+     * An established connection to a device, caching the attributes of its channel that are set during the handshake
+     * and never change afterwards.
+     */
+    public static class Connection {
+        private final Channel channel;
+        private final DeviceID deviceID;
+        private final boolean isLocal;
+
+        private Connection(Channel channel, DeviceID deviceID, boolean isLocal) {
+            this.channel = channel;
+            this.deviceID = deviceID;
+            this.isLocal = isLocal;
+        }
+
+        public Channel getChannel() {
+            return channel;
+        }
+
+        public DeviceID getDeviceID() {
+            return deviceID;
+        }
+
+        /**
+         * @return {@code true} if the device is connected via the local network, {@code false} if it is connected
+         * via the internet
+         */
+        public boolean isLocal() {
+            return isLocal;
+        }
+
+        @Override
+        public String toString() {
+            return "Connection{" + deviceID + (isLocal ? " local " : " remote ") + channel + "}";
+        }
+    }
+
     public interface ServerConnectionListener {
         void onClientConnected(Channel channel);
 
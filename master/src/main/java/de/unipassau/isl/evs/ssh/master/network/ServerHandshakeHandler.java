@@ -36,7 +36,12 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.unipassau.isl.evs.ssh.core.CoreConstants;
 import de.unipassau.isl.evs.ssh.core.container.Container;
@@ -50,15 +55,28 @@ import de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.DeviceConnectedPayload;
 import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.core.naming.NamingManager;
+import de.unipassau.isl.evs.ssh.core.network.handler.CompactMessageDecoder;
+import de.unipassau.isl.evs.ssh.core.network.handler.CompactMessageEncoder;
 import de.unipassau.isl.evs.ssh.core.network.handler.Decrypter;
 import de.unipassau.isl.evs.ssh.core.network.handler.Encrypter;
+import de.unipassau.isl.evs.ssh.core.network.handler.FlushBatcher;
+import de.unipassau.isl.evs.ssh.core.network.handler.FrameCompressor;
+import de.unipassau.isl.evs.ssh.core.network.handler.FrameDecompressor;
+import de.unipassau.isl.evs.ssh.core.network.handler.HeartbeatCodec;
+import de.unipassau.isl.evs.ssh.core.network.handler.LivenessTracker;
+import de.unipassau.isl.evs.ssh.core.network.handler.ParallelFrameDecoder;
+import de.unipassau.isl.evs.ssh.core.network.handler.ParallelFrameEncoder;
 import de.unipassau.isl.evs.ssh.core.network.handler.PipelinePlug;
+import de.unipassau.isl.evs.ssh.core.network.handler.SessionDecrypter;
+import de.unipassau.isl.evs.ssh.core.network.handler.SessionEncrypter;
 import de.unipassau.isl.evs.ssh.core.network.handler.SignatureChecker;
 import de.unipassau.isl.evs.ssh.core.network.handler.SignatureGenerator;
 import de.unipassau.isl.evs.ssh.core.network.handler.TimeoutHandler;
+import de.unipassau.isl.evs.ssh.core.network.handler.TrafficScheduler;
 import de.unipassau.isl.evs.ssh.core.network.handshake.HandshakeException;
 import de.unipassau.isl.evs.ssh.core.network.handshake.HandshakePacket;
 import de.unipassau.isl.evs.ssh.core.network.handshake.HandshakePacket.ServerAuthenticationResponse;
+import de.unipassau.isl.evs.ssh.core.network.handshake.SessionKeys;
 import de.unipassau.isl.evs.ssh.core.sec.KeyStoreController;
 import de.unipassau.isl.evs.ssh.master.database.SlaveController;
 import de.unipassau.isl.evs.ssh.master.database.UserManagementController;
@@ -68,24 +86,28 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.serialization.ClassResolver;
 import io.netty.handler.codec.serialization.ClassResolvers;
 import io.netty.handler.codec.serialization.ObjectDecoder;
 import io.netty.handler.codec.serialization.ObjectEncoder;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutorGroup;
 
-import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ALL_IDLE_TIME;
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_LOCAL_CONNECTION;
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.ATTR_PEER_ID;
-import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.READER_IDLE_TIME;
-import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.WRITER_IDLE_TIME;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.MAX_CONCURRENT_HANDSHAKES;
 
 /**
  * A ChannelHandlerAdapter that will execute the Handshake with the Client and add the IncomingDispatcher on success.
  * See {@link HandshakePacket} for the handshake sequence, also {@link #setState(ChannelHandlerContext, State, State)}
  * transitions show the order the functions must be executed.
+ * <p>
+ * The crypto operations and database queries of the handshake are executed on the handshake worker pool of the
+ * {@link Server}, so that they don't block the event loop that also serves all established connections.
+ * At most {@link CoreConstants.NettyConstants#MAX_CONCURRENT_HANDSHAKES} handshakes are in progress at the same time,
+ * further connections aren't read from until another handshake finished.
  *
  * @author Niko Fink: Handshake Sequence
  * @author Christoph Fraedrich: Registration
@@ -95,11 +117,32 @@ import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.WRITER_
 public class ServerHandshakeHandler extends ChannelHandlerAdapter {
     private static final String TAG = ServerHandshakeHandler.class.getSimpleName();
 
+    // Stateless handlers shared by all connections
+    private static final ObjectEncoder OBJECT_ENCODER = new ObjectEncoder();
+    private static final ClassResolver CLASS_RESOLVER = ClassResolvers.weakCachingConcurrentResolver(ServerHandshakeHandler.class.getClassLoader());
+    private static final LoggingHandler LOGGING_HANDLER = new LoggingHandler(LogLevel.TRACE);
+    private static final HeartbeatCodec HEARTBEAT_CODEC = new HeartbeatCodec();
+    private static final PipelinePlug PIPELINE_PLUG = new PipelinePlug();
+
     private static final AttributeKey<byte[]> CHAP_CHALLENGE = AttributeKey.valueOf(ServerHandshakeHandler.class, "CHAP_CHALLENGE");
     private static final AttributeKey<State> STATE = AttributeKey.valueOf(ServerHandshakeHandler.class, "STATE");
+    /**
+     * The SessionKeys of a connection which negotiated {@link HandshakePacket.Capability#SESSION_RESUMPTION}, used for
+     * issuing a ticket once the Client is authenticated
+     */
+    private static final AttributeKey<SessionKeys> SESSION_KEYS = AttributeKey.valueOf(ServerHandshakeHandler.class, "SESSION_KEYS");
+    /**
+     * Set if the connection counts towards the {@link #handshakesInProgress}
+     */
+    private static final AttributeKey<Boolean> HANDSHAKE_SLOT = AttributeKey.valueOf(ServerHandshakeHandler.class, "HANDSHAKE_SLOT");
 
     private final Server server;
     private final Container container;
+    private final AtomicInteger handshakesInProgress = new AtomicInteger();
+    /**
+     * Connections waiting for a handshake slot, their autoRead is disabled until they get one
+     */
+    private final Queue<ChannelHandlerContext> waitingHandshakes = new ConcurrentLinkedQueue<>();
 
     public ServerHandshakeHandler(Server server, Container container) {
         this.server = server;
@@ -123,18 +166,16 @@ public class ServerHandshakeHandler extends ChannelHandlerAdapter {
         }
 
         // Add (de-)serialization Handlers before this Handler
-        ctx.pipeline().addBefore(ctx.name(), ObjectEncoder.class.getSimpleName(), new ObjectEncoder());
-        ctx.pipeline().addBefore(ctx.name(), ObjectDecoder.class.getSimpleName(), new ObjectDecoder(
-                ClassResolvers.weakCachingConcurrentResolver(getClass().getClassLoader())));
-        ctx.pipeline().addBefore(ctx.name(), LoggingHandler.class.getSimpleName(), new LoggingHandler(LogLevel.TRACE));
+        ctx.pipeline().addBefore(ctx.name(), ObjectEncoder.class.getSimpleName(), OBJECT_ENCODER);
+        ctx.pipeline().addBefore(ctx.name(), ObjectDecoder.class.getSimpleName(), new ObjectDecoder(CLASS_RESOLVER));
+        ctx.pipeline().addBefore(ctx.name(), LoggingHandler.class.getSimpleName(), LOGGING_HANDLER);
 
         // Timeout Handler
-        ctx.pipeline().addBefore(ctx.name(), IdleStateHandler.class.getSimpleName(),
-                new IdleStateHandler(READER_IDLE_TIME, WRITER_IDLE_TIME, ALL_IDLE_TIME));
+        ctx.pipeline().addBefore(ctx.name(), LivenessTracker.class.getSimpleName(), LivenessTracker.SHARED);
         ctx.pipeline().addBefore(ctx.name(), TimeoutHandler.class.getSimpleName(), new TimeoutHandler());
 
         // Add exception handler
-        ctx.pipeline().addLast(PipelinePlug.class.getSimpleName(), new PipelinePlug());
+        ctx.pipeline().addLast(PipelinePlug.class.getSimpleName(), PIPELINE_PLUG);
 
         super.channelRegistered(ctx);
         Log.v(TAG, "Pipeline after register: " + ctx.pipeline());
@@ -150,12 +191,28 @@ public class ServerHandshakeHandler extends ChannelHandlerAdapter {
         ctx.attr(ATTR_LOCAL_CONNECTION).set(isLocal);
         Log.v(TAG, "Channel to " + (isLocal ? "local" : "internet") + " device open, waiting for Client Hello");
         setChapChallenge(ctx, new byte[HandshakePacket.CHAP.CHALLENGE_LENGTH]);
+        if (!tryAcquireHandshakeSlot(ctx)) {
+            Log.i(TAG, MAX_CONCURRENT_HANDSHAKES + " handshakes in progress, delaying handshake with " + ctx.channel());
+            ctx.channel().config().setAutoRead(false);
+            waitingHandshakes.add(ctx);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        waitingHandshakes.remove(ctx);
+        releaseHandshakeSlot(ctx);
+        super.channelInactive(ctx);
     }
 
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         try {
             if (msg instanceof HandshakePacket.Hello) {
                 handleHello(ctx, ((HandshakePacket.Hello) msg));
+            } else if (msg instanceof HandshakePacket.Resume) {
+                handleResume(ctx, ((HandshakePacket.Resume) msg));
+            } else if (msg instanceof HandshakePacket.ResumeFinished) {
+                handleResumeFinished(ctx);
             } else if (msg instanceof HandshakePacket.CHAP) {
                 if (getState(ctx) == State.EXPECT_INITIAL_CHAP) {
                     handleInitialChapRequest(ctx, ((HandshakePacket.CHAP) msg));
@@ -173,28 +230,166 @@ public class ServerHandshakeHandler extends ChannelHandlerAdapter {
         }
     }
 
-    private void handleHello(ChannelHandlerContext ctx, HandshakePacket.Hello msg) throws GeneralSecurityException {
+    private void handleHello(final ChannelHandlerContext ctx, final HandshakePacket.Hello msg) throws GeneralSecurityException {
         setState(ctx, State.EXPECT_HELLO, State.EXPECT_INITIAL_CHAP);
         Log.v(TAG, "Got Client Hello, sending Server Hello and awaiting 1. CHAP as response");
 
         assert !msg.isMaster;
         final X509Certificate deviceCertificate = msg.certificate;
         ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_CERT).set(deviceCertificate);
-        final DeviceID deviceID = DeviceID.fromCertificate(deviceCertificate);
-        ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_ID).set(deviceID);
-        Log.v(TAG, "Client " + deviceID + " connected, checking authentication");
-
-        final X509Certificate masterCert = container.require(NamingManager.KEY).getMasterCertificate();
-        final boolean isMaster = container.require(NamingManager.KEY).isMaster();
-        ctx.writeAndFlush(new HandshakePacket.Hello(masterCert, isMaster)).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
-
-        // add Security handlers
-        final PublicKey remotePublicKey = deviceCertificate.getPublicKey();
-        final PrivateKey localPrivateKey = container.require(KeyStoreController.KEY).getOwnPrivateKey();
-        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), Encrypter.class.getSimpleName(), new Encrypter(remotePublicKey));
-        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), Decrypter.class.getSimpleName(), new Decrypter(localPrivateKey));
-        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SignatureChecker.class.getSimpleName(), new SignatureChecker(remotePublicKey));
-        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SignatureGenerator.class.getSimpleName(), new SignatureGenerator(localPrivateKey));
+        offload(ctx, new OffloadedStep() {
+            private final byte[] sessionNonce = new byte[SessionKeys.NONCE_LENGTH];
+            private final List<ChannelHandler> securityHandlers = new ArrayList<>();
+            private DeviceID deviceID;
+            private SessionKeys keys;
+
+            @Override
+            void compute() throws GeneralSecurityException {
+                deviceID = DeviceID.fromCertificate(deviceCertificate);
+                new SecureRandom().nextBytes(sessionNonce);
+
+                // create Security handlers
+                final PublicKey remotePublicKey = deviceCertificate.getPublicKey();
+                final PrivateKey localPrivateKey = container.require(KeyStoreController.KEY).getOwnPrivateKey();
+                final boolean signed = !msg.isNegotiated(HandshakePacket.Capability.SESSION_CIPHER)
+                        || !msg.isNegotiated(HandshakePacket.Capability.AUTHENTICATED_CHANNEL);
+                if (msg.isNegotiated(HandshakePacket.Capability.SESSION_CIPHER)) {
+                    keys = SessionKeys.derive(localPrivateKey, remotePublicKey, msg.sessionNonce, sessionNonce);
+                }
+                final EventExecutorGroup cryptoExecutor = server.getCryptoExecutor();
+                if (cryptoExecutor != null) {
+                    if (keys != null) {
+                        securityHandlers.add(new ParallelFrameEncoder(cryptoExecutor, keys.getServerWriteKey(), signed ? localPrivateKey : null));
+                        securityHandlers.add(new ParallelFrameDecoder(cryptoExecutor, keys.getClientWriteKey(), signed ? remotePublicKey : null));
+                    } else {
+                        securityHandlers.add(new ParallelFrameEncoder(cryptoExecutor, remotePublicKey, signed ? localPrivateKey : null));
+                        securityHandlers.add(new ParallelFrameDecoder(cryptoExecutor, localPrivateKey, signed ? remotePublicKey : null));
+                    }
+                    return;
+                }
+                if (keys != null) {
+                    securityHandlers.add(new SessionEncrypter(keys.getServerWriteKey()));
+                    securityHandlers.add(new SessionDecrypter(keys.getClientWriteKey()));
+                } else {
+                    securityHandlers.add(new Encrypter(remotePublicKey));
+                    securityHandlers.add(new Decrypter(localPrivateKey));
+                }
+                if (signed) {
+                    securityHandlers.add(new SignatureChecker(remotePublicKey));
+                    securityHandlers.add(new SignatureGenerator(localPrivateKey));
+                }
+            }
+
+            @Override
+            void resume() {
+                ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_ID).set(deviceID);
+                Log.v(TAG, "Client " + deviceID + " connected, checking authentication");
+
+                // Send Server Hello
+                final X509Certificate masterCert = container.require(NamingManager.KEY).getMasterCertificate();
+                final boolean isMaster = container.require(NamingManager.KEY).isMaster();
+                ctx.writeAndFlush(new HandshakePacket.Hello(masterCert, isMaster, sessionNonce)).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+
+                // add Security handlers
+                if (keys != null) {
+                    Log.v(TAG, "Using session cipher");
+                    if (msg.isNegotiated(HandshakePacket.Capability.AUTHENTICATED_CHANNEL)
+                            && msg.isNegotiated(HandshakePacket.Capability.SESSION_RESUMPTION)) {
+                        ctx.attr(SESSION_KEYS).set(keys);
+                    }
+                }
+                for (ChannelHandler handler : securityHandlers) {
+                    ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), handler.getClass().getSimpleName(), handler);
+                }
+                if (msg.isNegotiated(HandshakePacket.Capability.SESSION_CIPHER)
+                        && msg.isNegotiated(HandshakePacket.Capability.AUTHENTICATED_CHANNEL)) {
+                    Log.v(TAG, "Using authenticated channel, frames won't be signed");
+                }
+                if (msg.isNegotiated(HandshakePacket.Capability.COMPACT_CODEC)) {
+                    addCompactCodec(ctx);
+                }
+                if (msg.isNegotiated(HandshakePacket.Capability.BINARY_HEARTBEAT)) {
+                    addHeartbeatCodec(ctx);
+                }
+                if (msg.isNegotiated(HandshakePacket.Capability.FRAME_COMPRESSION)) {
+                    addCompression(ctx);
+                }
+            }
+        });
+    }
+
+    private void handleResume(ChannelHandlerContext ctx, HandshakePacket.Resume msg) throws GeneralSecurityException {
+        setState(ctx, State.EXPECT_HELLO, State.EXPECT_RESUME_FINISHED);
+
+        final ResumptionTickets tickets = container.get(ResumptionTickets.KEY);
+        final ResumptionTickets.Grant grant = tickets == null ? null : tickets.redeem(msg.ticket);
+        if (grant == null || !HandshakePacket.Capability.isNegotiated(msg.capabilities, HandshakePacket.Capability.SESSION_RESUMPTION)) {
+            setState(ctx, State.EXPECT_RESUME_FINISHED, State.EXPECT_HELLO);
+            Log.v(TAG, "Rejected SessionTicket, awaiting Client Hello");
+            ctx.writeAndFlush(HandshakePacket.ResumeResponse.rejected("Invalid SessionTicket, please send Hello."))
+                    .addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            return;
+        }
+        final DeviceID deviceID = grant.getDeviceID();
+        ctx.attr(ATTR_PEER_ID).set(deviceID);
+        Log.v(TAG, "Client " + deviceID + " presented valid SessionTicket, sending ResumeResponse and awaiting ResumeFinished");
+
+        final byte[] sessionNonce = new byte[SessionKeys.NONCE_LENGTH];
+        new SecureRandom().nextBytes(sessionNonce);
+        final byte[] verifier = SessionKeys.resumeVerifier(grant.getResumptionSecret(), msg.sessionNonce, sessionNonce);
+        final SessionKeys keys = SessionKeys.resume(grant.getResumptionSecret(), msg.sessionNonce, sessionNonce);
+        final byte[] newTicket = tickets.issue(deviceID, keys.getResumptionSecret());
+        final boolean isConnectionLocal = ctx.attr(ATTR_LOCAL_CONNECTION).get() == Boolean.TRUE;
+        ctx.writeAndFlush(HandshakePacket.ResumeResponse.accepted(
+                sessionNonce, verifier, isConnectionLocal, newTicket, tickets.getLifetime()
+        )).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+
+        // add Security handlers, resumed connections always use an authenticated channel
+        addSessionCipher(ctx, keys);
+        if (HandshakePacket.Capability.isNegotiated(msg.capabilities, HandshakePacket.Capability.COMPACT_CODEC)) {
+            addCompactCodec(ctx);
+        }
+        if (HandshakePacket.Capability.isNegotiated(msg.capabilities, HandshakePacket.Capability.BINARY_HEARTBEAT)) {
+            addHeartbeatCodec(ctx);
+        }
+        if (HandshakePacket.Capability.isNegotiated(msg.capabilities, HandshakePacket.Capability.FRAME_COMPRESSION)) {
+            addCompression(ctx);
+        }
+    }
+
+    private void handleResumeFinished(ChannelHandlerContext ctx) throws HandshakeException {
+        // the packet could be decrypted, so the Client knows the resumption secret from the ticket
+        setState(ctx, State.EXPECT_RESUME_FINISHED, State.FINISHED);
+        Log.i(TAG, "Resumed connection with " + ctx.attr(ATTR_PEER_ID).get());
+        handshakeSuccessful(ctx);
+    }
+
+    private void addSessionCipher(ChannelHandlerContext ctx, SessionKeys keys) throws GeneralSecurityException {
+        final EventExecutorGroup cryptoExecutor = server.getCryptoExecutor();
+        if (cryptoExecutor != null) {
+            ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), ParallelFrameEncoder.class.getSimpleName(), new ParallelFrameEncoder(cryptoExecutor, keys.getServerWriteKey(), null));
+            ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), ParallelFrameDecoder.class.getSimpleName(), new ParallelFrameDecoder(cryptoExecutor, keys.getClientWriteKey(), null));
+            return;
+        }
+        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SessionEncrypter.class.getSimpleName(), new SessionEncrypter(keys.getServerWriteKey()));
+        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), SessionDecrypter.class.getSimpleName(), new SessionDecrypter(keys.getClientWriteKey()));
+    }
+
+    private void addCompactCodec(ChannelHandlerContext ctx) {
+        ctx.pipeline().addAfter(ObjectEncoder.class.getSimpleName(), CompactMessageEncoder.class.getSimpleName(), new CompactMessageEncoder());
+        ctx.pipeline().addBefore(ObjectDecoder.class.getSimpleName(), CompactMessageDecoder.class.getSimpleName(), new CompactMessageDecoder());
+    }
+
+    private void addHeartbeatCodec(ChannelHandlerContext ctx) {
+        ctx.pipeline().addBefore(ObjectDecoder.class.getSimpleName(), HeartbeatCodec.class.getSimpleName(), HEARTBEAT_CODEC);
+    }
+
+    /**
+     * Must be added after the security handlers, so that frames are compressed before they are signed and encrypted
+     */
+    private void addCompression(ChannelHandlerContext ctx) {
+        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), FrameCompressor.class.getSimpleName(), new FrameCompressor());
+        ctx.pipeline().addBefore(ObjectEncoder.class.getSimpleName(), FrameDecompressor.class.getSimpleName(), new FrameDecompressor());
     }
 
     private void handleInitialChapRequest(ChannelHandlerContext ctx, HandshakePacket.CHAP msg) throws HandshakeException {
@@ -223,52 +418,179 @@ public class ServerHandshakeHandler extends ChannelHandlerAdapter {
         checkAuthentication(ctx);
     }
 
-    private void checkAuthentication(ChannelHandlerContext ctx) throws HandshakeException {
+    private void checkAuthentication(final ChannelHandlerContext ctx) throws HandshakeException {
         setState(ctx, State.CHECK_AUTH, State.CHECK_AUTH);
 
         final DeviceID deviceID = ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_ID).get();
-        final Slave slave = container.require(SlaveController.KEY).getSlave(deviceID);
-        final UserDevice userDevice = container.require(UserManagementController.KEY).getUserDevice(deviceID);
-        if (slave != null || userDevice != null) {
-            setState(ctx, State.CHECK_AUTH, State.FINISHED);
-            Log.i(TAG, "Device " + deviceID + " is registered as " + (slave != null ? "Slave " + slave : "UserDevice " + userDevice));
-
-            final byte[] passiveRegistrationToken = slave == null ? null : slave.getPassiveRegistrationToken();
-            final boolean isConnectionLocal = ctx.attr(ATTR_LOCAL_CONNECTION).get() == Boolean.TRUE;
-            ctx.writeAndFlush(ServerAuthenticationResponse.authenticated(
-                    null, passiveRegistrationToken, isConnectionLocal
-            )).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
-
-            handshakeSuccessful(ctx);
-        } else {
-            setState(ctx, State.CHECK_AUTH, State.EXPECT_REGISTER);
-            Log.i(TAG, "Device " + deviceID + " is not registered, requesting registration");
-
-            ctx.writeAndFlush(ServerAuthenticationResponse.unauthenticated(
-                    "Unknown Client, please register."
-            )).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
-        }
+        final SessionKeys keys = ctx.attr(SESSION_KEYS).getAndSet(null);
+        offload(ctx, new OffloadedStep() {
+            private Slave slave;
+            private UserDevice userDevice;
+            private byte[] resumptionTicket = null;
+            private long ticketLifetime = 0;
+
+            @Override
+            void compute() {
+                slave = container.require(SlaveController.KEY).getSlave(deviceID);
+                userDevice = container.require(UserManagementController.KEY).getUserDevice(deviceID);
+                final ResumptionTickets tickets = container.get(ResumptionTickets.KEY);
+                if ((slave != null || userDevice != null) && keys != null && tickets != null) {
+                    resumptionTicket = tickets.issue(deviceID, keys.getResumptionSecret());
+                    ticketLifetime = tickets.getLifetime();
+                }
+            }
+
+            @Override
+            void resume() throws HandshakeException {
+                if (slave != null || userDevice != null) {
+                    setState(ctx, State.CHECK_AUTH, State.FINISHED);
+                    Log.i(TAG, "Device " + deviceID + " is registered as " + (slave != null ? "Slave " + slave : "UserDevice " + userDevice));
+
+                    final byte[] passiveRegistrationToken = slave == null ? null : slave.getPassiveRegistrationToken();
+                    final boolean isConnectionLocal = ctx.attr(ATTR_LOCAL_CONNECTION).get() == Boolean.TRUE;
+                    ctx.writeAndFlush(ServerAuthenticationResponse.authenticated(
+                            null, passiveRegistrationToken, isConnectionLocal, resumptionTicket, ticketLifetime
+                    )).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+
+                    handshakeSuccessful(ctx);
+                } else {
+                    setState(ctx, State.CHECK_AUTH, State.EXPECT_REGISTER);
+                    Log.i(TAG, "Device " + deviceID + " is not registered, requesting registration");
+
+                    ctx.writeAndFlush(ServerAuthenticationResponse.unauthenticated(
+                            "Unknown Client, please register."
+                    )).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+                }
+            }
+        });
     }
 
-    private void handleActiveRegistrationRequest(ChannelHandlerContext ctx, HandshakePacket.ActiveRegistrationRequest msg) throws HandshakeException {
+    private void handleActiveRegistrationRequest(final ChannelHandlerContext ctx, final HandshakePacket.ActiveRegistrationRequest msg) throws HandshakeException {
         setState(ctx, State.EXPECT_REGISTER, State.CHECK_AUTH);
 
-        // send client register info to handler
-        boolean success = container.require(MasterRegisterDeviceHandler.KEY).registerDevice(
-                ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_CERT).get(),
-                msg.activeRegistrationToken
-        );
-
-        if (success) {
-            Log.v(TAG, "Accepted registration request from " + ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_ID).get());
-            checkAuthentication(ctx);
-        } else {
-            setState(ctx, State.CHECK_AUTH, State.EXPECT_REGISTER);
-            Log.v(TAG, "Rejected registration request from " + ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_ID).get());
-
-            ctx.writeAndFlush(ServerAuthenticationResponse.unauthenticated(
-                    "Client registration rejected, closing connection."
-            )).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        final X509Certificate certificate = ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_CERT).get();
+        offload(ctx, new OffloadedStep() {
+            private boolean success;
+
+            @Override
+            void compute() {
+                // send client register info to handler
+                success = container.require(MasterRegisterDeviceHandler.KEY).registerDevice(
+                        certificate,
+                        msg.activeRegistrationToken
+                );
+            }
+
+            @Override
+            void resume() throws HandshakeException {
+                if (success) {
+                    Log.v(TAG, "Accepted registration request from " + ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_ID).get());
+                    checkAuthentication(ctx);
+                } else {
+                    setState(ctx, State.CHECK_AUTH, State.EXPECT_REGISTER);
+                    Log.v(TAG, "Rejected registration request from " + ctx.attr(CoreConstants.NettyConstants.ATTR_PEER_ID).get());
+
+                    ctx.writeAndFlush(ServerAuthenticationResponse.unauthenticated(
+                            "Client registration rejected, closing connection."
+                    )).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+                }
+            }
+        });
+    }
+
+    //Offloading///////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A step of the handshake that is split into a blocking part, executed on the handshake worker pool of the
+     * {@link Server}, and a part that continues the handshake on the event loop of the connection.
+     */
+    private abstract static class OffloadedStep {
+        /**
+         * Executed on the handshake worker pool, must not access the pipeline.
+         */
+        abstract void compute() throws Exception;
+
+        /**
+         * Executed on the event loop of the connection after {@link #compute()} returned.
+         */
+        abstract void resume() throws Exception;
+    }
+
+    /**
+     * Executes the given step and stops reading from the connection until it completed.
+     * If any part of the step fails, the connection is closed.
+     */
+    private void offload(final ChannelHandlerContext ctx, final OffloadedStep step) {
+        ctx.channel().config().setAutoRead(false);
+        server.getHandshakeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    step.compute();
+                } catch (Exception e) {
+                    fail(ctx, e);
+                    return;
+                }
+                ctx.executor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!ctx.channel().isActive()) {
+                            return;
+                        }
+                        try {
+                            step.resume();
+                            ctx.channel().config().setAutoRead(true);
+                        } catch (Exception e) {
+                            fail(ctx, e);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void fail(final ChannelHandlerContext ctx, final Exception e) {
+        ctx.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                ctx.fireExceptionCaught(e);
+                ctx.close();
+            }
+        });
+    }
+
+    //Handshake limit///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean tryAcquireHandshakeSlot(ChannelHandlerContext ctx) {
+        int current;
+        do {
+            current = handshakesInProgress.get();
+            if (current >= MAX_CONCURRENT_HANDSHAKES) {
+                return false;
+            }
+        } while (!handshakesInProgress.compareAndSet(current, current + 1));
+        ctx.attr(HANDSHAKE_SLOT).set(true);
+        return true;
+    }
+
+    /**
+     * Releases the slot of the given connection, if it had one, and starts reading from the next waiting connection.
+     */
+    private void releaseHandshakeSlot(ChannelHandlerContext ctx) {
+        if (ctx.attr(HANDSHAKE_SLOT).getAndSet(null) == null) {
+            return;
+        }
+        handshakesInProgress.decrementAndGet();
+        ChannelHandlerContext next;
+        while ((next = waitingHandshakes.peek()) != null && tryAcquireHandshakeSlot(next)) {
+            if (waitingHandshakes.remove(next) && next.channel().isActive()) {
+                Log.v(TAG, "Continuing delayed handshake with " + next.channel());
+                next.channel().config().setAutoRead(true);
+            } else {
+                // the connection was closed or promoted concurrently
+                releaseHandshakeSlot(next);
+                return;
+            }
         }
     }
 
@@ -278,28 +600,43 @@ public class ServerHandshakeHandler extends ChannelHandlerAdapter {
             throw new IllegalStateException("Handshake not finished: " + state);
         }
         final DeviceID deviceID = ctx.channel().attr(ATTR_PEER_ID).get();
+        releaseHandshakeSlot(ctx);
 
         // allow pings
         TimeoutHandler.setPingEnabled(ctx.channel(), true);
         // add Dispatcher
         ctx.pipeline().addBefore(ctx.name(), IncomingDispatcher.class.getSimpleName(), container.require(IncomingDispatcher.KEY));
+        if (CoreConstants.NettyConstants.FLUSH_BATCHING) {
+            // batch flushes of messages sent by the OutgoingRouter
+            ctx.pipeline().addBefore(IncomingDispatcher.class.getSimpleName(), FlushBatcher.class.getSimpleName(), new FlushBatcher());
+        }
+        if (CoreConstants.NettyConstants.TRAFFIC_SCHEDULING) {
+            // don't let camera images delay other messages
+            ctx.pipeline().addBefore(IncomingDispatcher.class.getSimpleName(), TrafficScheduler.class.getSimpleName(), new TrafficScheduler());
+        }
+        final SendQueue sendQueue = container.get(SendQueue.KEY);
+        if (sendQueue != null) {
+            // send held back messages once the connection is writable again
+            ctx.pipeline().addBefore(IncomingDispatcher.class.getSimpleName(), SendQueue.class.getSimpleName(), sendQueue.getWritabilityHandler());
+        }
         // Logging is handled by IncomingDispatcher and OutgoingRouter
         ctx.pipeline().remove(LoggingHandler.class.getSimpleName());
         // remove HandshakeHandler
         ctx.pipeline().remove(this);
 
         // Register connection
-        server.getActiveChannels().add(ctx.channel());
+        final boolean isLocal = ctx.attr(ATTR_LOCAL_CONNECTION).get() == Boolean.TRUE;
+        server.registerConnection(ctx.channel(), deviceID, isLocal);
         Log.i(TAG, "Handshake with " + deviceID + " successful, current Pipeline: " + ctx.pipeline());
 
-        Message message = new Message(new DeviceConnectedPayload(deviceID, ctx.channel(), ctx.attr(ATTR_LOCAL_CONNECTION).get()));
+        Message message = new Message(new DeviceConnectedPayload(deviceID, ctx.channel(), isLocal));
         container.require(OutgoingRouter.KEY).sendMessageLocal(RoutingKeys.MASTER_DEVICE_CONNECTED, message);
 
         ctx.channel().closeFuture().addListener(new ChannelFutureListener() {
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
                 for (Server.ServerConnectionListener listener : server.listeners) {
-                    listener.onClientConnected(future.channel());
+                    listener.onClientDisonnected(future.channel());
                 }
             }
         });
@@ -330,6 +667,6 @@ public class ServerHandshakeHandler extends ChannelHandlerAdapter {
     }
 
     private enum State {
-        EXPECT_HELLO, EXPECT_INITIAL_CHAP, EXPECT_FINAL_CHAP, EXPECT_REGISTER, CHECK_AUTH, FINISHED
+        EXPECT_HELLO, EXPECT_RESUME_FINISHED, EXPECT_INITIAL_CHAP, EXPECT_FINAL_CHAP, EXPECT_REGISTER, CHECK_AUTH, FINISHED
     }
 }
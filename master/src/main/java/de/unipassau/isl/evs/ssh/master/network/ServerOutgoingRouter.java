@@ -32,6 +32,7 @@ import java.util.Objects;
 import de.unipassau.isl.evs.ssh.core.messaging.IncomingDispatcher;
 import de.unipassau.isl.evs.ssh.core.messaging.Message;
 import de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter;
+import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
 import io.netty.channel.Channel;
 import io.netty.util.concurrent.Future;
@@ -52,14 +53,41 @@ public class ServerOutgoingRouter extends OutgoingRouter {
         } else {
             //Find client and send the message there
             Channel channel = requireComponent(Server.KEY).findChannel(amsg.getToID());
+            final Outbox outbox = getComponent(Outbox.KEY);
             if (channel == null || !channel.isOpen()) {
+                if (outbox != null && outbox.isQueueable(amsg)) {
+                    //Store the message until the client connects again, the Outbox checks again whether the client
+                    //connected in the meantime
+                    return outbox.queue(amsg);
+                }
                 Exception e = new IOException("Client " + amsg.getToID() + " is not connected");
                 e.fillInStackTrace();
                 return executionService.newFailedFuture(e);
-                //in a future version, pending messages could be queued instead of failed directly
             } else {
+                if (outbox != null && outbox.hasPending(amsg.getToID())) {
+                    //Client just connected, send the queued messages first to keep their order
+                    outbox.drain(amsg.getToID(), channel);
+                }
+                final SendQueue sendQueue = getComponent(SendQueue.KEY);
+                if (sendQueue != null) {
+                    //Hold the message back if the client can't keep up
+                    return sendQueue.write(channel, amsg);
+                }
                 return channel.writeAndFlush(amsg);
             }
         }
     }
+
+    @Override
+    public boolean isWritable(DeviceID toID) {
+        if (Objects.equals(toID, getOwnID())) {
+            return true;
+        }
+        final Server.Connection connection = requireComponent(Server.KEY).findConnection(toID);
+        if (connection == null || !connection.getChannel().isWritable()) {
+            return false;
+        }
+        final SendQueue sendQueue = getComponent(SendQueue.KEY);
+        return sendQueue == null || !sendQueue.hasPending(connection.getChannel());
+    }
 }
@@ -31,15 +31,24 @@ import android.net.wifi.WifiManager;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
 import java.security.Signature;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import de.ncoder.typedmap.Key;
 import de.unipassau.isl.evs.ssh.core.CoreConstants;
 import de.unipassau.isl.evs.ssh.core.container.AbstractComponent;
 import de.unipassau.isl.evs.ssh.core.container.Container;
 import de.unipassau.isl.evs.ssh.core.container.ContainerService;
+import de.unipassau.isl.evs.ssh.core.database.dto.Slave;
+import de.unipassau.isl.evs.ssh.core.database.dto.UserDevice;
 import de.unipassau.isl.evs.ssh.core.naming.DeviceID;
 import de.unipassau.isl.evs.ssh.core.naming.NamingManager;
 import de.unipassau.isl.evs.ssh.core.network.Client;
@@ -49,12 +58,12 @@ import de.unipassau.isl.evs.ssh.master.database.SlaveController;
 import de.unipassau.isl.evs.ssh.master.database.UserManagementController;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.util.ReferenceCountUtil;
 
 import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.DISCOVERY_PAYLOAD_REQUEST;
@@ -63,6 +72,10 @@ import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.DISCOVE
 /**
  * This component is responsible for responding to UDP discovery packets and signalling the address and port back to
  * {@link Client}s searching for this Master.
+ * <p>
+ * As Clients repeat their broadcasts every few seconds, the signed responses are cached for each address of this
+ * Master they were received on, each sender gets at most one response per {@link #MIN_RESPONSE_INTERVAL} and the IDs
+ * of the registered devices are kept in memory instead of querying the database for every request.
  *
  * @author Niko Fink
  */
@@ -71,6 +84,25 @@ public class UDPDiscoveryServer extends AbstractComponent {
 
     private static final String TAG = UDPDiscoveryServer.class.getSimpleName();
 
+    /**
+     * Requests from a sender that got a response less than this number of milliseconds ago are ignored.
+     */
+    private static final long MIN_RESPONSE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Once the rate limiter tracks more senders, those that can send again are forgotten.
+     */
+    private static final int MAX_TRACKED_SENDERS = 256;
+    /**
+     * The in-memory set of registered devices is reloaded from the database at least this often,
+     * so that removed devices no longer get a response.
+     */
+    private static final long REGISTERED_IDS_MAX_AGE = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * If a device is not in the in-memory set of registered devices, the set is reloaded from the database, but not
+     * more often than this, so that unregistered devices can't cause a database query with every request.
+     */
+    private static final long REGISTERED_IDS_MIN_AGE = TimeUnit.SECONDS.toMillis(5);
+
     /**
      * The channel listening for incoming UDP connections on the port of the client.
      * Use {@link ChannelFuture#sync()} to wait for client startup.
@@ -80,6 +112,21 @@ public class UDPDiscoveryServer extends AbstractComponent {
      * The lock used to prevent android from hibernating the network Stack while UDP discovery is running.
      */
     private WifiManager.MulticastLock multicastLock;
+    /**
+     * The signed responses for each address this Master received requests on and the port of the {@link Server},
+     * only accessed from the event loop of the {@link #channel}.
+     */
+    private final Map<InetSocketAddress, byte[]> responseCache = new HashMap<>();
+    /**
+     * The time of the last response sent to each sender, only accessed from the event loop of the {@link #channel}.
+     */
+    private final Map<InetAddress, Long> lastResponseTimes = new HashMap<>();
+    /**
+     * The IDs of all Slaves and UserDevices, only accessed from the event loop of the {@link #channel}.
+     */
+    @Nullable
+    private Set<DeviceID> registeredIDs;
+    private long registeredIDsLoadTime;
 
     @Override
     public void init(Container container) {
@@ -92,9 +139,10 @@ public class UDPDiscoveryServer extends AbstractComponent {
         multicastLock.acquire();
 
         // Setup UDP Channel
+        final ExecutionServiceComponent executionService = requireComponent(ExecutionServiceComponent.KEY);
         Bootstrap b = new Bootstrap()
-                .channel(NioDatagramChannel.class)
-                .group(requireComponent(ExecutionServiceComponent.KEY))
+                .channel(executionService.getDatagramChannelClass())
+                .group(executionService)
                 .handler(new RequestHandler())
                 .option(ChannelOption.SO_BROADCAST, true);
         channel = b.bind(CoreConstants.NettyConstants.DISCOVERY_SERVER_PORT);
@@ -120,41 +168,110 @@ public class UDPDiscoveryServer extends AbstractComponent {
      * @param request the request sent from a {@link Client}
      */
     private void sendDiscoveryResponse(DatagramPacket request) {
-        final ByteBuf buffer = channel.channel().alloc().heapBuffer();
-
-        // gather information
-        final byte[] header = DISCOVERY_PAYLOAD_RESPONSE.getBytes();
-        final String addressString = request.recipient().getAddress().getHostAddress();
-        final byte[] address = addressString.getBytes();
         final InetSocketAddress serverAddress = requireComponent(Server.KEY).getAddress();
         if (serverAddress == null) {
             Log.w(TAG, "Could not respond to UDP discovery request as Server is not started yet");
             return;
         }
-        final int port = serverAddress.getPort();
-        Log.i(TAG, "sendDiscoveryResponse with connection data " + addressString + ":" + port + " to " + request.sender());
+        final InetSocketAddress cacheKey = new InetSocketAddress(request.recipient().getAddress(), serverAddress.getPort());
+        byte[] response = responseCache.get(cacheKey);
+        if (response == null) {
+            response = buildDiscoveryResponse(cacheKey);
+            if (response == null) {
+                return;
+            }
+            // the responses for the addresses and ports this Master no longer uses will never be needed again
+            for (Iterator<InetSocketAddress> it = responseCache.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().getPort() != cacheKey.getPort()) {
+                    it.remove();
+                }
+            }
+            responseCache.put(cacheKey, response);
+        }
+        Log.i(TAG, "sendDiscoveryResponse with connection data " + cacheKey + " to " + request.sender());
 
-        // write it to the buffer
-        buffer.writeInt(header.length);
-        buffer.writeBytes(header);
-        buffer.writeInt(address.length);
-        buffer.writeBytes(address);
-        buffer.writeInt(port);
+        // the cached array is never modified, so it can be sent without copying
+        channel.channel().writeAndFlush(new DatagramPacket(Unpooled.wrappedBuffer(response), request.sender()));
+    }
 
-        // and sign the data
+    /**
+     * Build and sign the response for requests received on the address of the given key.
+     *
+     * @return the signed response or {@code null} if it couldn't be signed
+     */
+    @Nullable
+    private byte[] buildDiscoveryResponse(InetSocketAddress cacheKey) {
+        final ByteBuf buffer = channel.channel().alloc().heapBuffer();
         try {
+            // gather information
+            final byte[] header = DISCOVERY_PAYLOAD_RESPONSE.getBytes();
+            final byte[] address = cacheKey.getAddress().getHostAddress().getBytes();
+
+            // write it to the buffer
+            buffer.writeInt(header.length);
+            buffer.writeBytes(header);
+            buffer.writeInt(address.length);
+            buffer.writeBytes(address);
+            buffer.writeInt(cacheKey.getPort());
+
+            // and sign the data
             Signature signature = Signature.getInstance("ECDSA");
             signature.initSign(requireComponent(KeyStoreController.KEY).getOwnPrivateKey());
             signature.update(buffer.nioBuffer());
             final byte[] sign = signature.sign();
             buffer.writeInt(sign.length);
             buffer.writeBytes(sign);
+
+            final byte[] response = new byte[buffer.readableBytes()];
+            buffer.readBytes(response);
+            return response;
         } catch (GeneralSecurityException e) {
             Log.w(TAG, "Could not send UDP discovery response", e);
+            return null;
+        } finally {
+            buffer.release();
         }
+    }
 
-        final DatagramPacket response = new DatagramPacket(buffer, request.sender());
-        channel.channel().writeAndFlush(response);
+    /**
+     * @return {@code true}, if the sender already got a response within the last {@link #MIN_RESPONSE_INTERVAL}
+     */
+    private boolean isRateLimited(InetAddress sender) {
+        final long now = System.currentTimeMillis();
+        final Long lastResponse = lastResponseTimes.get(sender);
+        if (lastResponse != null && now - lastResponse < MIN_RESPONSE_INTERVAL) {
+            return true;
+        }
+        if (lastResponseTimes.size() >= MAX_TRACKED_SENDERS) {
+            for (Iterator<Long> it = lastResponseTimes.values().iterator(); it.hasNext(); ) {
+                if (now - it.next() >= MIN_RESPONSE_INTERVAL) {
+                    it.remove();
+                }
+            }
+        }
+        lastResponseTimes.put(sender, now);
+        return false;
+    }
+
+    private boolean isDeviceRegistered(DeviceID clientID) {
+        final long age = System.currentTimeMillis() - registeredIDsLoadTime;
+        if (registeredIDs == null || age > REGISTERED_IDS_MAX_AGE
+                || (age > REGISTERED_IDS_MIN_AGE && !registeredIDs.contains(clientID))) {
+            loadRegisteredIDs();
+        }
+        return registeredIDs.contains(clientID);
+    }
+
+    private void loadRegisteredIDs() {
+        final Set<DeviceID> ids = new HashSet<>();
+        for (Slave slave : requireComponent(SlaveController.KEY).getSlaves()) {
+            ids.add(slave.getSlaveID());
+        }
+        for (UserDevice userDevice : requireComponent(UserManagementController.KEY).getUserDevices()) {
+            ids.add(userDevice.getUserDeviceID());
+        }
+        registeredIDs = ids;
+        registeredIDsLoadTime = System.currentTimeMillis();
     }
 
     /**
@@ -176,6 +293,10 @@ public class UDPDiscoveryServer extends AbstractComponent {
                     Log.d(TAG, "Discarding UDP packet with illegal message type from " + request.sender() + ": " + messageType);
                     return;
                 }
+                if (isRateLimited(request.sender().getAddress())) {
+                    Log.v(TAG, "Discarding repeated UDP inquiry from " + request.sender());
+                    return;
+                }
                 final DeviceID ownID = requireComponent(NamingManager.KEY).getOwnID();
                 final DeviceID clientID = readDeviceID(buffer);
                 if (clientID == null) {
@@ -208,11 +329,6 @@ public class UDPDiscoveryServer extends AbstractComponent {
             }
         }
 
-        private boolean isDeviceRegistered(DeviceID clientID) {
-            return requireComponent(SlaveController.KEY).getSlave(clientID) != null
-                    || requireComponent(UserManagementController.KEY).getUserDevice(clientID) != null;
-        }
-
         /**
          * Read a string.
          */
@@ -81,6 +81,7 @@ public class ModuleBroadcaster extends AbstractComponent {
      */
     public void updateClient(DeviceID id) {
         final Message message = createUpdateMessage();
-        requireComponent(OutgoingRouter.KEY).sendMessage(id, RoutingKeys.GLOBAL_MODULES_UPDATE, message);
+        // only the most recent list of modules matters
+        requireComponent(OutgoingRouter.KEY).sendMessageConflated(id, RoutingKeys.GLOBAL_MODULES_UPDATE, message, null);
     }
 }
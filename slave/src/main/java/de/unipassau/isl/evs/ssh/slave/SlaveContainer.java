@@ -41,6 +41,7 @@ import de.unipassau.isl.evs.ssh.core.network.UDPDiscoveryClient;
 import de.unipassau.isl.evs.ssh.core.schedule.DefaultExecutionServiceComponent;
 import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
 import de.unipassau.isl.evs.ssh.core.sec.KeyStoreController;
+import de.unipassau.isl.evs.ssh.slave.handler.SlaveCamera;
 import de.unipassau.isl.evs.ssh.slave.handler.SlaveCameraHandler;
 import de.unipassau.isl.evs.ssh.slave.handler.SlaveDoorHandler;
 import de.unipassau.isl.evs.ssh.slave.handler.SlaveLightHandler;
@@ -69,6 +70,7 @@ public class SlaveContainer extends ContainerService {
 
         register(SlaveModuleHandler.KEY, new SlaveModuleHandler());
         register(SlaveSystemHealthChecker.KEY, new SlaveSystemHealthChecker());
+        register(SlaveCamera.KEY, new SlaveCamera());
 
         registerHandler(new SlaveLightHandler());
         registerHandler(new SlaveDoorHandler());
@@ -49,6 +49,13 @@ import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.ErrorPayload;
 import de.unipassau.isl.evs.ssh.slave.R;
 import de.unipassau.isl.evs.ssh.slave.SlaveContainer;
+import de.unipassau.isl.evs.ssh.slave.handler.CameraChunkSender;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.DEFAULT_QUALITY;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.THUMBNAIL_HEIGHT;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.THUMBNAIL_QUALITY;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.THUMBNAIL_WIDTH;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_GET;
 
 /**
  * An Activity containing the surfaceHolder used for capturing a camera picture.
@@ -88,7 +95,7 @@ public class OdroidCamera extends BoundActivity implements SurfaceHolder.Callbac
     public void surfaceCreated(SurfaceHolder holder) {
         Log.v(TAG, "surfaceCreated(holder = [" + holder + "])");
         try {
-            camera = Camera.open();
+            camera = openCamera(getCameraID());
             if (camera == null) {
                 Log.e(TAG, "No camera available");
                 finish();
@@ -107,6 +114,7 @@ public class OdroidCamera extends BoundActivity implements SurfaceHolder.Callbac
         Log.d(TAG, "surfaceChanged(holder = [" + holder + "], format = [" + format + "], width = [" + width + "], height = [" + height + "])");
         if (camera == null || holder.getSurface() == null) return;
         try {
+            configurePreview();
             camera.setPreviewDisplay(holder);
             camera.addCallbackBuffer(new byte[getImageSize()]);
             camera.setPreviewCallbackWithBuffer(this);
@@ -163,14 +171,82 @@ public class OdroidCamera extends BoundActivity implements SurfaceHolder.Callbac
         camera = null;
     }
 
-    private int getImageSize() {
-        List<Camera.Size> sizes = params.getSupportedPreviewSizes();
-        for (Camera.Size size : sizes) {
+    /**
+     * Select the preview size matching the requested resolution, as the preview frames are encoded directly.
+     */
+    private void configurePreview() {
+        final CameraPayload request = getRequest();
+        int width = request.getWidth();
+        int height = request.getHeight();
+        if (request.isThumbnail()) {
+            width = THUMBNAIL_WIDTH;
+            height = THUMBNAIL_HEIGHT;
+        }
+
+        final Camera.Size selected = selectPreviewSize(params.getSupportedPreviewSizes(), width, height);
+        if (selected != null) {
+            params.setPreviewSize(selected.width, selected.height);
+        }
+        params.setPreviewFormat(ImageFormat.NV21);
+        camera.setParameters(params);
+    }
+
+    /**
+     * Open the camera with the given ID, or the default camera if the device has no camera with this ID.
+     *
+     * @return the opened camera or {@code null} if no camera is available
+     */
+    public static Camera openCamera(int cameraID) {
+        if (cameraID >= 0 && cameraID < Camera.getNumberOfCameras()) {
+            return Camera.open(cameraID);
+        } else {
+            Log.w(TAG, "No camera with ID " + cameraID + ", using default camera");
+            return Camera.open();
+        }
+    }
+
+    /**
+     * @return the smallest supported preview size with at least the given resolution, the largest supported
+     * preview size if none is large enough, or {@code null} if no resolution is requested and the default
+     * preview size should be kept.
+     */
+    public static Camera.Size selectPreviewSize(List<Camera.Size> supportedSizes, int width, int height) {
+        if (width <= 0 && height <= 0) {
+            return null;
+        }
+        Camera.Size selected = null;
+        Camera.Size largest = null;
+        for (Camera.Size size : supportedSizes) {
             Log.d(TAG, "Supported Preview Size: " + size.width + "x" + size.height);
+            if (size.width >= width && size.height >= height
+                    && (selected == null || size.width * size.height < selected.width * selected.height)) {
+                selected = size;
+            }
+            if (largest == null || size.width * size.height > largest.width * largest.height) {
+                largest = size;
+            }
+        }
+        return selected != null ? selected : largest;
+    }
+
+    private int getImageSize() {
+        Camera.Size previewSize = params.getPreviewSize();
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(params.getPreviewFormat());
+        if (bitsPerPixel <= 0) {
+            bitsPerPixel = 32;
+        }
+        return previewSize.width * previewSize.height * bitsPerPixel / 8;
+    }
+
+    private int getQuality() {
+        final CameraPayload request = getRequest();
+        if (request.isThumbnail()) {
+            return THUMBNAIL_QUALITY;
+        } else if (request.getQuality() > 0 && request.getQuality() <= 100) {
+            return request.getQuality();
+        } else {
+            return DEFAULT_QUALITY;
         }
-        int size = ImageFormat.getBitsPerPixel(params.getPictureFormat()) / 8;
-        size = (size > 0 ? sizes.get(0).width * sizes.get(0).height * size : sizes.get(0).width * sizes.get(0).height * 4);
-        return size;
     }
 
     private void sendImage() {
@@ -181,15 +257,18 @@ public class OdroidCamera extends BoundActivity implements SurfaceHolder.Callbac
         int height = params.getPreviewSize().height;
         Rect rect = new Rect(0, 0, width, height);
         YuvImage yuvimage = new YuvImage(lastSnapshot, ImageFormat.NV21, width, height, null);
+        int quality = getQuality();
 
         try (ByteArrayOutputStream outStream = new ByteArrayOutputStream()) {
-            yuvimage.compressToJpeg(rect, 80, outStream);
+            yuvimage.compressToJpeg(rect, quality, outStream);
             byte[] jpegData = outStream.toByteArray();
 
             CameraPayload payload = new CameraPayload(getCameraID(), getModuleName());
             payload.setPicture(jpegData);
-            Message reply = new Message(payload);
-            requireComponent(OutgoingRouter.KEY).sendReply(getReplyToMessage(), reply);
+            payload.setResolution(width, height);
+            payload.setQuality(quality);
+            payload.setThumbnail(getRequest().isThumbnail());
+            CameraChunkSender.sendReply(getContainer(), getReplyToMessage(), payload);
             imageSent = true;
 
             //File file = new File(Environment.getExternalStorageDirectory().getPath(),
@@ -223,4 +302,8 @@ public class OdroidCamera extends BoundActivity implements SurfaceHolder.Callbac
     private Message.AddressedMessage getReplyToMessage() {
         return (Message.AddressedMessage) getIntent().getSerializableExtra(EXTRA_REPLY_TO_MESSAGE);
     }
+
+    private CameraPayload getRequest() {
+        return SLAVE_CAMERA_GET.getPayload(getReplyToMessage());
+    }
 }
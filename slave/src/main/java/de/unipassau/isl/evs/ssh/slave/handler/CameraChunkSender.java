@@ -0,0 +1,195 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.slave.handler;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import de.unipassau.isl.evs.ssh.core.container.Container;
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.ErrorPayload;
+import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.CAMERA_CHUNK_ACK_TIMEOUT;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.CAMERA_CHUNK_SIZE;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants.CAMERA_CHUNK_WINDOW;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_CHUNK;
+
+/**
+ * Sends a picture as {@link CameraChunkPayload CameraChunkPayloads} to the Master, followed by the reply to the
+ * original request. The next chunk is only sent after the previous one was written, so that only a single
+ * chunk is buffered by the network stack at a time.
+ * <p/>
+ * Additionally, at most {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#CAMERA_CHUNK_WINDOW
+ * CAMERA_CHUNK_WINDOW} chunks are sent ahead of the chunks the Master {@link #acknowledge(int, int) acknowledged}, which
+ * it does once they were forwarded to all receiving devices. If no acknowledgement arrives for
+ * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.NettyConstants#CAMERA_CHUNK_ACK_TIMEOUT CAMERA_CHUNK_ACK_TIMEOUT}
+ * seconds while waiting for it, the transfer is aborted.
+ *
+ * @author agent
+ */
+public class CameraChunkSender implements GenericFutureListener<Future<Void>> {
+    private static final String TAG = CameraChunkSender.class.getSimpleName();
+    /**
+     * The pictures currently sent, by their transfer ID
+     */
+    private static final Map<Integer, CameraChunkSender> senders = new ConcurrentHashMap<>();
+
+    private final OutgoingRouter router;
+    private final ExecutionServiceComponent executor;
+    private final Message.AddressedMessage replyToMessage;
+    private final CameraPayload payload;
+    private final byte[] picture;
+    private boolean finished = false;
+    private int offset = 0;
+    private int acknowledged = 0;
+    private boolean writing = false;
+    private boolean lastChunkSent = false;
+    private ScheduledFuture<?> ackTimeout;
+
+    private CameraChunkSender(Container container, Message.AddressedMessage replyToMessage, CameraPayload payload) {
+        this.router = container.require(OutgoingRouter.KEY);
+        this.executor = container.require(ExecutionServiceComponent.KEY);
+        this.replyToMessage = replyToMessage;
+        this.payload = payload;
+        this.picture = payload.getPicture();
+        payload.setPicture(null);
+        payload.setTransferID(replyToMessage.getSequenceNr());
+    }
+
+    /**
+     * Send the picture contained in the given payload in chunks, followed by the payload itself without the picture
+     * as reply to the given message.
+     *
+     * @param container      the Container providing the OutgoingRouter
+     * @param replyToMessage the request for the picture
+     * @param payload        the reply containing the picture, will be modified to contain the transfer ID instead
+     */
+    public static void sendReply(Container container, Message.AddressedMessage replyToMessage, CameraPayload payload) {
+        final CameraChunkSender sender = new CameraChunkSender(container, replyToMessage, payload);
+        // register before sending, so that the acknowledgement of the first chunks always finds the sender
+        senders.put(payload.getTransferID(), sender);
+        sender.trySendNext();
+    }
+
+    /**
+     * Called when the Master acknowledged that it forwarded the given number of bytes from the beginning of the
+     * picture of the given transfer, which allows sending further chunks.
+     */
+    public static void acknowledge(int transferID, int length) {
+        final CameraChunkSender sender = senders.get(transferID);
+        if (sender != null) {
+            sender.acknowledge(length);
+        }
+    }
+
+    private synchronized void acknowledge(int length) {
+        if (length <= acknowledged) {
+            return;
+        }
+        acknowledged = length;
+        if (ackTimeout != null) {
+            ackTimeout.cancel(false);
+            ackTimeout = null;
+        }
+        trySendNext();
+    }
+
+    private synchronized void trySendNext() {
+        if (writing || finished || lastChunkSent) {
+            return;
+        }
+        if (offset - acknowledged >= CAMERA_CHUNK_WINDOW * CAMERA_CHUNK_SIZE) {
+            if (ackTimeout == null) {
+                ackTimeout = executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        abort(new IOException("Master didn't acknowledge chunks for " + CAMERA_CHUNK_ACK_TIMEOUT
+                                + " seconds"));
+                    }
+                }, CAMERA_CHUNK_ACK_TIMEOUT, TimeUnit.SECONDS);
+            }
+            return;
+        }
+        final int length = Math.min(CAMERA_CHUNK_SIZE, picture.length - offset);
+        final byte[] data = Arrays.copyOfRange(picture, offset, offset + length);
+        final CameraChunkPayload chunk = new CameraChunkPayload(payload.getTransferID(), payload.getModuleName(),
+                payload.getCameraID(), offset, picture.length, data);
+        offset += length;
+        lastChunkSent = offset >= picture.length;
+        writing = true;
+        router.sendMessageToMaster(MASTER_CAMERA_CHUNK, new Message(chunk)).getSendFuture().addListener(this);
+    }
+
+    private synchronized void abort(Throwable cause) {
+        if (finished) {
+            return;
+        }
+        Log.w(TAG, "Could not send chunk of picture, aborting transfer " + payload.getTransferID(), cause);
+        router.sendReply(replyToMessage, new Message(new ErrorPayload(cause, "Could not send picture")));
+        finish();
+    }
+
+    private void finish() {
+        finished = true;
+        senders.remove(payload.getTransferID());
+        if (ackTimeout != null) {
+            ackTimeout.cancel(false);
+            ackTimeout = null;
+        }
+    }
+
+    @Override
+    public synchronized void operationComplete(Future<Void> future) throws Exception {
+        writing = false;
+        if (!future.isSuccess()) {
+            abort(future.cause());
+        } else if (!lastChunkSent) {
+            // writes issued from within a write listener might not be flushed, so send the next chunk separately
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    trySendNext();
+                }
+            });
+        } else if (!finished) {
+            router.sendReply(replyToMessage, new Message(payload));
+            finish();
+        }
+    }
+}
@@ -0,0 +1,530 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016.
+ * Bucher Andreas, Fink Simon Dominik, Fraedrich Christoph, Popp Wolfgang,
+ * Sell Leon, Werli Philemon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unipassau.isl.evs.ssh.slave.handler;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.graphics.YuvImage;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+import de.ncoder.typedmap.Key;
+import de.unipassau.isl.evs.ssh.core.container.AbstractComponent;
+import de.unipassau.isl.evs.ssh.core.container.Container;
+import de.unipassau.isl.evs.ssh.core.database.dto.Module;
+import de.unipassau.isl.evs.ssh.core.database.dto.ModuleAccessPoint.USBAccessPoint;
+import de.unipassau.isl.evs.ssh.core.messaging.Message;
+import de.unipassau.isl.evs.ssh.core.messaging.OutgoingRouter;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraStreamPayload;
+import de.unipassau.isl.evs.ssh.core.naming.NamingManager;
+import de.unipassau.isl.evs.ssh.core.schedule.ExecutionServiceComponent;
+import de.unipassau.isl.evs.ssh.slave.activity.OdroidCamera;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.CAPTURE_TIMEOUT;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.DEFAULT_QUALITY;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.FRAME_BUFFER_SIZE;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.FRAME_INTERVAL;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.IDLE_TIMEOUT;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.KEEP_CAMERA_OPEN;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.MAX_CAPTURE_TIME_OFFSET;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.MAX_FRAME_AGE;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.STREAM_LEASE;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.THUMBNAIL_HEIGHT;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.THUMBNAIL_QUALITY;
+import static de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants.THUMBNAIL_WIDTH;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.MASTER_CAMERA_FRAME;
+
+/**
+ * Keeps the camera of the Slave running in the background and buffers the most recent frames as JPEG,
+ * so that pictures can be taken without starting an Activity and waiting for the camera to start up.
+ * The preview is rendered into an offscreen SurfaceTexture and all camera operations run on a separate thread.
+ * <p/>
+ * The camera is opened on demand with the requested camera ID and a supported preview size matching the requested
+ * resolution, and closed again after it was idle for
+ * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants#IDLE_TIMEOUT IDLE_TIMEOUT}.
+ * If {@link de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants#KEEP_CAMERA_OPEN KEEP_CAMERA_OPEN} is set
+ * and this Slave has a Webcam module, its camera is kept open instead, so that pictures from just before the door
+ * bell rang are available.
+ *
+ * @author agent
+ */
+@SuppressWarnings("deprecation")
+public class SlaveCamera extends AbstractComponent {
+    public static final Key<SlaveCamera> KEY = new Key<>(SlaveCamera.class);
+    private static final String TAG = SlaveCamera.class.getSimpleName();
+
+    private final Deque<Frame> frames = new ArrayDeque<>(FRAME_BUFFER_SIZE);
+    private final List<Request> pendingRequests = new LinkedList<>();
+    private HandlerThread thread;
+    private Handler handler;
+    private Camera camera;
+    private int cameraID = -1;
+    private int warmCameraID = -1;
+    private SurfaceTexture texture;
+    private int width;
+    private int height;
+    private int bufferSize;
+    private long lastFrameTime;
+    private CameraStreamPayload stream;
+    private long streamExpires;
+    private long lastStreamTime;
+
+    private final Runnable idleTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.i(TAG, "Closing idle camera");
+            closeCamera();
+            if (KEEP_CAMERA_OPEN && warmCameraID >= 0) {
+                openCamera(warmCameraID, 0, 0);
+            }
+        }
+    };
+
+    private final Camera.PreviewCallback previewCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera cam) {
+            final long now = System.currentTimeMillis();
+            if (stream != null && now > streamExpires) {
+                Log.i(TAG, "Stream of " + stream.getModuleName() + " expired");
+                stopStream();
+            }
+            final boolean streamFrameDue = stream != null && now - lastStreamTime >= stream.getInterval();
+            if (!pendingRequests.isEmpty() || streamFrameDue || now - lastFrameTime >= FRAME_INTERVAL) {
+                lastFrameTime = now;
+                final Frame frame = encode(data, now);
+                if (frame != null) {
+                    if (frames.size() >= FRAME_BUFFER_SIZE) {
+                        frames.removeFirst();
+                    }
+                    frames.addLast(frame);
+                    for (Request request : pendingRequests) {
+                        complete(request, frame);
+                    }
+                    pendingRequests.clear();
+                    if (streamFrameDue) {
+                        lastStreamTime = now;
+                        sendStreamFrame(frame);
+                    }
+                }
+            }
+            if (data.length == bufferSize) {
+                //Buffers of a previous preview size are dropped
+                cam.addCallbackBuffer(data);
+            }
+        }
+    };
+
+    @Override
+    public void init(Container container) {
+        super.init(container);
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    @Override
+    public void destroy() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeCamera();
+            }
+        });
+        thread.quitSafely();
+        super.destroy();
+    }
+
+    /**
+     * Take a picture with the resolution and quality given in the request. If possible, the picture is taken from
+     * the buffered frames, otherwise the next frame of the camera is used.
+     *
+     * @param request the request for the picture
+     * @return a Future that is completed with the reply containing the picture, or failed if no camera is available
+     */
+    public Future<CameraPayload> takePicture(final CameraPayload request) {
+        final Promise<CameraPayload> promise = requireComponent(ExecutionServiceComponent.KEY).newPromise();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!openCamera(request.getCameraID(), getMinWidth(request), getMinHeight(request))) {
+                    promise.tryFailure(new IllegalStateException("No camera available"));
+                    return;
+                }
+                scheduleIdleTimeout();
+
+                final Frame frame = findFrame(request);
+                if (frame != null) {
+                    complete(new Request(request, promise), frame);
+                } else {
+                    final Request pending = new Request(request, promise);
+                    pendingRequests.add(pending);
+                    handler.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (pendingRequests.remove(pending)) {
+                                promise.tryFailure(new IllegalStateException("Camera didn't deliver a frame in time"));
+                            }
+                        }
+                    }, CAPTURE_TIMEOUT);
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Start, update or stop the live stream of this camera. While the stream is active, frames are sent to the Master
+     * as {@link de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys#MASTER_CAMERA_FRAME MASTER_CAMERA_FRAME}.
+     * The stream stops if it isn't renewed within
+     * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants#STREAM_LEASE STREAM_LEASE}.
+     *
+     * @param payload the stream parameters negotiated by the Master
+     */
+    public void setStream(final CameraStreamPayload payload) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!payload.isActive()) {
+                    stopStream();
+                } else if (openCamera(payload.getCameraID(), payload.isThumbnail() ? THUMBNAIL_WIDTH : 0,
+                        payload.isThumbnail() ? THUMBNAIL_HEIGHT : 0)) {
+                    handler.removeCallbacks(idleTimeout);
+                    stream = payload;
+                    streamExpires = System.currentTimeMillis() + STREAM_LEASE;
+                } else {
+                    Log.w(TAG, "Can't stream without camera");
+                }
+            }
+        });
+    }
+
+    /**
+     * Release the camera, e.g. so that it can be used by the {@link OdroidCamera} Activity.
+     * Pending requests are failed and an active stream is stopped.
+     *
+     * @return a Future that is completed once the camera is released
+     */
+    public Future<Void> releaseCamera() {
+        final Promise<Void> promise = requireComponent(ExecutionServiceComponent.KEY).newPromise();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeCamera();
+                promise.trySuccess(null);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Update the Webcam modules connected to this Slave. If
+     * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants#KEEP_CAMERA_OPEN KEEP_CAMERA_OPEN} is set,
+     * the camera of the first Webcam is kept open, otherwise cameras are only opened on demand.
+     *
+     * @param webcams the Webcam modules of this Slave
+     */
+    public void setWebcams(final List<Module> webcams) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                warmCameraID = webcams.isEmpty() ? -1 : getCameraID(webcams.get(0));
+                if (KEEP_CAMERA_OPEN && warmCameraID >= 0) {
+                    if (camera == null) {
+                        openCamera(warmCameraID, 0, 0);
+                    }
+                } else if (camera != null && stream == null && pendingRequests.isEmpty()) {
+                    scheduleIdleTimeout();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the camera ID of a Webcam module, which is the port of its USBAccessPoint
+     */
+    private static int getCameraID(Module webcam) {
+        if (webcam.getModuleAccessPoint() instanceof USBAccessPoint) {
+            return ((USBAccessPoint) webcam.getModuleAccessPoint()).getPort();
+        }
+        return 0;
+    }
+
+    private void stopStream() {
+        if (stream != null) {
+            stream = null;
+            scheduleIdleTimeout();
+        }
+    }
+
+    private void sendStreamFrame(Frame frame) {
+        final OutgoingRouter router = getComponent(OutgoingRouter.KEY);
+        final NamingManager namingManager = getComponent(NamingManager.KEY);
+        if (router == null || namingManager == null) {
+            return;
+        }
+        //Rather skip frames than queueing them up if the connection is congested
+        if (!router.isWritable(namingManager.getMasterID())) {
+            return;
+        }
+        final CameraPayload request = new CameraPayload(stream.getCameraID(), stream.getModuleName());
+        request.setThumbnail(stream.isThumbnail());
+        final CameraPayload reply = createReply(request, frame);
+        if (reply != null) {
+            router.sendMessageToMaster(MASTER_CAMERA_FRAME, new Message(reply));
+        }
+    }
+
+    //Camera////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Open the camera with the given ID, closing any other camera, and make sure that the preview has at least
+     * the given resolution, if supported. Smaller pictures are scaled down from the preview frames.
+     *
+     * @return {@code true} if the camera is open
+     */
+    private boolean openCamera(int cameraID, int minWidth, int minHeight) {
+        if (camera != null && this.cameraID != cameraID) {
+            Log.i(TAG, "Switching from camera " + this.cameraID + " to camera " + cameraID);
+            closeCamera();
+        }
+        try {
+            if (camera == null) {
+                camera = OdroidCamera.openCamera(cameraID);
+                if (camera == null) {
+                    Log.e(TAG, "No camera available");
+                    return false;
+                }
+                this.cameraID = cameraID;
+                texture = new SurfaceTexture(0);
+                camera.setPreviewTexture(texture);
+            } else if (width >= minWidth && height >= minHeight) {
+                return true;
+            }
+            configurePreview(minWidth, minHeight);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Could not open camera " + cameraID, e);
+            closeCamera();
+            return false;
+        }
+    }
+
+    /**
+     * (Re-)start the preview with the supported preview size selected like
+     * {@link OdroidCamera#selectPreviewSize(List, int, int)} does for the Activity.
+     */
+    private void configurePreview(int minWidth, int minHeight) {
+        final Camera.Parameters params = camera.getParameters();
+        final Camera.Size selected = OdroidCamera.selectPreviewSize(params.getSupportedPreviewSizes(), minWidth, minHeight);
+        if (selected != null) {
+            params.setPreviewSize(selected.width, selected.height);
+        }
+        params.setPreviewFormat(ImageFormat.NV21);
+
+        camera.stopPreview();
+        camera.setPreviewCallbackWithBuffer(null); //clears the buffers of the previous preview size
+        camera.setParameters(params);
+        width = params.getPreviewSize().width;
+        height = params.getPreviewSize().height;
+        bufferSize = width * height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+        camera.addCallbackBuffer(new byte[bufferSize]);
+        camera.setPreviewCallbackWithBuffer(previewCallback);
+        camera.startPreview();
+        Log.i(TAG, "Camera " + cameraID + " opened with preview size " + width + "x" + height);
+    }
+
+    private void closeCamera() {
+        handler.removeCallbacks(idleTimeout);
+        if (camera != null) {
+            try {
+                camera.stopPreview();
+            } catch (RuntimeException e) {
+                Log.i(TAG, "Could not stop preview", e);
+            }
+            camera.setPreviewCallbackWithBuffer(null);
+            camera.release();
+            camera = null;
+            cameraID = -1;
+            width = height = bufferSize = 0;
+        }
+        if (texture != null) {
+            texture.release();
+            texture = null;
+        }
+        frames.clear();
+        stream = null;
+        for (Request request : pendingRequests) {
+            request.promise.tryFailure(new IllegalStateException("Camera closed"));
+        }
+        pendingRequests.clear();
+    }
+
+    private void scheduleIdleTimeout() {
+        handler.removeCallbacks(idleTimeout);
+        if (!KEEP_CAMERA_OPEN || cameraID != warmCameraID) {
+            handler.postDelayed(idleTimeout, IDLE_TIMEOUT);
+        }
+    }
+
+    //Frames////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Frame encode(byte[] data, long time) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final YuvImage image = new YuvImage(data, ImageFormat.NV21, width, height, null);
+        if (!image.compressToJpeg(new Rect(0, 0, width, height), DEFAULT_QUALITY, out)) {
+            Log.w(TAG, "Could not compress frame");
+            return null;
+        }
+        return new Frame(time, out.toByteArray(), width, height);
+    }
+
+    /**
+     * @return the buffered frame closest to the requested capture time, if it was taken at most
+     * {@link de.unipassau.isl.evs.ssh.core.CoreConstants.CameraConstants#MAX_CAPTURE_TIME_OFFSET MAX_CAPTURE_TIME_OFFSET}
+     * before or after it and has at least the requested resolution, or the latest frame if it is recent enough and no
+     * capture time is requested. {@code null} if the request has to wait for the next frame.
+     */
+    private Frame findFrame(CameraPayload request) {
+        if (request.getCaptureTime() > 0) {
+            final int minWidth = getMinWidth(request);
+            final int minHeight = getMinHeight(request);
+            Frame closest = null;
+            for (Frame frame : frames) {
+                if (frame.width < minWidth || frame.height < minHeight
+                        || Math.abs(frame.time - request.getCaptureTime()) > MAX_CAPTURE_TIME_OFFSET) {
+                    continue;
+                }
+                if (closest == null || Math.abs(frame.time - request.getCaptureTime())
+                        < Math.abs(closest.time - request.getCaptureTime())) {
+                    closest = frame;
+                }
+            }
+            return closest;
+        }
+        final Frame latest = frames.peekLast();
+        //Only use the latest frame if it was taken with the current, possibly just enlarged, preview size
+        if (latest != null && latest.width == width && latest.height == height
+                && System.currentTimeMillis() - latest.time <= MAX_FRAME_AGE) {
+            return latest;
+        }
+        return null;
+    }
+
+    private void complete(Request pending, Frame frame) {
+        final CameraPayload reply = createReply(pending.request, frame);
+        if (reply != null) {
+            pending.promise.trySuccess(reply);
+        } else {
+            pending.promise.tryFailure(new IllegalStateException("Could not decode buffered frame"));
+        }
+    }
+
+    private static int getMinWidth(CameraPayload request) {
+        return request.isThumbnail() ? THUMBNAIL_WIDTH : request.getWidth();
+    }
+
+    private static int getMinHeight(CameraPayload request) {
+        return request.isThumbnail() ? THUMBNAIL_HEIGHT : request.getHeight();
+    }
+
+    private CameraPayload createReply(CameraPayload request, Frame frame) {
+        final int minWidth = getMinWidth(request);
+        final int minHeight = getMinHeight(request);
+        int quality = request.isThumbnail() ? THUMBNAIL_QUALITY : request.getQuality();
+        if (quality <= 0 || quality > 100) {
+            quality = DEFAULT_QUALITY;
+        }
+        int sampleSize = 1;
+        if (minWidth > 0 || minHeight > 0) {
+            while (frame.width / (sampleSize * 2) >= minWidth && frame.height / (sampleSize * 2) >= minHeight) {
+                sampleSize *= 2;
+            }
+        }
+
+        final CameraPayload reply = new CameraPayload(request.getCameraID(), request.getModuleName());
+        reply.setThumbnail(request.isThumbnail());
+        reply.setCaptureTime(frame.time);
+        reply.setQuality(quality);
+        if (sampleSize == 1 && quality == DEFAULT_QUALITY) {
+            reply.setPicture(frame.jpeg);
+            reply.setResolution(frame.width, frame.height);
+        } else {
+            //Only re-encode the buffered frame if a smaller or differently compressed picture is requested
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            final Bitmap bitmap = BitmapFactory.decodeByteArray(frame.jpeg, 0, frame.jpeg.length, options);
+            if (bitmap == null) {
+                return null;
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out);
+            reply.setPicture(out.toByteArray());
+            reply.setResolution(bitmap.getWidth(), bitmap.getHeight());
+            bitmap.recycle();
+        }
+        return reply;
+    }
+
+    private static class Frame {
+        private final long time;
+        private final byte[] jpeg;
+        private final int width;
+        private final int height;
+
+        private Frame(long time, byte[] jpeg, int width, int height) {
+            this.time = time;
+            this.jpeg = jpeg;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static class Request {
+        private final CameraPayload request;
+        private final Promise<CameraPayload> promise;
+
+        private Request(CameraPayload request, Promise<CameraPayload> promise) {
+            this.request = request;
+            this.promise = promise;
+        }
+    }
+}
@@ -30,22 +30,32 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
+import de.unipassau.isl.evs.ssh.core.container.Container;
 import de.unipassau.isl.evs.ssh.core.container.ContainerService;
 import de.unipassau.isl.evs.ssh.core.handler.AbstractMessageHandler;
 import de.unipassau.isl.evs.ssh.core.messaging.Message;
 import de.unipassau.isl.evs.ssh.core.messaging.RoutingKey;
+import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraChunkAckPayload;
 import de.unipassau.isl.evs.ssh.core.messaging.payload.CameraPayload;
 import de.unipassau.isl.evs.ssh.slave.activity.OdroidCamera;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_CHUNK_ACK;
 import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_GET;
+import static de.unipassau.isl.evs.ssh.core.messaging.RoutingKeys.SLAVE_CAMERA_STREAM;
 
 /**
  * Handles messages requesting pictures from the camera (via API calls) and generates messages,
  * containing the pictures, and sends these to the master.
+ * Pictures are taken by the {@link SlaveCamera} running in the background if possible, otherwise
+ * the {@link OdroidCamera} Activity is started.
  *
  * @author Niko Fink
  */
 public class SlaveCameraHandler extends AbstractMessageHandler {
+    private static final String TAG = SlaveCameraHandler.class.getSimpleName();
+
     /**
      * Will perform actions based on the message given, e.g. permission/sanity checks.
      *
@@ -55,22 +65,72 @@ public class SlaveCameraHandler extends AbstractMessageHandler {
     public void handle(final Message.AddressedMessage message) {
         if (SLAVE_CAMERA_GET.matches(message)) {
             final CameraPayload payload = SLAVE_CAMERA_GET.getPayload(message);
-            final Context context = requireComponent(ContainerService.KEY_CONTEXT);
-            final Intent intent = OdroidCamera.getIntent(
-                    context,
-                    payload.getCameraID(),
-                    payload.getModuleName(),
-                    message
-            );
-            Log.d(getClass().getSimpleName(), "Starting Camera Activity: " + intent);
-            context.startActivity(intent);
+            final SlaveCamera camera = getComponent(SlaveCamera.KEY);
+            if (camera == null) {
+                startCameraActivity(message, payload);
+                return;
+            }
+            if (payload.getCaptureTime() > 0) {
+                //The capture time is given according to the clock of the requesting device, translate it to ours
+                final Long sentTime = message.getHeader(Message.HEADER_TIMESTAMP);
+                if (sentTime != null) {
+                    payload.setCaptureTime(System.currentTimeMillis() - (sentTime - payload.getCaptureTime()));
+                } else {
+                    payload.setCaptureTime(0);
+                }
+            }
+            camera.takePicture(payload).addListener(new FutureListener<CameraPayload>() {
+                @Override
+                public void operationComplete(Future<CameraPayload> future) throws Exception {
+                    final Container container = getContainer();
+                    if (container == null) {
+                        return;
+                    }
+                    if (future.isSuccess()) {
+                        CameraChunkSender.sendReply(container, message, future.get());
+                    } else {
+                        Log.w(TAG, "Could not take picture in background, falling back to Camera Activity", future.cause());
+                        //The Activity can only open the camera once the SlaveCamera released it
+                        camera.releaseCamera().addListener(new FutureListener<Void>() {
+                            @Override
+                            public void operationComplete(Future<Void> future) throws Exception {
+                                if (getContainer() != null) {
+                                    startCameraActivity(message, payload);
+                                }
+                            }
+                        });
+                    }
+                }
+            });
+        } else if (SLAVE_CAMERA_CHUNK_ACK.matches(message)) {
+            final CameraChunkAckPayload payload = SLAVE_CAMERA_CHUNK_ACK.getPayload(message);
+            CameraChunkSender.acknowledge(payload.getTransferID(), payload.getLength());
+        } else if (SLAVE_CAMERA_STREAM.matches(message)) {
+            final SlaveCamera camera = getComponent(SlaveCamera.KEY);
+            if (camera != null) {
+                camera.setStream(SLAVE_CAMERA_STREAM.getPayload(message));
+            } else {
+                Log.w(TAG, "Streaming is not supported without SlaveCamera");
+            }
         } else {
             invalidMessage(message);
         }
     }
 
+    private void startCameraActivity(Message.AddressedMessage message, CameraPayload payload) {
+        final Context context = requireComponent(ContainerService.KEY_CONTEXT);
+        final Intent intent = OdroidCamera.getIntent(
+                context,
+                payload.getCameraID(),
+                payload.getModuleName(),
+                message
+        );
+        Log.d(TAG, "Starting Camera Activity: " + intent);
+        context.startActivity(intent);
+    }
+
     @Override
     public RoutingKey[] getRoutingKeys() {
-        return new RoutingKey[]{SLAVE_CAMERA_GET};
+        return new RoutingKey[]{SLAVE_CAMERA_GET, SLAVE_CAMERA_CHUNK_ACK, SLAVE_CAMERA_STREAM};
     }
 }
\ No newline at end of file
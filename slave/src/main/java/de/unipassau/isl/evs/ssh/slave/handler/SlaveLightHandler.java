@@ -65,6 +65,15 @@ public class SlaveLightHandler extends AbstractMessageHandler {
         }
     }
 
+    /**
+     * Stateless, so commands for different lights can be handled concurrently,
+     * while the commands for the same light are still executed in order.
+     */
+    @Override
+    public OrderingScope getOrderingScope() {
+        return OrderingScope.MODULE;
+    }
+
     @Override
     public RoutingKey[] getRoutingKeys() {
         return new RoutingKey[]{SLAVE_LIGHT_SET, SLAVE_LIGHT_GET};
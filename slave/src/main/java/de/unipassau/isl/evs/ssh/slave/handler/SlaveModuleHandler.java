@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Set;
 
 import de.ncoder.typedmap.Key;
+import de.unipassau.isl.evs.ssh.core.CoreConstants;
 import de.unipassau.isl.evs.ssh.core.container.Component;
 import de.unipassau.isl.evs.ssh.core.container.Container;
 import de.unipassau.isl.evs.ssh.core.database.dto.Module;
@@ -95,6 +96,17 @@ public class SlaveModuleHandler extends AbstractMessageHandler implements Compon
         }
         this.components.clear();
         this.components.addAll(components);
+
+        final SlaveCamera camera = getComponent(SlaveCamera.KEY);
+        if (camera != null) {
+            final List<Module> webcams = new LinkedList<>();
+            for (Module module : components) {
+                if (module.getModuleType() == CoreConstants.ModuleType.Webcam) {
+                    webcams.add(module);
+                }
+            }
+            camera.setWebcams(webcams);
+        }
     }
 
     private void registerModules(Set<Module> componentsToAdd) throws WrongAccessPointException, EvsIoException {